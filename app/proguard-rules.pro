@@ -23,3 +23,12 @@
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
 #-renamesourcefileattribute SourceFile
+
+# Strip the debug logging of the search path and the parser from release builds. Debugging is
+# disabled in release builds anyway, but this removes the calls, and the arguments built only to
+# be passed to them, altogether. Warnings and errors are kept. This only takes effect if
+# minifyEnabled is turned on for the build type, which it currently isn't.
+-assumenosideeffects class org.tlhInganHol.android.klingonassistant.core.KlingonLog {
+    public static boolean isDebugEnabled(...);
+    public static void d(...);
+}
@@ -0,0 +1,225 @@
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Typeface;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.SpannableStringBuilder;
+import android.text.style.ClickableSpan;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StyleSpan;
+import android.text.style.SuperscriptSpan;
+import android.text.style.TypefaceSpan;
+import android.text.style.URLSpan;
+import android.util.Log;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.regex.Matcher;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks EntryFragment.processMixedText on the largest entries in the database, against the
+ * previous implementation which edited the text in place. The timings are written to the log under
+ * the tag "EntryRenderingBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class EntryRenderingBenchmark {
+    private static final String TAG = "EntryRenderingBenchmark";
+
+    // The ids of entries are allocated from here, see KlingonContentDatabase.
+    private static final int ID_OF_FIRST_ENTRY = 10000;
+    private static final int MAX_ENTRY_ID = 20000;
+
+    private static final int NUM_LARGEST_ENTRIES = 10;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void renderLargestEntries() throws Exception {
+        Context context = InstrumentationRegistry.getTargetContext();
+        ArrayList<KlingonContentProvider.Entry> entries = getLargestEntries(context);
+        assertFalse(entries.isEmpty());
+
+        for (KlingonContentProvider.Entry entry : entries) {
+            SpannableStringBuilder text = EntryFragment.buildExpandedDefinition(context, entry);
+            compare(context, entry.getEntryName(), text, entry);
+        }
+
+        // Concatenate the largest entry with itself to show how rendering scales with its length.
+        KlingonContentProvider.Entry largest = entries.get(0);
+        SpannableStringBuilder text = EntryFragment.buildExpandedDefinition(context, largest);
+        for (int copies = 1; copies <= 16; copies *= 2) {
+            SpannableStringBuilder repeated = new SpannableStringBuilder();
+            for (int i = 0; i < copies; i++) {
+                repeated.append(text);
+            }
+            compare(context, largest.getEntryName() + " x" + copies, repeated, largest);
+        }
+    }
+
+    // Renders the text with both implementations, checks they produce the same text, and logs the
+    // time taken by each.
+    private void compare(
+            Context context, String name, SpannableStringBuilder text,
+            KlingonContentProvider.Entry entry) {
+        String expected =
+                legacyProcessMixedText(context, new SpannableStringBuilder(text), entry).toString();
+        String actual = EntryFragment.processMixedText(context, text, entry).toString();
+        assertEquals(name, expected, actual);
+
+        long legacyNanos = 0;
+        long singlePassNanos = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            legacyProcessMixedText(context, new SpannableStringBuilder(text), entry);
+            legacyNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            EntryFragment.processMixedText(context, text, entry);
+            singlePassNanos += System.nanoTime() - start;
+        }
+        Log.i(TAG, String.format("%s (%d chars): in place %.3f ms, single pass %.3f ms",
+                name, text.length(), legacyNanos / 1e6 / ITERATIONS,
+                singlePassNanos / 1e6 / ITERATIONS));
+    }
+
+    // Returns the entries with the longest text, largest first.
+    private static ArrayList<KlingonContentProvider.Entry> getLargestEntries(Context context) {
+        ArrayList<KlingonContentProvider.Entry> entries =
+                new ArrayList<KlingonContentProvider.Entry>();
+        for (int id = ID_OF_FIRST_ENTRY; id < MAX_ENTRY_ID; id++) {
+            Uri uri = Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + id);
+            Cursor cursor = context.getContentResolver()
+                    .query(uri, KlingonContentDatabase.ALL_KEYS, null, null, null);
+            if (cursor == null) {
+                continue;
+            }
+            if (cursor.moveToFirst()) {
+                entries.add(new KlingonContentProvider.Entry(cursor, context));
+            }
+            cursor.close();
+        }
+        Collections.sort(entries, new Comparator<KlingonContentProvider.Entry>() {
+            @Override
+            public int compare(KlingonContentProvider.Entry a, KlingonContentProvider.Entry b) {
+                return length(b) - length(a);
+            }
+
+            private int length(KlingonContentProvider.Entry entry) {
+                return entry.getDefinition().length() + entry.getNotes().length()
+                        + entry.getHiddenNotes().length() + entry.getExamples().length();
+            }
+        });
+        return new ArrayList<KlingonContentProvider.Entry>(
+                entries.subList(0, Math.min(NUM_LARGEST_ENTRIES, entries.size())));
+    }
+
+    // The previous implementation of EntryFragment.processMixedText, which edits the text in place.
+    private static SpannableStringBuilder legacyProcessMixedText(
+            Context context, SpannableStringBuilder ssb, KlingonContentProvider.Entry entry) {
+        final int intermediateFlags =
+                SpannableStringBuilder.SPAN_EXCLUSIVE_EXCLUSIVE
+                        | SpannableStringBuilder.SPAN_INTERMEDIATE;
+        final int finalFlags = SpannableStringBuilder.SPAN_EXCLUSIVE_EXCLUSIVE;
+        float smallTextScale = (float) 0.8;
+        boolean useKlingonFont = Preferences.useKlingonFont(context);
+        Typeface klingonTypeface = KlingonAssistant.getKlingonFontTypeface(context);
+
+        String mixedText = ssb.toString();
+        Matcher m = KlingonContentProvider.Entry.ENTRY_PATTERN.matcher(mixedText);
+        while (m.find()) {
+            String query = mixedText.substring(m.start() + 1, m.end() - 1);
+            KlingonContentProvider.Entry linkedEntry =
+                    new KlingonContentProvider.Entry(query, context);
+            ssb.delete(m.start() + 1 + linkedEntry.getEntryName().length(), m.end());
+            ssb.delete(m.start(), m.start() + 1);
+            int end = m.start() + linkedEntry.getEntryName().length();
+            if (entry != null
+                    && entry.isSentence()
+                    && !entry.getSentenceType().equals("")
+                    && linkedEntry.getEntryName().equals("*")) {
+                ssb.delete(m.start(), m.start() + 1);
+                ssb.insert(m.start(), entry.getSentenceType());
+                end += entry.getSentenceType().length() - 1;
+            }
+            boolean disableEntryLink = (entry == null) || linkedEntry.doNotLink()
+                    || linkedEntry.isSource() || linkedEntry.isURL();
+            int maybeFinalFlags = disableEntryLink ? finalFlags : intermediateFlags;
+            if (linkedEntry.isSource()) {
+                String url = linkedEntry.getURL();
+                if (!url.equals("")) {
+                    ssb.setSpan(new URLSpan(url), m.start(), end, intermediateFlags);
+                }
+                ssb.setSpan(new StyleSpan(Typeface.ITALIC), m.start(), end, maybeFinalFlags);
+            } else if (linkedEntry.isURL()) {
+                String url = linkedEntry.getURL();
+                if (!url.equals("")) {
+                    ssb.setSpan(new URLSpan(url), m.start(), end, maybeFinalFlags);
+                }
+            } else if (useKlingonFont) {
+                String klingonEntryName = null;
+                if (!linkedEntry.getEntryName().equals("*")) {
+                    klingonEntryName = linkedEntry.getEntryNameInKlingonFont();
+                } else if (Preferences.useKlingonUI(context)) {
+                    klingonEntryName = KlingonText.convertStringToKlingonFont(
+                            entry.getSentenceType());
+                }
+                if (klingonEntryName != null) {
+                    ssb.delete(m.start(), end);
+                    ssb.insert(m.start(), klingonEntryName);
+                    end = m.start() + klingonEntryName.length();
+                    ssb.setSpan(new KlingonTypefaceSpan("", klingonTypeface), m.start(), end,
+                            maybeFinalFlags);
+                }
+            } else {
+                ssb.setSpan(new StyleSpan(Typeface.BOLD), m.start(), end, intermediateFlags);
+                ssb.setSpan(new TypefaceSpan("serif"), m.start(), end, maybeFinalFlags);
+            }
+            if (linkedEntry.isHypothetical() || linkedEntry.isExtendedCanon()) {
+                ssb.insert(m.start(), "?");
+                ssb.setSpan(new RelativeSizeSpan(smallTextScale), m.start(), m.start() + 1,
+                        intermediateFlags);
+                ssb.setSpan(new SuperscriptSpan(), m.start(), m.start() + 1, maybeFinalFlags);
+                end++;
+            }
+            if (ssb.charAt(m.start()) == '-') {
+                ssb.replace(m.start(), m.start() + 1, "‑");
+            }
+            if (!disableEntryLink) {
+                ssb.setSpan(new ClickableSpan() {
+                    @Override
+                    public void onClick(View view) {
+                    }
+                }, m.start(), end, intermediateFlags);
+            }
+            for (ForegroundColorSpan span :
+                    ssb.getSpans(m.start(), end, ForegroundColorSpan.class)) {
+                ssb.removeSpan(span);
+            }
+            ssb.setSpan(new ForegroundColorSpan(linkedEntry.getTextColor()), m.start(), end,
+                    finalFlags);
+            String linkedPos = linkedEntry.getBracketedPartOfSpeech(/* isHtml */ false);
+            if (!linkedPos.equals("") && linkedPos.length() > 1) {
+                ssb.insert(end, linkedPos);
+                int rightBracketLoc = linkedPos.indexOf(")");
+                if (rightBracketLoc != -1) {
+                    ssb.setSpan(new StyleSpan(Typeface.ITALIC), end + 2, end + rightBracketLoc,
+                            finalFlags);
+                }
+            }
+            mixedText = ssb.toString();
+            m = KlingonContentProvider.Entry.ENTRY_PATTERN.matcher(mixedText);
+        }
+        return ssb;
+    }
+}
@@ -57,6 +57,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 import java.util.Locale;
 import java.util.concurrent.TimeUnit;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
 import org.tlhInganHol.android.klingonassistant.service.KwotdService;
 import org.tlhInganHol.android.klingonassistant.service.UpdateDatabaseService;
 
@@ -141,7 +142,7 @@ public class BaseActivity extends AppCompatActivity
     // Display the title in Klingon font.
     SpannableString klingonAppName =
         new SpannableString(
-            KlingonContentProvider.convertStringToKlingonFont(
+            KlingonText.convertStringToKlingonFont(
                 getBaseContext().getResources().getString(R.string.app_name)));
     Typeface klingonTypeface = KlingonAssistant.getKlingonFontTypeface(getBaseContext());
     klingonAppName.setSpan(
@@ -294,7 +295,7 @@ public class BaseActivity extends AppCompatActivity
     SpannableString spannableTitle;
     if (useKlingonUI && useKlingonFont) {
       // The UI is displayed in Klingon, in a Klingon font.
-      String klingonTitle = KlingonContentProvider.convertStringToKlingonFont(title);
+      String klingonTitle = KlingonText.convertStringToKlingonFont(title);
       if (menuItem.getItemId() == R.id.about) {
         // This replacement doesn't get made in convertStringToKlingonFont
         // because it has nothing to do with the usual Klingon sentences which
@@ -374,6 +375,9 @@ public class BaseActivity extends AppCompatActivity
       MenuItem updateDatabaseButton = menu.findItem(R.id.action_update_db);
       updateDatabaseButton.setVisible(true);
 
+      MenuItem searchStatsButton = menu.findItem(R.id.action_search_stats);
+      searchStatsButton.setVisible(true);
+
       final String editLang =
           sharedPrefs.getString(
               Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
@@ -663,6 +667,9 @@ public class BaseActivity extends AppCompatActivity
       case R.id.action_autotranslate:
         displaySearchResults(QUERY_FOR_AUTOTRANSLATED_DEFINITIONS);
         return true;
+      case R.id.action_search_stats:
+        startActivity(new Intent(this, SearchStatsActivity.class));
+        return true;
       case R.id.about:
         // Show "About" screen.
         displayHelp(QUERY_FOR_ABOUT);
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The entries which changed between two versions of the database, so that an update can be applied
+ * to the installed database row by row instead of replacing the whole file.
+ *
+ * <p>A changeset is a UTF-8 text file with one JSON object per line. The first line describes the
+ * changeset:
+ *
+ * <pre>
+ *   {"changeset": 1, "from": "2020.09.07a", "to": "2020.09.14a", "extra": 14850}
+ * </pre>
+ *
+ * where "from" is the version it applies to, "to" is the version it produces, and "extra" is the
+ * id of the first extra entry in the new version. Each following line is either a new or changed
+ * entry, with its "_id" and all of its columns (any which are missing are empty), or a deleted
+ * entry:
+ *
+ * <pre>
+ *   {"_id": 10234, "entry_name": "...", "part_of_speech": "...", "definition": "...", ...}
+ *   {"_id": 10235, "deleted": true}
+ * </pre>
+ */
+public class DatabaseChangeset {
+  private static final int FORMAT_VERSION = 1;
+
+  private static final String KEY_CHANGESET = "changeset";
+  private static final String KEY_FROM = "from";
+  private static final String KEY_TO = "to";
+  private static final String KEY_EXTRA = "extra";
+  private static final String KEY_DELETED = "deleted";
+
+  private static final List<String> ALL_KEYS_LIST =
+      Arrays.asList(KlingonContentDatabase.ALL_KEYS);
+
+  private final String mFromVersion;
+  private final String mToVersion;
+  private final int mFirstExtraEntryId;
+  private final List<Change> mChanges;
+
+  /** A new, changed, or deleted entry. */
+  public static class Change {
+    private final int mEntryId;
+    private final String[] mValues;
+
+    private Change(int entryId, String[] values) {
+      mEntryId = entryId;
+      mValues = values;
+    }
+
+    /** Returns the id of the entry. */
+    public int getEntryId() {
+      return mEntryId;
+    }
+
+    /** Returns whether the entry is deleted. */
+    public boolean isDeleted() {
+      return mValues == null;
+    }
+
+    /**
+     * Returns the value of the given column of the new or changed entry, in the order of
+     * KlingonContentDatabase.ALL_KEYS.
+     */
+    public String getValue(int columnIndex) {
+      return mValues[columnIndex];
+    }
+  }
+
+  private DatabaseChangeset(
+      String fromVersion, String toVersion, int firstExtraEntryId, List<Change> changes) {
+    mFromVersion = fromVersion;
+    mToVersion = toVersion;
+    mFirstExtraEntryId = firstExtraEntryId;
+    mChanges = changes;
+  }
+
+  /** Returns the version of the database the changeset applies to. */
+  public String getFromVersion() {
+    return mFromVersion;
+  }
+
+  /** Returns the version of the database the changeset produces. */
+  public String getToVersion() {
+    return mToVersion;
+  }
+
+  /** Returns the id of the first extra entry in the version the changeset produces. */
+  public int getFirstExtraEntryId() {
+    return mFirstExtraEntryId;
+  }
+
+  /** Returns the changed entries, in the order they appear in the changeset. */
+  public List<Change> getChanges() {
+    return mChanges;
+  }
+
+  /**
+   * Reads a changeset. The whole changeset is read before anything is applied, so a malformed one
+   * is rejected without touching the database.
+   */
+  public static DatabaseChangeset read(InputStream inStream) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(inStream, "UTF-8"));
+    int lineNumber = 1;
+    try {
+      String line = reader.readLine();
+      if (line == null) {
+        throw new IOException("Changeset is empty.");
+      }
+      JSONObject header = new JSONObject(line);
+      if (header.getInt(KEY_CHANGESET) != FORMAT_VERSION) {
+        throw new IOException("Unsupported changeset format: " + header.getInt(KEY_CHANGESET));
+      }
+      String fromVersion = header.getString(KEY_FROM);
+      String toVersion = header.getString(KEY_TO);
+      int firstExtraEntryId = header.getInt(KEY_EXTRA);
+
+      ArrayList<Change> changes = new ArrayList<Change>();
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        changes.add(readChange(new JSONObject(line)));
+      }
+      return new DatabaseChangeset(
+          fromVersion, toVersion, firstExtraEntryId, Collections.unmodifiableList(changes));
+    } catch (JSONException e) {
+      throw new IOException("Malformed changeset at line " + lineNumber + ".", e);
+    }
+  }
+
+  // Helper method to read one line of a changeset after the header.
+  private static Change readChange(JSONObject object) throws JSONException {
+    int entryId = object.getInt(KlingonContentDatabase.KEY_ID);
+    if (object.optBoolean(KEY_DELETED, false)) {
+      return new Change(entryId, null);
+    }
+
+    String[] values = new String[KlingonContentDatabase.ALL_KEYS.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = object.optString(KlingonContentDatabase.ALL_KEYS[i], "");
+    }
+    values[KlingonContentDatabase.COLUMN_ID] = Integer.toString(entryId);
+
+    // Catch misspelt column names, which would otherwise silently empty a column.
+    Iterator<String> keys = object.keys();
+    while (keys.hasNext()) {
+      String key = keys.next();
+      if (!key.equals(KEY_DELETED) && !ALL_KEYS_LIST.contains(key)) {
+        throw new JSONException("Unknown column: " + key);
+      }
+    }
+    return new Change(entryId, values);
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Installs a database file. The data is written to a temporary file next to the target, synced to
+ * disk, and then renamed over the target, so the target is never left partly written. Where
+ * possible, the data is moved with FileChannel.transferTo, which lets the kernel copy it without
+ * passing it through the Java heap.
+ *
+ * <p>This class doesn't depend on Android, so it can be tested on the development machine.
+ */
+public class DatabaseInstaller {
+  // The size of the buffer used when the source is only available as a stream.
+  private static final int BUFFER_LENGTH = 256 * 1024;
+
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /** Statistics about an installation. */
+  public static class Stats {
+    private final long mBytes;
+    private final long mElapsedNanos;
+
+    Stats(long bytes, long elapsedNanos) {
+      mBytes = bytes;
+      mElapsedNanos = elapsedNanos;
+    }
+
+    /** Returns the number of bytes installed. */
+    public long getBytes() {
+      return mBytes;
+    }
+
+    /** Returns the time taken, including syncing and renaming, in milliseconds. */
+    public long getElapsedMillis() {
+      return mElapsedNanos / 1000000;
+    }
+
+    /** Returns the rate at which the data was installed, in bytes per second. */
+    public long getBytesPerSecond() {
+      return mElapsedNanos == 0 ? 0 : mBytes * 1000000000L / mElapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      return mBytes + " bytes in " + getElapsedMillis() + " ms (" + getBytesPerSecond() + " B/s)";
+    }
+  }
+
+  private DatabaseInstaller() {}
+
+  /**
+   * Installs a region of a file, e.g., an uncompressed asset inside the APK.
+   *
+   * @param source The file containing the database.
+   * @param offset The offset of the database in the file.
+   * @param length The length of the database.
+   * @param target The file to install the database to.
+   */
+  public static Stats install(FileInputStream source, long offset, long length, File target)
+      throws IOException {
+    long startTime = System.nanoTime();
+    File tempFile = getTempFile(target);
+    FileOutputStream outStream = new FileOutputStream(tempFile);
+    try {
+      FileChannel in = source.getChannel();
+      FileChannel out = outStream.getChannel();
+      long transferred = 0;
+      while (transferred < length) {
+        long count = in.transferTo(offset + transferred, length - transferred, out);
+        if (count <= 0) {
+          throw new IOException(
+              "Unexpected end of source after " + transferred + " of " + length + " bytes.");
+        }
+        transferred += count;
+      }
+      outStream.flush();
+      outStream.getFD().sync();
+    } catch (IOException e) {
+      tempFile.delete();
+      throw e;
+    } finally {
+      outStream.close();
+    }
+    rename(tempFile, target);
+    return new Stats(length, System.nanoTime() - startTime);
+  }
+
+  /** Installs a whole file, e.g., a downloaded replacement database. */
+  public static Stats install(File source, File target) throws IOException {
+    FileInputStream inStream = new FileInputStream(source);
+    try {
+      return install(inStream, /* offset */ 0, source.length(), target);
+    } finally {
+      inStream.close();
+    }
+  }
+
+  /** Installs a database which is only available as a stream, e.g., a compressed asset. */
+  public static Stats install(InputStream source, File target) throws IOException {
+    long startTime = System.nanoTime();
+    File tempFile = getTempFile(target);
+    FileOutputStream outStream = new FileOutputStream(tempFile);
+    long total = 0;
+    try {
+      ReadableByteChannel in = Channels.newChannel(source);
+      FileChannel out = outStream.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+      while (in.read(buffer) != -1) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          total += out.write(buffer);
+        }
+        buffer.clear();
+      }
+      outStream.flush();
+      outStream.getFD().sync();
+    } catch (IOException e) {
+      tempFile.delete();
+      throw e;
+    } finally {
+      outStream.close();
+    }
+    rename(tempFile, target);
+    return new Stats(total, System.nanoTime() - startTime);
+  }
+
+  private static File getTempFile(File target) {
+    return new File(target.getPath() + TEMP_SUFFIX);
+  }
+
+  // Helper method to move the fully-written temporary file over the target. On the same file
+  // system, this replaces the target atomically.
+  private static void rename(File tempFile, File target) throws IOException {
+    if (!tempFile.renameTo(target)) {
+      tempFile.delete();
+      throw new IOException("Unable to rename " + tempFile + " to " + target + ".");
+    }
+  }
+}
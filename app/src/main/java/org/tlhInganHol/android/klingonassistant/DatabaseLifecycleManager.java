@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Manages the read-only connections to the database file, so that the file can be replaced while
+ * the app is running, and so that several threads can read from it at once.
+ *
+ * <p>The connections opened together are a "generation". Readers acquire a handle on the current
+ * generation, and everything they read through it comes from that generation, even if a new
+ * database is swapped in meanwhile. A swap renames the new file over the old one, which is atomic,
+ * and opens a new generation. Readers which still hold the old generation keep reading the old file
+ * (which remains on disk until it's closed), and the old generation is closed when the last of them
+ * releases it.
+ *
+ * <p>Each generation has a pool of connections, and each thread reads through one of them, so that
+ * concurrent readers (e.g., the provider's binder threads and the analysis threads of a search)
+ * don't queue up on a single connection. The database is opened read-only, so the connections don't
+ * block each other.
+ *
+ * <p>Each connection can be set up when it's opened (see ConnectionConfigurer), and a new
+ * generation can be opened from the same file when that set-up needs to change (see reopen).
+ */
+public class DatabaseLifecycleManager {
+  private static final String TAG = "DatabaseLifecycleManager";
+
+  private final File mDatabaseFile;
+  private final ConnectionConfigurer mConfigurer;
+
+  // The number of connections in each generation.
+  private final int mPoolSize;
+
+  // The connection of the pool which each thread reads through. Threads are spread over the pool as
+  // they first read, and keep the same connection in every generation.
+  private final AtomicInteger mNextConnection = new AtomicInteger();
+  private final ThreadLocal<Integer> mThreadConnection =
+      new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+          return (mNextConnection.getAndIncrement() & Integer.MAX_VALUE) % mPoolSize;
+        }
+      };
+
+  // The generation new readers get. Null if the database hasn't been opened.
+  private Generation mCurrent = null;
+
+  // The generation of the handle held by the current thread, if any, so that everything the thread
+  // reads during a query comes from the same generation.
+  private final ThreadLocal<Generation> mThreadGeneration = new ThreadLocal<Generation>();
+
+  // The number of statements run on the connections. Every read is a query, which creates a cursor,
+  // so they are counted as their cursors are created.
+  private final AtomicLong mStatementCount = new AtomicLong();
+  private final SQLiteDatabase.CursorFactory mCountingCursorFactory =
+      new SQLiteDatabase.CursorFactory() {
+        @Override
+        public Cursor newCursor(
+            SQLiteDatabase db,
+            SQLiteCursorDriver masterQuery,
+            String editTable,
+            SQLiteQuery query) {
+          mStatementCount.incrementAndGet();
+          SearchStats.onStatement();
+          return new SQLiteCursor(masterQuery, editTable, query);
+        }
+      };
+
+  private static class Generation {
+    // The connections are all opened with the generation, since one opened later might open a
+    // different file, or be set up differently.
+    final SQLiteDatabase[] mConnections;
+    int mRefCount = 0;
+    boolean mRetired = false;
+
+    Generation(SQLiteDatabase[] connections) {
+      mConnections = connections;
+    }
+  }
+
+  /** Sets up each connection when it's opened, before any reader can use it. */
+  public interface ConnectionConfigurer {
+    void onOpen(SQLiteDatabase database) throws SQLException;
+  }
+
+  /** A reference to a generation of the database, which keeps it open until released. */
+  public class Handle {
+    private final Generation mGeneration;
+    private final Generation mPreviousThreadGeneration;
+    private boolean mReleased = false;
+
+    private Handle(Generation generation, Generation previousThreadGeneration) {
+      mGeneration = generation;
+      mPreviousThreadGeneration = previousThreadGeneration;
+    }
+
+    /** Returns the connection of this handle's generation which the current thread uses. */
+    public SQLiteDatabase getDatabase() {
+      return getConnection(mGeneration);
+    }
+
+    /**
+     * Releases this handle. This must be called on the thread which acquired it, unless the handle
+     * has been passed to a cursor (see wrapCursor). Releasing a handle again has no effect.
+     */
+    public void release() {
+      synchronized (DatabaseLifecycleManager.this) {
+        if (mReleased) {
+          return;
+        }
+        mReleased = true;
+        mGeneration.mRefCount--;
+        if (mGeneration.mRetired && mGeneration.mRefCount == 0) {
+          closeGeneration(mGeneration);
+        }
+      }
+      if (mThreadGeneration.get() == mGeneration) {
+        mThreadGeneration.set(mPreviousThreadGeneration);
+      }
+    }
+  }
+
+  // A cursor which releases a handle when it's closed, so that the generation it reads from stays
+  // open until then.
+  private static class HandleReleasingCursor extends CursorWrapper {
+    private final Handle mHandle;
+
+    HandleReleasingCursor(Cursor cursor, Handle handle) {
+      super(cursor);
+      mHandle = handle;
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      mHandle.release();
+    }
+  }
+
+  /** Creates a manager whose generations each have the given number of connections. */
+  public DatabaseLifecycleManager(
+      File databaseFile, ConnectionConfigurer configurer, int poolSize) {
+    mDatabaseFile = databaseFile;
+    mConfigurer = configurer;
+    mPoolSize = Math.max(poolSize, 1);
+  }
+
+  /** Opens the first generation of the database. */
+  public synchronized void open() throws SQLException {
+    mCurrent = new Generation(openConnections());
+  }
+
+  /**
+   * Acquires a handle on a generation of the database, or returns null if it isn't open. If the
+   * current thread already holds a handle, the new handle is on the same generation.
+   */
+  public synchronized Handle acquire() {
+    Generation threadGeneration = mThreadGeneration.get();
+    Generation generation = threadGeneration != null ? threadGeneration : mCurrent;
+    if (generation == null) {
+      return null;
+    }
+    generation.mRefCount++;
+    mThreadGeneration.set(generation);
+    return new Handle(generation, threadGeneration);
+  }
+
+  /**
+   * Acquires a handle on the same generation of the database as the given handle, for the current
+   * thread. This lets work handed to another thread read from the same database as the thread which
+   * handed it over. The given handle must not have been released.
+   */
+  public synchronized Handle acquire(Handle handle) {
+    Generation threadGeneration = mThreadGeneration.get();
+    handle.mGeneration.mRefCount++;
+    mThreadGeneration.set(handle.mGeneration);
+    return new Handle(handle.mGeneration, threadGeneration);
+  }
+
+  /**
+   * Returns the connection to read from: the current thread's connection of the generation of the
+   * handle it holds, if any, or else of the current generation. Returns null if the database isn't
+   * open.
+   */
+  public synchronized SQLiteDatabase getDatabase() {
+    Generation threadGeneration = mThreadGeneration.get();
+    Generation generation = threadGeneration != null ? threadGeneration : mCurrent;
+    return generation == null ? null : getConnection(generation);
+  }
+
+  // Returns the connection of the generation which the current thread reads through.
+  private SQLiteDatabase getConnection(Generation generation) {
+    return generation.mConnections[mThreadConnection.get()];
+  }
+
+  /** Returns the number of connections in each generation. */
+  public int getPoolSize() {
+    return mPoolSize;
+  }
+
+  /**
+   * Returns a cursor which releases the given handle when it's closed. The handle is detached from
+   * the current thread, since the cursor may be read and closed on another one.
+   */
+  public Cursor wrapCursor(Cursor cursor, Handle handle) {
+    if (mThreadGeneration.get() == handle.mGeneration) {
+      mThreadGeneration.set(handle.mPreviousThreadGeneration);
+    }
+    return new HandleReleasingCursor(cursor, handle);
+  }
+
+  /**
+   * Replaces the database file with the given one, which must be in the same directory, and opens
+   * it as the new current generation. The previous generation is closed once it's no longer used.
+   */
+  public synchronized void swap(File replacementFile) throws IOException {
+    if (!replacementFile.renameTo(mDatabaseFile)) {
+      throw new IOException("Unable to rename " + replacementFile + " to " + mDatabaseFile + ".");
+    }
+    SQLiteDatabase[] connections;
+    try {
+      connections = openConnections();
+    } catch (SQLException e) {
+      // Readers of the previous generation are unaffected, since it still has the old file open.
+      throw new IOException("Unable to open the replacement database.", e);
+    }
+    replaceCurrent(connections);
+  }
+
+  /**
+   * Opens a new generation of the same database file, e.g., because the connections need to be set
+   * up differently. The previous generation is closed once it's no longer used.
+   */
+  public synchronized void reopen() throws SQLException {
+    replaceCurrent(openConnections());
+  }
+
+  // Makes the given connections the current generation, and retires the previous one.
+  private void replaceCurrent(SQLiteDatabase[] connections) {
+    Generation previous = mCurrent;
+    mCurrent = new Generation(connections);
+    if (previous != null) {
+      previous.mRetired = true;
+      if (previous.mRefCount == 0) {
+        closeGeneration(previous);
+      } else {
+        Log.d(TAG, "Waiting for " + previous.mRefCount + " readers of the old database.");
+      }
+    }
+  }
+
+  /**
+   * Returns the number of statements which have been run on the connections opened by this
+   * manager, e.g., to compare how many a search needs before and after a change.
+   */
+  public long getStatementCount() {
+    return mStatementCount.get();
+  }
+
+  /** Closes the database. Generations which are still in use are closed when released. */
+  public synchronized void close() {
+    if (mCurrent != null) {
+      mCurrent.mRetired = true;
+      if (mCurrent.mRefCount == 0) {
+        closeGeneration(mCurrent);
+      }
+      mCurrent = null;
+    }
+  }
+
+  // Opens the connections of a new generation. If one fails to open, those already opened are
+  // closed.
+  private SQLiteDatabase[] openConnections() throws SQLException {
+    SQLiteDatabase[] connections = new SQLiteDatabase[mPoolSize];
+    try {
+      for (int i = 0; i < connections.length; i++) {
+        connections[i] = openDatabase();
+      }
+    } catch (SQLException e) {
+      for (SQLiteDatabase connection : connections) {
+        if (connection != null) {
+          connection.close();
+        }
+      }
+      throw e;
+    }
+    return connections;
+  }
+
+  private SQLiteDatabase openDatabase() throws SQLException {
+    SQLiteDatabase database =
+        SQLiteDatabase.openDatabase(
+            mDatabaseFile.getPath(), mCountingCursorFactory, SQLiteDatabase.OPEN_READONLY);
+    if (mConfigurer != null) {
+      try {
+        mConfigurer.onOpen(database);
+      } catch (SQLException e) {
+        database.close();
+        throw e;
+      }
+    }
+    return database;
+  }
+
+  private static void closeGeneration(Generation generation) {
+    for (SQLiteDatabase connection : generation.mConnections) {
+      connection.close();
+    }
+  }
+}
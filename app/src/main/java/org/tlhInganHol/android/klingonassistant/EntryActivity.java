@@ -42,9 +42,6 @@ import android.view.MenuItem;
 import android.view.View;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Locale;
 
 /** Displays an entry and its definition. */
@@ -85,6 +82,9 @@ public class EntryActivity extends BaseActivity
   private PagerAdapter mPagerAdapter;
   private int mEntryIndex = -1;
 
+  // How many pages on either side of the current one to render in the background.
+  private static final int PRERENDER_DISTANCE = 2;
+
   @Override
   protected void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
@@ -109,29 +109,45 @@ public class EntryActivity extends BaseActivity
 
     // Determine whether we're launching a single entry, or a list of entries.
     // If it's a single entry, the URI will end in "get_entry_by_id/" followed
-    // by the one ID. In the case of a list, the URI will end in "get_entry_by_id/"
-    // follwoed by a list of comma-separated IDs, with one additional item at the
-    // end for the position of the current entry. For a random entry, the URI will
-    // end in "get_random_entry", with no ID at all.
-    String[] ids = inputUri.getLastPathSegment().split(",");
-    Uri queryUri = null;
-    List<String> entryIdsList = new ArrayList<String>(Arrays.asList(ids));
-    if (entryIdsList.size() == 1) {
-      // There is only one entry to display. Either its ID was explicitly
-      // given, or we want a random entry.
-      queryUri = inputUri;
-      mEntryIndex = 0;
-    } else {
-      // Parse the comma-separated list, the last entry of which is the
-      // position index. We nees to construct the queryUri based on the
-      // intended current entry.
-      mEntryIndex = Integer.parseInt(entryIdsList.get(ids.length - 1));
-      entryIdsList.remove(ids.length - 1);
-      queryUri =
-          Uri.parse(
-              KlingonContentProvider.CONTENT_URI
-                  + "/get_entry_by_id/"
-                  + entryIdsList.get(mEntryIndex));
+    // by the one ID. In the case of a list, the URI is that of the selected
+    // entry, and the list itself is held by the SearchSessionRegistry under the
+    // token given in the intent, along with the position of the selected entry.
+    // (An older form of the URI, which ends in a list of comma-separated IDs
+    // followed by the position, is still accepted.) For a random entry, the URI
+    // will end in "get_random_entry", with no ID at all.
+    Uri queryUri = inputUri;
+    mEntryIndex = 0;
+    int[] entryIds =
+        SearchSessionRegistry.get(
+            getIntent()
+                .getLongExtra(
+                    SearchSessionRegistry.EXTRA_SESSION_TOKEN, SearchSessionRegistry.NO_SESSION));
+    if (entryIds != null) {
+      mEntryIndex = getIntent().getIntExtra(SearchSessionRegistry.EXTRA_SESSION_POSITION, 0);
+      if (!isSessionForEntry(entryIds, mEntryIndex, inputUri)) {
+        // The list isn't the one the intent was created with, e.g., because the intent was
+        // restored after the process was restarted, so just display the entry in the URI.
+        entryIds = null;
+        mEntryIndex = 0;
+      }
+    }
+    if (entryIds == null) {
+      String[] ids = inputUri.getLastPathSegment().split(",");
+      if (ids.length > 1) {
+        // Parse the comma-separated list, the last entry of which is the
+        // position index. We need to construct the queryUri based on the
+        // intended current entry.
+        mEntryIndex = Integer.parseInt(ids[ids.length - 1]);
+        entryIds = new int[ids.length - 1];
+        for (int i = 0; i < entryIds.length; i++) {
+          entryIds[i] = Integer.parseInt(ids[i]);
+        }
+        queryUri =
+            Uri.parse(
+                KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryIds[mEntryIndex]);
+      }
+      // Otherwise, there is only one entry to display. Either its ID was
+      // explicitly given, or we want a random entry. Its ID is filled in below.
     }
 
     // Retrieve the entry's data.
@@ -144,11 +160,10 @@ public class EntryActivity extends BaseActivity
     // Update the entry, which is used for TTS output. This is also updated in onPageSelected.
     mEntry = entry;
 
-    if (entryIdsList.size() == 1 && entryIdsList.get(0).equals("get_random_entry")) {
-      // For a random entry, replace "get_random_entry" with the ID of randomly
-      // chosen entry.
-      entryIdsList.clear();
-      entryIdsList.add(Integer.toString(entryId));
+    if (entryIds == null) {
+      // For a single entry, including a random one, the list consists of the
+      // entry that was actually retrieved.
+      entryIds = new int[] {entryId};
     }
 
     // Set the share intent. This is also done in onPageSelected.
@@ -162,17 +177,18 @@ public class EntryActivity extends BaseActivity
 
     // Instantiate a ViewPager and a PagerAdapter.
     mPager = (ViewPager) findViewById(R.id.entry_pager);
-    mPagerAdapter = new SwipeAdapter(getSupportFragmentManager(), entryIdsList);
+    mPagerAdapter = new SwipeAdapter(getSupportFragmentManager(), entryIds);
     mPager.setAdapter(mPagerAdapter);
     mPager.setCurrentItem(mEntryIndex, /* smoothScroll */ false);
-    mPager.setOnPageChangeListener(new SwipePageChangeListener(entryIdsList));
+    mPager.setOnPageChangeListener(new SwipePageChangeListener(entryIds));
+    prerenderAdjacentEntries(entryIds, mEntryIndex);
 
     // Don't display the tab dots if there's only one entry, or if there are 25
     // or more (at which point the dots become not that useful). Note that the
     // entry with the most components at the moment ({cheqotlhchugh...}) has
     // 22 components. The Beginner's Conversation category has over 30 entries,
     // but being able to quickly go between them isn't that useful.
-    if (entryIdsList.size() > 1 && entryIdsList.size() < 25) {
+    if (entryIds.length > 1 && entryIds.length < 25) {
       TabLayout tabLayout = (TabLayout) findViewById(R.id.entry_tab_dots);
       tabLayout.setupWithViewPager(mPager, true);
     }
@@ -325,37 +341,32 @@ public class EntryActivity extends BaseActivity
 
   // Swipe
   private class SwipeAdapter extends FragmentStatePagerAdapter {
-    private List<EntryFragment> entryFragments = null;
+    private final int[] mEntryIds;
 
-    public SwipeAdapter(FragmentManager fm, List<String> entryIdsList) {
+    public SwipeAdapter(FragmentManager fm, int[] entryIds) {
       super(fm);
-
-      // Set up all of the entry fragments.
-      entryFragments = new ArrayList<EntryFragment>();
-      for (int i = 0; i < entryIdsList.size(); i++) {
-        Uri uri =
-            Uri.parse(
-                KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryIdsList.get(i));
-        entryFragments.add(EntryFragment.newInstance(uri));
-      }
+      mEntryIds = entryIds;
     }
 
     @Override
     public Fragment getItem(int position) {
-      return entryFragments.get(position);
+      // The fragments are created as they're needed, since a list can be long.
+      Uri uri =
+          Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + mEntryIds[position]);
+      return EntryFragment.newInstance(uri);
     }
 
     @Override
     public int getCount() {
-      return entryFragments.size();
+      return mEntryIds.length;
     }
   }
 
   private class SwipePageChangeListener implements ViewPager.OnPageChangeListener {
-    List<String> mEntryIdsList = null;
+    private final int[] mEntryIds;
 
-    public SwipePageChangeListener(List<String> entryIdsList) {
-      mEntryIdsList = entryIdsList;
+    public SwipePageChangeListener(int[] entryIds) {
+      mEntryIds = entryIds;
     }
 
     @Override
@@ -365,9 +376,7 @@ public class EntryActivity extends BaseActivity
     public void onPageSelected(int position) {
       Uri uri =
           Uri.parse(
-              KlingonContentProvider.CONTENT_URI
-                  + "/get_entry_by_id/"
-                  + mEntryIdsList.get(position));
+              KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + mEntryIds[position]);
 
       // Note: managedQuery is deprecated since API 11.
       Cursor cursor = managedQuery(uri, KlingonContentDatabase.ALL_KEYS, null, null, null);
@@ -399,12 +408,51 @@ public class EntryActivity extends BaseActivity
 
       // Update the edit button. This is also done in onCreate.
       updateEditButton();
+
+      // Get the entries near this one ready. This is also done in onCreate.
+      prerenderAdjacentEntries(mEntryIds, position);
     }
 
     @Override
     public void onPageScrollStateChanged(int state) {}
   }
 
+  // Returns whether the given list of entries from the SearchSessionRegistry has the entry in the
+  // given URI at the given position.
+  private static boolean isSessionForEntry(int[] entryIds, int position, Uri uri) {
+    if (position < 0 || position >= entryIds.length) {
+      return false;
+    }
+    try {
+      return entryIds[position] == Integer.parseInt(uri.getLastPathSegment());
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  // Render the bodies of the entries near the given position in the background, so that they're
+  // ready when the user swipes to them. The pager creates the pages on either side of the current
+  // one as soon as it's selected, so this also covers the pages one further out.
+  private void prerenderAdjacentEntries(int[] entryIds, int position) {
+    int first = Math.max(position - PRERENDER_DISTANCE, 0);
+    int last = Math.min(position + PRERENDER_DISTANCE, entryIds.length - 1);
+    if (first == last) {
+      return;
+    }
+    int[] adjacentEntryIds = new int[last - first];
+    int count = 0;
+    // Start with the pages closest to the current one.
+    for (int distance = 1; distance <= PRERENDER_DISTANCE; distance++) {
+      if (position + distance <= last) {
+        adjacentEntryIds[count++] = entryIds[position + distance];
+      }
+      if (position - distance >= first) {
+        adjacentEntryIds[count++] = entryIds[position - distance];
+      }
+    }
+    RenderedEntryCache.prerender(this, adjacentEntryIds);
+  }
+
   private void updateBottomNavigationButtons(int entryId) {
     BottomNavigationView bottomNavView =
         (BottomNavigationView) findViewById(R.id.bottom_navigation);
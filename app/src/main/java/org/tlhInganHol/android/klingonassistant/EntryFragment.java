@@ -16,6 +16,7 @@
 package org.tlhInganHol.android.klingonassistant;
 
 import android.app.SearchManager;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
@@ -40,7 +41,10 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.regex.Matcher;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
 
 public class EntryFragment extends Fragment {
   private String mEntryName = null;
@@ -63,8 +67,6 @@ public class EntryFragment extends Fragment {
       LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
     ViewGroup rootView = (ViewGroup) inflater.inflate(R.layout.entry, container, false);
 
-    Resources resources = getActivity().getResources();
-
     TextView entryTitle = (TextView) rootView.findViewById(R.id.entry_title);
     TextView entryBody = (TextView) rootView.findViewById(R.id.entry_body);
 
@@ -76,17 +78,12 @@ public class EntryFragment extends Fragment {
         getActivity().managedQuery(uri, KlingonContentDatabase.ALL_KEYS, null, null, null);
     final KlingonContentProvider.Entry entry =
         new KlingonContentProvider.Entry(cursor, getActivity().getBaseContext());
-    int entryId = entry.getId();
 
     // Handle alternative spellings here.
     if (entry.isAlternativeSpelling()) {
       // TODO: Immediate redirect to query in entry.getDefinition();
     }
 
-    // Get the shared preferences.
-    SharedPreferences sharedPrefs =
-        PreferenceManager.getDefaultSharedPreferences(getActivity().getBaseContext());
-
     // Set the entry's name (along with info like "slang", formatted in HTML).
     entryTitle.invalidate();
     boolean useKlingonFont = Preferences.useKlingonFont(getActivity().getBaseContext());
@@ -105,6 +102,29 @@ public class EntryFragment extends Fragment {
     // Set the colour for the entry name depending on its part of speech.
     entryTitle.setTextColor(entry.getTextColor());
 
+    // Display the entry name and definition.
+    entryBody.invalidate();
+    entryBody.setText(RenderedEntryCache.getEntryBody(getActivity().getBaseContext(), entry));
+    entryBody.setMovementMethod(LinkMovementMethod.getInstance());
+
+    return rootView;
+  }
+
+  // Helper function to render the body of an entry: its definition, notes, examples, and so on,
+  // with links to other entries.
+  static SpannableStringBuilder renderEntryBody(
+      Context context, KlingonContentProvider.Entry entry) {
+    return processMixedText(context, buildExpandedDefinition(context, entry), entry);
+  }
+
+  // Helper function to build the text of the body of an entry, before its links are processed.
+  static SpannableStringBuilder buildExpandedDefinition(
+      Context context, KlingonContentProvider.Entry entry) {
+    Resources resources = context.getResources();
+
+    // Get the shared preferences.
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+
     // Create the expanded definition.
     String pos = entry.getFormattedPartOfSpeech(/* isHtml */ false);
     String expandedDefinition = pos;
@@ -345,52 +365,53 @@ public class EntryFragment extends Fragment {
           hiddenNotesStart + hiddenNotesHeader.length() + hiddenNotes.length(),
           FINAL_FLAGS);
     }
-    processMixedText(ssb, entry);
-
-    // Display the entry name and definition.
-    entryBody.invalidate();
-    entryBody.setText(ssb);
-    entryBody.setMovementMethod(LinkMovementMethod.getInstance());
-
-    return rootView;
+    return ssb;
   }
 
-  // Helper function to process text that includes Klingon text.
-  protected void processMixedText(SpannableStringBuilder ssb, KlingonContentProvider.Entry entry) {
+  // Helper function to process text that includes Klingon text. Each link "{query}" in the given
+  // text is replaced by the formatted name of the linked entry, followed by its part of speech.
+  //
+  // This is done in a single forward pass: the text is appended piece by piece to a new buffer, and
+  // the spans for the links are collected and set at the end, together with the spans of the given
+  // text at their new positions. (Editing the given text in place would shift everything after each
+  // link, which is quadratic in the length of entries with many links.) A span of the given text
+  // which ends with a link covers the link, but not the part of speech appended to it.
+  static SpannableStringBuilder processMixedText(
+      Context context, Spanned text, KlingonContentProvider.Entry entry) {
     float smallTextScale = (float) 0.8;
-    boolean useKlingonFont = Preferences.useKlingonFont(getActivity().getBaseContext());
-    Typeface klingonTypeface =
-        KlingonAssistant.getKlingonFontTypeface(getActivity().getBaseContext());
+    boolean useKlingonFont = Preferences.useKlingonFont(context);
+    Typeface klingonTypeface = KlingonAssistant.getKlingonFontTypeface(context);
+
+    String mixedText = text.toString();
+    StringBuilder out = new StringBuilder(mixedText.length());
+    ArrayList<PendingSpan> spans = new ArrayList<PendingSpan>();
+    LinkOffsets links = new LinkOffsets();
+    int copiedUpTo = 0;
 
-    String mixedText = ssb.toString();
     Matcher m = KlingonContentProvider.Entry.ENTRY_PATTERN.matcher(mixedText);
     while (m.find()) {
+      out.append(mixedText, copiedUpTo, m.start());
+      copiedUpTo = m.end();
+      int start = out.length();
 
       // Strip the brackets {} to get the query.
       String query = mixedText.substring(m.start() + 1, m.end() - 1);
       LookupClickableSpan viewLauncher = new LookupClickableSpan(query);
 
       // Process the linked entry information.
-      KlingonContentProvider.Entry linkedEntry =
-          new KlingonContentProvider.Entry(query, getActivity().getBaseContext());
+      KlingonContentProvider.Entry linkedEntry = new KlingonContentProvider.Entry(query, context);
       // Log.d(TAG, "linkedEntry.getEntryName() = " + linkedEntry.getEntryName());
 
-      // Delete the brackets and metadata parts of the string (which includes analysis components).
-      ssb.delete(m.start() + 1 + linkedEntry.getEntryName().length(), m.end());
-      ssb.delete(m.start(), m.start() + 1);
-      int end = m.start() + linkedEntry.getEntryName().length();
+      // Drop the brackets and metadata parts of the string (which includes analysis components).
+      String linkText =
+          mixedText.substring(m.start() + 1, m.start() + 1 + linkedEntry.getEntryName().length());
 
-      // Insert link to the category for a useful phrase.
+      // Insert link to the category for a useful phrase, in place of the "*" placeholder.
       if (entry != null
           && entry.isSentence()
           && !entry.getSentenceType().equals("")
           && linkedEntry.getEntryName().equals("*")) {
-        // Delete the "*" placeholder.
-        ssb.delete(m.start(), m.start() + 1);
-
-        // Insert the category name.
-        ssb.insert(m.start(), entry.getSentenceType());
-        end += entry.getSentenceType().length() - 1;
+        linkText = entry.getSentenceType();
       }
 
       // Set the font and link.
@@ -404,20 +425,25 @@ public class EntryFragment extends Fragment {
               || linkedEntry.isURL();
       // The last span set on a range must have FINAL_FLAGS.
       int maybeFinalFlags = disableEntryLink ? FINAL_FLAGS : INTERMEDIATE_FLAGS;
+
+      // If linked entry is hypothetical or extended canon, a "?" is inserted in front.
+      boolean isQuestionable = linkedEntry.isHypothetical() || linkedEntry.isExtendedCanon();
+      int textStart = isQuestionable ? start + 1 : start;
+      ArrayList<PendingSpan> textSpans = new ArrayList<PendingSpan>();
       if (linkedEntry.isSource()) {
         // If possible, link to the source.
         String url = linkedEntry.getURL();
         if (!url.equals("")) {
-          ssb.setSpan(new URLSpan(url), m.start(), end, INTERMEDIATE_FLAGS);
+          textSpans.add(new PendingSpan(new URLSpan(url), INTERMEDIATE_FLAGS));
         }
         // Names of sources are in italics.
-        ssb.setSpan(
-            new StyleSpan(android.graphics.Typeface.ITALIC), m.start(), end, maybeFinalFlags);
+        textSpans.add(
+            new PendingSpan(new StyleSpan(android.graphics.Typeface.ITALIC), maybeFinalFlags));
       } else if (linkedEntry.isURL()) {
         // Linkify URL if there is one.
         String url = linkedEntry.getURL();
         if (!url.equals("")) {
-          ssb.setSpan(new URLSpan(url), m.start(), end, maybeFinalFlags);
+          textSpans.add(new PendingSpan(new URLSpan(url), maybeFinalFlags));
         }
       } else if (useKlingonFont) {
         // Display the text using the Klingon font. Categories (which have an entry of "*") must
@@ -428,12 +454,12 @@ public class EntryFragment extends Fragment {
           // This is just regular Klingon text. Display it in Klingon font.
           klingonEntryName = linkedEntry.getEntryNameInKlingonFont();
           replaceWithKlingonFontText = true;
-        } else if (Preferences.useKlingonUI(getActivity().getBaseContext())) {
+        } else if (Preferences.useKlingonUI(context)) {
           // This is a category, and the option to use Klingon UI is set, so this will be in
           // Klingon.
           // Display it in Klingon font.
           klingonEntryName =
-              KlingonContentProvider.convertStringToKlingonFont(entry.getSentenceType());
+              KlingonText.convertStringToKlingonFont(entry.getSentenceType());
           replaceWithKlingonFontText = true;
         } else {
           // This is a category, but the option to use Klingon UI is not set, so this will be in the
@@ -442,37 +468,38 @@ public class EntryFragment extends Fragment {
           replaceWithKlingonFontText = false;
         }
         if (replaceWithKlingonFontText) {
-          ssb.delete(m.start(), end);
-          ssb.insert(m.start(), klingonEntryName);
-          end = m.start() + klingonEntryName.length();
-          ssb.setSpan(
-              new KlingonTypefaceSpan("", klingonTypeface), m.start(), end, maybeFinalFlags);
+          linkText = klingonEntryName;
+          textSpans.add(
+              new PendingSpan(new KlingonTypefaceSpan("", klingonTypeface), maybeFinalFlags));
         }
       } else {
         // Klingon is in bold serif.
-        ssb.setSpan(
-            new StyleSpan(android.graphics.Typeface.BOLD), m.start(), end, INTERMEDIATE_FLAGS);
-        ssb.setSpan(new TypefaceSpan("serif"), m.start(), end, maybeFinalFlags);
+        textSpans.add(
+            new PendingSpan(new StyleSpan(android.graphics.Typeface.BOLD), INTERMEDIATE_FLAGS));
+        textSpans.add(new PendingSpan(new TypefaceSpan("serif"), maybeFinalFlags));
       }
-      // If linked entry is hypothetical or extended canon, insert a "?" in front.
-      if (linkedEntry.isHypothetical() || linkedEntry.isExtendedCanon()) {
-        ssb.insert(m.start(), "?");
-        ssb.setSpan(
-            new RelativeSizeSpan(smallTextScale), m.start(), m.start() + 1, INTERMEDIATE_FLAGS);
-        ssb.setSpan(new SuperscriptSpan(), m.start(), m.start() + 1, maybeFinalFlags);
-        end++;
+      int end = textStart + linkText.length();
+      for (PendingSpan span : textSpans) {
+        span.setRange(textStart, end);
+        spans.add(span);
       }
-
-      // For a suffix, protect the hyphen from being separated from the rest of the suffix.
-      if (ssb.charAt(m.start()) == '-') {
+      if (isQuestionable) {
+        out.append('?');
+        spans.add(
+            new PendingSpan(
+                new RelativeSizeSpan(smallTextScale), start, start + 1, INTERMEDIATE_FLAGS));
+        spans.add(new PendingSpan(new SuperscriptSpan(), start, start + 1, maybeFinalFlags));
+      } else if (linkText.startsWith("-")) {
+        // For a suffix, protect the hyphen from being separated from the rest of the suffix.
         // U+2011 is the non-breaking hyphen.
-        ssb.replace(m.start(), m.start() + 1, "\u2011");
+        linkText = "\u2011" + linkText.substring(1);
       }
+      out.append(linkText);
 
       // Only apply colours to verbs, nouns, and affixes (exclude BLUE and WHITE).
       if (!disableEntryLink) {
         // Link to view launcher.
-        ssb.setSpan(viewLauncher, m.start(), end, INTERMEDIATE_FLAGS);
+        spans.add(new PendingSpan(viewLauncher, start, end, INTERMEDIATE_FLAGS));
       }
       // Set the colour last, so it's not overridden by other spans.
       // There is a bug in Android 6 (API 23) and 7 (API 24 and 25) which
@@ -480,35 +507,143 @@ public class EntryFragment extends Fragment {
       // See: https://github.com/De7vID/klingon-assistant/issues/190
       // The work-around does not work when running on Chromebook (version
       // 61.0.3163.120).
-      ForegroundColorSpan[] oldSpans = ssb.getSpans(m.start(), end, ForegroundColorSpan.class);
-      for (ForegroundColorSpan span : oldSpans) {
-        ssb.removeSpan(span);
-      }
-      ssb.setSpan(new ForegroundColorSpan(linkedEntry.getTextColor()), m.start(), end, FINAL_FLAGS);
+      // Since the text of each link is new, there are no old colour spans to remove from it.
+      spans.add(
+          new PendingSpan(
+              new ForegroundColorSpan(linkedEntry.getTextColor()), start, end, FINAL_FLAGS));
       String linkedPos = linkedEntry.getBracketedPartOfSpeech(/* isHtml */ false);
       if (!linkedPos.equals("") && linkedPos.length() > 1) {
-        ssb.insert(end, linkedPos);
+        out.append(linkedPos);
 
         int rightBracketLoc = linkedPos.indexOf(")");
         if (rightBracketLoc != -1) {
           // linkedPos is always of the form " (pos)[ (def'n N)]", we want to italicise
           // the "pos" part only.
-          ssb.setSpan(
-              new StyleSpan(android.graphics.Typeface.ITALIC),
-              end + 2,
-              end + rightBracketLoc,
-              FINAL_FLAGS);
+          spans.add(
+              new PendingSpan(
+                  new StyleSpan(android.graphics.Typeface.ITALIC),
+                  end + 2,
+                  end + rightBracketLoc,
+                  FINAL_FLAGS));
         }
       }
+      links.add(m.start(), m.end(), start, end, out.length());
+    }
+    out.append(mixedText, copiedUpTo, mixedText.length());
+
+    // Set the spans of the given text first, at their new positions, then those of the links.
+    SpannableStringBuilder ssb = new SpannableStringBuilder(out);
+    for (Object span : text.getSpans(0, text.length(), Object.class)) {
+      int start = links.mapStart(text.getSpanStart(span));
+      int end = links.mapEnd(text.getSpanEnd(span));
+      if (start < end) {
+        ssb.setSpan(span, start, end, text.getSpanFlags(span));
+      }
+    }
+    for (PendingSpan span : spans) {
+      ssb.setSpan(span.mSpan, span.mStart, span.mEnd, span.mFlags);
+    }
+    return ssb;
+  }
+
+  // A span to be set once the text it applies to has been built.
+  private static class PendingSpan {
+    final Object mSpan;
+    final int mFlags;
+    int mStart;
+    int mEnd;
+
+    PendingSpan(Object span, int flags) {
+      mSpan = span;
+      mFlags = flags;
+    }
+
+    PendingSpan(Object span, int start, int end, int flags) {
+      this(span, flags);
+      setRange(start, end);
+    }
+
+    void setRange(int start, int end) {
+      mStart = start;
+      mEnd = end;
+    }
+  }
+
+  // The positions of the links replaced by processMixedText, in the original and the new text, for
+  // mapping positions in the original text to the new text.
+  private static class LinkOffsets {
+    private int[] mSourceStarts = new int[16];
+    private int[] mSourceEnds = new int[16];
+    private int[] mStarts = new int[16];
+    private int[] mLinkEnds = new int[16];
+    private int[] mEnds = new int[16];
+    private int mCount = 0;
+
+    // Adds a link which replaced [sourceStart, sourceEnd) in the original text with the link text
+    // [start, linkEnd) followed by [linkEnd, end) in the new text.
+    void add(int sourceStart, int sourceEnd, int start, int linkEnd, int end) {
+      if (mCount == mStarts.length) {
+        int capacity = mCount * 2;
+        mSourceStarts = Arrays.copyOf(mSourceStarts, capacity);
+        mSourceEnds = Arrays.copyOf(mSourceEnds, capacity);
+        mStarts = Arrays.copyOf(mStarts, capacity);
+        mLinkEnds = Arrays.copyOf(mLinkEnds, capacity);
+        mEnds = Arrays.copyOf(mEnds, capacity);
+      }
+      mSourceStarts[mCount] = sourceStart;
+      mSourceEnds[mCount] = sourceEnd;
+      mStarts[mCount] = start;
+      mLinkEnds[mCount] = linkEnd;
+      mEnds[mCount] = end;
+      mCount++;
+    }
+
+    // Maps the start of a span. A span starting within a link starts with the link.
+    int mapStart(int position) {
+      // The last link starting at or before the position.
+      int i = lastLinkStartingBefore(position + 1);
+      if (i == -1) {
+        return position;
+      }
+      if (position < mSourceEnds[i]) {
+        return mStarts[i];
+      }
+      return mEnds[i] + (position - mSourceEnds[i]);
+    }
+
+    // Maps the end of a span. A span ending within or with a link ends with the link text.
+    int mapEnd(int position) {
+      // The last link starting before the position.
+      int i = lastLinkStartingBefore(position);
+      if (i == -1) {
+        return position;
+      }
+      if (position <= mSourceEnds[i]) {
+        return mLinkEnds[i];
+      }
+      return mEnds[i] + (position - mSourceEnds[i]);
+    }
 
-      // Rinse and repeat.
-      mixedText = ssb.toString();
-      m = KlingonContentProvider.Entry.ENTRY_PATTERN.matcher(mixedText);
+    // Returns the index of the last link which starts before the given position, or -1.
+    private int lastLinkStartingBefore(int position) {
+      int low = 0;
+      int high = mCount - 1;
+      int result = -1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (mSourceStarts[mid] < position) {
+          result = mid;
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return result;
     }
   }
 
   // Private class for handling clickable spans.
-  private class LookupClickableSpan extends ClickableSpan {
+  private static class LookupClickableSpan extends ClickableSpan {
     private String mQuery;
 
     LookupClickableSpan(String query) {
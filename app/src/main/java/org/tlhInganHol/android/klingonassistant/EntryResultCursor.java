@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import java.util.Arrays;
+
+/**
+ * A cursor over search results with the columns in KlingonContentDatabase.ALL_KEYS. For each
+ * result it stores only the entry id, whether it is indented, and the name synthesized for it if it
+ * is part of a complex word. The results are ranked by their position in the cursor. The other
+ * columns are fetched from an EntryRowSource, either when they're read or, once the search is
+ * done, all at once by fetchRows, so that they all come from the database the ids were found in.
+ */
+public class EntryResultCursor extends AbstractCursor {
+
+  /** Supplies the columns of entries, in the order of KlingonContentDatabase.ALL_KEYS. */
+  public interface EntryRowSource {
+    /** Returns the columns of the entry with the given id, or null if there is no such entry. */
+    String[] getEntryRow(int entryId);
+  }
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final EntryRowSource mSource;
+  private int[] mIds;
+  private boolean[] mIndents;
+  private String[] mNames;
+  // The columns of each result, which are shared with the source's cache rather than copied. Null
+  // for results whose columns haven't been fetched yet.
+  private String[][] mRows;
+  private int mCount;
+
+  public EntryResultCursor(EntryRowSource source) {
+    mSource = source;
+    mIds = new int[INITIAL_CAPACITY];
+    mIndents = new boolean[INITIAL_CAPACITY];
+    mNames = new String[INITIAL_CAPACITY];
+    mRows = new String[INITIAL_CAPACITY][];
+    mCount = 0;
+  }
+
+  // Creates a cursor over a copy of the results of the given cursor, so that either can be appended
+  // to without affecting the other.
+  public EntryResultCursor(EntryResultCursor other) {
+    mSource = other.mSource;
+    int capacity = Math.max(other.mCount, INITIAL_CAPACITY);
+    mIds = Arrays.copyOf(other.mIds, capacity);
+    mIndents = Arrays.copyOf(other.mIndents, capacity);
+    mNames = Arrays.copyOf(other.mNames, capacity);
+    mRows = Arrays.copyOf(other.mRows, capacity);
+    mCount = other.mCount;
+  }
+
+  /**
+   * Appends a result.
+   *
+   * @param entryId The id of the entry.
+   * @param indent Whether the result is shown indented, i.e., ",indent" is appended to its part of
+   *     speech.
+   * @param name The name to show instead of the entry name, or null to show the entry name.
+   */
+  public void addEntry(int entryId, boolean indent, String name) {
+    if (mCount == mIds.length) {
+      int capacity = mCount * 2;
+      mIds = Arrays.copyOf(mIds, capacity);
+      mIndents = Arrays.copyOf(mIndents, capacity);
+      mNames = Arrays.copyOf(mNames, capacity);
+      mRows = Arrays.copyOf(mRows, capacity);
+    }
+    mIds[mCount] = entryId;
+    mIndents[mCount] = indent;
+    mNames[mCount] = name;
+    mRows[mCount] = null;
+    mCount++;
+  }
+
+  /**
+   * Fetches the columns of every result which hasn't been read yet, and drops the results whose
+   * entries no longer exist. This is done before the cursor is returned from a search, while the
+   * database the ids were found in is still being read, so that reading the cursor later doesn't
+   * depend on which database is installed by then. The position is moved to the first result.
+   */
+  public void fetchRows() {
+    int count = 0;
+    for (int i = 0; i < mCount; i++) {
+      String[] row = mRows[i] != null ? mRows[i] : mSource.getEntryRow(mIds[i]);
+      if (row == null) {
+        continue;
+      }
+      mIds[count] = mIds[i];
+      mIndents[count] = mIndents[i];
+      mNames[count] = mNames[i];
+      mRows[count] = row;
+      count++;
+    }
+    for (int i = count; i < mCount; i++) {
+      mNames[i] = null;
+      mRows[i] = null;
+    }
+    mCount = count;
+    moveToFirst();
+  }
+
+  @Override
+  public int getCount() {
+    return mCount;
+  }
+
+  @Override
+  public String[] getColumnNames() {
+    return KlingonContentDatabase.ALL_KEYS;
+  }
+
+  @Override
+  public boolean onMove(int oldPosition, int newPosition) {
+    return true;
+  }
+
+  @Override
+  public String getString(int column) {
+    checkPosition();
+    int position = getPosition();
+    switch (column) {
+      case KlingonContentDatabase.COLUMN_ID:
+        return Integer.toString(mIds[position]);
+
+      case KlingonContentDatabase.COLUMN_ENTRY_NAME:
+        if (mNames[position] != null) {
+          return mNames[position];
+        }
+        return getCurrentRow()[column];
+
+      case KlingonContentDatabase.COLUMN_PART_OF_SPEECH:
+        // This works only because all verbs are tagged with transitivity information, so we know
+        // the POS looks like "v:t" which we turn into "v:t,indent".
+        return getCurrentRow()[column] + (mIndents[position] ? ",indent" : "");
+
+      default:
+        return getCurrentRow()[column];
+    }
+  }
+
+  @Override
+  public int getType(int column) {
+    if (column == KlingonContentDatabase.COLUMN_ID) {
+      return Cursor.FIELD_TYPE_INTEGER;
+    }
+    return isNull(column) ? Cursor.FIELD_TYPE_NULL : Cursor.FIELD_TYPE_STRING;
+  }
+
+  @Override
+  public short getShort(int column) {
+    return (short) getLong(column);
+  }
+
+  @Override
+  public int getInt(int column) {
+    return (int) getLong(column);
+  }
+
+  @Override
+  public long getLong(int column) {
+    if (column == KlingonContentDatabase.COLUMN_ID) {
+      checkPosition();
+      return mIds[getPosition()];
+    }
+    String value = getString(column);
+    return value == null ? 0 : Long.parseLong(value);
+  }
+
+  @Override
+  public float getFloat(int column) {
+    return (float) getDouble(column);
+  }
+
+  @Override
+  public double getDouble(int column) {
+    String value = getString(column);
+    return value == null ? 0.0 : Double.parseDouble(value);
+  }
+
+  @Override
+  public boolean isNull(int column) {
+    return getString(column) == null;
+  }
+
+  private String[] getCurrentRow() {
+    int position = getPosition();
+    if (mRows[position] == null) {
+      // Only results which are read during the search itself get here.
+      String[] row = mSource.getEntryRow(mIds[position]);
+      if (row == null) {
+        // The entry is gone. It's left blank here, and dropped by fetchRows.
+        row = new String[KlingonContentDatabase.ALL_KEYS.length];
+        Arrays.fill(row, "");
+        row[KlingonContentDatabase.COLUMN_ID] = Integer.toString(mIds[position]);
+        return row;
+      }
+      mRows[position] = row;
+    }
+    return mRows[position];
+  }
+}
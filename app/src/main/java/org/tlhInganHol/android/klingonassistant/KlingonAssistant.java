@@ -187,6 +187,20 @@ public class KlingonAssistant extends BaseActivity {
     startActivity(entryIntent);
   }
 
+  // Launch an entry activity for a list of entries, starting with the one at the given position.
+  private void launchEntries(int[] entryIds, int position) {
+    Intent entryIntent = new Intent(this, EntryActivity.class);
+
+    // Form the URI for the selected entry, and pass the list by its token.
+    Uri uri =
+        Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryIds[position]);
+    entryIntent.setData(uri);
+    entryIntent.putExtra(
+        SearchSessionRegistry.EXTRA_SESSION_TOKEN, SearchSessionRegistry.register(entryIds));
+    entryIntent.putExtra(SearchSessionRegistry.EXTRA_SESSION_POSITION, position);
+    startActivity(entryIntent);
+  }
+
   class EntryAdapter extends BaseAdapter implements AdapterView.OnItemClickListener {
 
     private final Cursor mCursor;
@@ -281,18 +295,16 @@ public class KlingonAssistant extends BaseActivity {
         mCursor.moveToPosition(position);
         launchEntry(mCursor.getString(KlingonContentDatabase.COLUMN_ID));
       } else {
-        // There's a list of results, so launch a list of entries. Instead of passing in
-        // one ID, we pass in a comma-separated list. We also append the position of the
-        // selected entry to the end.
-        StringBuilder entryList = new StringBuilder();
-        for (int i = 0; i < getCount(); i++) {
+        // There's a list of results, so launch a list of entries. The IDs are registered with
+        // the SearchSessionRegistry, and only its token and the position of the selected entry
+        // are passed in.
+        int[] entryIds = new int[getCount()];
+        for (int i = 0; i < entryIds.length; i++) {
           mCursor.moveToPosition(i);
-          entryList.append(mCursor.getString(KlingonContentDatabase.COLUMN_ID));
-          entryList.append(",");
+          entryIds[i] = mCursor.getInt(KlingonContentDatabase.COLUMN_ID);
         }
-        entryList.append(position);
         mCursor.moveToPosition(position);
-        launchEntry(entryList.toString());
+        launchEntries(entryIds, position);
       }
     }
   }
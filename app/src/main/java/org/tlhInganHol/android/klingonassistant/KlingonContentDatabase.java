@@ -17,8 +17,10 @@
 package org.tlhInganHol.android.klingonassistant;
 
 import android.app.SearchManager;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.SQLException;
@@ -27,26 +29,44 @@ import android.database.sqlite.SQLiteDiskIOException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.provider.BaseColumns;
 import android.util.Log;
 import android.widget.Toast;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.tlhInganHol.android.klingonassistant.core.ComplexWord;
+import org.tlhInganHol.android.klingonassistant.core.KlingonLog;
+import org.tlhInganHol.android.klingonassistant.core.KlingonLog.Subsystem;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
 
 /**
  * Contains logic to return specific entries from the database, and load the database table when it
  * needs to be created.
  */
-public class KlingonContentDatabase {
+public class KlingonContentDatabase implements EntryResultCursor.EntryRowSource {
   private static final String TAG = "KlingonContentDatabase";
 
   // The columns included in the database table.
@@ -173,12 +193,62 @@ public class KlingonContentDatabase {
   };
 
   // The name of the database and the database object for accessing it.
-  private static final String DATABASE_NAME = "qawHaq.db";
+  public static final String DATABASE_NAME = "qawHaq.db";
   private static final String FTS_VIRTUAL_TABLE = "mem";
 
+  // The narrow table used for searching, in databases built with the search index split from the
+  // entry details (see split_index.sql). In such databases, FTS_VIRTUAL_TABLE is a view joining the
+  // search index with the entry details.
+  private static final String SEARCH_INDEX_TABLE = "mem_index";
+
+  // The table of the columns of the split database which aren't in the search index.
+  private static final String SEARCH_DETAIL_TABLE = "mem_detail";
+
+  // The columns in the search index. These are the columns which are searched, or shown in lists
+  // of results.
+  private static final String[] SEARCH_INDEX_KEYS = {
+    KEY_ID,
+    KEY_ENTRY_NAME,
+    KEY_PART_OF_SPEECH,
+    KEY_DEFINITION,
+    KEY_SEARCH_TAGS,
+    KEY_DEFINITION_DE,
+    KEY_SEARCH_TAGS_DE,
+    KEY_DEFINITION_FA,
+    KEY_SEARCH_TAGS_FA,
+    KEY_DEFINITION_SV,
+    KEY_SEARCH_TAGS_SV,
+    KEY_DEFINITION_RU,
+    KEY_SEARCH_TAGS_RU,
+    KEY_DEFINITION_ZH_HK,
+    KEY_SEARCH_TAGS_ZH_HK,
+    KEY_DEFINITION_PT,
+    KEY_SEARCH_TAGS_PT,
+  };
+
+  // The projection used to search the search index. It has the same columns as ALL_KEYS, but those
+  // which aren't in the search index are empty, so that the results can be read like full entries.
+  private static final String[] SEARCH_INDEX_PROJECTION = buildSearchIndexProjection();
+
   // The name of the database for updates.
   public static final String REPLACEMENT_DATABASE_NAME = "qawHaq_new.db";
 
+  // In databases built with language packs (see split_languages.sh), this table holds the columns
+  // of every entry which aren't in a secondary language, and the columns in each secondary language
+  // are in a table of a separate pack database. Only the pack of the chosen secondary language is
+  // installed, and it is attached to each connection, which gets a temporary FTS_VIRTUAL_TABLE view
+  // joining the two. The columns of the other languages are empty in that view.
+  private static final String LANGUAGE_CORE_TABLE = "mem_core";
+  private static final String LANGUAGE_PACK_SCHEMA = "pack";
+
+  // The suffixes of the columns (and the names of the packs) of the secondary languages.
+  private static final String[] SECONDARY_LANGUAGE_SUFFIXES = {
+    "de", "fa", "sv", "ru", "zh_HK", "pt"
+  };
+
+  // The lexicon of the entry names of the bundled database (see write_lexicon.py).
+  private static final String LEXICON_NAME = "qawHaq.lex";
+
   // This should be kept in sync with the version number in the database
   // entry {boQwI':n} of the database which is bundled into the app.
   private static final int BUNDLED_DATABASE_VERSION = 202009070;
@@ -187,12 +257,12 @@ public class KlingonContentDatabase {
   public static final String KEY_INSTALLED_DATABASE_VERSION = "installed_database_version";
   public static final String KEY_ID_OF_FIRST_EXTRA_ENTRY = "id_of_first_extra_entry";
   public static final String KEY_UPDATED_DATABASE_VERSION = "updated_database_version";
+  // Set once a changeset has updated the installed database in place. Its file then no longer
+  // matches the released database of its version, so binary patches can't be applied to it.
+  public static final String KEY_INSTALLED_DATABASE_MODIFIED = "installed_database_modified";
   public static final String KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY =
       "updated_id_of_first_extra_entry";
 
-  // Arbitrary limit on max buffer length to prevent overflows and such.
-  private static final int MAX_BUFFER_LENGTH = 1024;
-
   // These are automatically updated by renumber.py in the data directory, and correspond to
   // the IDs of the first entry and one past the ID of the last non-hypothetical,
   // non-extended-canon entry in the database, respectively.
@@ -200,12 +270,90 @@ public class KlingonContentDatabase {
   private static final int ID_OF_FIRST_EXTRA_ENTRY = 14848;
 
   private final KlingonDatabaseOpenHelper mDatabaseOpenHelper;
-  private static final HashMap<String, String> mColumnMap = buildColumnMap();
+  private static final HashMap<String, String> mColumnMap = buildColumnMap("rowid");
+  private static final HashMap<String, String> mSearchIndexColumnMap = buildColumnMap(KEY_ID);
   private final Context mContext;
 
+  // The lexicon of the bundled database, or null if it couldn't be opened. It is only used while
+  // the bundled database is installed (see getLexicon).
+  private final LexiconReader mLexicon;
+
+  // Manages the connections used for reading, so the database can be replaced while it's in use.
+  private final DatabaseLifecycleManager mLifecycleManager;
+
+  // The maximum number of connections used for reading. Readers beyond this many share them.
+  private static final int MAX_READ_CONNECTIONS = 4;
+
+  // Whether the database has its search index split from the entry details. This is checked again
+  // when the database is replaced.
+  private volatile boolean mHasSearchIndex;
+
+  // Whether the database keeps its secondary languages in language packs. This is checked again
+  // when the database is replaced.
+  private volatile boolean mHasLanguagePacks;
+
+  // The suffix of the secondary language whose pack is attached to the current connections, or
+  // null if none is.
+  private volatile String mAttachedLanguage;
+
+  // Listens for changes to the secondary language, to attach its language pack. This must be kept,
+  // since shared preferences only keep weak references to their listeners.
+  private final SharedPreferences.OnSharedPreferenceChangeListener mLanguageListener =
+      new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPrefs, String key) {
+          if (mHasLanguagePacks
+              && Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE.equals(key)) {
+            // Installing a language pack involves copying it, so don't do it on the main thread.
+            new Thread(
+                    new Runnable() {
+                      @Override
+                      public void run() {
+                        attachLanguagePack();
+                      }
+                    },
+                    "KlingonLanguagePack")
+                .start();
+          }
+        }
+      };
+
   // Keeps track of whether db created/upgraded message has been displayed already.
   private static boolean mNewDatabaseMessageDisplayed = false;
 
+  // The maximum number of search results kept in the query-result cache.
+  private static final int MAX_CACHED_QUERIES = 64;
+
+  // Cache of recent search results, shared by all instances since they share the same database.
+  private static final QueryResultCache mResultCache = new QueryResultCache(MAX_CACHED_QUERIES);
+
+  // The maximum number of entries whose columns are kept for reading search results.
+  private static final int MAX_CACHED_ENTRY_ROWS = 2000;
+
+  // Cache of the columns of entries found by searches. Search results only store entry ids, and
+  // read the other columns from here.
+  private static final EntryRowCache mEntryRowCache = new EntryRowCache(MAX_CACHED_ENTRY_ROWS);
+
+  // The maximum number of candidates of a search stage kept for refining the next query.
+  private static final int MAX_REFINABLE_CANDIDATES = 500;
+
+  // Candidates of the previous search, used to refine a query which extends it.
+  private final IncrementalSearchSession mSearchSession = new IncrementalSearchSession();
+
+  // Queries of at least this many words are analysed in parallel. Shorter ones aren't worth handing
+  // to other threads.
+  private static final int MIN_WORDS_FOR_PARALLEL_ANALYSIS = 3;
+
+  // The maximum number of threads which analyse the words of a query in parallel.
+  private static final int MAX_ANALYSIS_THREADS = 4;
+
+  // The threads which analyse the words of long queries, shared by all instances. Created when it's
+  // first needed.
+  private static ExecutorService mAnalysisExecutor = null;
+
+  // The id returned when no entry is found.
+  private static final int NO_ENTRY = -1;
+
   /**
    * Constructor
    *
@@ -224,33 +372,427 @@ public class KlingonContentDatabase {
       throw new Error("Unable to create database.");
     }
 
-    // Open the database for use.
+    // Open the database for use. Every connection has the language pack attached, if there is one.
+    mLifecycleManager =
+        new DatabaseLifecycleManager(
+            context.getDatabasePath(DATABASE_NAME),
+            new DatabaseLifecycleManager.ConnectionConfigurer() {
+              @Override
+              public void onOpen(SQLiteDatabase db) {
+                configureLanguagePack(db);
+              }
+            },
+            Math.min(Runtime.getRuntime().availableProcessors(), MAX_READ_CONNECTIONS));
     try {
       // Log.d(TAG, "2. Opening db.");
-      mDatabaseOpenHelper.openDatabase();
+      mLifecycleManager.open();
     } catch (SQLException e) {
-      // Possibly an attempt to write a readonly database.
-      // Do nothing.
+      throw new Error("Unable to open database.", e);
+    }
+
+    mHasSearchIndex = hasTable(getDatabase(), SEARCH_INDEX_TABLE);
+    mHasLanguagePacks = hasTable(getDatabase(), LANGUAGE_CORE_TABLE);
+    if (mHasLanguagePacks) {
+      attachLanguagePack();
+    }
+    PreferenceManager.getDefaultSharedPreferences(context)
+        .registerOnSharedPreferenceChangeListener(mLanguageListener);
+
+    mLexicon = openLexicon();
+  }
+
+  // Helper method to map the lexicon from the APK. The lexicon is stored uncompressed (see
+  // "noCompress" in build.gradle), so it can be mapped in place. If it has been compressed anyway,
+  // fall back to reading it into memory.
+  private LexiconReader openLexicon() {
+    try {
+      AssetFileDescriptor assetFd = null;
+      try {
+        assetFd = mContext.getAssets().openFd(LEXICON_NAME);
+      } catch (FileNotFoundException e) {
+        // The lexicon is either compressed or missing.
+      }
+      if (assetFd != null) {
+        FileInputStream inStream = assetFd.createInputStream();
+        try {
+          return LexiconReader.map(
+              inStream.getChannel(), assetFd.getStartOffset(), assetFd.getLength());
+        } finally {
+          inStream.close();
+          assetFd.close();
+        }
+      }
+
+      InputStream inStream = mContext.getAssets().open(LEXICON_NAME);
+      try {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = inStream.read(buffer)) != -1) {
+          outStream.write(buffer, 0, count);
+        }
+        Log.w(TAG, "Lexicon asset is compressed, read it into memory.");
+        return LexiconReader.wrap(ByteBuffer.wrap(outStream.toByteArray()));
+      } finally {
+        inStream.close();
+      }
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to open lexicon, entries will be looked up in the database.", e);
+      return null;
+    }
+  }
+
+  // Helper method to get the lexicon, if it describes the installed database. Once the database has
+  // been updated, the ids and names in the lexicon may no longer match it.
+  private LexiconReader getLexicon() {
+    if (mLexicon == null
+        || !getBundledDatabaseVersion().equals(getInstalledDatabaseVersion(mContext))) {
+      return null;
+    }
+    return mLexicon;
+  }
+
+  // Helper method to check whether a database has a table with the given name.
+  private static boolean hasTable(SQLiteDatabase db, String tableName) {
+    Cursor cursor = null;
+    try {
+      cursor =
+          db.query(
+              "sqlite_master",
+              new String[] {"name"},
+              "type = 'table' AND name = ?",
+              new String[] {tableName},
+              null,
+              null,
+              null);
+      return cursor.getCount() != 0;
+    } catch (SQLiteException e) {
+      return false;
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+  }
+
+  // Whether FTS_VIRTUAL_TABLE is a view, which has no rowid, so entries are looked up by KEY_ID.
+  private boolean isEntryTableView() {
+    return mHasSearchIndex || mHasLanguagePacks;
+  }
+
+  // Helper method to get the suffix of the columns of the chosen secondary language, or null if
+  // none is chosen.
+  private String getSecondaryLanguageSuffix() {
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+    String suffix =
+        sharedPrefs
+            .getString(
+                Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
+                Preferences.getSystemPreferredLanguage())
+            .replace('-', '_');
+    return Arrays.asList(SECONDARY_LANGUAGE_SUFFIXES).contains(suffix) ? suffix : null;
+  }
+
+  // The name of the language pack of the secondary language with the given suffix.
+  private static String getLanguagePackName(String suffix) {
+    return "qawHaq_" + suffix + ".db";
+  }
+
+  // Called on each new connection used for reading. If the database has language packs, attaches
+  // the pack of the chosen secondary language, if it's installed, and creates the view through
+  // which entries are read. Both only exist on this connection. (Attaching a database also keeps
+  // Android from opening further connections to it, which wouldn't have them.)
+  private void configureLanguagePack(SQLiteDatabase db) {
+    if (!hasTable(db, LANGUAGE_CORE_TABLE)) {
+      mAttachedLanguage = null;
+      return;
+    }
+    String suffix = getSecondaryLanguageSuffix();
+    if (suffix != null) {
+      File packFile = mContext.getDatabasePath(getLanguagePackName(suffix));
+      if (packFile.exists()) {
+        db.execSQL(
+            "ATTACH DATABASE ? AS " + LANGUAGE_PACK_SCHEMA, new Object[] {packFile.getPath()});
+      } else {
+        suffix = null;
+      }
+    }
+    db.execSQL("CREATE TEMP VIEW " + FTS_VIRTUAL_TABLE + " AS " + buildLanguagePackView(suffix));
+    mAttachedLanguage = suffix;
+  }
+
+  // Builds the query of the view joining the core table with the attached language pack of the
+  // secondary language with the given suffix. The view has the same columns as ALL_KEYS, but those
+  // of the other secondary languages are empty. If the suffix is null, no pack is attached.
+  private static String buildLanguagePackView(String suffix) {
+    String packTable = "mem_" + suffix;
+    StringBuilder sb = new StringBuilder("SELECT ");
+    for (int i = 0; i < ALL_KEYS.length; i++) {
+      String key = ALL_KEYS[i];
+      String keySuffix = null;
+      for (String languageSuffix : SECONDARY_LANGUAGE_SUFFIXES) {
+        if (key.endsWith("_" + languageSuffix)) {
+          keySuffix = languageSuffix;
+        }
+      }
+      if (i > 0) {
+        sb.append(", ");
+      }
+      if (keySuffix == null) {
+        sb.append(LANGUAGE_CORE_TABLE + "." + key);
+      } else if (keySuffix.equals(suffix)) {
+        // An entry missing from the pack reads like an entry without a translation.
+        sb.append("coalesce(" + packTable + "." + key + ", '')");
+      } else {
+        sb.append("''");
+      }
+      sb.append(" AS " + key);
+    }
+    sb.append(" FROM " + LANGUAGE_CORE_TABLE);
+    if (suffix != null) {
+      sb.append(" LEFT JOIN " + LANGUAGE_PACK_SCHEMA + "." + packTable);
+      sb.append(" ON " + packTable + "." + KEY_ID + " = " + LANGUAGE_CORE_TABLE + "." + KEY_ID);
+    }
+    return sb.toString();
+  }
+
+  // Installs the language pack of the chosen secondary language from the bundled packs, if it isn't
+  // installed yet, and reopens the database if that changes the pack to attach. The packs of the
+  // other languages are deleted.
+  private synchronized void attachLanguagePack() {
+    String suffix = getSecondaryLanguageSuffix();
+    if (suffix != null && !mContext.getDatabasePath(getLanguagePackName(suffix)).exists()) {
+      try {
+        mDatabaseOpenHelper.copyDBFromResources(getLanguagePackName(suffix));
+      } catch (IOException e) {
+        Log.e(TAG, "Unable to install language pack " + getLanguagePackName(suffix) + ".", e);
+        suffix = null;
+      }
+    }
+
+    String attachedLanguage = mAttachedLanguage;
+    if (suffix == null ? attachedLanguage != null : !suffix.equals(attachedLanguage)) {
+      // Stop anything searching with the old language from caching its results, then reopen.
+      invalidateCaches();
+      try {
+        mLifecycleManager.reopen();
+      } catch (SQLException e) {
+        Log.e(TAG, "Unable to reopen database with language pack.", e);
+      }
+      invalidateCaches();
+    }
+
+    // Connections which still have another pack attached keep it open until they're released.
+    for (String languageSuffix : SECONDARY_LANGUAGE_SUFFIXES) {
+      if (!languageSuffix.equals(suffix)) {
+        mContext.deleteDatabase(getLanguagePackName(languageSuffix));
+      }
+    }
+  }
+
+  // Helper method to get the connection to read from. This is the current thread's connection of
+  // the generation of the database held by the thread, if any (see getLifecycleManager).
+  private SQLiteDatabase getDatabase() {
+    return mLifecycleManager.getDatabase();
+  }
+
+  /**
+   * Returns the manager of the connections used for reading. A query should hold a handle from it
+   * until its results have been read, so that they all come from the same database even if it is
+   * replaced meanwhile.
+   */
+  public DatabaseLifecycleManager getLifecycleManager() {
+    return mLifecycleManager;
+  }
+
+  /**
+   * Replaces the database with the downloaded update, if there is one which is newer than the
+   * installed database, without waiting for the app to be restarted. Queries which are already
+   * running finish against the old database.
+   *
+   * @return Whether the database was replaced.
+   */
+  public boolean installReplacementDatabase() throws IOException {
+    if (!mDatabaseOpenHelper.hasNewerReplacement()) {
+      return false;
+    }
+    String installedVersion = getInstalledDatabaseVersion(mContext);
+
+    // Stop anything searching the old database from caching its results, then swap.
+    invalidateCaches();
+    mLifecycleManager.swap(mContext.getDatabasePath(REPLACEMENT_DATABASE_NAME));
+    mContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+    mHasSearchIndex = hasTable(getDatabase(), SEARCH_INDEX_TABLE);
+    mHasLanguagePacks = hasTable(getDatabase(), LANGUAGE_CORE_TABLE);
+    if (mHasLanguagePacks) {
+      attachLanguagePack();
     }
+    invalidateCaches();
+
+    mDatabaseOpenHelper.onReplacementInstalled(installedVersion);
+    return true;
+  }
+
+  /**
+   * Applies a changeset (see DatabaseChangeset) to the installed database in one transaction, so
+   * that an update costs work in proportion to the number of changed entries rather than to the
+   * size of the database. Either the whole changeset is applied, or none of it is.
+   *
+   * @return Whether the changeset was applied. It isn't if it was made from another version, or if
+   *     the database has language packs.
+   */
+  public boolean applyChangeset(InputStream inStream) throws IOException {
+    DatabaseChangeset changeset = DatabaseChangeset.read(inStream);
+    String installedVersion = getInstalledDatabaseVersion(mContext);
+    if (mHasLanguagePacks) {
+      // The entries are spread over the packs, most of which aren't installed, so the database has
+      // to be replaced as a whole.
+      Log.w(TAG, "Changesets don't apply to databases with language packs.");
+      return false;
+    }
+    if (!changeset.getFromVersion().equals(installedVersion)) {
+      Log.w(
+          TAG,
+          "Changeset from "
+              + changeset.getFromVersion()
+              + " doesn't apply to installed version "
+              + installedVersion
+              + ".");
+      return false;
+    }
+
+    // The connections used for reading are read-only, so write through a separate one. Readers
+    // only have to wait while the transaction commits, after which they see the new entries.
+    SQLiteDatabase db;
+    try {
+      db =
+          SQLiteDatabase.openDatabase(
+              mContext.getDatabasePath(DATABASE_NAME).getPath(),
+              null,
+              SQLiteDatabase.OPEN_READWRITE);
+    } catch (SQLException e) {
+      throw new IOException("Unable to open the database for writing.", e);
+    }
+
+    // Stop anything searching the old entries from caching its results.
+    invalidateCaches();
+    try {
+      db.beginTransaction();
+      try {
+        for (DatabaseChangeset.Change change : changeset.getChanges()) {
+          applyChange(db, change);
+        }
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new IOException("Unable to apply changeset.", e);
+    } finally {
+      db.close();
+      invalidateCaches();
+    }
+    Log.d(
+        TAG,
+        "Applied changeset of "
+            + changeset.getChanges().size()
+            + " entries from "
+            + installedVersion
+            + " to "
+            + changeset.getToVersion()
+            + ".");
+
+    mDatabaseOpenHelper.onChangesetApplied(installedVersion, changeset);
+    return true;
+  }
+
+  // Helper method to replace or delete one entry. In the tables of a split search index, an entry
+  // is replaced by deleting and reinserting it. In the full-text table, it's updated in place
+  // instead, so that it keeps its rowid, which "lookup/#" URIs and suggestion shortcuts refer to,
+  // and its place in the order in which searches find entries.
+  private void applyChange(SQLiteDatabase db, DatabaseChangeset.Change change) {
+    // The id is compared as a number, since a string argument wouldn't match the ids in the
+    // full-text table, whose columns have no type.
+    String selection = KEY_ID + " = " + change.getEntryId();
+    if (change.isDeleted()) {
+      if (mHasSearchIndex) {
+        db.delete(SEARCH_INDEX_TABLE, selection, null);
+        db.delete(SEARCH_DETAIL_TABLE, selection, null);
+      } else {
+        db.delete(FTS_VIRTUAL_TABLE, selection, null);
+      }
+      return;
+    }
+
+    if (mHasSearchIndex) {
+      db.delete(SEARCH_INDEX_TABLE, selection, null);
+      db.delete(SEARCH_DETAIL_TABLE, selection, null);
+      List<String> searchIndexKeys = Arrays.asList(SEARCH_INDEX_KEYS);
+      ContentValues indexValues = new ContentValues();
+      ContentValues detailValues = new ContentValues();
+      for (int i = 0; i < ALL_KEYS.length; i++) {
+        if (searchIndexKeys.contains(ALL_KEYS[i])) {
+          indexValues.put(ALL_KEYS[i], change.getValue(i));
+        } else {
+          detailValues.put(ALL_KEYS[i], change.getValue(i));
+        }
+      }
+      indexValues.put(KEY_ID, change.getEntryId());
+      detailValues.put(KEY_ID, change.getEntryId());
+      db.insertOrThrow(SEARCH_INDEX_TABLE, null, indexValues);
+      db.insertOrThrow(SEARCH_DETAIL_TABLE, null, detailValues);
+    } else {
+      ContentValues values = new ContentValues();
+      for (int i = 0; i < ALL_KEYS.length; i++) {
+        values.put(ALL_KEYS[i], change.getValue(i));
+      }
+      values.put(KEY_ID, change.getEntryId());
+      if (db.update(FTS_VIRTUAL_TABLE, values, selection, null) == 0) {
+        // A new entry.
+        db.insertOrThrow(FTS_VIRTUAL_TABLE, null, values);
+      }
+    }
+  }
+
+  // The table to search, and the columns to read from it. The search index is used if there is one.
+  private String getSearchTable() {
+    return mHasSearchIndex ? SEARCH_INDEX_TABLE : FTS_VIRTUAL_TABLE;
+  }
+
+  private String[] getSearchColumns() {
+    return mHasSearchIndex ? SEARCH_INDEX_PROJECTION : ALL_KEYS;
+  }
+
+  private static String[] buildSearchIndexProjection() {
+    HashSet<String> indexKeys = new HashSet<String>();
+    for (String key : SEARCH_INDEX_KEYS) {
+      indexKeys.add(key);
+    }
+    String[] projection = new String[ALL_KEYS.length];
+    for (int i = 0; i < ALL_KEYS.length; i++) {
+      projection[i] = indexKeys.contains(ALL_KEYS[i]) ? ALL_KEYS[i] : "'' AS " + ALL_KEYS[i];
+    }
+    return projection;
   }
 
   /**
    * Builds a map for all columns that may be requested, which will be given to the
    * SQLiteQueryBuilder. This is a good way to define aliases for column names, but must include all
    * columns, even if the value is the key. This allows the ContentProvider to request columns w/o
-   * the need to know real column names and create the alias itself.
+   * the need to know real column names and create the alias itself. The row id is read from the
+   * given column, since a view (as used with the search index or language packs) has no rowid.
    */
-  private static HashMap<String, String> buildColumnMap() {
+  private static HashMap<String, String> buildColumnMap(String idColumn) {
     HashMap<String, String> map = new HashMap<String, String>();
     map.put(KEY_ENTRY_NAME, KEY_ENTRY_NAME);
     map.put(KEY_DEFINITION, KEY_DEFINITION);
-    map.put(KEY_ID, "rowid AS " + KEY_ID);
+    map.put(KEY_ID, idColumn + " AS " + KEY_ID);
     map.put(
         SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID,
-        "rowid AS " + SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID);
+        idColumn + " AS " + SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID);
     map.put(
         SearchManager.SUGGEST_COLUMN_SHORTCUT_ID,
-        "rowid AS " + SearchManager.SUGGEST_COLUMN_SHORTCUT_ID);
+        idColumn + " AS " + SearchManager.SUGGEST_COLUMN_SHORTCUT_ID);
     return map;
   }
 
@@ -264,7 +806,7 @@ public class KlingonContentDatabase {
   public Cursor getEntry(String rowId, String[] columns) {
     // Log.d(TAG, "getEntry called with rowId: " + rowId);
 
-    String selection = "rowid = ?";
+    String selection = (isEntryTableView() ? KEY_ID : "rowid") + " = ?";
     String[] selectionArgs = new String[] {rowId};
 
     /*
@@ -273,19 +815,8 @@ public class KlingonContentDatabase {
     return query(selection, selectionArgs, columns);
   }
 
-  /**
-   * Convert a string written in "xifan hol" shorthand to {tlhIngan Hol}. This is a mapping which
-   * makes it easier to type, since shifting is unnecessary.
-   *
-   * <p>Make the following replacements: d -> D f -> ng h -> H (see note below) i -> I k -> Q s -> S
-   * x -> tlh z -> '
-   *
-   * <p>When replacing "h" with "H", the following must be preserved: ch -> ch gh -> gh tlh -> tlh
-   * ngh -> ngh (n + gh) ngH -> ngH (ng + H)
-   *
-   * <p>TODO: Consider allowing "invisible h". But this probably makes things too "loose". // c ->
-   * ch (but ch -/> chh) // g -> gh (but gh -/> ghh and ng -/> ngh)
-   */
+  // Helper method to expand the "xifan hol" shorthand in a query (see KlingonText.expandShorthand),
+  // if the user has enabled it.
   private String expandShorthand(String shorthand) {
     SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
     if (!sharedPrefs.getBoolean(
@@ -293,86 +824,9 @@ public class KlingonContentDatabase {
       // The user has disabled the "xifan hol" shorthand, so just do nothing and return.
       return shorthand;
     }
-    if (sharedPrefs.getBoolean(Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE, /* default */ false)) {
-      // Map q to Q and k to q.
-      shorthand = shorthand.replaceAll("q", "Q");
-      shorthand = shorthand.replaceAll("k", "q");
-    }
-
-    // Note: The order of the replacements is important.
-    return shorthand
-        .replaceAll("ngH", "NGH") // differentiate "ngh" from "ngH"
-        .replaceAll("h", "H") // side effects: ch -> cH, gh -> gH (also ngh -> ngH), tlh -> tlH
-        .replaceAll("cH", "ch") // restore "ch"
-        .replaceAll("gH", "gh") // restore "gh" (also "ngh")
-        .replaceAll("tlH", "tlh") // restore "tlh"
-        .replaceAll("g", "gX") // g -> gX, side effects: gh -> gXh, ng -> ngX
-        .replaceAll("gXh", "gh") // restore "gh"
-        .replaceAll("ngX", "ng") // restore "ng"
-        .replaceAll("gX", "gh") // g -> gh
-        .replaceAll("NGH", "ngH") // restore "ngH"
-        .replaceAll("c", "cX") // c -> cX, side effect: ch -> cXh
-        .replaceAll("cXh", "ch") // restore "ch"
-        .replaceAll("cX", "ch") // c -> ch
-        .replaceAll("d", "D") // do unambiguous replacements
-        .replaceAll("f", "ng")
-        .replaceAll("i", "I")
-        .replaceAll("k", "Q") // If the swap Qs preference was selected, this will have no effect.
-        .replaceAll("s", "S")
-        .replaceAll("z", "'")
-        .replaceAll("x", "tlh")
-        // At this point, "ngH" is definitely {ng} + {H}, but "ngh" might be either {n} + {gh}
-        // (nenghep}, {QIngheb}, {tlhonghaD}) or {ng} + {H} ({chungHa'wI'}, {mangHom}, {qengHoD},
-        // {tungHa'}, {vengHom}). Instead of checking both, cheat by hardcoding the possibilities.
-        // TODO: This means this code has to be updated whenever an entry with {ngH} is added to the
-        // database.
-        .replaceAll("(chung|mang|qeng|tung|veng)h", "$1H");
-  }
-
-  public static String sanitizeInput(String s) {
-    // Sanitize for SQL. Assume double-quote is a typo for single-quote. Convert {pIqaD} to Latin.
-    // Also trim.
-    return s.replaceAll("\"", "'")
-        .replaceAll("", "gh")
-        .replaceAll("", "ng")
-        .replaceAll("", "tlh")
-        .replaceAll("", "a")
-        .replaceAll("", "b")
-        .replaceAll("", "ch")
-        .replaceAll("", "D")
-        .replaceAll("", "e")
-        .replaceAll("", "H")
-        .replaceAll("", "I")
-        .replaceAll("", "j")
-        .replaceAll("", "l")
-        .replaceAll("", "m")
-        .replaceAll("", "n")
-        .replaceAll("", "o")
-        .replaceAll("", "p")
-        .replaceAll("", "q")
-        .replaceAll("", "Q")
-        .replaceAll("", "r")
-        .replaceAll("", "S")
-        .replaceAll("", "t")
-        .replaceAll("", "u")
-        .replaceAll("", "v")
-        .replaceAll("", "w")
-        .replaceAll("", "y")
-        .replaceAll("", "'")
-        .replaceAll("", "0")
-        .replaceAll("", "1")
-        .replaceAll("", "2")
-        .replaceAll("", "3")
-        .replaceAll("", "4")
-        .replaceAll("", "5")
-        .replaceAll("", "6")
-        .replaceAll("", "7")
-        .replaceAll("", "8")
-        .replaceAll("", "9")
-        .replaceAll("’", "'") // "smart" quote
-        .replaceAll("‘", "'") // "smart" left quote
-        .replaceAll("\u2011", "-") // non-breaking hyphen
-        .trim();
+    return KlingonText.expandShorthand(
+        shorthand,
+        sharedPrefs.getBoolean(Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE, /* default */ false));
   }
 
   /**
@@ -382,11 +836,169 @@ public class KlingonContentDatabase {
    * @return Cursor over all entries that match, or null if none found.
    */
   public Cursor getEntryMatches(String query) {
-    // Sanitize input.
-    query = sanitizeInput(query);
+    long searchStart = SearchStats.beginSearch();
+    Cursor resultsCursor = null;
+    boolean isCached = false;
+    try {
+      // Sanitize input.
+      long start = SearchStats.beginStage(SearchStats.Stage.SANITIZE);
+      query = KlingonText.sanitizeInput(query);
+      SearchStats.endStage(SearchStats.Stage.SANITIZE, start, /* rowsReturned */ 0);
+
+      // Repeated lookups (back navigation, lesson definitions, links in entries) are served from
+      // the cache. The generation is read before searching so that results computed against a
+      // database which is replaced mid-search are never stored.
+      String cacheKey = getResultCacheKey(query);
+      int cacheGeneration = mResultCache.getGeneration();
+      EntryResultCursor cachedResults = mResultCache.get(cacheKey);
+      if (cachedResults != null) {
+        EntryResultCursor cachedCursor = new EntryResultCursor(cachedResults);
+        cachedCursor.moveToFirst();
+        isCached = true;
+        resultsCursor = cachedCursor;
+        return cachedCursor;
+      }
+
+      resultsCursor = searchEntries(query);
+      if (resultsCursor instanceof EntryResultCursor) {
+        // Read the rows now, from the same database as the ids, since the cursor may be read after
+        // the database has been replaced or changed.
+        ((EntryResultCursor) resultsCursor).fetchRows();
+        mResultCache.put(
+            cacheKey, new EntryResultCursor((EntryResultCursor) resultsCursor), cacheGeneration);
+      }
+      return resultsCursor;
+    } finally {
+      SearchStats.endSearch(
+          searchStart, resultsCursor != null ? resultsCursor.getCount() : 0, isCached);
+    }
+  }
+
+  // Helper method to build the key of the query-result cache. Everything which can change the
+  // results of a search for the same (sanitized) query must be part of it.
+  private String getResultCacheKey(String query) {
+    return query + '\u0000' + getSearchSettingsKey();
+  }
+
+  // Helper method to summarise the settings and the database which a search depends on.
+  private String getSearchSettingsKey() {
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+    return sharedPrefs.getString(
+            Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
+            Preferences.getSystemPreferredLanguage())
+        + '\u0000'
+        + sharedPrefs.getBoolean(Preferences.KEY_XIFAN_HOL_CHECKBOX_PREFERENCE, /* default */ false)
+        + '\u0000'
+        + sharedPrefs.getBoolean(Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE, /* default */ false)
+        + '\u0000'
+        + getInstalledDatabaseVersion(mContext);
+  }
+
+  // Helper method to take a snapshot of the rows of a cursor, leaving its position as is.
+  private static ArrayList<Object[]> copyCursorRows(Cursor cursor) {
+    ArrayList<Object[]> rows = new ArrayList<Object[]>(cursor.getCount());
+    int position = cursor.getPosition();
+    for (int i = 0; cursor.moveToPosition(i); i++) {
+      Object[] row = new Object[ALL_KEYS.length];
+      row[COLUMN_ID] = cursor.getInt(COLUMN_ID);
+      for (int column = COLUMN_ENTRY_NAME; column < ALL_KEYS.length; column++) {
+        row[column] = cursor.getString(column);
+      }
+      rows.add(row);
+    }
+    cursor.moveToPosition(position);
+    return rows;
+  }
+
+  // Helper method to keep the columns of the entry at the current position of the given cursor in
+  // the entry cache, so that search results can read them.
+  private static void cacheEntryRow(Cursor cursor) {
+    int entryId = cursor.getInt(COLUMN_ID);
+    if (mEntryRowCache.get(entryId) == null) {
+      mEntryRowCache.put(entryId, readEntryRow(cursor));
+    }
+  }
+
+  private static String[] readEntryRow(Cursor cursor) {
+    String[] row = new String[ALL_KEYS.length];
+    for (int column = 0; column < ALL_KEYS.length; column++) {
+      row[column] = cursor.getString(column);
+    }
+    return row;
+  }
+
+  /**
+   * Returns the columns of an entry, as read by searches, in the order of ALL_KEYS, or null if
+   * there is no such entry. Used by search results to read the columns of the entries they contain.
+   */
+  @Override
+  public String[] getEntryRow(int entryId) {
+    String[] row = mEntryRowCache.get(entryId);
+    if (row != null) {
+      return row;
+    }
+
+    Cursor cursor = null;
+    try {
+      cursor =
+          getDatabase()
+              .query(
+                  getSearchTable(),
+                  getSearchColumns(),
+                  KEY_ID + "=" + entryId,
+                  null,
+                  null,
+                  null,
+                  null);
+      if (cursor.moveToFirst()) {
+        row = readEntryRow(cursor);
+        mEntryRowCache.put(entryId, row);
+        return row;
+      }
+    } catch (SQLiteException e) {
+      // Do nothing.
+    } finally {
+      if (cursor != null) {
+        cursor.close();
+      }
+    }
+
+    // The entry is gone, e.g., because a changeset was applied during the search.
+    Log.e(TAG, "Entry not found for search result: " + entryId);
+    return null;
+  }
+
+  /** Returns the number of searches which were answered from the query-result cache. */
+  public static long getResultCacheHitCount() {
+    return mResultCache.getHitCount();
+  }
 
+  /** Returns the number of searches which had to be run against the database. */
+  public static long getResultCacheMissCount() {
+    return mResultCache.getMissCount();
+  }
+
+  /**
+   * Discards all cached search results, entries, and rendered entries, e.g., because the database
+   * has changed.
+   */
+  public static void invalidateCaches() {
+    mResultCache.invalidate();
+    mEntryRowCache.invalidate();
+    RenderedEntryCache.clear();
+  }
+
+  /** Returns the version of the database which is currently installed. */
+  public static String getInstalledDatabaseVersion(Context context) {
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    return sharedPrefs.getString(
+        KEY_INSTALLED_DATABASE_VERSION, /* default */ getBundledDatabaseVersion());
+  }
+
+  // Runs the actual search for getEntryMatches. The query must already be sanitized.
+  private Cursor searchEntries(String query) {
     // Log.d(TAG, "getEntryMatches called with query: \"" + query + "\"");
-    MatrixCursor resultsCursor = new MatrixCursor(ALL_KEYS);
+    EntryResultCursor resultsCursor = new EntryResultCursor(this);
     HashSet<Integer> resultsSet = new HashSet<Integer>();
 
     // Parse the query's metadata, and get the base query.
@@ -398,11 +1010,16 @@ public class KlingonContentDatabase {
     ArrayList<KlingonContentProvider.Entry> analysisComponents =
         queryEntry.getComponentsAsEntries();
     if (!analysisComponents.isEmpty()) {
-      // Add the given list of components to the results.
-      addGivenComponentsToResults(analysisComponents, resultsCursor, resultsSet);
-
-      // Finally, add the complete query entry itself.
-      addExactMatch(queryBase, queryEntry, resultsCursor, /* indent */ false);
+      long start = SearchStats.beginStage(SearchStats.Stage.COMPONENTS);
+      try {
+        // Add the given list of components to the results.
+        addGivenComponentsToResults(analysisComponents, resultsCursor, resultsSet);
+
+        // Finally, add the complete query entry itself.
+        addExactMatch(queryBase, queryEntry, resultsCursor, /* indent */ false);
+      } finally {
+        SearchStats.endStage(SearchStats.Stage.COMPONENTS, start, resultsCursor.getCount());
+      }
 
       // Since the components are in the db, do no further analysis.
       return resultsCursor;
@@ -416,12 +1033,24 @@ public class KlingonContentDatabase {
         // Specifically, if this is a query for a sentence class, search exactly for the matching
         // sentences.
         // We know the query begins with "*:" so strip that to get the sentence class.
-        return getMatchingSentences(query.substring(2));
+        long start = SearchStats.beginStage(SearchStats.Stage.SENTENCE_CLASS);
+        Cursor sentencesCursor = null;
+        try {
+          sentencesCursor = getMatchingSentences(query.substring(2));
+          return sentencesCursor;
+        } finally {
+          SearchStats.endStage(
+              SearchStats.Stage.SENTENCE_CLASS,
+              start,
+              sentencesCursor != null ? sentencesCursor.getCount() : 0);
+        }
       }
     } else {
       // Assume the user is searching for an "exact" Klingon word or phrase, subject to
       // "xifan hol" loosening.
+      long start = SearchStats.beginStage(SearchStats.Stage.SHORTHAND);
       looseQuery = expandShorthand(queryBase);
+      SearchStats.endStage(SearchStats.Stage.SHORTHAND, start, /* rowsReturned */ 0);
     }
 
     // TODO: Add option to search English and other-language fields first, followed by Klingon.
@@ -433,12 +1062,23 @@ public class KlingonContentDatabase {
       parseQueryAsComplexWordOrSentence(looseQuery, resultsCursor, resultsSet);
     } else {
       // Otherwise, assume the base query is a prefix of the desired result.
-      Cursor resultsWithGivenPrefixCursor =
-          getEntriesContainingQuery(looseQuery, /* isPrefix */ true);
-      copyCursorEntries(
-          resultsCursor, resultsSet, resultsWithGivenPrefixCursor, /* filter */ true, queryEntry);
-      if (resultsWithGivenPrefixCursor != null) {
-        resultsWithGivenPrefixCursor.close();
+      int resultsBefore = resultsCursor.getCount();
+      long start = SearchStats.beginStage(SearchStats.Stage.PREFIX);
+      try {
+        Cursor resultsWithGivenPrefixCursor =
+            getEntriesContainingQuery(looseQuery, /* isPrefix */ true);
+        copyCursorEntries(
+            resultsCursor,
+            resultsSet,
+            resultsWithGivenPrefixCursor,
+            /* filter */ true,
+            queryEntry);
+        if (resultsWithGivenPrefixCursor != null) {
+          resultsWithGivenPrefixCursor.close();
+        }
+      } finally {
+        SearchStats.endStage(
+            SearchStats.Stage.PREFIX, start, resultsCursor.getCount() - resultsBefore);
       }
     }
 
@@ -452,12 +1092,19 @@ public class KlingonContentDatabase {
       // "rhyming" purposes.
       int klingonNonPrefixMinLength = 2;
       if (queryEntry.getEntryName().length() >= klingonNonPrefixMinLength) {
-        Cursor resultsWithGivenQueryCursor =
-            getEntriesContainingQuery(looseQuery, /* isPrefix */ false);
-        copyCursorEntries(
-            resultsCursor, resultsSet, resultsWithGivenQueryCursor, /* filter */ false, null);
-        if (resultsWithGivenQueryCursor != null) {
-          resultsWithGivenQueryCursor.close();
+        int resultsBefore = resultsCursor.getCount();
+        long start = SearchStats.beginStage(SearchStats.Stage.NON_PREFIX);
+        try {
+          Cursor resultsWithGivenQueryCursor =
+              getEntriesContainingQuery(looseQuery, /* isPrefix */ false);
+          copyCursorEntries(
+              resultsCursor, resultsSet, resultsWithGivenQueryCursor, /* filter */ false, null);
+          if (resultsWithGivenQueryCursor != null) {
+            resultsWithGivenQueryCursor.close();
+          }
+        } finally {
+          SearchStats.endStage(
+              SearchStats.Stage.NON_PREFIX, start, resultsCursor.getCount() - resultsBefore);
         }
       }
 
@@ -555,14 +1202,13 @@ public class KlingonContentDatabase {
   // Helper method to add a list of components to the list of search results.
   private void addGivenComponentsToResults(
       ArrayList<KlingonContentProvider.Entry> analysisComponents,
-      MatrixCursor resultsCursor,
+      EntryResultCursor resultsCursor,
       HashSet<Integer> resultsSet) {
     // Create a list of complex words.
-    ArrayList<KlingonContentProvider.ComplexWord> complexWordsList =
-        new ArrayList<KlingonContentProvider.ComplexWord>();
+    ArrayList<ComplexWord> complexWordsList = new ArrayList<ComplexWord>();
 
     // Keep track of current state. The verb suffix level is required for analysing rovers.
-    KlingonContentProvider.ComplexWord currentComplexWord = null;
+    ComplexWord currentComplexWord = null;
     KlingonContentProvider.Entry currentPrefixEntry = null;
     int verbSuffixLevel = 0;
     for (KlingonContentProvider.Entry componentEntry : analysisComponents) {
@@ -604,7 +1250,7 @@ public class KlingonContentDatabase {
         // Create a new complex word, so reset suffix level.
         // Note that this can be a noun, a verb, or an unattached suffix (like in the entry {...-Daq
         // qaDor.}.
-        currentComplexWord = new KlingonContentProvider.ComplexWord(componentEntryName, isNoun);
+        currentComplexWord = new ComplexWord(componentEntryName, isNoun);
         currentComplexWord.setHomophoneNumber(componentEntry.getHomophoneNumber());
         verbSuffixLevel = 0;
         if (isVerb && currentPrefixEntry != null) {
@@ -622,27 +1268,27 @@ public class KlingonContentDatabase {
   // Helper method to copy entries from one cursor to another.
   // If filter is true, queryEntry must be provided.
   private void copyCursorEntries(
-      MatrixCursor destCursor,
+      EntryResultCursor destCursor,
       HashSet<Integer> destSet,
       Cursor srcCursor,
       boolean filter,
       KlingonContentProvider.Entry queryEntry) {
     if (srcCursor != null && srcCursor.getCount() != 0) {
+      SearchStats.addRowsScanned(srcCursor.getCount());
       srcCursor.moveToFirst();
       do {
-        KlingonContentProvider.Entry resultEntry =
-            new KlingonContentProvider.Entry(srcCursor, mContext);
-
         // Filter by the query if requested to do so. If filter is
         // true, the entry will be added only if it is a match that
         // satisfies certain requirements.
-        if (!filter || queryEntry.isSatisfiedBy(resultEntry)) {
+        if (!filter
+            || queryEntry.isSatisfiedBy(new KlingonContentProvider.Entry(srcCursor, mContext))) {
           // Prevent duplicates.
-          Object[] entryObject = convertEntryToCursorRow(resultEntry, /* indent */ false);
-          Integer intId = Integer.valueOf(resultEntry.getId());
+          int entryId = srcCursor.getInt(COLUMN_ID);
+          Integer intId = Integer.valueOf(entryId);
           if (!destSet.contains(intId)) {
             destSet.add(intId);
-            destCursor.addRow(entryObject);
+            cacheEntryRow(srcCursor);
+            destCursor.addEntry(entryId, /* indent */ false, /* name */ null);
           }
         }
       } while (srcCursor.moveToNext());
@@ -658,17 +1304,24 @@ public class KlingonContentDatabase {
     // because the single quote character is a letter in (transliterated)
     // Klingon. Also, force LIKE to be case-sensitive to distinguish
     // {q} and {Q}.
-    SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
-    db.rawQuery("PRAGMA case_sensitive_like = ON", null);
     // If the query must be a prefix of the entry name, do not precede with wildcard.
     String precedingWildcard = isPrefix ? "" : "%";
+    Cursor refinedCursor =
+        refineCandidates(
+            KEY_ENTRY_NAME, precedingWildcard, queryBase.trim(), /* caseSensitive */ true);
+    if (refinedCursor != null) {
+      return refinedCursor;
+    }
+
+    SQLiteDatabase db = getDatabase();
+    db.rawQuery("PRAGMA case_sensitive_like = ON", null);
     Cursor cursor = null;
     try {
       cursor =
           db.query(
               true,
-              FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              getSearchTable(),
+              getSearchColumns(),
               KlingonContentDatabase.KEY_ENTRY_NAME
                   + " LIKE \""
                   + precedingWildcard
@@ -682,20 +1335,26 @@ public class KlingonContentDatabase {
     } catch (SQLiteException e) {
       // Do nothing.
     }
+    keepCandidates(KEY_ENTRY_NAME, precedingWildcard, queryBase.trim(), cursor);
     return cursor;
   }
 
   // Helper method to search for an exact match.
   private Cursor getExactMatches(String entryName) {
-    SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
+    LexiconReader lexicon = getLexicon();
+    if (lexicon != null && !containsLikeWildcard(entryName.trim())) {
+      return getExactMatchesFromLexicon(lexicon, entryName.trim());
+    }
+
+    SQLiteDatabase db = getDatabase();
     db.rawQuery("PRAGMA case_sensitive_like = ON", null);
     Cursor cursor = null;
     try {
       cursor =
           db.query(
               true,
-              FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              getSearchTable(),
+              getSearchColumns(),
               KlingonContentDatabase.KEY_ENTRY_NAME + " LIKE \"" + entryName.trim() + "\"",
               null,
               null,
@@ -708,17 +1367,53 @@ public class KlingonContentDatabase {
     return cursor;
   }
 
+  // Helper method to find the ids of the entries with the given name in the lexicon, so that they
+  // can be read by id instead of scanning the entry names of the whole table. The lexicon matches
+  // names exactly, as the case-sensitive LIKE on entry names does, so it finds the same entries.
+  // The entries are read in order of id, the same order in which a scan finds them.
+  private Cursor getExactMatchesFromLexicon(LexiconReader lexicon, String entryName) {
+    int index = lexicon.findExact(entryName);
+    if (index == -1) {
+      return null;
+    }
+    StringBuilder ids = new StringBuilder();
+    for (; lexicon.nameEquals(index, entryName); index++) {
+      if (ids.length() != 0) {
+        ids.append(',');
+      }
+      ids.append(lexicon.getId(index));
+    }
+
+    String idColumn = isEntryTableView() ? KEY_ID : "rowid";
+    Cursor cursor = null;
+    try {
+      cursor =
+          getDatabase()
+              .query(
+                  getSearchTable(),
+                  getSearchColumns(),
+                  idColumn + " IN (" + ids + ")",
+                  null,
+                  null,
+                  null,
+                  idColumn);
+    } catch (SQLiteException e) {
+      // Do nothing.
+    }
+    return cursor;
+  }
+
   // Helper method to search for a sentence class.
   private Cursor getMatchingSentences(String sentenceClass) {
-    SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
+    SQLiteDatabase db = getDatabase();
     db.rawQuery("PRAGMA case_sensitive_like = ON", null);
     Cursor cursor = null;
     try {
       cursor =
           db.query(
               true,
-              FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              getSearchTable(),
+              getSearchColumns(),
               KlingonContentDatabase.KEY_PART_OF_SPEECH + " LIKE \"" + sentenceClass + "\"",
               null,
               null,
@@ -801,8 +1496,13 @@ public class KlingonContentDatabase {
     // except in Chinese.
     String nonPrefixPrecedingWildCard = otherLang.equals("zh-HK") ? "%" : "% ";
     String precedingWildcard = isPrefix ? "" : nonPrefixPrecedingWildCard;
+    Cursor refinedCursor =
+        refineCandidates(key, precedingWildcard, piece.trim(), /* caseSensitive */ false);
+    if (refinedCursor != null) {
+      return refinedCursor;
+    }
 
-    SQLiteDatabase db = mDatabaseOpenHelper.getReadableDatabase();
+    SQLiteDatabase db = getDatabase();
     db.rawQuery("PRAGMA case_sensitive_like = OFF", null);
 
     Cursor cursor = null;
@@ -810,8 +1510,8 @@ public class KlingonContentDatabase {
       cursor =
           db.query(
               true,
-              FTS_VIRTUAL_TABLE,
-              ALL_KEYS,
+              getSearchTable(),
+              getSearchColumns(),
               key + " LIKE \"" + precedingWildcard + piece.trim() + "%\"",
               null,
               null,
@@ -821,9 +1521,132 @@ public class KlingonContentDatabase {
     } catch (SQLiteException e) {
       // Do nothing.
     }
+    keepCandidates(key, precedingWildcard, piece.trim(), cursor);
     return cursor;
   }
 
+  // Helper method to answer a search stage, which matches the given column against the pattern
+  // "<precedingWildcard><term>%", from the candidates of the previous search in the incremental
+  // search session. This is possible only if the previous search ran the same stage with the same
+  // settings on a term which the given term extends, since the matches for the longer term are then
+  // a subset of the kept candidates. Whether the match is case-sensitive must be the same as for
+  // the stage's query (see likeMatches). Returns null if the stage must be run against the
+  // database.
+  private Cursor refineCandidates(
+      String column, String precedingWildcard, String term, boolean caseSensitive) {
+    if (containsLikeWildcard(term)) {
+      return null;
+    }
+    ArrayList<Object[]> candidates =
+        mSearchSession.getCandidates(
+            column + " LIKE " + precedingWildcard,
+            getSearchSettingsKey(),
+            mResultCache.getGeneration(),
+            term);
+    if (candidates == null) {
+      return null;
+    }
+
+    int columnIndex = getColumnIndex(column);
+    ArrayList<Object[]> matches = new ArrayList<Object[]>();
+    MatrixCursor cursor = new MatrixCursor(ALL_KEYS);
+    for (Object[] row : candidates) {
+      if (likeMatches((String) row[columnIndex], precedingWildcard, term, caseSensitive)) {
+        matches.add(row);
+        cursor.addRow(row);
+      }
+    }
+
+    // The matches are the candidates for the next refinement.
+    mSearchSession.setCandidates(
+        column + " LIKE " + precedingWildcard,
+        getSearchSettingsKey(),
+        mResultCache.getGeneration(),
+        term,
+        matches);
+    return cursor;
+  }
+
+  // Helper method to keep the results of a search stage run against the database as the candidates
+  // for refining the next query, if there aren't too many of them.
+  private void keepCandidates(
+      String column, String precedingWildcard, String term, Cursor cursor) {
+    ArrayList<Object[]> candidates = null;
+    if (cursor != null
+        && cursor.getCount() <= MAX_REFINABLE_CANDIDATES
+        && !containsLikeWildcard(term)) {
+      candidates = copyCursorRows(cursor);
+    }
+    mSearchSession.setCandidates(
+        column + " LIKE " + precedingWildcard,
+        getSearchSettingsKey(),
+        mResultCache.getGeneration(),
+        term,
+        candidates);
+  }
+
+  private static boolean containsLikeWildcard(String term) {
+    return term.indexOf('%') != -1 || term.indexOf('_') != -1;
+  }
+
+  private static int getColumnIndex(String column) {
+    for (int i = 0; i < ALL_KEYS.length; i++) {
+      if (ALL_KEYS[i].equals(column)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unknown column: " + column);
+  }
+
+  // Evaluates value LIKE "<precedingWildcard><term>%" in memory, where precedingWildcard is one of
+  // "", "%", or "% ". The search helpers set "PRAGMA case_sensitive_like" before each query, which
+  // takes effect as soon as rawQuery prepares it: entry names are matched with it ON, so their case
+  // must match exactly (to distinguish, e.g., {q} and {Q}), and definitions and search tags with it
+  // OFF, so the case of ASCII letters (and only of those) is ignored. caseSensitive must be the
+  // same as the setting used by the stage being refined.
+  private static boolean likeMatches(
+      String value, String precedingWildcard, String term, boolean caseSensitive) {
+    if (value == null) {
+      return false;
+    }
+    if (precedingWildcard.equals("")) {
+      return regionMatchesLike(value, 0, term, caseSensitive);
+    }
+    String needle = precedingWildcard.equals("%") ? term : " " + term;
+    for (int i = 0; i + needle.length() <= value.length(); i++) {
+      if (regionMatchesLike(value, i, needle, caseSensitive)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean regionMatchesLike(
+      String value, int offset, String pattern, boolean caseSensitive) {
+    if (offset + pattern.length() > value.length()) {
+      return false;
+    }
+    if (caseSensitive) {
+      return value.startsWith(pattern, offset);
+    }
+    for (int i = 0; i < pattern.length(); i++) {
+      char a = value.charAt(offset + i);
+      char b = pattern.charAt(i);
+      if (a != b) {
+        if (a >= 'A' && a <= 'Z') {
+          a = (char) (a - 'A' + 'a');
+        }
+        if (b >= 'A' && b <= 'Z') {
+          b = (char) (b - 'A' + 'a');
+        }
+        if (a != b) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   // Helper method to make it easier to search either definitions or search tags, in either English
   // or other-language.
   private void matchDefinitionsOrSearchTags(
@@ -831,14 +1654,32 @@ public class KlingonContentDatabase {
       boolean isPrefix,
       boolean useSearchTags,
       boolean searchOtherLanguageDefinitions,
-      MatrixCursor resultsCursor,
+      EntryResultCursor resultsCursor,
       HashSet<Integer> resultsSet) {
-    Cursor matchingResults =
-        getEntriesMatchingDefinition(
-            piece, isPrefix, useSearchTags, searchOtherLanguageDefinitions);
-    copyCursorEntries(resultsCursor, resultsSet, matchingResults, /* filter */ false, null);
-    if (matchingResults != null) {
-      matchingResults.close();
+    SearchStats.Stage stage;
+    if (useSearchTags) {
+      stage =
+          searchOtherLanguageDefinitions
+              ? SearchStats.Stage.OTHER_LANGUAGE_SEARCH_TAGS
+              : SearchStats.Stage.SEARCH_TAGS;
+    } else {
+      stage =
+          searchOtherLanguageDefinitions
+              ? SearchStats.Stage.OTHER_LANGUAGE_DEFINITIONS
+              : SearchStats.Stage.DEFINITIONS;
+    }
+    int resultsBefore = resultsCursor.getCount();
+    long start = SearchStats.beginStage(stage);
+    try {
+      Cursor matchingResults =
+          getEntriesMatchingDefinition(
+              piece, isPrefix, useSearchTags, searchOtherLanguageDefinitions);
+      copyCursorEntries(resultsCursor, resultsSet, matchingResults, /* filter */ false, null);
+      if (matchingResults != null) {
+        matchingResults.close();
+      }
+    } finally {
+      SearchStats.endStage(stage, start, resultsCursor.getCount() - resultsBefore);
     }
   }
 
@@ -846,94 +1687,282 @@ public class KlingonContentDatabase {
   private void addExactMatch(
       String query,
       KlingonContentProvider.Entry filterEntry,
-      MatrixCursor resultsCursor,
+      EntryResultCursor resultsCursor,
       boolean indent) {
+    addResolvedEntry(findExactMatch(query, filterEntry), resultsCursor, indent);
+  }
+
+  // Helper method to find the first exact match for the query which satisfies the filter entry.
+  // Returns its id, or NO_ENTRY if there isn't one.
+  private int findExactMatch(String query, KlingonContentProvider.Entry filterEntry) {
     Cursor exactMatchesCursor = getExactMatches(query);
     // There must be a match.
     if (exactMatchesCursor == null || exactMatchesCursor.getCount() == 0) {
       Log.e(TAG, "Exact match error on query: " + query);
-      return;
+      if (exactMatchesCursor != null) {
+        exactMatchesCursor.close();
+      }
+      return NO_ENTRY;
     }
+    SearchStats.addRowsScanned(exactMatchesCursor.getCount());
     // Log.d(TAG, "Exact matches found: " + exactMatchesCursor.getCount());
+    int entryId = NO_ENTRY;
     exactMatchesCursor.moveToFirst();
     do {
       KlingonContentProvider.Entry resultEntry =
           new KlingonContentProvider.Entry(exactMatchesCursor, mContext);
       if (filterEntry.isSatisfiedBy(resultEntry)) {
-        Object[] exactMatchObject = convertEntryToCursorRow(resultEntry, indent);
         /*
          * if (BuildConfig.DEBUG) { Log.d(TAG, "addExactMatch: " + resultEntry.getEntryName()); }
          */
-        resultsCursor.addRow(exactMatchObject);
-        // Log.d(TAG, "added exact match to results: " + query);
+        cacheEntryRow(exactMatchesCursor);
+        entryId = resultEntry.getId();
         // Only add each one once.
         break;
       }
     } while (exactMatchesCursor.moveToNext());
     exactMatchesCursor.close();
+    return entryId;
+  }
+
+  // Helper method to add an entry found by findExactMatch to the results cursor, if one was found.
+  private static void addResolvedEntry(
+      int entryId, EntryResultCursor resultsCursor, boolean indent) {
+    if (entryId != NO_ENTRY) {
+      resultsCursor.addEntry(entryId, indent, /* name */ null);
+    }
   }
 
-  // Helper method to parse a complex word or a sentence.
+  // Helper method to parse a complex word or a sentence. Long queries are analysed in parallel (see
+  // getAnalysisExecutor), but their results are added in the same order as they would be otherwise.
   private void parseQueryAsComplexWordOrSentence(
-      String query, MatrixCursor resultsCursor, HashSet<Integer> resultsSet) {
-    // This set stores the complex words.
-    ArrayList<KlingonContentProvider.ComplexWord> complexWordsList =
-        new ArrayList<KlingonContentProvider.ComplexWord>();
-
-    // Split the query into sentences.
-    String[] sentences = query.split(";,\\.?!");
-    for (String sentence : sentences) {
+      String query, EntryResultCursor resultsCursor, HashSet<Integer> resultsSet) {
+    long start = SearchStats.beginStage(SearchStats.Stage.COMPLEX_WORD_PARSE);
+    // Split the query into sentences, and the sentences into words.
+    ArrayList<String[]> sentences = new ArrayList<String[]>();
+    int wordCount = 0;
+    for (String sentence : query.split(";,\\.?!")) {
       // Remove all non-valid characters and split the sentence into words (separated by spaces).
       String[] words = sentence.replaceAll("[^A-Za-z' ]", "").split("\\s+");
-      for (int i = 0; i < words.length; i++) {
-        String word = words[i];
-
-        // Try to parse n-tuples of words as complex nouns.
-        // Do this from longest to shortest, since we want longest matches first.
-        // TODO: Refactor for space and time efficiency.
-        for (int j = words.length; j > i; j--) {
-          String compoundNoun = words[i];
-          for (int k = i + 1; k < j; k++) {
-            compoundNoun += " " + words[k];
+      sentences.add(words);
+      wordCount += words.length;
+    }
+
+    // The analysis threads must read from the same database as this one, so hold a handle on it.
+    DatabaseLifecycleManager.Handle handle = null;
+    ExecutorService executor =
+        wordCount >= MIN_WORDS_FOR_PARALLEL_ANALYSIS ? getAnalysisExecutor() : null;
+    if (executor != null) {
+      handle = mLifecycleManager.acquire();
+    }
+    try {
+      // This list stores the complex words.
+      ArrayList<ComplexWord> complexWordsList = new ArrayList<ComplexWord>();
+      if (handle == null) {
+        for (String[] words : sentences) {
+          for (int i = 0; i < words.length; i++) {
+            parseWordsAt(words, i, complexWordsList);
+          }
+        }
+      } else {
+        ArrayList<AnalysisTask<ArrayList<ComplexWord>>> parseTasks =
+            new ArrayList<AnalysisTask<ArrayList<ComplexWord>>>();
+        for (final String[] words : sentences) {
+          for (int i = 0; i < words.length; i++) {
+            final int wordIndex = i;
+            parseTasks.add(
+                new AnalysisTask<ArrayList<ComplexWord>>(
+                    handle, SearchStats.Stage.COMPLEX_WORD_PARSE) {
+                  @Override
+                  ArrayList<ComplexWord> analyse() {
+                    ArrayList<ComplexWord> wordComplexWords = new ArrayList<ComplexWord>();
+                    parseWordsAt(words, wordIndex, wordComplexWords);
+                    return wordComplexWords;
+                  }
+                });
           }
-          // Log.d(TAG, "parseQueryAsComplexWordOrSentence: compoundNoun = " + compoundNoun);
-          KlingonContentProvider.parseComplexWord(
-              compoundNoun, /* isNoun */ true, complexWordsList);
         }
+        for (ArrayList<ComplexWord> wordComplexWords : runAnalysisTasks(executor, parseTasks)) {
+          complexWordsList.addAll(wordComplexWords);
+        }
+      }
+      SearchStats.endStage(SearchStats.Stage.COMPLEX_WORD_PARSE, start, /* rowsReturned */ 0);
+
+      int resultsBefore = resultsCursor.getCount();
+      start = SearchStats.beginStage(SearchStats.Stage.EXACT_MATCHES);
+      try {
+        // Look up the complex words, in parallel if the query is long enough, and then add them to
+        // the results in order, since whether a word is a duplicate depends on those before it.
+        ArrayList<ResolvedComplexWord> resolvedComplexWords;
+        if (handle == null) {
+          resolvedComplexWords = new ArrayList<ResolvedComplexWord>();
+          for (ComplexWord complexWord : complexWordsList) {
+            // Be a little lenient and also match non-nouns and non-verbs.
+            resolvedComplexWords.add(resolveComplexWord(complexWord, /* isLenient */ true));
+          }
+        } else {
+          ArrayList<AnalysisTask<ResolvedComplexWord>> resolveTasks =
+              new ArrayList<AnalysisTask<ResolvedComplexWord>>();
+          for (final ComplexWord complexWord : complexWordsList) {
+            resolveTasks.add(
+                new AnalysisTask<ResolvedComplexWord>(handle, SearchStats.Stage.EXACT_MATCHES) {
+                  @Override
+                  ResolvedComplexWord analyse() {
+                    return resolveComplexWord(complexWord, /* isLenient */ true);
+                  }
+                });
+          }
+          resolvedComplexWords = runAnalysisTasks(executor, resolveTasks);
+        }
+        for (ResolvedComplexWord resolved : resolvedComplexWords) {
+          addResolvedComplexWordToResults(resolved, resultsCursor, resultsSet);
+        }
+      } finally {
+        SearchStats.endStage(
+            SearchStats.Stage.EXACT_MATCHES, start, resultsCursor.getCount() - resultsBefore);
+      }
+    } finally {
+      if (handle != null) {
+        handle.release();
+      }
+    }
+  }
 
-        // Next, try to parse this as a verb.
-        // Log.d(TAG, "parseQueryAsComplexWordOrSentence: verb = " + word);
-        KlingonContentProvider.parseComplexWord(word, /* isNoun */ false, complexWordsList);
+  // Helper method to parse the words of a sentence which begin at the given word as complex words,
+  // adding them to the given list.
+  private static void parseWordsAt(String[] words, int i, ArrayList<ComplexWord> complexWordsList) {
+    String word = words[i];
+
+    // Try to parse n-tuples of words as complex nouns.
+    // Do this from longest to shortest, since we want longest matches first.
+    // TODO: Refactor for space and time efficiency.
+    for (int j = words.length; j > i; j--) {
+      String compoundNoun = words[i];
+      for (int k = i + 1; k < j; k++) {
+        compoundNoun += " " + words[k];
       }
+      // Log.d(TAG, "parseQueryAsComplexWordOrSentence: compoundNoun = " + compoundNoun);
+      ComplexWord.parseComplexWord(compoundNoun, /* isNoun */ true, complexWordsList);
+    }
+
+    // Next, try to parse this as a verb.
+    // Log.d(TAG, "parseQueryAsComplexWordOrSentence: verb = " + word);
+    ComplexWord.parseComplexWord(word, /* isNoun */ false, complexWordsList);
+  }
+
+  // Returns the threads which analyse the words of long queries, or null if there's only one core,
+  // in which case they're analysed on the searching thread. The threads are kept for the life of
+  // the process, since they're few and searches are frequent.
+  private static synchronized ExecutorService getAnalysisExecutor() {
+    int threads = Math.min(Runtime.getRuntime().availableProcessors(), MAX_ANALYSIS_THREADS);
+    if (threads < 2) {
+      return null;
     }
-    for (KlingonContentProvider.ComplexWord complexWord : complexWordsList) {
-      // Be a little lenient and also match non-nouns and non-verbs.
-      addComplexWordToResults(complexWord, resultsCursor, resultsSet, /* isLenient */ true);
+    if (mAnalysisExecutor == null) {
+      mAnalysisExecutor =
+          Executors.newFixedThreadPool(
+              threads,
+              new ThreadFactory() {
+                private final AtomicInteger mThreadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                  Thread thread =
+                      new Thread(runnable, "KlingonAnalysis-" + mThreadCount.incrementAndGet());
+                  // Don't keep the process alive just for these.
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              });
     }
+    return mAnalysisExecutor;
+  }
+
+  // Part of the analysis of a query, run on an analysis thread. It reads from the same generation
+  // of the database as the search it's part of, and its statements and rows count towards the
+  // search's stage.
+  private abstract class AnalysisTask<T> implements Callable<T> {
+    private final DatabaseLifecycleManager.Handle mSearchHandle;
+    private final SearchStats.Stage mStage;
+
+    AnalysisTask(DatabaseLifecycleManager.Handle searchHandle, SearchStats.Stage stage) {
+      mSearchHandle = searchHandle;
+      mStage = stage;
+    }
+
+    abstract T analyse();
+
+    @Override
+    public T call() {
+      DatabaseLifecycleManager.Handle handle = mLifecycleManager.acquire(mSearchHandle);
+      SearchStats.joinStage(mStage);
+      try {
+        return analyse();
+      } finally {
+        SearchStats.leaveStage();
+        handle.release();
+      }
+    }
+  }
+
+  // Helper method to run analysis tasks in parallel, and return their results in the order of the
+  // tasks.
+  private static <T> ArrayList<T> runAnalysisTasks(
+      ExecutorService executor, ArrayList<AnalysisTask<T>> tasks) {
+    ArrayList<T> results = new ArrayList<T>(tasks.size());
+    try {
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      // Finish the analysis on this thread rather than return partial results.
+      Thread.currentThread().interrupt();
+      results.clear();
+      for (AnalysisTask<T> task : tasks) {
+        results.add(task.analyse());
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    return results;
   }
 
   private void addComplexWordToResults(
-      KlingonContentProvider.ComplexWord complexWord,
-      MatrixCursor resultsCursor,
+      ComplexWord complexWord,
+      EntryResultCursor resultsCursor,
       HashSet<Integer> resultsSet,
       boolean isLenient) {
+    addResolvedComplexWordToResults(
+        resolveComplexWord(complexWord, isLenient), resultsCursor, resultsSet);
+  }
+
+  // Helper method to look up the entries of a complex word. This only reads from the database, so
+  // the words of a query can be looked up in parallel, and then added to the results in order by
+  // addResolvedComplexWordToResults.
+  private ResolvedComplexWord resolveComplexWord(ComplexWord complexWord, boolean isLenient) {
     // The isLenient flag is for determining whether we are doing a real analysis (set to true), or
     // whether the correct analysis has already been supplied in the components (set to false). When
     // set to true, a bare word will match any part of speech (not just noun or verb). But for this
     // reason, duplicates are removed (since there may be many of them). However, when set to false,
     // duplicates will be kept (since the given correct analysis contains them).
+    ResolvedComplexWord resolved = new ResolvedComplexWord(complexWord, isLenient);
     KlingonContentProvider.Entry filterEntry =
         new KlingonContentProvider.Entry(complexWord.filter(isLenient), mContext);
     Cursor exactMatchesCursor = getExactMatches(complexWord.stem());
+    String prefix = complexWord.getVerbPrefix();
 
-    boolean stemAdded = false;
     if (exactMatchesCursor != null && exactMatchesCursor.getCount() != 0) {
-      Log.d(TAG, "found stem = " + complexWord.stem());
-      String prefix = complexWord.getVerbPrefix();
+      SearchStats.addRowsScanned(exactMatchesCursor.getCount());
+      KlingonLog.d(Subsystem.SEARCH, TAG, "found stem = {}", complexWord.stem());
 
-      // Add all exact matches for stem.
+      // Find all exact matches for stem.
       exactMatchesCursor.moveToFirst();
-      boolean prefixAdded = false;
       do {
         KlingonContentProvider.Entry resultEntry =
             new KlingonContentProvider.Entry(exactMatchesCursor, mContext);
@@ -944,192 +1973,197 @@ public class KlingonContentDatabase {
             && !resultEntry.isArchaic()
             && !resultEntry.isHypothetical()
             && !(resultEntry.isPronoun() && !prefix.equals(""))) {
-          Log.d(
+          KlingonLog.d(
+              Subsystem.SEARCH,
               TAG,
-              "adding: " + resultEntry.getEntryName() + " (" + resultEntry.getPartOfSpeech() + ")");
-
-          // If this is a bare word, prevent duplicates.
-          Integer intId = Integer.valueOf(resultEntry.getId());
-          if (!complexWord.isBareWord() || !resultsSet.contains(intId) || !isLenient) {
-            // Add the verb prefix if one exists, before the verb stem itself.
-            if (!prefix.equals("") && !prefixAdded) {
-              Log.d(TAG, "verb prefix = " + prefix);
-              KlingonContentProvider.Entry prefixFilterEntry =
-                  new KlingonContentProvider.Entry(prefix + ":v:pref", mContext);
-              addExactMatch(prefix, prefixFilterEntry, resultsCursor, /* indent */ false);
-              prefixAdded = true;
-            }
-            Object[] exactMatchObject = complexWordCursorRow(resultEntry, complexWord, prefixAdded);
-
-            if (BuildConfig.DEBUG) {
-              Log.d(TAG, "addComplexWordToResults: " + resultEntry.getEntryName());
-            }
-            resultsCursor.addRow(exactMatchObject);
-            stemAdded = true;
-            if (complexWord.isBareWord()) {
-              resultsSet.add(intId);
-            }
-          }
+              "adding: {} ({})",
+              resultEntry.getEntryName(),
+              resultEntry.getPartOfSpeech());
+          cacheEntryRow(exactMatchesCursor);
+          resolved.mStemEntries.add(resultEntry);
         }
       } while (exactMatchesCursor.moveToNext());
+    }
+    if (exactMatchesCursor != null) {
       exactMatchesCursor.close();
     }
 
-    // Whether or not there was an exact match, if the complex word is a number, add its components.
+    // The verb prefix is needed if the stem is added.
+    if (!prefix.equals("") && !resolved.mStemEntries.isEmpty()) {
+      KlingonLog.d(Subsystem.SEARCH, TAG, "verb prefix = {}", prefix);
+      KlingonContentProvider.Entry prefixFilterEntry =
+          new KlingonContentProvider.Entry(prefix + ":v:pref", mContext);
+      resolved.mPrefixId = findExactMatch(prefix, prefixFilterEntry);
+    }
+
+    // Whether or not there was an exact match, if the complex word is a number, find its
+    // components.
+    KlingonContentProvider.Entry affixFilterEntry;
     if (complexWord.isNumberLike()) {
       String numberRoot = complexWord.getNumberRoot();
       String numberRootAnnotation = complexWord.getNumberRootAnnotation();
       String numberModifier = complexWord.getNumberModifier();
       String numberSuffix = complexWord.getNumberSuffix();
 
-      // First, add the root as a word. (The annotation is already included.)
-      if (!numberRoot.equals("") && (!stemAdded || !numberRoot.equals(complexWord.stem()))) {
-        filterEntry =
+      // First, find the root as a word. (The annotation is already included.)
+      if (!numberRoot.equals("")) {
+        affixFilterEntry =
             new KlingonContentProvider.Entry(numberRoot + ":" + numberRootAnnotation, mContext);
-        if (BuildConfig.DEBUG) {
-          Log.d(TAG, "numberRoot: " + numberRoot);
-        }
-        addExactMatch(numberRoot, filterEntry, resultsCursor, /* indent */ false);
-        stemAdded = true;
+        KlingonLog.d(Subsystem.SEARCH, TAG, "numberRoot: {}", numberRoot);
+        resolved.mNumberRoot = numberRoot;
+        resolved.mNumberRootId = findExactMatch(numberRoot, affixFilterEntry);
       }
 
-      // Next, add the modifier as a word.
+      // Next, find the modifier as a word.
       if (!numberModifier.equals("")) {
-        filterEntry = new KlingonContentProvider.Entry(numberModifier + ":n:num", mContext);
-        addExactMatch(numberModifier, filterEntry, resultsCursor, /* indent */ true);
+        affixFilterEntry = new KlingonContentProvider.Entry(numberModifier + ":n:num", mContext);
+        resolved.mNumberModifierId = findExactMatch(numberModifier, affixFilterEntry);
       }
 
-      // Finally, add the number suffix.
+      // Finally, find the number suffix.
       if (!numberSuffix.equals("")) {
         numberSuffix = "-" + numberSuffix;
-        filterEntry = new KlingonContentProvider.Entry(numberSuffix + ":n:num,suff", mContext);
-        addExactMatch(numberSuffix, filterEntry, resultsCursor, /* indent */ true);
+        affixFilterEntry = new KlingonContentProvider.Entry(numberSuffix + ":n:num,suff", mContext);
+        resolved.mNumberSuffixId = findExactMatch(numberSuffix, affixFilterEntry);
       }
     }
 
-    // Now add all suffixes, but only if one of the corresponding stems was a legitimate entry.
-    if (stemAdded) {
-      // Add verb suffixes. Verb suffixes must go before noun suffixes since two of them
+    // Now find all suffixes, but only if one of the corresponding stems may be added.
+    if (!resolved.mStemEntries.isEmpty() || resolved.mNumberRoot != null) {
+      // Find verb suffixes. Verb suffixes must go before noun suffixes since two of them
       // can turn a verb into a noun.
       // For purposes of analysis, pronouns are also verbs, but they cannot have prefixes.
       String[] verbSuffixes = complexWord.getVerbSuffixes();
       for (int j = 0; j < verbSuffixes.length; j++) {
         // Check verb suffix of the current type.
         if (!verbSuffixes[j].equals("")) {
-          Log.d(TAG, "verb suffix = " + verbSuffixes[j]);
-          filterEntry = new KlingonContentProvider.Entry(verbSuffixes[j] + ":v:suff", mContext);
-          addExactMatch(verbSuffixes[j], filterEntry, resultsCursor, /* indent */ true);
+          KlingonLog.d(Subsystem.SEARCH, TAG, "verb suffix = {}", verbSuffixes[j]);
+          affixFilterEntry =
+              new KlingonContentProvider.Entry(verbSuffixes[j] + ":v:suff", mContext);
+          resolved.mSuffixIds.add(findExactMatch(verbSuffixes[j], affixFilterEntry));
         }
 
         // Check for the true rovers.
         String[] rovers = complexWord.getRovers(j);
         for (String rover : rovers) {
-          Log.d(TAG, "rover = " + rover);
-          filterEntry = new KlingonContentProvider.Entry(rover + ":v:suff", mContext);
-          addExactMatch(rover, filterEntry, resultsCursor, /* indent */ true);
+          KlingonLog.d(Subsystem.SEARCH, TAG, "rover = {}", rover);
+          affixFilterEntry = new KlingonContentProvider.Entry(rover + ":v:suff", mContext);
+          resolved.mSuffixIds.add(findExactMatch(rover, affixFilterEntry));
         }
       }
 
-      // Add noun suffixes.
+      // Find noun suffixes.
       String[] nounSuffixes = complexWord.getNounSuffixes();
       for (int j = 0; j < nounSuffixes.length; j++) {
         if (!nounSuffixes[j].equals("")) {
-          Log.d(TAG, "noun suffix = " + nounSuffixes[j]);
-          filterEntry = new KlingonContentProvider.Entry(nounSuffixes[j] + ":n:suff", mContext);
-          addExactMatch(nounSuffixes[j], filterEntry, resultsCursor, /* indent */ true);
+          KlingonLog.d(Subsystem.SEARCH, TAG, "noun suffix = {}", nounSuffixes[j]);
+          affixFilterEntry =
+              new KlingonContentProvider.Entry(nounSuffixes[j] + ":n:suff", mContext);
+          resolved.mSuffixIds.add(findExactMatch(nounSuffixes[j], affixFilterEntry));
         }
       }
     }
+    return resolved;
   }
 
-  private Object[] complexWordCursorRow(
-      KlingonContentProvider.Entry entry,
-      KlingonContentProvider.ComplexWord complexWord,
-      boolean indent) {
-    // TODO: Add warnings for mismatched affixes here.
-    return new Object[] {
-      entry.getId(),
-      complexWord.getVerbPrefixString() + entry.getEntryName() + complexWord.getSuffixesString(),
-      // This works only because all verbs are tagged with transitivity information, so we know the
-      // POS looks like "v:t" which we turn into "v:t,indent".
-      entry.getPartOfSpeech() + (indent ? ",indent" : ""),
-      entry.getDefinition(),
-      entry.getSynonyms(),
-      entry.getAntonyms(),
-      entry.getSeeAlso(),
-      entry.getNotes(),
-      entry.getHiddenNotes(),
-      entry.getComponents(),
-      entry.getExamples(),
-      entry.getSearchTags(),
-      entry.getSource(),
-      entry.getDefinition_DE(),
-      entry.getNotes_DE(),
-      entry.getExamples_DE(),
-      entry.getSearchTags_DE(),
-      entry.getDefinition_FA(),
-      entry.getNotes_FA(),
-      entry.getExamples_FA(),
-      entry.getSearchTags_FA(),
-      entry.getDefinition_SV(),
-      entry.getNotes_SV(),
-      entry.getExamples_SV(),
-      entry.getSearchTags_SV(),
-      entry.getDefinition_RU(),
-      entry.getNotes_RU(),
-      entry.getExamples_RU(),
-      entry.getSearchTags_RU(),
-      entry.getDefinition_ZH_HK(),
-      entry.getNotes_ZH_HK(),
-      entry.getExamples_ZH_HK(),
-      entry.getSearchTags_ZH_HK(),
-      entry.getDefinition_PT(),
-      entry.getNotes_PT(),
-      entry.getExamples_PT(),
-      entry.getSearchTags_PT(),
-    };
-  }
-
-  private Object[] convertEntryToCursorRow(KlingonContentProvider.Entry entry, boolean indent) {
-    return new Object[] {
-      entry.getId(),
-      entry.getEntryName(),
-      entry.getPartOfSpeech() + (indent ? ",indent" : ""),
-      entry.getDefinition(),
-      entry.getSynonyms(),
-      entry.getAntonyms(),
-      entry.getSeeAlso(),
-      entry.getNotes(),
-      entry.getHiddenNotes(),
-      entry.getComponents(),
-      entry.getExamples(),
-      entry.getSearchTags(),
-      entry.getSource(),
-      entry.getDefinition_DE(),
-      entry.getNotes_DE(),
-      entry.getExamples_DE(),
-      entry.getSearchTags_DE(),
-      entry.getDefinition_FA(),
-      entry.getNotes_FA(),
-      entry.getExamples_FA(),
-      entry.getSearchTags_FA(),
-      entry.getDefinition_SV(),
-      entry.getNotes_SV(),
-      entry.getExamples_SV(),
-      entry.getSearchTags_SV(),
-      entry.getDefinition_RU(),
-      entry.getNotes_RU(),
-      entry.getExamples_RU(),
-      entry.getSearchTags_RU(),
-      entry.getDefinition_ZH_HK(),
-      entry.getNotes_ZH_HK(),
-      entry.getExamples_ZH_HK(),
-      entry.getSearchTags_ZH_HK(),
-      entry.getDefinition_PT(),
-      entry.getNotes_PT(),
-      entry.getExamples_PT(),
-      entry.getSearchTags_PT(),
-    };
+  // Helper method to add the entries of a complex word found by resolveComplexWord to the results.
+  private static void addResolvedComplexWordToResults(
+      ResolvedComplexWord resolved, EntryResultCursor resultsCursor, HashSet<Integer> resultsSet) {
+    ComplexWord complexWord = resolved.mComplexWord;
+    boolean stemAdded = false;
+    boolean prefixAdded = false;
+    for (KlingonContentProvider.Entry resultEntry : resolved.mStemEntries) {
+      // If this is a bare word, prevent duplicates.
+      Integer intId = Integer.valueOf(resultEntry.getId());
+      if (!complexWord.isBareWord() || !resultsSet.contains(intId) || !resolved.mIsLenient) {
+        // Add the verb prefix if one exists, before the verb stem itself.
+        if (!complexWord.getVerbPrefix().equals("") && !prefixAdded) {
+          addResolvedEntry(resolved.mPrefixId, resultsCursor, /* indent */ false);
+          prefixAdded = true;
+        }
+        KlingonLog.d(
+            Subsystem.SEARCH, TAG, "addComplexWordToResults: {}", resultEntry.getEntryName());
+        // The stem is shown with its affixes, indented if it follows its verb prefix.
+        // TODO: Add warnings for mismatched affixes here.
+        resultsCursor.addEntry(
+            resultEntry.getId(),
+            /* indent */ prefixAdded,
+            complexWord.getVerbPrefixString()
+                + resultEntry.getEntryName()
+                + complexWord.getSuffixesString());
+        stemAdded = true;
+        if (complexWord.isBareWord()) {
+          resultsSet.add(intId);
+        }
+      }
+    }
+
+    // If the complex word is a number, add its components. The root isn't added again if it's
+    // the stem which was just added.
+    if (resolved.mNumberRoot != null
+        && (!stemAdded || !resolved.mNumberRoot.equals(complexWord.stem()))) {
+      addResolvedEntry(resolved.mNumberRootId, resultsCursor, /* indent */ false);
+      stemAdded = true;
+    }
+    addResolvedEntry(resolved.mNumberModifierId, resultsCursor, /* indent */ true);
+    addResolvedEntry(resolved.mNumberSuffixId, resultsCursor, /* indent */ true);
+
+    // Now add all suffixes, but only if one of the corresponding stems was a legitimate entry.
+    if (stemAdded) {
+      for (int suffixId : resolved.mSuffixIds) {
+        addResolvedEntry(suffixId, resultsCursor, /* indent */ true);
+      }
+    }
+  }
+
+  // The entries of a complex word, looked up by resolveComplexWord. Whether they're added to the
+  // results depends on what's already there, so the prefix and suffixes are looked up even if the
+  // stem turns out to be a duplicate.
+  private static class ResolvedComplexWord {
+    final ComplexWord mComplexWord;
+    final boolean mIsLenient;
+
+    // The entries which the stem matches, in order.
+    final ArrayList<KlingonContentProvider.Entry> mStemEntries =
+        new ArrayList<KlingonContentProvider.Entry>();
+
+    // The ids of the entries of the affixes, or NO_ENTRY if they aren't found.
+    int mPrefixId = NO_ENTRY;
+    String mNumberRoot = null;
+    int mNumberRootId = NO_ENTRY;
+    int mNumberModifierId = NO_ENTRY;
+    int mNumberSuffixId = NO_ENTRY;
+
+    // The verb suffixes, rovers, and noun suffixes, in the order in which they're added.
+    final ArrayList<Integer> mSuffixIds = new ArrayList<Integer>();
+
+    ResolvedComplexWord(ComplexWord complexWord, boolean isLenient) {
+      mComplexWord = complexWord;
+      mIsLenient = isLenient;
+    }
+  }
+
+  /**
+   * Returns a cursor over the entries with the given ids, in no particular order, with the columns
+   * in ALL_KEYS. Ids which aren't in the database are skipped.
+   */
+  public Cursor getEntriesByIds(int[] entryIds) {
+    StringBuilder ids = new StringBuilder();
+    for (int entryId : entryIds) {
+      if (ids.length() > 0) {
+        ids.append(',');
+      }
+      ids.append(entryId);
+    }
+    return getDatabase()
+        .query(
+            FTS_VIRTUAL_TABLE,
+            ALL_KEYS,
+            KlingonContentDatabase.KEY_ID + " IN (" + ids + ")",
+            null,
+            null,
+            null,
+            null);
   }
 
   /**
@@ -1142,8 +2176,7 @@ public class KlingonContentDatabase {
   public Cursor getEntryById(String entryId, String[] columns) {
     // Log.d(TAG, "getEntryById called with entryid: " + entryId);
     Cursor cursor =
-        mDatabaseOpenHelper
-            .getReadableDatabase()
+        getDatabase()
             .query(
                 true,
                 FTS_VIRTUAL_TABLE,
@@ -1186,7 +2219,7 @@ public class KlingonContentDatabase {
      */
     SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
     builder.setTables(FTS_VIRTUAL_TABLE);
-    builder.setProjectionMap(mColumnMap);
+    builder.setProjectionMap(isEntryTableView() ? mSearchIndexColumnMap : mColumnMap);
 
     // DEBUG
     // Log.d(TAG, "query - columns: " + Arrays.toString(columns));
@@ -1195,7 +2228,7 @@ public class KlingonContentDatabase {
 
     Cursor cursor =
         builder.query(
-            mDatabaseOpenHelper.getReadableDatabase(),
+            getDatabase(),
             columns,
             selection,
             selectionArgs,
@@ -1236,9 +2269,6 @@ public class KlingonContentDatabase {
     // For storing the context the helper was called with for use.
     private final Context mHelperContext;
 
-    // The Klingon database.
-    private SQLiteDatabase mDatabase;
-
     /**
      * Constructor Takes and keeps a reference of the passed context in order to access the
      * application assets and resources.
@@ -1287,30 +2317,45 @@ public class KlingonContentDatabase {
       // databases.
       mHelperContext.deleteDatabase(DATABASE_NAME);
       mHelperContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+      for (String suffix : SECONDARY_LANGUAGE_SUFFIXES) {
+        mHelperContext.deleteDatabase(getLanguagePackName(suffix));
+      }
+      invalidateCaches();
 
       // Reset to bundled database version.
       SharedPreferences.Editor sharedPrefsEd =
           PreferenceManager.getDefaultSharedPreferences(mHelperContext).edit();
       sharedPrefsEd.remove(KEY_INSTALLED_DATABASE_VERSION);
       sharedPrefsEd.remove(KEY_ID_OF_FIRST_EXTRA_ENTRY);
+      sharedPrefsEd.remove(KEY_INSTALLED_DATABASE_MODIFIED);
       sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
       sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
       sharedPrefsEd.apply();
 
-      Toast.makeText(
-              mHelperContext,
-              String.format(
-                  mHelperContext.getResources().getString(R.string.database_upgraded),
-                  installedVersion,
-                  dottedVersion(newBundledVersion)),
-              Toast.LENGTH_LONG)
-          .show();
+      showToast(
+          String.format(
+              mHelperContext.getResources().getString(R.string.database_upgraded),
+              installedVersion,
+              dottedVersion(newBundledVersion)));
       mNewDatabaseMessageDisplayed = true;
 
       // Show help after database upgrade.
       setShowHelpFlag();
     }
 
+    // Helper method to show a message to the user. The database may be set up on a background
+    // thread, so the toast is always shown from the main thread.
+    private void showToast(final String message) {
+      new Handler(Looper.getMainLooper())
+          .post(
+              new Runnable() {
+                @Override
+                public void run() {
+                  Toast.makeText(mHelperContext, message, Toast.LENGTH_LONG).show();
+                }
+              });
+    }
+
     private void setShowHelpFlag() {
       // Set the flag to show the help screen (but not necessarily the tutorial).
       SharedPreferences.Editor sharedPrefsEd =
@@ -1345,39 +2390,10 @@ public class KlingonContentDatabase {
       }
 
       // Update the database if that's available.
-      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mHelperContext);
-      String installedVersion =
-          sharedPrefs.getString(
-              KEY_INSTALLED_DATABASE_VERSION, /* default */ getBundledDatabaseVersion());
-      String updatedVersion =
-          sharedPrefs.getString(KEY_UPDATED_DATABASE_VERSION, /* default */ installedVersion);
-      if (updatedVersion.compareToIgnoreCase(installedVersion) > 0
-          && checkDBExists(REPLACEMENT_DATABASE_NAME)) {
+      if (hasNewerReplacement()) {
+        String installedVersion = getInstalledDatabaseVersion(mHelperContext);
         copyDBFromReplacement();
-
-        int firstExtraEntryId =
-            sharedPrefs.getInt(
-                KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY, /* default */ ID_OF_FIRST_EXTRA_ENTRY);
-        SharedPreferences.Editor sharedPrefsEd =
-            PreferenceManager.getDefaultSharedPreferences(mHelperContext).edit();
-        sharedPrefsEd.putString(KEY_INSTALLED_DATABASE_VERSION, updatedVersion);
-        sharedPrefsEd.putInt(KEY_ID_OF_FIRST_EXTRA_ENTRY, firstExtraEntryId);
-        sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
-        sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
-        sharedPrefsEd.apply();
-
-        Toast.makeText(
-                mHelperContext,
-                String.format(
-                    mHelperContext.getResources().getString(R.string.database_upgraded),
-                    installedVersion,
-                    updatedVersion),
-                Toast.LENGTH_LONG)
-            .show();
-        mNewDatabaseMessageDisplayed = true;
-
-        // Show help after database upgrade.
-        setShowHelpFlag();
+        onReplacementInstalled(installedVersion);
       }
 
       // Create the database from included bundle if it doesn't exist.
@@ -1390,20 +2406,17 @@ public class KlingonContentDatabase {
         // Try to create the database from the bundled database file.
         try {
           // Log.d(TAG, "Copying database from resources.");
-          copyDBFromResources();
+          copyDBFromResources(DATABASE_NAME);
         } catch (IOException e) {
           throw new Error("Error copying database from resources.");
         }
 
         // Inform the user the database has been created.
         if (!mNewDatabaseMessageDisplayed) {
-          Toast.makeText(
-                  mHelperContext,
-                  String.format(
-                      mHelperContext.getResources().getString(R.string.database_created),
-                      getBundledDatabaseVersion()),
-                  Toast.LENGTH_LONG)
-              .show();
+          showToast(
+              String.format(
+                  mHelperContext.getResources().getString(R.string.database_created),
+                  getBundledDatabaseVersion()));
           mNewDatabaseMessageDisplayed = true;
         }
 
@@ -1412,6 +2425,72 @@ public class KlingonContentDatabase {
       }
     }
 
+    // Whether an update has been downloaded which is newer than the installed database.
+    boolean hasNewerReplacement() {
+      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mHelperContext);
+      String installedVersion = getInstalledDatabaseVersion(mHelperContext);
+      String updatedVersion =
+          sharedPrefs.getString(KEY_UPDATED_DATABASE_VERSION, /* default */ installedVersion);
+      return updatedVersion.compareToIgnoreCase(installedVersion) > 0
+          && checkDBExists(REPLACEMENT_DATABASE_NAME);
+    }
+
+    // Records that the downloaded update has replaced the database of the given version, and tells
+    // the user.
+    void onReplacementInstalled(String installedVersion) {
+      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mHelperContext);
+      String updatedVersion =
+          sharedPrefs.getString(KEY_UPDATED_DATABASE_VERSION, /* default */ installedVersion);
+      int firstExtraEntryId =
+          sharedPrefs.getInt(
+              KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY, /* default */ ID_OF_FIRST_EXTRA_ENTRY);
+      SharedPreferences.Editor sharedPrefsEd = sharedPrefs.edit();
+      sharedPrefsEd.putString(KEY_INSTALLED_DATABASE_VERSION, updatedVersion);
+      sharedPrefsEd.putInt(KEY_ID_OF_FIRST_EXTRA_ENTRY, firstExtraEntryId);
+      sharedPrefsEd.remove(KEY_INSTALLED_DATABASE_MODIFIED);
+      sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
+      sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
+      sharedPrefsEd.apply();
+
+      showToast(
+          String.format(
+              mHelperContext.getResources().getString(R.string.database_upgraded),
+              installedVersion,
+              updatedVersion));
+      mNewDatabaseMessageDisplayed = true;
+
+      // Show help after database upgrade.
+      setShowHelpFlag();
+    }
+
+    // Records that a changeset has updated the database from the given version, and tells the user.
+    // A downloaded replacement which is no newer than the updated database is no longer needed.
+    void onChangesetApplied(String installedVersion, DatabaseChangeset changeset) {
+      SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mHelperContext);
+      String updatedVersion =
+          sharedPrefs.getString(KEY_UPDATED_DATABASE_VERSION, /* default */ installedVersion);
+      SharedPreferences.Editor sharedPrefsEd = sharedPrefs.edit();
+      sharedPrefsEd.putString(KEY_INSTALLED_DATABASE_VERSION, changeset.getToVersion());
+      sharedPrefsEd.putInt(KEY_ID_OF_FIRST_EXTRA_ENTRY, changeset.getFirstExtraEntryId());
+      sharedPrefsEd.putBoolean(KEY_INSTALLED_DATABASE_MODIFIED, true);
+      if (updatedVersion.compareToIgnoreCase(changeset.getToVersion()) <= 0) {
+        sharedPrefsEd.remove(KEY_UPDATED_DATABASE_VERSION);
+        sharedPrefsEd.remove(KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY);
+        mHelperContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+      }
+      sharedPrefsEd.apply();
+
+      showToast(
+          String.format(
+              mHelperContext.getResources().getString(R.string.database_upgraded),
+              installedVersion,
+              changeset.getToVersion()));
+      mNewDatabaseMessageDisplayed = true;
+
+      // Show help after database upgrade.
+      setShowHelpFlag();
+    }
+
     /**
      * Check if the database already exists so that it isn't copied every time the activity is
      * started.
@@ -1445,77 +2524,192 @@ public class KlingonContentDatabase {
     }
 
     /**
-     * Copies the database from the application resources' assets folder to the newly created
-     * database in the system folder.
+     * Copies the database (or a language pack) with the given name from the application resources'
+     * assets folder to the system folder.
      */
-    private void copyDBFromResources() throws IOException {
+    private void copyDBFromResources(String databaseName) throws IOException {
+      File dbFile = new File(getDatabasePath(databaseName));
+      DatabaseInstaller.Stats stats;
+
+      // The database is stored uncompressed in the APK (see "noCompress" in build.gradle), so it
+      // can be transferred directly from the APK file. If it has been compressed anyway, fall
+      // back to reading it as a stream.
+      AssetFileDescriptor assetFd = null;
+      try {
+        assetFd = mHelperContext.getAssets().openFd(databaseName);
+      } catch (FileNotFoundException e) {
+        Log.w(TAG, "Database asset is compressed, copying it as a stream.");
+      }
+      if (assetFd != null) {
+        FileInputStream inStream = assetFd.createInputStream();
+        try {
+          stats =
+              DatabaseInstaller.install(
+                  inStream, assetFd.getStartOffset(), assetFd.getLength(), dbFile);
+        } finally {
+          inStream.close();
+          assetFd.close();
+        }
+      } else {
+        InputStream inStream = mHelperContext.getAssets().open(databaseName);
+        try {
+          stats = DatabaseInstaller.install(inStream, dbFile);
+        } finally {
+          inStream.close();
+        }
+      }
+      Log.d(TAG, "Copied " + databaseName + " from resources, " + stats + ".");
+    }
 
-      // Open the file in the assets folder as an input stream.
-      InputStream inStream = mHelperContext.getAssets().open(DATABASE_NAME);
+    /** Copies the database from the replacement (update) database. */
+    private void copyDBFromReplacement() throws IOException {
+      // Results cached from the old database must not survive the copy. Invalidating first also
+      // prevents searches which are still running against the old database from storing results.
+      invalidateCaches();
+
+      File replacementDbFile = new File(getDatabasePath(REPLACEMENT_DATABASE_NAME));
+      File dbFile = new File(getDatabasePath(DATABASE_NAME));
+
+      // The replacement is in the same directory, so it can usually just be renamed into place.
+      if (replacementDbFile.renameTo(dbFile)) {
+        Log.d(TAG, "Renamed replacement database, " + dbFile.length() + " bytes.");
+      } else {
+        DatabaseInstaller.Stats stats = DatabaseInstaller.install(replacementDbFile, dbFile);
+        Log.d(TAG, "Copied database from replacement, " + stats + ".");
+      }
 
-      // Path to the newly created empty database.
-      String fullDBPath = getDatabasePath(DATABASE_NAME);
+      // Delete the replacement database.
+      mHelperContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+    }
+  } // KlingonDatabaseOpenHelper
 
-      // Open the empty database as the output stream.
-      OutputStream outStream = new FileOutputStream(fullDBPath);
+  /**
+   * A bounded LRU cache of search results. The cached cursors are never returned directly, but only
+   * copied. All operations are atomic with respect to invalidate().
+   */
+  private static class QueryResultCache {
+    private final LinkedHashMap<String, EntryResultCursor> mEntries;
+
+    // Incremented on every invalidation, so that results computed before it are not stored.
+    private int mGeneration = 0;
+
+    private long mHitCount = 0;
+    private long mMissCount = 0;
+
+    QueryResultCache(final int maxEntries) {
+      // An access-ordered LinkedHashMap which evicts its least recently used entry.
+      mEntries =
+          new LinkedHashMap<String, EntryResultCursor>(
+              maxEntries, 0.75f, /* accessOrder */ true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, EntryResultCursor> eldest) {
+              return size() > maxEntries;
+            }
+          };
+    }
 
-      // Transfer the database from the resources to the system path one block at a time.
-      byte[] buffer = new byte[MAX_BUFFER_LENGTH];
-      int length;
-      while ((length = inStream.read(buffer)) > 0) {
-        outStream.write(buffer, 0, length);
+    synchronized EntryResultCursor get(String key) {
+      EntryResultCursor results = mEntries.get(key);
+      if (results != null) {
+        mHitCount++;
+      } else {
+        mMissCount++;
       }
+      return results;
+    }
 
-      // Close the streams.
-      outStream.flush();
-      outStream.close();
-      inStream.close();
+    synchronized void put(String key, EntryResultCursor results, int generation) {
+      if (generation == mGeneration) {
+        mEntries.put(key, results);
+      }
+    }
 
-      // Log.d(TAG, "Database copy successful.");
+    synchronized int getGeneration() {
+      return mGeneration;
     }
 
-    /** Copies the database from the replacement (update) database. */
-    private void copyDBFromReplacement() throws IOException {
-      String fullReplacementDBPath = getDatabasePath(REPLACEMENT_DATABASE_NAME);
-      String fullDBPath = getDatabasePath(DATABASE_NAME);
+    synchronized void invalidate() {
+      mEntries.clear();
+      mGeneration++;
+    }
 
-      InputStream inStream = new FileInputStream(fullReplacementDBPath);
-      OutputStream outStream = new FileOutputStream(fullDBPath);
+    synchronized long getHitCount() {
+      return mHitCount;
+    }
 
-      // Transfer the database from the resources to the system path one block at a time.
-      byte[] buffer = new byte[MAX_BUFFER_LENGTH];
-      int length;
-      int total = 0;
-      while ((length = inStream.read(buffer)) > 0) {
-        outStream.write(buffer, 0, length);
-        total += length;
-      }
-      Log.d(TAG, "Copied database from replacement, " + total + " bytes copied.");
+    synchronized long getMissCount() {
+      return mMissCount;
+    }
+  } // QueryResultCache
+
+  /** A bounded LRU cache of the columns of entries, keyed by entry id. */
+  private static class EntryRowCache {
+    private final LinkedHashMap<Integer, String[]> mRows;
+
+    EntryRowCache(final int maxRows) {
+      mRows =
+          new LinkedHashMap<Integer, String[]>(maxRows, 0.75f, /* accessOrder */ true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, String[]> eldest) {
+              return size() > maxRows;
+            }
+          };
+    }
 
-      // Close the streams.
-      outStream.flush();
-      outStream.close();
-      inStream.close();
+    synchronized String[] get(int entryId) {
+      return mRows.get(entryId);
+    }
 
-      // Delete the replacement database.
-      mHelperContext.deleteDatabase(REPLACEMENT_DATABASE_NAME);
+    synchronized void put(int entryId, String[] row) {
+      mRows.put(entryId, row);
     }
 
-    /** Opens the database. */
-    public void openDatabase() throws SQLException {
-      String fullDBPath = getDatabasePath(DATABASE_NAME);
-      // Log.d(TAG, "openDatabase() called on path " + fullDBPath + ".");
-      mDatabase = SQLiteDatabase.openDatabase(fullDBPath, null, SQLiteDatabase.OPEN_READONLY);
+    synchronized void invalidate() {
+      mRows.clear();
     }
+  } // EntryRowCache
 
-    /** Closes the database. */
-    @Override
-    public synchronized void close() {
-      // Log.d(TAG, "Closing database.");
-      if (mDatabase != null) {
-        mDatabase.close();
+  /**
+   * Keeps the candidates of each stage of the previous search, so that a query which extends the
+   * previous one (e.g., "Qapl" after "Qap") can be answered by filtering them in memory instead of
+   * scanning the table again. Complex-word analysis is always run in full, and a query which
+   * doesn't extend the previous one falls back to a full search of the stage.
+   */
+  private static class IncrementalSearchSession {
+    private final HashMap<String, StageCandidates> mStages = new HashMap<String, StageCandidates>();
+
+    private static class StageCandidates {
+      final String mSettingsKey;
+      final int mGeneration;
+      final String mTerm;
+      final ArrayList<Object[]> mRows;
+
+      StageCandidates(String settingsKey, int generation, String term, ArrayList<Object[]> rows) {
+        mSettingsKey = settingsKey;
+        mGeneration = generation;
+        mTerm = term;
+        mRows = rows;
       }
-      super.close();
     }
-  } // KlingonDatabaseOpenHelper
+
+    // Returns the candidates of the given stage if they can be refined for the given term, or null.
+    synchronized ArrayList<Object[]> getCandidates(
+        String stage, String settingsKey, int generation, String term) {
+      StageCandidates candidates = mStages.get(stage);
+      if (candidates == null
+          || candidates.mRows == null
+          || candidates.mGeneration != generation
+          || !candidates.mSettingsKey.equals(settingsKey)
+          || !term.startsWith(candidates.mTerm)) {
+        return null;
+      }
+      return candidates.mRows;
+    }
+
+    // Sets the candidates of the given stage. Rows may be null if there were too many to keep.
+    synchronized void setCandidates(
+        String stage, String settingsKey, int generation, String term, ArrayList<Object[]> rows) {
+      mStages.put(stage, new StageCandidates(settingsKey, generation, term, rows));
+    }
+  } // IncrementalSearchSession
 } // KlingonContentDatabase
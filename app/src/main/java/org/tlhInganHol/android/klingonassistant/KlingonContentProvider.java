@@ -27,12 +27,27 @@ import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.graphics.Color;
 import android.net.Uri;
+import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.provider.BaseColumns;
 import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import org.tlhInganHol.android.klingonassistant.core.EntryMetadata;
+import org.tlhInganHol.android.klingonassistant.core.KlingonLog;
+import org.tlhInganHol.android.klingonassistant.core.KlingonLog.Subsystem;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
 
 /** Provides access to the dictionary database. */
 public class KlingonContentProvider extends ContentProvider {
@@ -61,8 +76,42 @@ public class KlingonContentProvider extends ContentProvider {
     // SearchManager.SUGGEST_COLUMN_INTENT_DATA_ID,
   };
 
-  // The actual Klingon Content Database.
-  private KlingonContentDatabase mContentDatabase;
+  // Method of call() which installs a downloaded database update, and the key of its result.
+  public static final String METHOD_INSTALL_REPLACEMENT_DATABASE = "install_replacement_database";
+  public static final String KEY_DATABASE_REPLACED = "database_replaced";
+
+  // Method of call() which applies a downloaded changeset to the database, and the key of its
+  // result. The argument is the path of the changeset file.
+  public static final String METHOD_APPLY_CHANGESET = "apply_changeset";
+  public static final String KEY_CHANGESET_APPLIED = "changeset_applied";
+
+  // Method of call() which looks up several entries at once, for callers which would otherwise
+  // make a query for each. The extras hold either the queries, under KEY_QUERIES, each of which is
+  // looked up as by "lookup" and gives its first result, or the ids of the entries, under KEY_IDS.
+  // The argument is the language of the definitions, or null for the one the user has chosen. The
+  // results are arrays parallel to the queries or ids, with NO_ENTRY_ID for those not found.
+  public static final String METHOD_BATCH_LOOKUP = "batch_lookup";
+  public static final String KEY_QUERIES = "queries";
+  public static final String KEY_IDS = "ids";
+  public static final String KEY_RESULT_IDS = "result_ids";
+  public static final String KEY_RESULT_ENTRY_NAMES = "result_entry_names";
+  public static final String KEY_RESULT_PARTS_OF_SPEECH = "result_parts_of_speech";
+  public static final String KEY_RESULT_DEFINITIONS = "result_definitions";
+  public static final int NO_ENTRY_ID = -1;
+
+  // The most entries which can be looked up by one call, which keeps the result well within the
+  // limit on the size of a Binder transaction.
+  private static final int MAX_BATCH_LOOKUP_SIZE = 500;
+
+  // The actual Klingon Content Database. This is set up on a background thread, since creating it
+  // may involve copying the whole database, and queries wait on mDatabaseReady before using it.
+  private volatile KlingonContentDatabase mContentDatabase;
+  private final CountDownLatch mDatabaseReady = new CountDownLatch(1);
+  private volatile Throwable mDatabaseInitError = null;
+
+  // How long a query waits for the database to be set up before giving up. Copying the database on
+  // first run normally takes well under a second, but can be much slower on old devices.
+  private static final long DATABASE_INIT_TIMEOUT_SECONDS = 30;
 
   // UriMatcher stuff
   private static final int SEARCH_ENTRIES = 0;
@@ -102,9 +151,237 @@ public class KlingonContentProvider extends ContentProvider {
     return matcher;
   }
 
+  // Writes the messages of the core library, which doesn't depend on Android, to the Android log.
+  private static final KlingonLog.Sink ANDROID_LOG_SINK =
+      new KlingonLog.Sink() {
+        @Override
+        public void d(String tag, String message) {
+          Log.d(tag, message);
+        }
+
+        @Override
+        public void w(String tag, String message) {
+          Log.w(tag, message);
+        }
+
+        @Override
+        public void e(String tag, String message) {
+          Log.e(tag, message);
+        }
+      };
+
   @Override
   public boolean onCreate() {
-    mContentDatabase = new KlingonContentDatabase(getContext());
+    // The provider is created when the process starts, before anything uses the core library.
+    KlingonLog.setSink(ANDROID_LOG_SINK);
+    KlingonLog.setDebugEnabled(BuildConfig.DEBUG);
+
+    // This is called on the main thread during process startup, so return without waiting for the
+    // database.
+    final Context context = getContext();
+    new Thread(
+            new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  mContentDatabase = new KlingonContentDatabase(context);
+                } catch (Throwable e) {
+                  Log.e(TAG, "Unable to create database.", e);
+                  mDatabaseInitError = e;
+                } finally {
+                  mDatabaseReady.countDown();
+                }
+              }
+            },
+            "KlingonDatabaseInit")
+        .start();
+    return true;
+  }
+
+  /**
+   * Handles calls to methods of the provider. METHOD_INSTALL_REPLACEMENT_DATABASE replaces the
+   * database with a downloaded update straight away, and returns whether it did so under
+   * KEY_DATABASE_REPLACED. METHOD_APPLY_CHANGESET applies the changeset in the file named by arg,
+   * and returns whether it did so under KEY_CHANGESET_APPLIED. METHOD_BATCH_LOOKUP looks up the
+   * entries for several queries or ids at once, and returns their ids, names, parts of speech and
+   * definitions.
+   */
+  @Override
+  public Bundle call(String method, String arg, Bundle extras) {
+    if (METHOD_BATCH_LOOKUP.equals(method)) {
+      return batchLookup(arg, extras);
+    } else if (METHOD_APPLY_CHANGESET.equals(method)) {
+      return applyChangeset(arg);
+    } else if (!METHOD_INSTALL_REPLACEMENT_DATABASE.equals(method)) {
+      return super.call(method, arg, extras);
+    }
+    Bundle result = new Bundle();
+    boolean replaced = false;
+    if (awaitDatabase()) {
+      try {
+        replaced = mContentDatabase.installReplacementDatabase();
+      } catch (IOException e) {
+        // The replacement will be tried again the next time the database is set up.
+        Log.e(TAG, "Failed to install replacement database.", e);
+      }
+    }
+    result.putBoolean(KEY_DATABASE_REPLACED, replaced);
+    return result;
+  }
+
+  // Helper method to apply the changeset in the given file for call().
+  private Bundle applyChangeset(String changesetPath) {
+    Bundle result = new Bundle();
+    boolean applied = false;
+    if (awaitDatabase()) {
+      try {
+        InputStream inStream = new BufferedInputStream(new FileInputStream(changesetPath));
+        try {
+          applied = mContentDatabase.applyChangeset(inStream);
+        } finally {
+          inStream.close();
+        }
+      } catch (IOException e) {
+        // The caller falls back to downloading the whole database.
+        Log.e(TAG, "Failed to apply changeset.", e);
+      }
+    }
+    result.putBoolean(KEY_CHANGESET_APPLIED, applied);
+    return result;
+  }
+
+  // Helper method to look up several entries at once for call().
+  private Bundle batchLookup(String language, Bundle extras) {
+    String[] queries = extras == null ? null : extras.getStringArray(KEY_QUERIES);
+    int[] ids = extras == null ? null : extras.getIntArray(KEY_IDS);
+    if ((queries == null) == (ids == null)) {
+      throw new IllegalArgumentException(
+          "Exactly one of " + KEY_QUERIES + " and " + KEY_IDS + " must be provided.");
+    }
+    int count = queries != null ? queries.length : ids.length;
+    if (count > MAX_BATCH_LOOKUP_SIZE) {
+      throw new IllegalArgumentException(
+          "At most " + MAX_BATCH_LOOKUP_SIZE + " entries can be looked up at once.");
+    }
+    BatchLookupResults results = new BatchLookupResults(count, language);
+    if (!awaitDatabase() || count == 0) {
+      return results.toBundle();
+    }
+
+    // As for query(), hold a handle so that all the entries come from the same database.
+    DatabaseLifecycleManager.Handle handle = mContentDatabase.getLifecycleManager().acquire();
+    try {
+      if (queries != null) {
+        for (int i = 0; i < count; i++) {
+          if (queries[i] == null) {
+            continue;
+          }
+          Cursor cursor = mContentDatabase.getEntryMatches(queries[i]);
+          if (cursor == null) {
+            continue;
+          }
+          try {
+            if (cursor.moveToFirst()) {
+              results.set(i, new Entry(cursor, getContext()));
+            }
+          } finally {
+            cursor.close();
+          }
+        }
+      } else {
+        // Look up all the ids with one statement. An id may be asked for more than once.
+        HashMap<Integer, ArrayList<Integer>> indicesById =
+            new HashMap<Integer, ArrayList<Integer>>();
+        for (int i = 0; i < count; i++) {
+          ArrayList<Integer> indices = indicesById.get(ids[i]);
+          if (indices == null) {
+            indices = new ArrayList<Integer>();
+            indicesById.put(ids[i], indices);
+          }
+          indices.add(i);
+        }
+        Cursor cursor = mContentDatabase.getEntriesByIds(ids);
+        try {
+          while (cursor.moveToNext()) {
+            Entry entry = new Entry(cursor, getContext());
+            ArrayList<Integer> indices = indicesById.get(entry.getId());
+            if (indices != null) {
+              for (int i : indices) {
+                results.set(i, entry);
+              }
+            }
+          }
+        } finally {
+          cursor.close();
+        }
+      }
+    } finally {
+      if (handle != null) {
+        handle.release();
+      }
+    }
+    return results.toBundle();
+  }
+
+  // The results of a batch lookup, as arrays parallel to the queries or ids.
+  private static class BatchLookupResults {
+    final String mLanguage;
+    final int[] mIds;
+    final String[] mEntryNames;
+    final String[] mPartsOfSpeech;
+    final String[] mDefinitions;
+
+    BatchLookupResults(int count, String language) {
+      mLanguage = language;
+      mIds = new int[count];
+      Arrays.fill(mIds, NO_ENTRY_ID);
+      mEntryNames = new String[count];
+      mPartsOfSpeech = new String[count];
+      mDefinitions = new String[count];
+    }
+
+    void set(int i, Entry entry) {
+      mIds[i] = entry.getId();
+      mEntryNames[i] = entry.getEntryName();
+      mPartsOfSpeech[i] = entry.getPartOfSpeech();
+      if (mLanguage == null) {
+        // Choose the definition the same way the app does when showing it.
+        mDefinitions[i] =
+            entry.shouldDisplayOtherLanguageDefinition()
+                ? entry.getOtherLanguageDefinition()
+                : entry.getDefinition();
+      } else {
+        mDefinitions[i] = entry.getDefinition(mLanguage);
+      }
+      if (mDefinitions[i] == null || mDefinitions[i].equals("")) {
+        mDefinitions[i] = entry.getDefinition();
+      }
+    }
+
+    Bundle toBundle() {
+      Bundle result = new Bundle();
+      result.putIntArray(KEY_RESULT_IDS, mIds);
+      result.putStringArray(KEY_RESULT_ENTRY_NAMES, mEntryNames);
+      result.putStringArray(KEY_RESULT_PARTS_OF_SPEECH, mPartsOfSpeech);
+      result.putStringArray(KEY_RESULT_DEFINITIONS, mDefinitions);
+      return result;
+    }
+  }
+
+  // Helper method to wait for the database to be set up. Returns false if it isn't ready in time.
+  private boolean awaitDatabase() {
+    try {
+      if (!mDatabaseReady.await(DATABASE_INIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        Log.e(TAG, "Timed out waiting for the database to be set up.");
+        return false;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+    if (mDatabaseInitError != null) {
+      throw new Error("Unable to create database.", mDatabaseInitError);
+    }
     return true;
   }
 
@@ -117,7 +394,31 @@ public class KlingonContentProvider extends ContentProvider {
   @Override
   public Cursor query(
       Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+    if (!awaitDatabase()) {
+      return null;
+    }
 
+    // Hold a handle on the database until the results have been read, so that they all come from
+    // the same database even if it's replaced meanwhile.
+    DatabaseLifecycleManager lifecycleManager = mContentDatabase.getLifecycleManager();
+    DatabaseLifecycleManager.Handle handle = lifecycleManager.acquire();
+    if (handle == null) {
+      return queryDatabase(uri, projection, selectionArgs);
+    }
+    Cursor cursor = null;
+    try {
+      cursor = queryDatabase(uri, projection, selectionArgs);
+    } finally {
+      if (cursor == null) {
+        handle.release();
+      }
+    }
+    // Callers check for a null cursor, e.g., when there are no suggestions or no such entry.
+    return cursor == null ? null : lifecycleManager.wrapCursor(cursor, handle);
+  }
+
+  // Helper method to run a query against the database.
+  private Cursor queryDatabase(Uri uri, String[] projection, String[] selectionArgs) {
     // Use the UriMatcher to see what kind of query we have and format the db query accordingly
     switch (sURIMatcher.match(uri)) {
       case SEARCH_SUGGEST:
@@ -155,9 +456,7 @@ public class KlingonContentProvider extends ContentProvider {
   // Called when uri has SUGGEST_URI_PATH_QUERY, i.e., "search_suggest_query".
   // This populates the dropdown list from the search box.
   private Cursor getSuggestions(String query) {
-    if (BuildConfig.DEBUG) {
-      Log.d(TAG, "getSuggestions called with query: \"" + query + "\"");
-    }
+    KlingonLog.d(Subsystem.SEARCH, TAG, "getSuggestions called with query: \"{}\"", query);
     if (query.equals("")) {
       return null;
     }
@@ -200,9 +499,7 @@ public class KlingonContentProvider extends ContentProvider {
   // Called when uri has "/lookup".
   // Either we're following a link, or the user has pressed the "Go" button from search.
   private Cursor search(String query) {
-    if (BuildConfig.DEBUG) {
-      Log.d(TAG, "search called with query: " + query);
-    }
+    KlingonLog.d(Subsystem.SEARCH, TAG, "search called with query: {}", query);
 
     return mContentDatabase.getEntryMatches(query);
   }
@@ -263,6 +560,20 @@ public class KlingonContentProvider extends ContentProvider {
     }
   }
 
+  /**
+   * Writes the search statistics, for "adb shell dumpsys activity provider
+   * org.tlhInganHol.android.klingonassistant/.KlingonContentProvider". Passing "reset" discards
+   * them after they're written.
+   */
+  @Override
+  public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+    SearchStats.dump(writer);
+    if (args != null && Arrays.asList(args).contains("reset")) {
+      SearchStats.reset();
+      writer.println("Search statistics reset.");
+    }
+  }
+
   // Other required implementations...
 
   @Override
@@ -280,80 +591,8 @@ public class KlingonContentProvider extends ContentProvider {
     throw new UnsupportedOperationException();
   }
 
-  public static String convertStringToKlingonFont(String s) {
-    // Strip anything we don't recognise.
-    // This pattern should be kept mostly in sync with ENTRY_PATTERN. Note that "ü" and "+" will
-    // never be in an entry name.
-    String klingonString = s.replaceAll("[^A-Za-z0-9 '\\\":;,\\.\\-?!_/()@=%&\\*]", "");
-
-    // This is a hack: change the separators between words and their affixes.
-    // TODO: Do this upstream and colour the affixes differently.
-    klingonString =
-        klingonString
-            .replaceAll(" + -", " ◃ ")
-            .replaceAll("- + ", " ▹ ")
-            .replaceAll("^-", "◃ ")
-            .replaceAll("-$", " ▹");
-
-    // {gh} must come before {ngh} since {ngh} is {n} + {gh} and not {ng} + *{h}.
-    // {ng} must come before {n}.
-    // {tlh} must come before {t} and {l}.
-    // Don't change {-} since it's needed for prefixes and suffixes.
-    // Don't change "..." (ellipses), but do change "." (periods).
-    klingonString =
-        klingonString
-            .replaceAll("gh", "")
-            .replaceAll("ng", "")
-            .replaceAll("tlh", "")
-            .replaceAll("a", "")
-            .replaceAll("b", "")
-            .replaceAll("ch", "")
-            .replaceAll("D", "")
-            .replaceAll("e", "")
-            .replaceAll("H", "")
-            .replaceAll("I", "")
-            .replaceAll("j", "")
-            .replaceAll("l", "")
-            .replaceAll("m", "")
-            .replaceAll("n", "")
-            .replaceAll("o", "")
-            .replaceAll("p", "")
-            .replaceAll("q", "")
-            .replaceAll("Q", "")
-            .replaceAll("r", "")
-            .replaceAll("S", "")
-            .replaceAll("t", "")
-            .replaceAll("u", "")
-            .replaceAll("v", "")
-            .replaceAll("w", "")
-            .replaceAll("y", "")
-            .replaceAll("'", "")
-            .replaceAll("0", "")
-            .replaceAll("1", "")
-            .replaceAll("2", "")
-            .replaceAll("3", "")
-            .replaceAll("4", "")
-            .replaceAll("5", "")
-            .replaceAll("6", "")
-            .replaceAll("7", "")
-            .replaceAll("8", "")
-            .replaceAll("9", "")
-            .replaceAll(",", "")
-            .replaceAll(";", "")
-            .replaceAll("!", "")
-            .replaceAll("\\(", "▹")
-            .replaceAll("\\)", "◃")
-            .replaceAll("-", "◃")
-            .replaceAll("\\?", "")
-            .replaceAll("\\.", "")
-            // Note: The LHS is in Klingon due to previous replacements.
-            // We replace three periods in a row with an ellipsis.
-            .replaceAll("", "⋯");
-    return klingonString;
-  }
-
   // This class is for managing entries.
-  public static class Entry {
+  public static class Entry extends EntryMetadata {
     // The logging tag can be at most 23 characters. "KlingonContentProvider.Entry" was too long.
     String TAG = "KCP.Entry";
 
@@ -374,8 +613,6 @@ public class KlingonContentProvider extends ContentProvider {
     // The raw data for the entry.
     // private Uri mUri = null;
     private int mId = -1;
-    private String mEntryName = "";
-    private String mPartOfSpeech = "";
     private String mDefinition = "";
     private String mSynonyms = "";
     private String mAntonyms = "";
@@ -413,105 +650,6 @@ public class KlingonContentProvider extends ContentProvider {
     private String mExamples_PT = "";
     private String mSearchTags_PT = "";
 
-    // Part of speech metadata.
-    private enum BasePartOfSpeechEnum {
-      NOUN,
-      VERB,
-      ADVERBIAL,
-      CONJUNCTION,
-      QUESTION,
-      SENTENCE,
-      EXCLAMATION,
-      SOURCE,
-      URL,
-      UNKNOWN
-    }
-
-    private String[] basePartOfSpeechAbbreviations = {
-      "n", "v", "adv", "conj", "ques", "sen", "excl", "src", "url", "???"
-    };
-    private BasePartOfSpeechEnum mBasePartOfSpeech = BasePartOfSpeechEnum.UNKNOWN;
-
-    // Verb attributes.
-    private enum VerbTransitivityType {
-      TRANSITIVE,
-      INTRANSITIVE,
-      STATIVE,
-      AMBITRANSITIVE,
-      UNKNOWN,
-      HAS_TYPE_5_NOUN_SUFFIX
-    }
-
-    private VerbTransitivityType mTransitivity = VerbTransitivityType.UNKNOWN;
-    boolean mTransitivityConfirmed = false;
-
-    // Noun attributes.
-    private enum NounType {
-      GENERAL,
-      NUMBER,
-      NAME,
-      PRONOUN
-    }
-
-    private NounType mNounType = NounType.GENERAL;
-    boolean mIsInherentPlural = false;
-    boolean mIsSingularFormOfInherentPlural = false;
-    boolean mIsPlural = false;
-
-    // Sentence types.
-    private enum SentenceType {
-      PHRASE,
-      EMPIRE_UNION_DAY,
-      CURSE_WARFARE,
-      IDIOM,
-      NENTAY,
-      PROVERB,
-      MILITARY_CELEBRATION,
-      REJECTION,
-      REPLACEMENT_PROVERB,
-      SECRECY_PROVERB,
-      TOAST,
-      LYRICS,
-      BEGINNERS_CONVERSATION,
-      JOKE
-    }
-
-    private SentenceType mSentenceType = SentenceType.PHRASE;
-
-    // Categories of words and phrases.
-    boolean mIsAnimal = false;
-    boolean mIsArchaic = false;
-    boolean mIsBeingCapableOfLanguage = false;
-    boolean mIsBodyPart = false;
-    boolean mIsDerivative = false;
-    boolean mIsRegional = false;
-    boolean mIsFoodRelated = false;
-    boolean mIsInvective = false;
-    boolean mIsPlaceName = false;
-    boolean mIsPrefix = false;
-    boolean mIsSlang = false;
-    boolean mIsSuffix = false;
-    boolean mIsWeaponsRelated = false;
-
-    // Additional metadata.
-    boolean mIsAlternativeSpelling = false;
-    boolean mIsFictionalEntity = false;
-    boolean mIsHypothetical = false;
-    boolean mIsExtendedCanon = false;
-    boolean mDoNotLink = false;
-
-    // For display purposes.
-    boolean mIsIndented = false;
-
-    // If there are multiple entries with identitical entry names,
-    // they are distinguished with numbers. However, not all entries display
-    // them, for various reasons.
-    int mHomophoneNumber = -1;
-    boolean mShowHomophoneNumber = true;
-
-    // Link can be to an URL.
-    String mURL = "";
-
     /**
      * Constructor
      *
@@ -622,199 +760,6 @@ public class KlingonContentProvider extends ContentProvider {
       processMetadata();
     }
 
-    // Helper method to process metadata.
-    private void processMetadata() {
-
-      // Process metadata from part of speech.
-      String base = mPartOfSpeech;
-      String[] attributes = {};
-      int colonLoc = mPartOfSpeech.indexOf(':');
-      if (colonLoc != -1) {
-        base = mPartOfSpeech.substring(0, colonLoc);
-        attributes = mPartOfSpeech.substring(colonLoc + 1).split(",");
-      }
-
-      // First, find the base part of speech.
-      mBasePartOfSpeech = BasePartOfSpeechEnum.UNKNOWN;
-      if (base.equals("")) {
-        // Do nothing if base part of speech is empty.
-        // Log.w(TAG, "{" + mEntryName + "} has empty part of speech.");
-      } else {
-        for (int i = 0; i < basePartOfSpeechAbbreviations.length; i++) {
-          if (base.equals(basePartOfSpeechAbbreviations[i])) {
-            mBasePartOfSpeech = BasePartOfSpeechEnum.values()[i];
-          }
-        }
-        if (mBasePartOfSpeech == BasePartOfSpeechEnum.UNKNOWN) {
-          // Log warning if part of speech could not be determined.
-          Log.w(
-              TAG,
-              "{" + mEntryName + "} has unrecognised part of speech: \"" + mPartOfSpeech + "\"");
-        }
-      }
-
-      // Now, get other attributes from the part of speech metadata.
-      for (String attr : attributes) {
-
-        // Note prefixes and suffixes.
-        if (attr.equals("pref")) {
-          mIsPrefix = true;
-        } else if (attr.equals("suff")) {
-          mIsSuffix = true;
-        } else if (attr.equals("indent")) {
-          // This attribute is used internally to indent affixes which are attached to a word, and
-          // to half-indent verbs with prefixes.
-          mIsIndented = true;
-
-          // Verb attributes.
-        } else if (attr.equals("ambi")) {
-          // All ambitransitive verbs are considered confirmed, since they are never marked as such
-          // otherwise.
-          mTransitivity = VerbTransitivityType.AMBITRANSITIVE;
-          mTransitivityConfirmed = true;
-        } else if (attr.equals("i")) {
-          mTransitivity = VerbTransitivityType.INTRANSITIVE;
-        } else if (attr.equals("i_c")) {
-          mTransitivity = VerbTransitivityType.INTRANSITIVE;
-          mTransitivityConfirmed = true;
-        } else if (attr.equals("is")) {
-          // All stative verbs are considered confirmed for being intransitive, since they are all
-          // of the form "to be [a quality]".
-          mTransitivity = VerbTransitivityType.STATIVE;
-          mTransitivityConfirmed = true;
-        } else if (attr.equals("t")) {
-          mTransitivity = VerbTransitivityType.TRANSITIVE;
-        } else if (attr.equals("t_c")) {
-          mTransitivity = VerbTransitivityType.TRANSITIVE;
-          mTransitivityConfirmed = true;
-        } else if (attr.equals("n5")) {
-          // This is an attribute which does not appear in the database, but can be assigned to a
-          // query to find only verbs which are attached to a type 5 noun suffix (verbs acting
-          // adjectivally).
-          mTransitivity = VerbTransitivityType.HAS_TYPE_5_NOUN_SUFFIX;
-
-          // Noun attributes.
-        } else if (attr.equals("name")) {
-          mNounType = NounType.NAME;
-          mShowHomophoneNumber = false;
-        } else if (attr.equals("num")) {
-          mNounType = NounType.NUMBER;
-        } else if (attr.equals("pro")) {
-          mNounType = NounType.PRONOUN;
-        } else if (attr.equals("inhpl")) {
-          mIsInherentPlural = true;
-        } else if (attr.equals("inhps")) {
-          mIsSingularFormOfInherentPlural = true;
-        } else if (attr.equals("plural")) {
-          mIsPlural = true;
-
-          // Sentence attributes.
-        } else if (attr.equals("eu")) {
-          mSentenceType = SentenceType.EMPIRE_UNION_DAY;
-        } else if (attr.equals("mv")) {
-          mSentenceType = SentenceType.CURSE_WARFARE;
-        } else if (attr.equals("idiom")) {
-          mSentenceType = SentenceType.IDIOM;
-        } else if (attr.equals("nt")) {
-          mSentenceType = SentenceType.NENTAY;
-        } else if (attr.equals("phr")) {
-          mSentenceType = SentenceType.PHRASE;
-        } else if (attr.equals("prov")) {
-          mSentenceType = SentenceType.PROVERB;
-        } else if (attr.equals("Ql")) {
-          mSentenceType = SentenceType.MILITARY_CELEBRATION;
-        } else if (attr.equals("rej")) {
-          mSentenceType = SentenceType.REJECTION;
-        } else if (attr.equals("rp")) {
-          mSentenceType = SentenceType.REPLACEMENT_PROVERB;
-        } else if (attr.equals("sp")) {
-          mSentenceType = SentenceType.SECRECY_PROVERB;
-        } else if (attr.equals("toast")) {
-          mSentenceType = SentenceType.TOAST;
-        } else if (attr.equals("lyr")) {
-          mSentenceType = SentenceType.LYRICS;
-        } else if (attr.equals("bc")) {
-          mSentenceType = SentenceType.BEGINNERS_CONVERSATION;
-        } else if (attr.equals("joke")) {
-          mSentenceType = SentenceType.JOKE;
-
-          // Categories.
-        } else if (attr.equals("anim")) {
-          mIsAnimal = true;
-        } else if (attr.equals("archaic")) {
-          mIsArchaic = true;
-        } else if (attr.equals("being")) {
-          mIsBeingCapableOfLanguage = true;
-        } else if (attr.equals("body")) {
-          mIsBodyPart = true;
-        } else if (attr.equals("deriv")) {
-          mIsDerivative = true;
-        } else if (attr.equals("reg")) {
-          mIsRegional = true;
-        } else if (attr.equals("food")) {
-          mIsFoodRelated = true;
-        } else if (attr.equals("inv")) {
-          mIsInvective = true;
-        } else if (attr.equals("place")) {
-          mIsPlaceName = true;
-        } else if (attr.equals("slang")) {
-          mIsSlang = true;
-        } else if (attr.equals("weap")) {
-          mIsWeaponsRelated = true;
-
-          // Additional metadata.
-        } else if (attr.equals("alt")) {
-          mIsAlternativeSpelling = true;
-        } else if (attr.equals("fic")) {
-          mIsFictionalEntity = true;
-        } else if (attr.equals("hyp")) {
-          mIsHypothetical = true;
-        } else if (attr.equals("extcan")) {
-          mIsExtendedCanon = true;
-        } else if (attr.equals("nolink")) {
-          mDoNotLink = true;
-
-          // We have only a few homophonous entries.
-        } else if (attr.equals("1")) {
-          mHomophoneNumber = 1;
-        } else if (attr.equals("2")) {
-          mHomophoneNumber = 2;
-        } else if (attr.equals("3")) {
-          mHomophoneNumber = 3;
-        } else if (attr.equals("4")) {
-          mHomophoneNumber = 4;
-        } else if (attr.equals("5")) {
-          // Nothing should go as high as even 4.
-          mHomophoneNumber = 5;
-          // Same as above, but the number is hidden.
-        } else if (attr.equals("1h")) {
-          mHomophoneNumber = 1;
-          mShowHomophoneNumber = false;
-        } else if (attr.equals("2h")) {
-          mHomophoneNumber = 2;
-          mShowHomophoneNumber = false;
-        } else if (attr.equals("3h")) {
-          mHomophoneNumber = 3;
-          mShowHomophoneNumber = false;
-        } else if (attr.equals("4h")) {
-          mHomophoneNumber = 4;
-          mShowHomophoneNumber = false;
-        } else if (attr.equals("5h")) {
-          mHomophoneNumber = 5;
-          mShowHomophoneNumber = false;
-
-          // If this is an URL link, the attribute is the URL.
-        } else if (isURL()) {
-          mURL = attr;
-
-          // No match to attributes.
-        } else {
-          // Log error if part of speech could not be determined.
-          Log.e(TAG, "{" + mEntryName + "} has unrecognised attribute: \"" + attr + "\"");
-        }
-      }
-    }
-
     // Get the _id of the entry.
     public int getId() {
       return mId;
@@ -882,7 +827,7 @@ public class KlingonContentProvider extends ContentProvider {
 
     // Get the name of the entry written in {pIqaD}.
     public String getEntryNameInKlingonFont() {
-      return KlingonContentProvider.convertStringToKlingonFont(mEntryName);
+      return KlingonText.convertStringToKlingonFont(mEntryName);
     }
 
     private String getSpecificPartOfSpeech() {
@@ -1027,14 +972,21 @@ public class KlingonContentProvider extends ContentProvider {
       return mDefinition;
     }
 
-    // TODO: Refactor the additional languages code to be much more compact.
-    // These functions should probably take a language code as a second parameter.
     public String getOtherLanguageDefinition() {
       SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
       final String otherLang =
           sharedPrefs.getString(
               Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */ "NONE");
-      switch (otherLang) {
+      return getDefinition(otherLang);
+    }
+
+    /**
+     * Returns the definition in the language with the given code (as in the secondary language
+     * preference), which is empty if the entry has no definition in it. Any other code, such as
+     * "en", gives the English definition.
+     */
+    public String getDefinition(String language) {
+      switch (language) {
         case "de":
           return getDefinition_DE();
         case "fa":
@@ -1049,7 +1001,7 @@ public class KlingonContentProvider extends ContentProvider {
           return getDefinition_PT();
         default:
           // All definitions should exist (even if they are autotranslated), so this should never
-          // be reached, but in case it is, return the English definition by default.
+          // be reached for a supported language, but in case it is, return the English definition.
           return getDefinition();
       }
     }
@@ -1434,10 +1386,6 @@ public class KlingonContentProvider extends ContentProvider {
       return mBasePartOfSpeech == BasePartOfSpeechEnum.SOURCE;
     }
 
-    public boolean isURL() {
-      return mBasePartOfSpeech == BasePartOfSpeechEnum.URL;
-    }
-
     public String getURL() {
       // If this is a source (like "TKD", "KGT", etc.), try to derive the URL from the entry name.
       final Pattern TKD_PAGE_PATTERN = Pattern.compile("TKD p.([0-9]+)");
@@ -1760,7 +1708,7 @@ public class KlingonContentProvider extends ContentProvider {
 
     // Called on a query entry, determines if the query is satisfied by the candidate entry.
     public boolean isSatisfiedBy(Entry candidate) {
-      Log.d(TAG, "\nisSatisfiedBy candidate: " + candidate.getEntryName());
+      KlingonLog.d(Subsystem.ENTRY, TAG, "\nisSatisfiedBy candidate: {}", candidate.getEntryName());
 
       // Determine whether entry name matches exactly.
       boolean isExactMatchForEntryName = mEntryName.equals(candidate.getEntryName());
@@ -1770,7 +1718,9 @@ public class KlingonContentProvider extends ContentProvider {
       if (!basePartOfSpeechIsUnknown()) {
         // Base part of speech is known, so match exact entry name as
         // well as base part of speech.
-        Log.d(TAG, "isExactMatchForEntryName: " + isExactMatchForEntryName);
+        if (KlingonLog.isDebugEnabled(Subsystem.ENTRY)) {
+          KlingonLog.d(TAG, "isExactMatchForEntryName: " + isExactMatchForEntryName);
+        }
         if (!isExactMatchForEntryName) {
           return false;
         }
@@ -1781,9 +1731,16 @@ public class KlingonContentProvider extends ContentProvider {
         // of the nouns they are asking about. Note that entries knows nothing about affixes, so
         // it's up to the caller to exclude, e.g., prefixes on pronouns.
         // TODO: Remove redundant {nuq} + {-Daq}.
-        Log.d(TAG, "mBasePartOfSpeech: " + mBasePartOfSpeech);
-        Log.d(TAG, "candidate.getBasePartOfSpeech: " + candidate.getBasePartOfSpeech());
-        Log.d(TAG, "candidate.getEntryName: " + candidate.getEntryName());
+        if (KlingonLog.isDebugEnabled(Subsystem.ENTRY)) {
+          KlingonLog.d(
+              TAG,
+              "mBasePartOfSpeech: "
+                  + mBasePartOfSpeech
+                  + ", candidate.getBasePartOfSpeech: "
+                  + candidate.getBasePartOfSpeech()
+                  + ", candidate.getEntryName: "
+                  + candidate.getEntryName());
+        }
         boolean candidateIsPronounActingAsVerb =
             (mBasePartOfSpeech == BasePartOfSpeechEnum.VERB && candidate.isPronoun());
         boolean candidateIsQuestionWordActingAsNoun =
@@ -1809,8 +1766,11 @@ public class KlingonContentProvider extends ContentProvider {
           return false;
         }
       }
-      Log.d(TAG, "Exact name match for entry name: " + candidate.getEntryName());
-      Log.d(TAG, "Part of speech satisfied for: " + candidate.getEntryName());
+      KlingonLog.d(
+          Subsystem.ENTRY,
+          TAG,
+          "Exact name match and part of speech satisfied for: {}",
+          candidate.getEntryName());
 
       // If the homophone number is given, it must match.
       if (mHomophoneNumber != -1 && mHomophoneNumber != candidate.getHomophoneNumber()) {
@@ -1840,873 +1800,14 @@ public class KlingonContentProvider extends ContentProvider {
       // }
 
       // TODO: Test a bunch of other things here.
-      Log.d(
-          TAG,
-          "Candidate passed: "
-              + candidate.getEntryName()
-              + candidate.getBracketedPartOfSpeech(/* html */ false));
-      return true;
-    }
-  }
-
-  // This class is for complex Klingon words. A complex word is a noun or verb with affixes.
-  // Note: To debug parsing, you likely want to use "adb logcat -s
-  // KlingonContentProvider.ComplexWord"
-  // or "adb logcat -s KlingonContentProvider.ComplexWord KlingonContentProvider".
-  public static class ComplexWord {
-    // The logging tag can be at most 23 characters. "KlingonContentProvider.ComplexWord" was too
-    // long.
-    String TAG = "KCP.ComplexWord";
-
-    // The noun suffixes.
-    static String[] nounType1String = {"", "'a'", "Hom", "oy"};
-    static String[] nounType2String = {"", "pu'", "Du'", "mey"};
-    static String[] nounType3String = {"", "qoq", "Hey", "na'"};
-    static String[] nounType4String = {
-      "", "wIj", "wI'", "maj", "ma'", "lIj", "lI'", "raj", "ra'", "Daj", "chaj", "vam", "vetlh"
-    };
-    static String[] nounType5String = {"", "Daq", "vo'", "mo'", "vaD", "'e'"};
-    static String[][] nounSuffixesStrings = {
-      nounType1String, nounType2String, nounType3String, nounType4String, nounType5String
-    };
-    int mNounSuffixes[] = new int[nounSuffixesStrings.length];
-
-    // The verb prefixes.
-    static String[] verbPrefixString = {
-      "", "bI", "bo", "che", "cho", "Da", "DI", "Du", "gho", "HI", "jI", "ju", "lI", "lu", "ma",
-      "mu", "nI", "nu", "pe", "pI", "qa", "re", "Sa", "Su", "tI", "tu", "vI", "wI", "yI"
-    };
-    static String[] verbTypeRUndoString = {
-      // {-Ha'} always occurs immediately after
-      // the verb.
-      "", "Ha'"
-    };
-    static String[] verbType1String = {"", "'egh", "chuq"};
-    static String[] verbType2String = {"", "nIS", "qang", "rup", "beH", "vIp"};
-    static String[] verbType3String = {"", "choH", "qa'"};
-    static String[] verbType4String = {"", "moH"};
-    static String[] verbType5String = {"", "lu'", "laH", "luH", "la'"};
-    static String[] verbType6String = {"", "chu'", "bej", "ba'", "law'"};
-    static String[] verbType7String = {"", "pu'", "ta'", "taH", "lI'"};
-    static String[] verbType8String = {"", "neS"};
-    static String[] verbTypeRRefusal = {
-      // {-Qo'} always occurs last, unless
-      // followed by a type 9 suffix.
-      "", "Qo'"
-    };
-    static String[] verbType9String = {
-      "", "DI'", "chugh", "pa'", "vIS", "mo'", "bogh", "meH", "'a'", "jaj", "wI'", "ghach"
-    };
-    static String[][] verbSuffixesStrings = {
-      verbTypeRUndoString,
-      verbType1String,
-      verbType2String,
-      verbType3String,
-      verbType4String,
-      verbType5String,
-      verbType6String,
-      verbType7String,
-      verbType8String,
-      verbTypeRRefusal,
-      verbType9String
-    };
-    int mVerbPrefix;
-    int mVerbSuffixes[] = new int[verbSuffixesStrings.length];
-
-    static String[] numberDigitString = {
-      // {pagh} is excluded because it should
-      // normally not form part of a number with
-      // modifiers.
-      "", "wa'", "cha'", "wej", "loS", "vagh", "jav", "Soch", "chorgh", "Hut"
-    };
-    static String[] numberModifierString = {
-      "", "maH", "vatlh", "SaD", "SanID", "netlh", "bIp", "'uy'", "Saghan"
-    };
-    int mNumberDigit;
-    int mNumberModifier;
-    String mNumberSuffix;
-    boolean mIsNumberLike;
-
-    // The locations of the true rovers. The value indicates the suffix type they appear after,
-    // so 0 means they are attached directly to the verb (before any type 1 suffix).
-    int mVerbTypeRNegation;
-    int mVerbTypeREmphatic;
-    private static final int ROVER_NOT_YET_FOUND = -1;
-    private static final int IGNORE_THIS_ROVER = -2;
-
-    // True if {-be'} appears before {-qu'} in a verb.
-    boolean roverOrderNegationBeforeEmphatic;
-
-    // Internal information related to processing the complex word candidate.
-    // TODO: There are few complex words which are neither nouns nor verbs, e.g., {batlhHa'},
-    // {paghlogh}, {HochDIch}. Figure out how to deal with them.
-    String mUnparsedPart;
-    int mSuffixLevel;
-    boolean mIsNounCandidate;
-    boolean mIsVerbWithType5NounSuffix;
-    int mHomophoneNumber;
-
-    /**
-     * Constructor
-     *
-     * @param candidate A potential candidate for a complex word.
-     * @param isNounCandidate Set to true if noun, false if verb.
-     */
-    public ComplexWord(String candidate, boolean isNounCandidate) {
-      mUnparsedPart = candidate;
-      mIsNounCandidate = isNounCandidate;
-      mIsVerbWithType5NounSuffix = false;
-      mHomophoneNumber = -1;
-
-      if (mIsNounCandidate) {
-        // Five types of noun suffixes.
-        mSuffixLevel = nounSuffixesStrings.length;
-      } else {
-        // Nine types of verb suffixes.
-        mSuffixLevel = verbSuffixesStrings.length;
-      }
-
-      for (int i = 0; i < mNounSuffixes.length; i++) {
-        mNounSuffixes[i] = 0;
+      if (KlingonLog.isDebugEnabled(Subsystem.ENTRY)) {
+        KlingonLog.d(
+            TAG,
+            "Candidate passed: "
+                + candidate.getEntryName()
+                + candidate.getBracketedPartOfSpeech(/* html */ false));
       }
-
-      mVerbPrefix = 0;
-      for (int i = 0; i < mVerbSuffixes.length; i++) {
-        mVerbSuffixes[i] = 0;
-      }
-
-      // Rovers.
-      mVerbTypeRNegation = ROVER_NOT_YET_FOUND;
-      mVerbTypeREmphatic = ROVER_NOT_YET_FOUND;
-      roverOrderNegationBeforeEmphatic = false;
-
-      // Number parts.
-      mNumberDigit = 0;
-      mNumberModifier = 0;
-      mNumberSuffix = "";
-      mIsNumberLike = false;
-    }
-
-    /**
-     * Copy constructor
-     *
-     * @param unparsedPart The unparsedPart of this complex word.
-     * @param complexWordToCopy
-     */
-    public ComplexWord(String unparsedPart, ComplexWord complexWordToCopy) {
-      mUnparsedPart = unparsedPart;
-      mIsNounCandidate = complexWordToCopy.mIsNounCandidate;
-      mIsVerbWithType5NounSuffix = complexWordToCopy.mIsVerbWithType5NounSuffix;
-      mHomophoneNumber = complexWordToCopy.mHomophoneNumber;
-      mSuffixLevel = complexWordToCopy.mSuffixLevel;
-      mVerbPrefix = complexWordToCopy.mVerbPrefix;
-      for (int i = 0; i < mNounSuffixes.length; i++) {
-        mNounSuffixes[i] = complexWordToCopy.mNounSuffixes[i];
-      }
-      for (int j = 0; j < mVerbSuffixes.length; j++) {
-        mVerbSuffixes[j] = complexWordToCopy.mVerbSuffixes[j];
-      }
-      mVerbTypeRNegation = complexWordToCopy.mVerbTypeRNegation;
-      mVerbTypeREmphatic = complexWordToCopy.mVerbTypeREmphatic;
-      roverOrderNegationBeforeEmphatic = complexWordToCopy.roverOrderNegationBeforeEmphatic;
-      mNumberDigit = complexWordToCopy.mNumberDigit;
-      mNumberModifier = complexWordToCopy.mNumberModifier;
-      mNumberSuffix = complexWordToCopy.mNumberSuffix;
-      mIsNumberLike = complexWordToCopy.mIsNumberLike;
-    }
-
-    public void setHomophoneNumber(int number) {
-      // Used for filtering entries. If two entries have homophones, they must each have a
-      // unique number.
-      mHomophoneNumber = number;
-    }
-
-    public ComplexWord stripPrefix() {
-      if (mIsNounCandidate) {
-        return null;
-      }
-
-      // Count from 1, since index 0 corresponds to no prefix.
-      for (int i = 1; i < verbPrefixString.length; i++) {
-        // Log.d(TAG, "checking prefix: " + verbPrefixString[i]);
-        if (mUnparsedPart.startsWith(verbPrefixString[i])) {
-          String partWithPrefixRemoved = mUnparsedPart.substring(verbPrefixString[i].length());
-          // Log.d(TAG, "found prefix: " + verbPrefixString[i] + ", remainder: " +
-          // partWithPrefixRemoved);
-          if (!partWithPrefixRemoved.equals("")) {
-            ComplexWord anotherComplexWord = new ComplexWord(partWithPrefixRemoved, this);
-            anotherComplexWord.mVerbPrefix = i;
-            return anotherComplexWord;
-          }
-        }
-      }
-      return null;
-    }
-
-    // Attempt to strip off the rovers.
-    private ComplexWord stripRovers() {
-      // There are a few entries in the database where the {-be'} and {-qu'} are included, e.g.,
-      // {motlhbe'} and {Say'qu'}. The logic here allows, e.g., {bImotlhbe'be'}, but we don't care
-      // since this is relatively rare. Note that {qu'be'} is itself a word.
-      if (mVerbTypeRNegation == ROVER_NOT_YET_FOUND
-          && mUnparsedPart.endsWith("be'")
-          && !mUnparsedPart.equals("be'")) {
-        String partWithRoversRemoved = mUnparsedPart.substring(0, mUnparsedPart.length() - 3);
-        ComplexWord anotherComplexWord = new ComplexWord(partWithRoversRemoved, this);
-        mVerbTypeRNegation = IGNORE_THIS_ROVER;
-        anotherComplexWord.mVerbTypeRNegation = mSuffixLevel - 1;
-        anotherComplexWord.mSuffixLevel = mSuffixLevel;
-        if (anotherComplexWord.mVerbTypeREmphatic == mSuffixLevel - 1) {
-          // {-be'qu'}
-          anotherComplexWord.roverOrderNegationBeforeEmphatic = true;
-        }
-        if (BuildConfig.DEBUG) {
-          Log.d(TAG, "found rover: -be'");
-        }
-        return anotherComplexWord;
-      } else if (mVerbTypeREmphatic == ROVER_NOT_YET_FOUND
-          && mUnparsedPart.endsWith("qu'")
-          && !mUnparsedPart.equals("qu'")) {
-        String partWithRoversRemoved = mUnparsedPart.substring(0, mUnparsedPart.length() - 3);
-        ComplexWord anotherComplexWord = new ComplexWord(partWithRoversRemoved, this);
-        mVerbTypeREmphatic = IGNORE_THIS_ROVER;
-        anotherComplexWord.mVerbTypeREmphatic = mSuffixLevel - 1;
-        anotherComplexWord.mSuffixLevel = mSuffixLevel;
-        if (anotherComplexWord.mVerbTypeRNegation == mSuffixLevel - 1) {
-          // {-qu'be'}
-          anotherComplexWord.roverOrderNegationBeforeEmphatic = false;
-        }
-        if (BuildConfig.DEBUG) {
-          Log.d(TAG, "found rover: -qu'");
-        }
-        return anotherComplexWord;
-      }
-      return null;
-    }
-
-    // Attempt to strip off one level of suffix from self, if this results in a branch return the
-    // branch as a new complex word.
-    // At the end of this call, this complex word will have have decreased one suffix level.
-    public ComplexWord stripSuffixAndBranch() {
-      if (mSuffixLevel == 0) {
-        // This should never be reached.
-        if (BuildConfig.DEBUG) {
-          Log.e(TAG, "stripSuffixAndBranch: mSuffixLevel == 0");
-        }
-        return null;
-      }
-
-      // TODO: Refactor this to merge the two subtractions together.
-      String[] suffixes;
-      if (mIsNounCandidate) {
-        // The types are 1-indexed, but the array is 0-index, so decrement it here.
-        mSuffixLevel--;
-        suffixes = nounSuffixesStrings[mSuffixLevel];
-      } else {
-        ComplexWord anotherComplexWord = stripRovers();
-        String suffixType;
-        if (anotherComplexWord != null) {
-          if (BuildConfig.DEBUG) {
-            // Verb suffix level doesn't correspond exactly: {-Ha'}, types 1 through 8, {-Qo'}, then
-            // 9.
-            if (mSuffixLevel == 1) {
-              suffixType = "-Ha'";
-            } else if (mSuffixLevel == 10) {
-              suffixType = "-Qo'";
-            } else if (mSuffixLevel == 11) {
-              suffixType = "type 9";
-            } else {
-              suffixType = "type " + (mSuffixLevel - 1);
-            }
-            Log.d(TAG, "rover found while processing verb suffix: " + suffixType);
-          }
-          return anotherComplexWord;
-        }
-        // The types are 1-indexed, but the array is 0-index, so decrement it here.
-        mSuffixLevel--;
-        suffixes = verbSuffixesStrings[mSuffixLevel];
-      }
-
-      // Count from 1, since index 0 corresponds to no suffix of this type.
-      for (int i = 1; i < suffixes.length; i++) {
-        // Log.d(TAG, "checking suffix: " + suffixes[i]);
-        if (mUnparsedPart.endsWith(suffixes[i])) {
-          // Found a suffix of the current type, strip it.
-          String partWithSuffixRemoved =
-              mUnparsedPart.substring(0, mUnparsedPart.length() - suffixes[i].length());
-          if (BuildConfig.DEBUG) {
-            Log.d(TAG, "found suffix: " + suffixes[i] + ", remainder: " + partWithSuffixRemoved);
-          }
-          // A suffix was successfully stripped if there's something left. Also, if the suffix had
-          // been {-oy}, check that the noun doesn't end in a vowel. The suffix {-oy} preceded by a
-          // vowel is handled separately in maybeStripApostropheOy.
-          if (!partWithSuffixRemoved.equals("") &&
-              (suffixes[i] != "oy" || !partWithSuffixRemoved.matches(".*[aeIou]"))) {
-            ComplexWord anotherComplexWord = new ComplexWord(partWithSuffixRemoved, this);
-            // mSuffixLevel already decremented above.
-            anotherComplexWord.mSuffixLevel = mSuffixLevel;
-            if (mIsNounCandidate) {
-              anotherComplexWord.mNounSuffixes[anotherComplexWord.mSuffixLevel] = i;
-            } else {
-              anotherComplexWord.mVerbSuffixes[anotherComplexWord.mSuffixLevel] = i;
-            }
-            return anotherComplexWord;
-          }
-        }
-      }
-      return null;
-    }
-
-    // Special-case processing for the suffix {-oy} when preceded by a vowel.
-    public ComplexWord maybeStripApostropheOy() {
-        if (mSuffixLevel == 1 && mIsNounCandidate && mUnparsedPart.endsWith("'oy")) {
-            // Remove "'oy" from the end.
-            String partWithSuffixRemoved = mUnparsedPart.substring(0, mUnparsedPart.length() - 3);
-            if (partWithSuffixRemoved.matches(".*[aeIou]")) {
-                ComplexWord anotherComplexWord = new ComplexWord(partWithSuffixRemoved, this);
-                anotherComplexWord.mSuffixLevel = 0;  // No more suffixes.
-                anotherComplexWord.mNounSuffixes[0] = 3;  // Index of "oy".
-                return anotherComplexWord;
-             }
-        }
-        return null;
-    }
-
-    private boolean hasNoMoreSuffixes() {
-      return mSuffixLevel == 0;
-    }
-
-    // Returns true if this is not a complex word after all.
-    public boolean isBareWord() {
-      if (mVerbPrefix != 0) {
-        // A verb prefix was found.
-        return false;
-      }
-      if (mVerbTypeRNegation >= 0 || mVerbTypeREmphatic >= 0) {
-        // Note that -1 indicates ROVER_NOT_YET_FOUND and -2 indicates IGNORE_THIS_ROVER, so a found
-        // rover has position greater than or equal to 0.
-        // A rover was found.
-        return false;
-      }
-      for (int i = 0; i < mNounSuffixes.length; i++) {
-        if (mNounSuffixes[i] != 0) {
-          // A noun suffix was found.
-          return false;
-        }
-      }
-      for (int j = 0; j < mVerbSuffixes.length; j++) {
-        if (mVerbSuffixes[j] != 0) {
-          // A verb suffix was found.
-          return false;
-        }
-      }
-      // None found.
       return true;
     }
-
-    public boolean isNumberLike() {
-      // A complex word is number-like if it's a noun and it's marked as such.
-      return mIsNounCandidate && mIsNumberLike;
-    }
-
-    private boolean noNounSuffixesFound() {
-      for (int i = 0; i < mNounSuffixes.length; i++) {
-        if (mNounSuffixes[i] != 0) {
-          // A noun suffix was found.
-          return false;
-        }
-      }
-      // None found.
-      return true;
-    }
-
-    @Override
-    public String toString() {
-      String s = mUnparsedPart;
-      if (mIsNounCandidate) {
-        s += " (n)";
-        for (int i = 0; i < mNounSuffixes.length; i++) {
-          s += " " + mNounSuffixes[i];
-        }
-      } else {
-        // TODO: Handle negation and emphatic rovers.
-        s += " (v) ";
-        for (int i = 0; i < mVerbSuffixes.length; i++) {
-          s += " " + mVerbSuffixes[i];
-        }
-      }
-      return s;
-    }
-
-    // Used for telling stems of complex words apart.
-    public String filter(boolean isLenient) {
-      if (mIsVerbWithType5NounSuffix) {
-        // If this is a candidate for a verb with a type 5 noun suffix attached, mark it so that
-        // it's treated specially. In particular, it must be a verb which is not transitive, and it
-        // cannot be a pronoun acting as a verb.
-        return mUnparsedPart + ":v:n5";
-      } else if (isLenient && isBareWord()) {
-        // If isLenient is true, then also match non-nouns and non-verbs
-        // if there are no prefixes or suffixes.
-        return mUnparsedPart;
-      }
-      return mUnparsedPart
-          + ":"
-          + (mIsNounCandidate ? "n" : "v")
-          + (mHomophoneNumber != -1 ? ":" + mHomophoneNumber : "");
-    }
-
-    public String stem() {
-      return mUnparsedPart;
-    }
-
-    // Get the entry name for the verb prefix.
-    public String getVerbPrefix() {
-      return verbPrefixString[mVerbPrefix] + (mVerbPrefix == 0 ? "" : "-");
-    }
-
-    // Get the entry names for the verb suffixes.
-    public String[] getVerbSuffixes() {
-      String[] suffixes = new String[mVerbSuffixes.length];
-      for (int i = 0; i < mVerbSuffixes.length; i++) {
-        suffixes[i] = (mVerbSuffixes[i] == 0 ? "" : "-") + verbSuffixesStrings[i][mVerbSuffixes[i]];
-      }
-      return suffixes;
-    }
-
-    // Get the entry names for the noun suffixes.
-    public String[] getNounSuffixes() {
-      String[] suffixes = new String[mNounSuffixes.length];
-      for (int i = 0; i < mNounSuffixes.length; i++) {
-        suffixes[i] = (mNounSuffixes[i] == 0 ? "" : "-") + nounSuffixesStrings[i][mNounSuffixes[i]];
-      }
-      return suffixes;
-    }
-
-    // Get the root for a number.
-    public String getNumberRoot() {
-      if (mNumberDigit != 0) {
-        // This is an actual digit from {wa'} to {Hut}.
-        return numberDigitString[mNumberDigit];
-      }
-
-      String numberRoot = "";
-      if (mUnparsedPart.startsWith("pagh")) {
-        numberRoot = "pagh";
-      } else if (mUnparsedPart.startsWith("Hoch")) {
-        numberRoot = "Hoch";
-      } else if (mUnparsedPart.startsWith("'ar")) {
-        // Note that this will cause {'arDIch} to be accepted as a word.
-        numberRoot = "'ar";
-      }
-      return numberRoot;
-    }
-
-    // Get the annotation for the root for a number.
-    public String getNumberRootAnnotation() {
-      if (mNumberDigit != 0) {
-        return "n:num";
-      }
-
-      String numberRoot = "";
-      if (mUnparsedPart.startsWith("pagh")) {
-        numberRoot = "n:num";
-      } else if (mUnparsedPart.startsWith("Hoch")) {
-        // {Hoch} is a noun but not a number.
-        numberRoot = "n";
-      } else if (mUnparsedPart.startsWith("'ar")) {
-        // {'ar} is a question word.
-        numberRoot = "ques";
-      } else {
-        // This should never happen.
-        if (BuildConfig.DEBUG) {
-          Log.e(TAG, "getNumberRootAnnotation: else case reached");
-        }
-      }
-      return numberRoot;
-    }
-
-    // Get the number modifier for a number.
-    public String getNumberModifier() {
-      return numberModifierString[mNumberModifier];
-    }
-
-    // Get the number suffix ("DIch" or "logh") for a number.
-    public String getNumberSuffix() {
-      return mNumberSuffix;
-    }
-
-    // Get the rovers at a given suffix level.
-    public String[] getRovers(int suffixLevel) {
-      final String[] negationThenEmphatic = {"-be'", "-qu'"};
-      final String[] emphaticThenNegation = {"-qu'", "-be'"};
-      final String[] negationOnly = {"-be'"};
-      final String[] emphaticOnly = {"-qu'"};
-      final String[] none = {};
-      if (mVerbTypeRNegation == suffixLevel && mVerbTypeREmphatic == suffixLevel) {
-        return (roverOrderNegationBeforeEmphatic ? negationThenEmphatic : emphaticThenNegation);
-      } else if (mVerbTypeRNegation == suffixLevel) {
-        return negationOnly;
-      } else if (mVerbTypeREmphatic == suffixLevel) {
-        return emphaticOnly;
-      }
-      return none;
-    }
-
-    // For display.
-    public String getVerbPrefixString() {
-      return verbPrefixString[mVerbPrefix] + (mVerbPrefix == 0 ? "" : "- + ");
-    }
-
-    // For display.
-    public String getSuffixesString() {
-      String suffixesString = "";
-      // Verb suffixes have to go first, since some can convert a verb to a noun.
-      for (int i = 0; i < mVerbSuffixes.length; i++) {
-        String[] suffixes = verbSuffixesStrings[i];
-        if (mVerbSuffixes[i] != 0) {
-          suffixesString += " + -";
-          suffixesString += suffixes[mVerbSuffixes[i]];
-        }
-        if (mVerbTypeRNegation == i && mVerbTypeREmphatic == i) {
-          if (roverOrderNegationBeforeEmphatic) {
-            suffixesString += " + -be' + qu'";
-          } else {
-            suffixesString += " + -qu' + be'";
-          }
-        } else if (mVerbTypeRNegation == i) {
-          suffixesString += " + -be'";
-        } else if (mVerbTypeREmphatic == i) {
-          suffixesString += " + -qu'";
-        }
-      }
-      // Noun suffixes.
-      for (int j = 0; j < mNounSuffixes.length; j++) {
-        String[] suffixes = nounSuffixesStrings[j];
-        if (mNounSuffixes[j] != 0) {
-          suffixesString += " + -";
-          suffixesString += suffixes[mNounSuffixes[j]];
-        }
-      }
-      return suffixesString;
-    }
-
-    public ComplexWord getAdjectivalVerbWithType5NounSuffix() {
-      // Note that even if there is a rover, which is legal on a verb acting adjectivally,
-      // it's hidden by the type 5 noun suffix and hence at this point we consider the
-      // word a bare word.
-      if (mIsNounCandidate || !isBareWord()) {
-        // This should never be reached.
-        if (BuildConfig.DEBUG) {
-          Log.e(TAG, "getAdjectivalVerbWithType5NounSuffix: is noun candidate or is not bare word");
-        }
-        return null;
-      }
-
-      // Count from 1 since 0 corresponds to no such suffix.
-      // Note that {-mo'} is both a type 5 noun suffix and a type 9 verb suffix.
-      for (int i = 1; i < nounType5String.length; i++) {
-        if (mUnparsedPart.endsWith(nounType5String[i])) {
-          String adjectivalVerb =
-              mUnparsedPart.substring(0, mUnparsedPart.length() - nounType5String[i].length());
-          ComplexWord adjectivalVerbWithType5NounSuffix =
-              new ComplexWord(adjectivalVerb, /* isNounCandidate */ false);
-
-          // Note that type 5 corresponds to index 4 since the array is 0-indexed.
-          adjectivalVerbWithType5NounSuffix.mNounSuffixes[4] = i;
-          adjectivalVerbWithType5NounSuffix.mIsVerbWithType5NounSuffix = true;
-
-          // Done processing.
-          adjectivalVerbWithType5NounSuffix.mSuffixLevel = 0;
-
-          // Since none of the type 5 noun suffixes are a prefix of another, it's okay to return
-          // here.
-          return adjectivalVerbWithType5NounSuffix;
-        }
-      }
-      return null;
-    }
-
-    public ComplexWord getVerbRootIfNoun() {
-      if (!mIsNounCandidate || !hasNoMoreSuffixes()) {
-        // Should never be reached if there are still suffixes remaining.
-        return null;
-      }
-      // Log.d(TAG, "getVerbRootIfNoun on: " + mUnparsedPart);
-
-      // If the unparsed part ends in a suffix that nominalises a verb ({-wI'}, {-ghach}), analysize
-      // it further.
-      // Do this only if there were noun suffixes, since the bare noun will be analysed as a verb
-      // anyway.
-      if (!noNounSuffixesFound()
-          && (mUnparsedPart.endsWith("ghach") || mUnparsedPart.endsWith("wI'"))) {
-        // Log.d(TAG, "Creating verb from: " + mUnparsedPart);
-        ComplexWord complexVerb = new ComplexWord(mUnparsedPart, /* complexWordToCopy */ this);
-        complexVerb.mIsNounCandidate = false;
-        complexVerb.mSuffixLevel = complexVerb.mVerbSuffixes.length;
-        return complexVerb;
-      }
-      return null;
-    }
-
-    public void attachPrefix(String prefix) {
-      if (mIsNounCandidate) {
-        return;
-      }
-      for (int i = 1; i < verbPrefixString.length; i++) {
-        if (prefix.equals(verbPrefixString[i] + "-")) {
-          mVerbPrefix = i;
-          break;
-        }
-      }
-    }
-
-    // Attaches a suffix. Returns the level of the suffix attached.
-    public int attachSuffix(String suffix, boolean isNounSuffix, int verbSuffixLevel) {
-      // Note that when a complex word noun is formed from a verb with {-wI'} or {-ghach}, its
-      // stem is considered to be a verb. Furthermore, an adjectival verb can take a type 5
-      // noun suffix. Noun suffixes can thus be attached to verbs. The isNounSuffix variable
-      // here indicates the type of the suffix, not the type of the stem.
-
-      // Special handling of {-DIch} and {-logh}.
-      if (suffix.equals("-DIch") || suffix.equals("-logh")) {
-        mIsNumberLike = true;
-        mNumberSuffix = suffix.substring(1); // strip initial "-"
-        return verbSuffixLevel;
-      }
-
-      if (isNounSuffix) {
-        // This is a noun suffix. Iterate over noun suffix types.
-        for (int i = 0; i < nounSuffixesStrings.length; i++) {
-          // Count from 1, since 0 corresponds to no suffix of that type.
-          for (int j = 1; j < nounSuffixesStrings[i].length; j++) {
-            if (suffix.equals("-" + nounSuffixesStrings[i][j])) {
-              mNounSuffixes[i] = j;
-
-              // The verb suffix level hasn't changed.
-              return verbSuffixLevel;
-            }
-          }
-        }
-      } else {
-        // This is a verb suffix. Check if this is a true rover.
-        if (suffix.equals("-be'")) {
-          mVerbTypeRNegation = verbSuffixLevel;
-          if (mVerbTypeREmphatic == verbSuffixLevel) {
-            // {-qu'be'}
-            roverOrderNegationBeforeEmphatic = false;
-          }
-          return verbSuffixLevel;
-        } else if (suffix.equals("-qu'")) {
-          mVerbTypeREmphatic = verbSuffixLevel;
-          if (mVerbTypeRNegation == verbSuffixLevel) {
-            // {-be'qu'}
-            roverOrderNegationBeforeEmphatic = true;
-          }
-          return verbSuffixLevel;
-        }
-        // Iterate over verb suffix types.
-        for (int i = 0; i < verbSuffixesStrings.length; i++) {
-          // Count from 1, since 0 corresponds to no suffix of that type.
-          for (int j = 1; j < verbSuffixesStrings[i].length; j++) {
-            if (suffix.equals("-" + verbSuffixesStrings[i][j])) {
-              mVerbSuffixes[i] = j;
-
-              // The verb suffix level has been changed.
-              return i;
-            }
-          }
-        }
-      }
-      // This should never be reached.
-      Log.e(TAG, "Unrecognised suffix: " + suffix);
-      return verbSuffixLevel;
-    }
-
-    // Add this complex word to the list.
-    private void addSelf(ArrayList<ComplexWord> complexWordsList) {
-      if (!hasNoMoreSuffixes()) {
-        // This point should never be reached.
-        Log.e(
-            TAG, "addSelf called on " + mUnparsedPart + " with suffix level " + mSuffixLevel + ".");
-        return;
-      }
-      Log.d(TAG, "Found: " + this.toString());
-
-      // Determine if this is a number. Assume that a number is of the form
-      // "digit[modifier][suffix]",
-      // where digit is {wa'}, etc., modifier is a power of ten such as {maH}, and suffix is one of
-      // {-DIch} or {-logh}.
-      if (mIsNounCandidate) {
-
-        // Check for {-DIch} or {-logh}.
-        String numberRoot = mUnparsedPart;
-        if (mUnparsedPart.endsWith("DIch") || (isBareWord() && mUnparsedPart.endsWith("logh"))) {
-          int rootLength = mUnparsedPart.length() - 4;
-          numberRoot = mUnparsedPart.substring(0, rootLength);
-          mNumberSuffix = mUnparsedPart.substring(rootLength);
-        }
-
-        // Check for a "power of ten" modifier, such as {maH}.
-        // Count from 1, since 0 corresponds to no modifier.
-        for (int i = 1; i < numberModifierString.length; i++) {
-          if (numberRoot.endsWith(numberModifierString[i])) {
-            mNumberModifier = i;
-            numberRoot =
-                numberRoot.substring(0, numberRoot.length() - numberModifierString[i].length());
-            break;
-          }
-        }
-
-        // Look for a digit from {wa'} to {Hut}. {pagh} is excluded for now.
-        // Count from 1, since 0 corresponds to no digit.
-        for (int j = 1; j < numberDigitString.length; j++) {
-          if (numberRoot.equals(numberDigitString[j])) {
-            // Found a digit, so this is a number.
-            // Note that we leave mUnparsedPart alone, since we still want to add, e.g., {wa'DIch}
-            // as a result.
-            mNumberDigit = j;
-            mIsNumberLike = true;
-            break;
-          }
-        }
-        // If there is no modifier or suffix, then ignore this as the bare
-        // digit word will already be added.
-        if (mNumberModifier == 0 && mNumberSuffix.equals("")) {
-          mNumberDigit = 0;
-          mIsNumberLike = false;
-        }
-
-        // Finally, treat these words specially: {'arlogh}, {paghlogh}, {Hochlogh}, {paghDIch},
-        // {HochDIch}.
-        if (!mNumberSuffix.equals("")
-            && (numberRoot.equals("pagh")
-                || numberRoot.equals("Hoch")
-                || numberRoot.equals("'ar"))) {
-          // We don't set mUnparsedPart to the root, because we still want the entire
-          // word (e.g., {paghlogh}) to be added to the results if it is in the database.
-          mIsNumberLike = true;
-        }
-      }
-
-      // Add this complex word.
-      if (BuildConfig.DEBUG) {
-        Log.d(TAG, "adding word to complex words list: " + mUnparsedPart);
-      }
-      complexWordsList.add(this);
-    }
-  }
-
-  // Attempt to parse this complex word, and if successful, add it to the given set.
-  public static void parseComplexWord(
-      String candidate, boolean isNounCandidate, ArrayList<ComplexWord> complexWordsList) {
-    ComplexWord complexWord = new ComplexWord(candidate, isNounCandidate);
-    if (BuildConfig.DEBUG) {
-      Log.d(TAG, "\n\n* parsing = " + candidate + " (" + (isNounCandidate ? "n" : "v") + ") *");
-    }
-    if (!isNounCandidate) {
-      // Check prefix.
-      ComplexWord strippedPrefixComplexWord = complexWord.stripPrefix();
-      if (strippedPrefixComplexWord != null) {
-        // Branch off a word with the prefix stripped.
-        stripSuffix(strippedPrefixComplexWord, complexWordsList);
-      }
-    }
-    // Check suffixes.
-    stripSuffix(complexWord, complexWordsList);
-  }
-
-  // Helper method to strip a level of suffix from a word.
-  private static void stripSuffix(
-      ComplexWord complexWord, ArrayList<ComplexWord> complexWordsList) {
-    if (complexWord.hasNoMoreSuffixes()) {
-      if (BuildConfig.DEBUG) {
-        Log.d(TAG, "attempting to add to complex words list: " + complexWord.mUnparsedPart);
-      }
-      complexWord.addSelf(complexWordsList);
-
-      if (complexWord.mIsNounCandidate) {
-        // Attempt to get the verb root of this word if it's a noun.
-        complexWord = complexWord.getVerbRootIfNoun();
-      } else if (complexWord.isBareWord()) {
-        // Check for type 5 noun suffix on a possibly adjectival verb.
-        complexWord = complexWord.getAdjectivalVerbWithType5NounSuffix();
-        if (complexWord != null) {
-          String adjectivalVerb = complexWord.stem();
-          if (adjectivalVerb.endsWith("be'")
-              || adjectivalVerb.endsWith("qu'")
-              || adjectivalVerb.endsWith("Ha'")) {
-            String adjectivalVerbWithoutRover =
-                adjectivalVerb.substring(0, adjectivalVerb.length() - 3);
-            // Adjectival verbs may end with a rover (except for {-Qo'}), so check for that here.
-            ComplexWord anotherComplexWord =
-                new ComplexWord(adjectivalVerbWithoutRover, complexWord);
-            if (adjectivalVerb.endsWith("be'")) {
-              anotherComplexWord.mVerbTypeRNegation = 0;
-            } else if (adjectivalVerb.endsWith("qu'")) {
-              anotherComplexWord.mVerbTypeREmphatic = 0;
-            } else if (adjectivalVerb.endsWith("Ha'")) {
-              anotherComplexWord.mVerbSuffixes[0] = 1;
-            }
-            stripSuffix(anotherComplexWord, complexWordsList);
-          }
-        }
-      } else {
-        // We're done.
-        complexWord = null;
-      }
-
-      if (complexWord == null) {
-        // Not a noun or the noun has no further verb root, so we're done with this complex word.
-        return;
-      }
-      // Note that at this point we continue with a newly created complex word.
-    }
-
-    if (BuildConfig.DEBUG) {
-      String suffixType;
-      if (complexWord.mIsNounCandidate) {
-        // Noun suffix level corresponds to the suffix type.
-        suffixType = "type " + complexWord.mSuffixLevel;
-      } else {
-        // Verb suffix level doesn't correspond exactly: {-Ha'}, types 1 through 8, {-Qo'}, then 9.
-        if (complexWord.mSuffixLevel == 1) {
-          suffixType = "-Ha'";
-        } else if (complexWord.mSuffixLevel == 10) {
-          suffixType = "-Qo'";
-        } else if (complexWord.mSuffixLevel == 11) {
-          suffixType = "type 9";
-        } else {
-          suffixType = "type " + (complexWord.mSuffixLevel - 1);
-        }
-      }
-      Log.d(
-          TAG,
-          "stripSuffix called on {"
-              + complexWord.mUnparsedPart
-              + "} for "
-              + (complexWord.mIsNounCandidate ? "noun" : "verb")
-              + " suffix: "
-              + suffixType);
-    }
-
-    // Special check for the suffix {-oy} attached to a noun ending in a vowel. This needs to be
-    // done additionally to the regular check, since it may be possible to parse a word either way,
-    // e.g., {ghu'oy} could be {ghu} + {-'oy} or {ghu'} + {-oy}.
-    ComplexWord apostropheOyComplexWord = complexWord.maybeStripApostropheOy();
-    if (apostropheOyComplexWord != null) {
-        // "'oy" was stripped, branch using it as a new candidate.
-        stripSuffix(apostropheOyComplexWord, complexWordsList);
-    }
-
-    // Attempt to strip one level of suffix.
-    ComplexWord strippedSuffixComplexWord = complexWord.stripSuffixAndBranch();
-    if (strippedSuffixComplexWord != null) {
-      // A suffix of the current type was found, branch using it as a new candidate.
-      stripSuffix(strippedSuffixComplexWord, complexWordsList);
-    }
-    // Tail recurse to the next level of suffix. Note that the suffix level is decremented in
-    // complexWord.stripSuffixAndBranch() above.
-    stripSuffix(complexWord, complexWordsList);
   }
 }
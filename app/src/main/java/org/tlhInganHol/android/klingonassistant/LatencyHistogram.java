@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in a fixed amount of memory, bucketed in the manner of HdrHistogram.
+ * Latencies are recorded in microseconds. Those under SUB_BUCKET_COUNT microseconds are recorded
+ * exactly, and larger ones are bucketed by their highest bit, with each power of two split into
+ * SUB_BUCKET_COUNT / 2 linear sub-buckets, so that every latency is recorded to within about 6%.
+ * Latencies beyond MAX_MICROS are recorded as MAX_MICROS.
+ *
+ * <p>Recording doesn't allocate or lock, so it can be done from several threads on the search
+ * path. Percentiles read while latencies are being recorded may be slightly inconsistent.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+  // About 67 seconds. Nothing on the search path should take anywhere near as long.
+  private static final int MAX_BIT = 26;
+  private static final long MAX_MICROS = (1L << MAX_BIT) - 1;
+
+  private final AtomicLongArray mCounts =
+      new AtomicLongArray(getBucketIndex(MAX_MICROS) + 1);
+  private final AtomicLong mTotalCount = new AtomicLong();
+  private final AtomicLong mTotalMicros = new AtomicLong();
+  private final AtomicLong mMaxMicros = new AtomicLong();
+
+  /** Records a latency, given in nanoseconds. */
+  public void recordNanos(long nanos) {
+    long micros = Math.min(Math.max(nanos / 1000, 0), MAX_MICROS);
+    mCounts.incrementAndGet(getBucketIndex(micros));
+    mTotalCount.incrementAndGet();
+    mTotalMicros.addAndGet(micros);
+    long max = mMaxMicros.get();
+    while (micros > max && !mMaxMicros.compareAndSet(max, micros)) {
+      max = mMaxMicros.get();
+    }
+  }
+
+  /** Returns the number of latencies recorded. */
+  public long getCount() {
+    return mTotalCount.get();
+  }
+
+  public long getMaxMicros() {
+    return mMaxMicros.get();
+  }
+
+  public long getMeanMicros() {
+    long count = mTotalCount.get();
+    return count == 0 ? 0 : mTotalMicros.get() / count;
+  }
+
+  /**
+   * Returns the latency, in microseconds, which the given percentage (0 to 100) of the recorded
+   * latencies don't exceed. This is the highest latency of the bucket the percentile falls in, so
+   * it may be slightly higher than the actual percentile. Returns 0 if nothing has been recorded.
+   */
+  public long getPercentileMicros(double percentile) {
+    long count = mTotalCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+    long seen = 0;
+    for (int i = 0; i < mCounts.length(); i++) {
+      seen += mCounts.get(i);
+      if (seen >= rank) {
+        return Math.min(getBucketHighestValue(i), mMaxMicros.get());
+      }
+    }
+    return mMaxMicros.get();
+  }
+
+  /** Discards all the recorded latencies. */
+  public void reset() {
+    for (int i = 0; i < mCounts.length(); i++) {
+      mCounts.set(i, 0);
+    }
+    mTotalCount.set(0);
+    mTotalMicros.set(0);
+    mMaxMicros.set(0);
+  }
+
+  // Values below SUB_BUCKET_COUNT have a bucket each. Above that, a value whose highest bit is
+  // SUB_BUCKET_BITS - 1 + shift is shifted right by shift, which leaves it in the upper half of the
+  // sub-buckets, and each shift has its own SUB_BUCKET_HALF_COUNT buckets.
+  private static int getBucketIndex(long micros) {
+    int highestBit = 63 - Long.numberOfLeadingZeros(micros | 1);
+    int shift = Math.max(highestBit - (SUB_BUCKET_BITS - 1), 0);
+    return shift * SUB_BUCKET_HALF_COUNT + (int) (micros >> shift);
+  }
+
+  private static long getBucketHighestValue(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = (index - SUB_BUCKET_HALF_COUNT) / SUB_BUCKET_HALF_COUNT;
+    long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
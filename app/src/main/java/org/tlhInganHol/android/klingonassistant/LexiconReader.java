@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the binary lexicon written by write_lexicon.py, which holds the name, id and part of speech
+ * of every entry in the bundled database. The lexicon is memory-mapped, so opening it costs
+ * nothing up front, and entries are looked up by binary search over the mapped records. Lookups
+ * compare names directly against the mapped UTF-8 bytes, so they allocate nothing; only
+ * getEntryName creates a string.
+ *
+ * <p>Records are indexed from 0 in the order of their names. All entries with the same name, or
+ * with names starting with the same prefix, have consecutive indices. Names are compared byte for
+ * byte, since case distinguishes Klingon letters (e.g., {q} and {Q}).
+ *
+ * <p>Reads only use absolute positions, so a reader can be used by several threads at once. This
+ * class doesn't depend on Android, so it can be tested on the development machine.
+ */
+public class LexiconReader {
+  // The layout of the lexicon. These must be kept in sync with write_lexicon.py.
+  private static final int MAGIC = 0x4B4C4558; // "KLEX"
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_LENGTH = 7 * 4;
+  private static final int RECORD_LENGTH = 4 * 4;
+  private static final int ID_ENTRY_LENGTH = 2 * 4;
+
+  // The fields of a record.
+  private static final int RECORD_ID = 0;
+  private static final int RECORD_NAME_OFFSET = 4;
+  private static final int RECORD_NAME_LENGTH = 8;
+  private static final int RECORD_FLAGS = 12;
+
+  /** The bits of the flags which hold the base part of speech. */
+  public static final int FLAGS_BASE_PART_OF_SPEECH_MASK = 0xf;
+
+  // The base parts of speech, in the order of their codes.
+  public static final int BASE_PART_OF_SPEECH_NOUN = 0;
+  public static final int BASE_PART_OF_SPEECH_VERB = 1;
+  public static final int BASE_PART_OF_SPEECH_ADVERBIAL = 2;
+  public static final int BASE_PART_OF_SPEECH_CONJUNCTION = 3;
+  public static final int BASE_PART_OF_SPEECH_QUESTION = 4;
+  public static final int BASE_PART_OF_SPEECH_SENTENCE = 5;
+  public static final int BASE_PART_OF_SPEECH_EXCLAMATION = 6;
+  public static final int BASE_PART_OF_SPEECH_SOURCE = 7;
+  public static final int BASE_PART_OF_SPEECH_URL = 8;
+  public static final int BASE_PART_OF_SPEECH_UNKNOWN = 9;
+
+  /** The bits of the flags which hold the homophone number, or 0 if there is none. */
+  public static final int FLAGS_HOMOPHONE_MASK = 0xf0;
+
+  public static final int FLAGS_HOMOPHONE_SHIFT = 4;
+
+  // Attributes of the part of speech.
+  public static final int FLAG_HYPOTHETICAL = 1 << 8;
+  public static final int FLAG_EXTENDED_CANON = 1 << 9;
+  public static final int FLAG_ALTERNATIVE_SPELLING = 1 << 10;
+  public static final int FLAG_ARCHAIC = 1 << 11;
+  public static final int FLAG_SLANG = 1 << 12;
+  public static final int FLAG_REGIONAL = 1 << 13;
+  public static final int FLAG_FICTIONAL = 1 << 14;
+
+  private final ByteBuffer mBuffer;
+  private final int mEntryCount;
+  private final int mRecordsOffset;
+  private final int mIdsOffset;
+  private final int mHeapOffset;
+
+  private LexiconReader(ByteBuffer buffer) throws IOException {
+    mBuffer = buffer;
+    if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a lexicon.");
+    }
+    if (buffer.getInt(4) != FORMAT_VERSION) {
+      throw new IOException("Unsupported lexicon format " + buffer.getInt(4) + ".");
+    }
+    mEntryCount = buffer.getInt(8);
+    mRecordsOffset = buffer.getInt(12);
+    mIdsOffset = buffer.getInt(16);
+    mHeapOffset = buffer.getInt(20);
+    int heapLength = buffer.getInt(24);
+    if (mEntryCount < 0
+        || mRecordsOffset < HEADER_LENGTH
+        || (long) mRecordsOffset + (long) mEntryCount * RECORD_LENGTH > mIdsOffset
+        || (long) mIdsOffset + (long) mEntryCount * ID_ENTRY_LENGTH > mHeapOffset
+        || (long) mHeapOffset + heapLength > buffer.capacity()) {
+      throw new IOException("Truncated lexicon.");
+    }
+  }
+
+  /**
+   * Maps a lexicon from a region of a file, e.g., an uncompressed asset inside the APK. The mapping
+   * stays valid after the channel is closed.
+   */
+  public static LexiconReader map(FileChannel channel, long offset, long length)
+      throws IOException {
+    return new LexiconReader(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+  }
+
+  /** Reads a lexicon from a buffer, e.g., one holding a lexicon which couldn't be mapped. */
+  public static LexiconReader wrap(ByteBuffer buffer) throws IOException {
+    return new LexiconReader(buffer.duplicate());
+  }
+
+  /** Returns the number of entries. */
+  public int getEntryCount() {
+    return mEntryCount;
+  }
+
+  /** Returns the id of the entry with the given index. */
+  public int getId(int index) {
+    return mBuffer.getInt(getRecordPosition(index) + RECORD_ID);
+  }
+
+  /** Returns the flags (see FLAGS_* and FLAG_*) of the entry with the given index. */
+  public int getFlags(int index) {
+    return mBuffer.getInt(getRecordPosition(index) + RECORD_FLAGS);
+  }
+
+  /** Returns the name of the entry with the given index. Unlike lookups, this allocates. */
+  public String getEntryName(int index) throws IOException {
+    int record = getRecordPosition(index);
+    byte[] name = new byte[mBuffer.getInt(record + RECORD_NAME_LENGTH)];
+    for (int i = 0; i < name.length; i++) {
+      name[i] = mBuffer.get(mHeapOffset + mBuffer.getInt(record + RECORD_NAME_OFFSET) + i);
+    }
+    return new String(name, "UTF-8");
+  }
+
+  /**
+   * Returns the index of the first entry with the given name, or -1 if there is none. The other
+   * entries with the name follow it (see nameEquals).
+   */
+  public int findExact(CharSequence name) {
+    int index = lowerBound(name);
+    return index < mEntryCount && compareName(index, name, /* prefixOnly */ false) == 0
+        ? index
+        : -1;
+  }
+
+  /**
+   * Returns the index of the first entry whose name starts with the given prefix. The other
+   * entries whose names start with it follow it (see nameStartsWith). If there are none, the entry
+   * at the index doesn't start with the prefix, or the index is getEntryCount().
+   */
+  public int findPrefix(CharSequence prefix) {
+    return lowerBound(prefix);
+  }
+
+  /** Returns the index of the entry with the given id, or -1 if there is none. */
+  public int findById(int id) {
+    int low = 0;
+    int high = mEntryCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midId = mBuffer.getInt(mIdsOffset + mid * ID_ENTRY_LENGTH);
+      if (midId < id) {
+        low = mid + 1;
+      } else if (midId > id) {
+        high = mid - 1;
+      } else {
+        return mBuffer.getInt(mIdsOffset + mid * ID_ENTRY_LENGTH + 4);
+      }
+    }
+    return -1;
+  }
+
+  /** Returns whether the entry with the given index exists and has the given name. */
+  public boolean nameEquals(int index, CharSequence name) {
+    return index >= 0
+        && index < mEntryCount
+        && compareName(index, name, /* prefixOnly */ false) == 0;
+  }
+
+  /** Returns whether the entry with the given index exists and its name starts with the prefix. */
+  public boolean nameStartsWith(int index, CharSequence prefix) {
+    return index >= 0
+        && index < mEntryCount
+        && compareName(index, prefix, /* prefixOnly */ true) == 0;
+  }
+
+  // Returns the index of the first entry whose name isn't ordered before the key.
+  private int lowerBound(CharSequence key) {
+    int low = 0;
+    int high = mEntryCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compareName(mid, key, /* prefixOnly */ false) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int getRecordPosition(int index) {
+    if (index < 0 || index >= mEntryCount) {
+      throw new IndexOutOfBoundsException("No entry " + index + " in lexicon.");
+    }
+    return mRecordsOffset + index * RECORD_LENGTH;
+  }
+
+  // Compares the name of the entry with the given index with the key, in the order of their UTF-8
+  // bytes, encoding the key as it goes rather than into a new array. If prefixOnly is true, a name
+  // which starts with the key compares as equal to it.
+  private int compareName(int index, CharSequence key, boolean prefixOnly) {
+    int record = getRecordPosition(index);
+    int position = mHeapOffset + mBuffer.getInt(record + RECORD_NAME_OFFSET);
+    int end = position + mBuffer.getInt(record + RECORD_NAME_LENGTH);
+    int i = 0;
+    while (i < key.length()) {
+      int codePoint = Character.codePointAt(key, i);
+      i += Character.charCount(codePoint);
+      int byteCount = getUtf8Length(codePoint);
+      for (int b = 0; b < byteCount; b++) {
+        if (position == end) {
+          // The name is a proper prefix of the key.
+          return -1;
+        }
+        int nameByte = mBuffer.get(position++) & 0xff;
+        int keyByte = getUtf8Byte(codePoint, byteCount, b);
+        if (nameByte != keyByte) {
+          return nameByte - keyByte;
+        }
+      }
+    }
+    return position == end || prefixOnly ? 0 : 1;
+  }
+
+  private static int getUtf8Length(int codePoint) {
+    if (codePoint < 0x80) {
+      return 1;
+    } else if (codePoint < 0x800) {
+      return 2;
+    } else if (codePoint < 0x10000) {
+      return 3;
+    }
+    return 4;
+  }
+
+  // Returns the byte at the given position of the UTF-8 encoding of a code point.
+  private static int getUtf8Byte(int codePoint, int byteCount, int position) {
+    int shift = 6 * (byteCount - 1 - position);
+    if (position != 0) {
+      return 0x80 | ((codePoint >> shift) & 0x3f);
+    }
+    switch (byteCount) {
+      case 1:
+        return codePoint;
+      case 2:
+        return 0xc0 | (codePoint >> shift);
+      case 3:
+        return 0xe0 | (codePoint >> shift);
+      default:
+        return 0xf0 | (codePoint >> shift);
+    }
+  }
+}
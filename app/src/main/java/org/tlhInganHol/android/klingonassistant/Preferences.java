@@ -39,6 +39,7 @@ import android.view.LayoutInflater;
 import android.view.MenuItem;
 import android.view.ViewGroup;
 import java.util.Locale;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
 
 public class Preferences extends AppCompatPreferenceActivity
     implements OnSharedPreferenceChangeListener {
@@ -164,7 +165,7 @@ public class Preferences extends AppCompatPreferenceActivity
           Spanned.SPAN_EXCLUSIVE_EXCLUSIVE | Spanned.SPAN_INTERMEDIATE);
       ssb.setSpan(new TypefaceSpan("serif"), 0, ssb.length(), Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
     } else {
-      String klingonTitle = KlingonContentProvider.convertStringToKlingonFont(title);
+      String klingonTitle = KlingonText.convertStringToKlingonFont(title);
       ssb = new SpannableString(klingonTitle);
       Typeface klingonTypeface = KlingonAssistant.getKlingonFontTypeface(getBaseContext());
       ssb.setSpan(
@@ -21,6 +21,7 @@ import android.content.res.Resources;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.widget.TextView;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
 
 /** Displays the prefix chart. */
 public class PrefixChartActivity extends BaseActivity {
@@ -43,8 +44,7 @@ public class PrefixChartActivity extends BaseActivity {
       // Klingon (in {pIqaD}).
       entryTitle.setTypeface(KlingonAssistant.getKlingonFontTypeface(getBaseContext()));
       entryTitle.setText(
-          KlingonContentProvider.convertStringToKlingonFont(
-              resources.getString(R.string.menu_prefix_chart)));
+          KlingonText.convertStringToKlingonFont(resources.getString(R.string.menu_prefix_chart)));
     } else {
       entryTitle.setText(resources.getString(R.string.menu_prefix_chart));
     }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.util.Log;
+import android.util.LruCache;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A memory-bounded cache of the rendered bodies of entries, as displayed by EntryFragment. The
+ * bodies are keyed by entry id and by everything else which affects how they are rendered: the
+ * languages, the font and display preferences, and the version of the database.
+ *
+ * <p>The cached bodies are immutable and hold no references to an activity, so they can be shared
+ * by any number of views.
+ */
+public class RenderedEntryCache {
+  private static final String TAG = "RenderedEntryCache";
+
+  // The cache is bounded by the total length of the bodies in it. Entries are typically a few
+  // hundred characters long, and the longest are a few thousand.
+  private static final int MAX_CACHED_CHARS = 256 * 1024;
+
+  private static final LruCache<String, Spanned> mCache =
+      new LruCache<String, Spanned>(MAX_CACHED_CHARS) {
+        @Override
+        protected int sizeOf(String key, Spanned body) {
+          // An empty body still takes up a slot.
+          return Math.max(body.length(), 1);
+        }
+      };
+
+  // Bodies are pre-rendered one at a time, so they don't compete with the UI for the database.
+  private static final ExecutorService mPrerenderExecutor = Executors.newSingleThreadExecutor();
+
+  // Incremented whenever the cache is cleared, so that bodies rendered from an old database
+  // aren't added to the cache afterwards.
+  private static int mGeneration = 0;
+
+  private RenderedEntryCache() {}
+
+  /** Returns the rendered body of the given entry, rendering it if it isn't already cached. */
+  public static Spanned getEntryBody(Context context, KlingonContentProvider.Entry entry) {
+    String key = getKey(context, entry.getId());
+    Spanned body = mCache.get(key);
+    if (body == null) {
+      int generation = getGeneration();
+      body = new SpannedString(EntryFragment.renderEntryBody(context, entry));
+      put(generation, key, body);
+    }
+    return body;
+  }
+
+  /**
+   * Renders the bodies of the given entries on a background thread, unless they are already
+   * cached.
+   */
+  public static void prerender(Context context, final int[] entryIds) {
+    final Context appContext = context.getApplicationContext();
+    mPrerenderExecutor.execute(
+        new Runnable() {
+          @Override
+          public void run() {
+            for (int entryId : entryIds) {
+              prerenderEntry(appContext, entryId);
+            }
+          }
+        });
+  }
+
+  /** Discards all rendered bodies, e.g., because the database has changed. */
+  public static synchronized void clear() {
+    mGeneration++;
+    mCache.evictAll();
+  }
+
+  private static void prerenderEntry(Context context, int entryId) {
+    String key = getKey(context, entryId);
+    if (mCache.get(key) != null) {
+      return;
+    }
+    int generation = getGeneration();
+    Cursor cursor =
+        context
+            .getContentResolver()
+            .query(
+                Uri.parse(KlingonContentProvider.CONTENT_URI + "/get_entry_by_id/" + entryId),
+                KlingonContentDatabase.ALL_KEYS,
+                null,
+                null,
+                null);
+    if (cursor == null) {
+      return;
+    }
+    try {
+      if (!cursor.moveToFirst()) {
+        Log.e(TAG, "Entry to pre-render not found: " + entryId);
+        return;
+      }
+      KlingonContentProvider.Entry entry = new KlingonContentProvider.Entry(cursor, context);
+      put(generation, key, new SpannedString(EntryFragment.renderEntryBody(context, entry)));
+    } finally {
+      cursor.close();
+    }
+  }
+
+  private static synchronized int getGeneration() {
+    return mGeneration;
+  }
+
+  private static synchronized void put(int generation, String key, Spanned body) {
+    if (generation != mGeneration) {
+      // The cache was cleared while the body was being rendered.
+      return;
+    }
+    mCache.put(key, body);
+  }
+
+  // Helper method to build the key for the body of an entry, from its id and the settings which
+  // affect how it is rendered.
+  private static String getKey(Context context, int entryId) {
+    SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+    return entryId
+        + "\u0000"
+        + Locale.getDefault()
+        + "\u0000"
+        + sharedPrefs.getString(
+            Preferences.KEY_SHOW_SECONDARY_LANGUAGE_LIST_PREFERENCE, /* default */
+            Preferences.getSystemPreferredLanguage())
+        + "\u0000"
+        + Preferences.useKlingonFont(context)
+        + "\u0000"
+        + Preferences.useDSCKlingonFont(context)
+        + "\u0000"
+        + Preferences.useKlingonUI(context)
+        + "\u0000"
+        + sharedPrefs.getBoolean(Preferences.KEY_XIFAN_HOL_CHECKBOX_PREFERENCE, /* default */ false)
+        + "\u0000"
+        + sharedPrefs.getBoolean(Preferences.KEY_SWAP_QS_CHECKBOX_PREFERENCE, /* default */ false)
+        + "\u0000"
+        + sharedPrefs.getBoolean(
+            Preferences.KEY_SHOW_TRANSITIVITY_CHECKBOX_PREFERENCE, /* default */ true)
+        + "\u0000"
+        + sharedPrefs.getBoolean(
+            Preferences.KEY_SHOW_ADDITIONAL_INFORMATION_CHECKBOX_PREFERENCE, /* default */ true)
+        + "\u0000"
+        + sharedPrefs.getBoolean(
+            Preferences.KEY_SHOW_UNSUPPORTED_FEATURES_CHECKBOX_PREFERENCE, /* default */ false)
+        + "\u0000"
+        + KlingonContentDatabase.getInstalledDatabaseVersion(context);
+  }
+}
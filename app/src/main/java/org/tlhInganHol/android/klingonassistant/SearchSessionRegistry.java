@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Holds the ids of lists of entries (e.g., search results, or the components of a sentence) in
+ * memory, so that they can be passed to EntryActivity as a small token in an intent rather than as
+ * a list in its URI. The registry lives as long as the process does, so a token remains valid
+ * across configuration changes. Only the most recently registered sessions are kept.
+ *
+ * <p>Tokens are random, so that a token from an intent restored after the process was restarted
+ * doesn't refer to a list registered by the new process. Callers should still check that the list
+ * they get back is the one they expect.
+ */
+public class SearchSessionRegistry {
+  /** The intent extra holding the token of a session. */
+  public static final String EXTRA_SESSION_TOKEN =
+      "org.tlhInganHol.android.klingonassistant.SESSION_TOKEN";
+
+  /** The intent extra holding the position of the selected entry in a session. */
+  public static final String EXTRA_SESSION_POSITION =
+      "org.tlhInganHol.android.klingonassistant.SESSION_POSITION";
+
+  /** A token which never refers to a session. */
+  public static final long NO_SESSION = -1;
+
+  // Activities which are still in the back stack may need their sessions, so keep a few.
+  private static final int MAX_SESSIONS = 16;
+
+  private static final LinkedHashMap<Long, int[]> mSessions =
+      new LinkedHashMap<Long, int[]>(MAX_SESSIONS, 0.75f, /* accessOrder */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+          return size() > MAX_SESSIONS;
+        }
+      };
+
+  private static final Random mRandom = new Random();
+
+  private SearchSessionRegistry() {}
+
+  /** Registers a list of entry ids, and returns the token under which it can be retrieved. */
+  public static synchronized long register(int[] entryIds) {
+    long token;
+    do {
+      token = mRandom.nextLong();
+    } while (token == NO_SESSION || mSessions.containsKey(token));
+    mSessions.put(token, entryIds);
+    return token;
+  }
+
+  /**
+   * Returns the entry ids registered under the given token, or null if there are none (e.g.,
+   * because the process was restarted since they were registered).
+   */
+  public static synchronized int[] get(long token) {
+    return mSessions.get(token);
+  }
+}
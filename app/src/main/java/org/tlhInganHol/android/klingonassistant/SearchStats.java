@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.os.Trace;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Instrumentation of the stages of a search. Each stage is a systrace section, so that searches
+ * can be profiled with systrace or Perfetto, and the stages also keep a latency histogram and
+ * counters of their own, which are reported on the search statistics screen and by "adb shell
+ * dumpsys activity provider org.tlhInganHol.android.klingonassistant/.KlingonContentProvider".
+ *
+ * <p>A search is timed by calling beginSearch and endSearch on the same thread, and each stage
+ * within it by calling beginStage and endStage. SQL statements and rows scanned on that thread in
+ * between are counted towards the stage, and also towards the whole search.
+ */
+public class SearchStats {
+  /** The stages of a search, in the order in which they're run. */
+  public enum Stage {
+    /** A search which was answered from the query-result cache. */
+    CACHED_SEARCH("cached search"),
+    /** A search which was run against the database, including all the stages below. */
+    SEARCH("search"),
+    SANITIZE("sanitize"),
+    SHORTHAND("shorthand"),
+    COMPONENTS("given components"),
+    SENTENCE_CLASS("sentence class"),
+    COMPLEX_WORD_PARSE("complex word parse"),
+    EXACT_MATCHES("complex word lookup"),
+    PREFIX("prefix"),
+    NON_PREFIX("non-prefix"),
+    DEFINITIONS("definitions"),
+    OTHER_LANGUAGE_DEFINITIONS("definitions (other language)"),
+    SEARCH_TAGS("search tags"),
+    OTHER_LANGUAGE_SEARCH_TAGS("search tags (other language)");
+
+    private final String mLabel;
+    private final String mSectionName;
+
+    Stage(String label) {
+      mLabel = label;
+      mSectionName = "Search: " + label;
+    }
+
+    public String getLabel() {
+      return mLabel;
+    }
+  }
+
+  // The latencies and counters of a stage.
+  private static class StageStats {
+    final LatencyHistogram mLatency = new LatencyHistogram();
+    final AtomicLong mSqlStatements = new AtomicLong();
+    final AtomicLong mRowsScanned = new AtomicLong();
+    final AtomicLong mRowsReturned = new AtomicLong();
+
+    void reset() {
+      mLatency.reset();
+      mSqlStatements.set(0);
+      mRowsScanned.set(0);
+      mRowsReturned.set(0);
+    }
+  }
+
+  // What the current thread is doing, so that statements and rows can be counted towards it.
+  private static class ThreadState {
+    boolean mInSearch = false;
+    Stage mStage = null;
+  }
+
+  private static final StageStats[] mStageStats = new StageStats[Stage.values().length];
+
+  static {
+    for (int i = 0; i < mStageStats.length; i++) {
+      mStageStats[i] = new StageStats();
+    }
+  }
+
+  private static final ThreadLocal<ThreadState> mThreadState =
+      new ThreadLocal<ThreadState>() {
+        @Override
+        protected ThreadState initialValue() {
+          return new ThreadState();
+        }
+      };
+
+  private SearchStats() {}
+
+  /** Begins a search on the current thread, and returns the time it began. */
+  public static long beginSearch() {
+    Trace.beginSection(Stage.SEARCH.mSectionName);
+    mThreadState.get().mInSearch = true;
+    return System.nanoTime();
+  }
+
+  /**
+   * Ends the search begun on the current thread, which found the given number of results. A search
+   * answered from the cache is recorded separately, so that it doesn't hide how long searches take.
+   */
+  public static void endSearch(long startNanos, int rowsReturned, boolean isCached) {
+    record(isCached ? Stage.CACHED_SEARCH : Stage.SEARCH, startNanos, rowsReturned);
+    mThreadState.get().mInSearch = false;
+    Trace.endSection();
+  }
+
+  /**
+   * Begins a stage of a search on the current thread, and returns the time it began. Stages don't
+   * nest.
+   */
+  public static long beginStage(Stage stage) {
+    Trace.beginSection(stage.mSectionName);
+    mThreadState.get().mStage = stage;
+    return System.nanoTime();
+  }
+
+  /** Ends a stage begun on the current thread, which added the given number of results. */
+  public static void endStage(Stage stage, long startNanos, int rowsReturned) {
+    record(stage, startNanos, rowsReturned);
+    mThreadState.get().mStage = null;
+    Trace.endSection();
+  }
+
+  /**
+   * Counts the SQL statements and rows of the current thread towards the given stage of a search
+   * which is running on another thread, until leaveStage is called. The latency of the stage is
+   * recorded by the thread running the search.
+   */
+  public static void joinStage(Stage stage) {
+    ThreadState state = mThreadState.get();
+    state.mInSearch = true;
+    state.mStage = stage;
+  }
+
+  /** Stops counting the SQL statements and rows of the current thread towards a stage it joined. */
+  public static void leaveStage() {
+    ThreadState state = mThreadState.get();
+    state.mInSearch = false;
+    state.mStage = null;
+  }
+
+  /** Counts a SQL statement run on the current thread. */
+  public static void onStatement() {
+    ThreadState state = mThreadState.get();
+    if (state.mStage != null) {
+      mStageStats[state.mStage.ordinal()].mSqlStatements.incrementAndGet();
+    }
+    if (state.mInSearch) {
+      mStageStats[Stage.SEARCH.ordinal()].mSqlStatements.incrementAndGet();
+    }
+  }
+
+  /** Counts rows read from the database (or from refined candidates) on the current thread. */
+  public static void addRowsScanned(int rows) {
+    ThreadState state = mThreadState.get();
+    if (state.mStage != null) {
+      mStageStats[state.mStage.ordinal()].mRowsScanned.addAndGet(rows);
+    }
+    if (state.mInSearch) {
+      mStageStats[Stage.SEARCH.ordinal()].mRowsScanned.addAndGet(rows);
+    }
+  }
+
+  private static void record(Stage stage, long startNanos, int rowsReturned) {
+    StageStats stats = mStageStats[stage.ordinal()];
+    stats.mLatency.recordNanos(System.nanoTime() - startNanos);
+    stats.mRowsReturned.addAndGet(rowsReturned);
+  }
+
+  /** Discards all the statistics collected so far. */
+  public static void reset() {
+    for (StageStats stats : mStageStats) {
+      stats.reset();
+    }
+  }
+
+  /** Writes a report of the statistics of every stage which has been run. */
+  public static void dump(PrintWriter writer) {
+    writer.println("Search stages (latencies in ms, counts per run):");
+    writer.println(
+        String.format(
+            Locale.US,
+            "%-30s %7s %8s %8s %8s %8s %8s %9s %9s",
+            "stage",
+            "runs",
+            "p50",
+            "p95",
+            "p99",
+            "max",
+            "sql",
+            "scanned",
+            "returned"));
+    for (Stage stage : Stage.values()) {
+      StageStats stats = mStageStats[stage.ordinal()];
+      long runs = stats.mLatency.getCount();
+      if (runs == 0) {
+        continue;
+      }
+      writer.println(
+          String.format(
+              Locale.US,
+              "%-30s %7d %8.2f %8.2f %8.2f %8.2f %8.1f %9.1f %9.1f",
+              stage.getLabel(),
+              runs,
+              stats.mLatency.getPercentileMicros(50) / 1000.0,
+              stats.mLatency.getPercentileMicros(95) / 1000.0,
+              stats.mLatency.getPercentileMicros(99) / 1000.0,
+              stats.mLatency.getMaxMicros() / 1000.0,
+              (double) stats.mSqlStatements.get() / runs,
+              (double) stats.mRowsScanned.get() / runs,
+              (double) stats.mRowsReturned.get() / runs));
+    }
+  }
+
+  /** Returns the report written by dump. */
+  public static String getReport() {
+    StringWriter report = new StringWriter();
+    PrintWriter writer = new PrintWriter(report);
+    dump(writer);
+    writer.flush();
+    return report.toString();
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+
+/**
+ * Displays the search statistics collected since the app was started (or since they were last
+ * reset), for profiling searches on a device. See SearchStats.
+ */
+public class SearchStatsActivity extends BaseActivity {
+  // private static final String TAG = "SearchStatsActivity";
+
+  private TextView mReport;
+
+  @Override
+  protected void onCreate(Bundle savedInstanceState) {
+    super.onCreate(savedInstanceState);
+    setDrawerContentView(R.layout.search_stats);
+    mReport = (TextView) findViewById(R.id.report);
+
+    Button resetButton = (Button) findViewById(R.id.reset);
+    resetButton.setOnClickListener(
+        new View.OnClickListener() {
+          @Override
+          public void onClick(View v) {
+            SearchStats.reset();
+            mReport.setText(SearchStats.getReport());
+          }
+        });
+  }
+
+  @Override
+  protected void onResume() {
+    super.onResume();
+
+    // Searches may have been run since the report was last shown.
+    mReport.setText(SearchStats.getReport());
+  }
+}
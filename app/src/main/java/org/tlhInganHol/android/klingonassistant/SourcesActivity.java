@@ -21,6 +21,7 @@ import android.content.res.Resources;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.widget.TextView;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
 
 /** Displays the sources page. */
 public class SourcesActivity extends BaseActivity {
@@ -43,8 +44,7 @@ public class SourcesActivity extends BaseActivity {
       // Klingon (in {pIqaD}).
       entryTitle.setTypeface(KlingonAssistant.getKlingonFontTypeface(getBaseContext()));
       entryTitle.setText(
-          KlingonContentProvider.convertStringToKlingonFont(
-              resources.getString(R.string.menu_sources)));
+          KlingonText.convertStringToKlingonFont(resources.getString(R.string.menu_sources)));
     } else {
       entryTitle.setText(resources.getString(R.string.menu_sources));
     }
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Fetches small text resources, such as the update manifest and the KWOTD feed, with conditional
+ * requests. The ETag and Last-Modified of each URL are remembered, and sent back as If-None-Match
+ * and If-Modified-Since the next time, so that a resource which hasn't changed costs the server a
+ * "304 Not Modified" instead of the whole resource.
+ *
+ * <p>The validators of a response are only remembered once the caller has handled it (see
+ * saveValidators), so that a response which couldn't be handled is fetched again in full the next
+ * time.
+ *
+ * <p>This class doesn't depend on Android, so it can be tested on the development machine against
+ * a local HTTP server.
+ */
+public class ConditionalHttpClient {
+  /** Where the validators of each URL are kept between requests. */
+  public interface ValidatorStore {
+    /** Returns the value stored under the given key, or null if there isn't one. */
+    String get(String key);
+
+    /** Stores a value under the given key, or removes the key if the value is null. */
+    void put(String key, String value);
+  }
+
+  /** The default time allowed to connect to the server. */
+  public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+
+  /** The default time allowed to wait for data from the server. */
+  public static final int DEFAULT_READ_TIMEOUT_MILLIS = 30 * 1000;
+
+  private static final String ETAG_KEY_SUFFIX = " etag";
+  private static final String LAST_MODIFIED_KEY_SUFFIX = " last_modified";
+
+  private final ValidatorStore mValidatorStore;
+  private final int mConnectTimeoutMillis;
+  private final int mReadTimeoutMillis;
+
+  /** A response, which is either the resource or an indication that it hasn't changed. */
+  public static class Response {
+    private final String mUrl;
+    private final String mBody;
+    private final String mEtag;
+    private final String mLastModified;
+
+    private Response(String url, String body, String etag, String lastModified) {
+      mUrl = url;
+      mBody = body;
+      mEtag = etag;
+      mLastModified = lastModified;
+    }
+
+    /**
+     * Returns whether the resource hasn't changed since the last response whose validators were
+     * saved.
+     */
+    public boolean isNotModified() {
+      return mBody == null;
+    }
+
+    /**
+     * Returns the resource, with each line followed by "\n", or null if it hasn't been modified.
+     */
+    public String getBody() {
+      return mBody;
+    }
+  }
+
+  public ConditionalHttpClient(ValidatorStore validatorStore) {
+    this(validatorStore, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+  }
+
+  public ConditionalHttpClient(
+      ValidatorStore validatorStore, int connectTimeoutMillis, int readTimeoutMillis) {
+    mValidatorStore = validatorStore;
+    mConnectTimeoutMillis = connectTimeoutMillis;
+    mReadTimeoutMillis = readTimeoutMillis;
+  }
+
+  /**
+   * Fetches a resource.
+   *
+   * @param url The URL of the resource.
+   * @param conditional Whether to make a conditional request, so that the resource isn't sent if
+   *     it hasn't changed. If false, the resource is always sent.
+   * @param maxLength The number of characters after which the rest of the resource is ignored.
+   * @throws IOException If the request fails, or the response is neither the resource nor "304
+   *     Not Modified".
+   */
+  public Response get(String url, boolean conditional, int maxLength) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout(mConnectTimeoutMillis);
+    connection.setReadTimeout(mReadTimeoutMillis);
+    // Don't let the platform's HTTP cache answer the request, since it's made conditional here.
+    connection.setUseCaches(false);
+    if (conditional) {
+      String etag = mValidatorStore.get(url + ETAG_KEY_SUFFIX);
+      String lastModified = mValidatorStore.get(url + LAST_MODIFIED_KEY_SUFFIX);
+      if (etag != null) {
+        connection.setRequestProperty("If-None-Match", etag);
+      }
+      if (lastModified != null) {
+        connection.setRequestProperty("If-Modified-Since", lastModified);
+      }
+    }
+
+    try {
+      int responseCode = connection.getResponseCode();
+      if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+        return new Response(url, null, null, null);
+      } else if (responseCode != HttpURLConnection.HTTP_OK) {
+        throw new IOException("HTTP " + responseCode + " for " + url + ".");
+      }
+
+      StringBuilder sb = new StringBuilder();
+      BufferedReader bufferedReader =
+          new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+      try {
+        String line;
+        while ((line = bufferedReader.readLine()) != null && sb.length() < maxLength) {
+          sb.append(line);
+          sb.append('\n');
+        }
+      } finally {
+        bufferedReader.close();
+      }
+      return new Response(
+          url,
+          sb.toString(),
+          connection.getHeaderField("ETag"),
+          connection.getHeaderField("Last-Modified"));
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * Remembers the validators of a response which has been handled, so that the next request for
+   * the same URL is only answered in full if the resource has changed. Does nothing if the
+   * resource wasn't modified.
+   */
+  public void saveValidators(Response response) {
+    if (response.isNotModified()) {
+      return;
+    }
+    mValidatorStore.put(response.mUrl + ETAG_KEY_SUFFIX, response.mEtag);
+    mValidatorStore.put(response.mUrl + LAST_MODIFIED_KEY_SUFFIX, response.mLastModified);
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipInputStream;
+import org.tlhInganHol.android.klingonassistant.DatabaseInstaller;
+
+/**
+ * Downloads an updated database, preferably as a patch against the installed database (see
+ * DatabasePatch), and otherwise as the whole zipped database. The zipped database is downloaded
+ * with ResumableDownloader, so an interrupted download continues where it left off the next time.
+ *
+ * <p>This class doesn't depend on Android, so it can be tested on the development machine against
+ * a local HTTP server.
+ */
+public class DatabaseDownloader {
+
+  /** What a download did. */
+  public static class Result {
+    private final boolean mPatched;
+    private final long mBytesDownloaded;
+    private final long mBytesWritten;
+    private final IOException mPatchFailure;
+
+    Result(boolean patched, long bytesDownloaded, long bytesWritten, IOException patchFailure) {
+      mPatched = patched;
+      mBytesDownloaded = bytesDownloaded;
+      mBytesWritten = bytesWritten;
+      mPatchFailure = patchFailure;
+    }
+
+    /** Returns whether the database was patched, as opposed to downloaded in full. */
+    public boolean isPatched() {
+      return mPatched;
+    }
+
+    /** Returns the number of bytes received (once decoded), including any failed patch. */
+    public long getBytesDownloaded() {
+      return mBytesDownloaded;
+    }
+
+    /** Returns the length of the new database. */
+    public long getBytesWritten() {
+      return mBytesWritten;
+    }
+
+    /** Returns why patching failed, or null if it succeeded or wasn't attempted. */
+    public IOException getPatchFailure() {
+      return mPatchFailure;
+    }
+  }
+
+  private static final String ZIP_SUFFIX = ".zip";
+
+  private DatabaseDownloader() {}
+
+  /**
+   * Downloads the new database to the target file.
+   *
+   * @param zipUrl The URL of the zipped database.
+   * @param zipSha256 The SHA-256 hash of the zipped database in hexadecimal, or null if it isn't
+   *     known.
+   * @param patchUrl The URL of a patch from the installed database to the new one, or null if
+   *     there isn't one.
+   * @param installedDatabase The installed database, to which the patch applies.
+   * @param target The file to write the new database to.
+   */
+  public static Result download(
+      String zipUrl, String zipSha256, String patchUrl, File installedDatabase, File target)
+      throws IOException {
+    long bytesDownloaded = 0;
+    IOException patchFailure = null;
+    if (patchUrl != null) {
+      CountingInputStream patchStream = null;
+      try {
+        patchStream = new CountingInputStream(openStream(patchUrl));
+        long length = DatabasePatch.apply(installedDatabase, patchStream, target);
+        return new Result(/* patched */ true, patchStream.getCount(), length, null);
+      } catch (IOException e) {
+        // Fall back to downloading the whole database.
+        patchFailure = e;
+      } finally {
+        if (patchStream != null) {
+          bytesDownloaded += patchStream.getCount();
+          patchStream.close();
+        }
+      }
+    }
+
+    // The zip is kept next to the target until it has been extracted, so that its download can be
+    // resumed if it's interrupted.
+    File zipFile = new File(target.getPath() + ZIP_SUFFIX);
+    ResumableDownloader.Result zipResult =
+        ResumableDownloader.download(zipUrl, zipSha256, zipFile);
+    ZipInputStream zipStream = new ZipInputStream(new FileInputStream(zipFile));
+    try {
+      if (zipStream.getNextEntry() == null) {
+        throw new IOException("No database in " + zipUrl + ".");
+      }
+      long length = DatabaseInstaller.install(zipStream, target).getBytes();
+      zipStream.closeEntry();
+      return new Result(
+          /* patched */ false,
+          bytesDownloaded + zipResult.getBytesDownloaded(),
+          length,
+          patchFailure);
+    } finally {
+      zipStream.close();
+      zipFile.delete();
+    }
+  }
+
+  /**
+   * Downloads a file, such as a changeset, as it is.
+   *
+   * @return The number of bytes written.
+   */
+  public static long downloadFile(String url, File target) throws IOException {
+    InputStream inStream = openStream(url);
+    try {
+      return DatabaseInstaller.install(inStream, target).getBytes();
+    } finally {
+      inStream.close();
+    }
+  }
+
+  // Helper method to open a URL, accepting a gzip-encoded response.
+  private static InputStream openStream(String url) throws IOException {
+    URLConnection urlConnection = new URL(url).openConnection();
+    urlConnection.setRequestProperty("Accept-Encoding", "gzip");
+    InputStream inStream = urlConnection.getInputStream();
+    if ("gzip".equals(urlConnection.getContentEncoding())) {
+      return new GZIPInputStream(inStream);
+    }
+    return inStream;
+  }
+
+  // Counts the bytes read through it.
+  private static class CountingInputStream extends FilterInputStream {
+    private long mCount = 0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    long getCount() {
+      return mCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b != -1) {
+        mCount++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int count = super.read(buffer, offset, length);
+      if (count > 0) {
+        mCount += count;
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long count = super.skip(n);
+      mCount += count;
+      return count;
+    }
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A binary patch which turns one version of the database file into another. SQLite changes a
+ * database a page at a time, so a patch describes the new file as a sequence of blocks, each of
+ * which is either copied from the old file or included in the patch. A release which changes a few
+ * dozen entries only touches a few dozen pages, so its patch is a small fraction of the file.
+ *
+ * <p>The format is, with all numbers big-endian:
+ *
+ * <pre>
+ *   "QHDELTA1"
+ *   source length (long), source CRC-32 (int)
+ *   target length (long), target CRC-32 (int)
+ *   operations, each one of:
+ *     COPY (byte 1), offset in source (long), length (int)
+ *     ADD (byte 2), length (int), data
+ *   END (byte 0)
+ * </pre>
+ *
+ * The lengths and checksums make sure the patch is only applied to the file it was made from, and
+ * that the result is exactly the intended file.
+ *
+ * <p>This class doesn't depend on Android, so it can be tested on the development machine.
+ */
+public class DatabasePatch {
+  private static final byte[] MAGIC = {'Q', 'H', 'D', 'E', 'L', 'T', 'A', '1'};
+
+  private static final int OP_END = 0;
+  private static final int OP_COPY = 1;
+  private static final int OP_ADD = 2;
+
+  /** The size of the blocks compared when creating a patch, which is the SQLite page size. */
+  public static final int BLOCK_SIZE = 4096;
+
+  private static final int BUFFER_LENGTH = 64 * 1024;
+
+  /** Thrown when a patch is malformed, or doesn't match the file it's applied to. */
+  public static class PatchException extends IOException {
+    public PatchException(String message) {
+      super(message);
+    }
+  }
+
+  private DatabasePatch() {}
+
+  /**
+   * Applies a patch to a file, writing the result to another. If the patch can't be applied, the
+   * target is deleted and a PatchException (or another IOException) is thrown.
+   *
+   * @param source The file the patch was made from. It is only read.
+   * @param patch The patch.
+   * @param target The file to write.
+   * @return The length of the target.
+   */
+  public static long apply(File source, InputStream patch, File target) throws IOException {
+    boolean succeeded = false;
+    try {
+      long length = applyOrThrow(source, patch, target);
+      succeeded = true;
+      return length;
+    } catch (EOFException e) {
+      throw new PatchException("Patch is truncated.");
+    } finally {
+      if (!succeeded) {
+        target.delete();
+      }
+    }
+  }
+
+  private static long applyOrThrow(File source, InputStream patch, File target)
+      throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(patch, BUFFER_LENGTH));
+    byte[] magic = new byte[MAGIC.length];
+    in.readFully(magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new PatchException("Not a database patch.");
+    }
+    long sourceLength = in.readLong();
+    int sourceCrc = in.readInt();
+    long targetLength = in.readLong();
+    int targetCrc = in.readInt();
+    if (source.length() != sourceLength || checksum(source) != sourceCrc) {
+      throw new PatchException("Patch doesn't match the installed database.");
+    }
+
+    CRC32 crc = new CRC32();
+    long written = 0;
+    byte[] buffer = new byte[BUFFER_LENGTH];
+    RandomAccessFile sourceFile = new RandomAccessFile(source, "r");
+    FileOutputStream targetStream = new FileOutputStream(target);
+    try {
+      OutputStream out = new BufferedOutputStream(targetStream, BUFFER_LENGTH);
+      int op;
+      while ((op = in.readUnsignedByte()) != OP_END) {
+        InputStream data;
+        long offset = 0;
+        int length;
+        if (op == OP_COPY) {
+          offset = in.readLong();
+          length = in.readInt();
+          if (offset < 0 || length < 0 || offset + length > sourceLength) {
+            throw new PatchException("Copy outside of the source.");
+          }
+          sourceFile.seek(offset);
+        } else if (op == OP_ADD) {
+          length = in.readInt();
+          if (length < 0) {
+            throw new PatchException("Negative length.");
+          }
+        } else {
+          throw new PatchException("Unknown operation: " + op);
+        }
+        if (written + length > targetLength) {
+          throw new PatchException("Patch is longer than its target.");
+        }
+        int remaining = length;
+        while (remaining > 0) {
+          int count = Math.min(remaining, buffer.length);
+          if (op == OP_COPY) {
+            sourceFile.readFully(buffer, 0, count);
+          } else {
+            in.readFully(buffer, 0, count);
+          }
+          out.write(buffer, 0, count);
+          crc.update(buffer, 0, count);
+          remaining -= count;
+        }
+        written += length;
+      }
+      out.flush();
+      targetStream.getFD().sync();
+    } finally {
+      targetStream.close();
+      sourceFile.close();
+    }
+    if (written != targetLength || (int) crc.getValue() != targetCrc) {
+      throw new PatchException("Patched database doesn't match the expected checksum.");
+    }
+    return written;
+  }
+
+  /**
+   * Creates a patch from one file to another. Each block of the target is looked up among the
+   * blocks of the source, wherever it is in the source, and copied from there if it's found.
+   */
+  public static void create(File source, File target, OutputStream patch) throws IOException {
+    byte[] sourceBytes = readFile(source);
+    byte[] targetBytes = readFile(target);
+
+    // Index the blocks of the source by their checksums.
+    HashMap<Long, ArrayList<Integer>> sourceBlocks = new HashMap<Long, ArrayList<Integer>>();
+    for (int offset = 0; offset + BLOCK_SIZE <= sourceBytes.length; offset += BLOCK_SIZE) {
+      long blockCrc = checksum(sourceBytes, offset, BLOCK_SIZE);
+      ArrayList<Integer> offsets = sourceBlocks.get(blockCrc);
+      if (offsets == null) {
+        offsets = new ArrayList<Integer>();
+        sourceBlocks.put(blockCrc, offsets);
+      }
+      offsets.add(offset);
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(patch, BUFFER_LENGTH));
+    out.write(MAGIC);
+    out.writeLong(sourceBytes.length);
+    out.writeInt((int) checksum(sourceBytes, 0, sourceBytes.length));
+    out.writeLong(targetBytes.length);
+    out.writeInt((int) checksum(targetBytes, 0, targetBytes.length));
+
+    // Consecutive copies of consecutive source blocks are merged, as are consecutive additions.
+    long copyOffset = -1;
+    int copyLength = 0;
+    int addStart = 0;
+    int addLength = 0;
+    for (int offset = 0; offset < targetBytes.length; offset += BLOCK_SIZE) {
+      int length = Math.min(BLOCK_SIZE, targetBytes.length - offset);
+      int match = -1;
+      if (length == BLOCK_SIZE) {
+        ArrayList<Integer> candidates =
+            sourceBlocks.get(checksum(targetBytes, offset, BLOCK_SIZE));
+        if (candidates != null) {
+          // Prefer continuing the current copy, then the same position in the source.
+          long preferred = copyOffset >= 0 ? copyOffset + copyLength : offset;
+          for (int candidate : candidates) {
+            if (regionsEqual(sourceBytes, candidate, targetBytes, offset, BLOCK_SIZE)) {
+              if (match == -1 || candidate == preferred) {
+                match = candidate;
+              }
+            }
+          }
+        }
+      }
+      if (match == -1) {
+        if (copyLength > 0) {
+          writeCopy(out, copyOffset, copyLength);
+          copyLength = 0;
+        }
+        if (addLength == 0) {
+          addStart = offset;
+        }
+        addLength += length;
+      } else {
+        if (addLength > 0) {
+          writeAdd(out, targetBytes, addStart, addLength);
+          addLength = 0;
+        }
+        if (copyLength > 0 && copyOffset + copyLength == match) {
+          copyLength += BLOCK_SIZE;
+        } else {
+          if (copyLength > 0) {
+            writeCopy(out, copyOffset, copyLength);
+          }
+          copyOffset = match;
+          copyLength = BLOCK_SIZE;
+        }
+      }
+    }
+    if (copyLength > 0) {
+      writeCopy(out, copyOffset, copyLength);
+    }
+    if (addLength > 0) {
+      writeAdd(out, targetBytes, addStart, addLength);
+    }
+    out.writeByte(OP_END);
+    out.flush();
+  }
+
+  private static void writeCopy(DataOutputStream out, long offset, int length) throws IOException {
+    out.writeByte(OP_COPY);
+    out.writeLong(offset);
+    out.writeInt(length);
+  }
+
+  private static void writeAdd(DataOutputStream out, byte[] data, int offset, int length)
+      throws IOException {
+    out.writeByte(OP_ADD);
+    out.writeInt(length);
+    out.write(data, offset, length);
+  }
+
+  private static boolean regionsEqual(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+    for (int i = 0; i < length; i++) {
+      if (a[aOffset + i] != b[bOffset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long checksum(byte[] data, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(data, offset, length);
+    return crc.getValue();
+  }
+
+  private static int checksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[BUFFER_LENGTH];
+    InputStream in = new FileInputStream(file);
+    try {
+      int count;
+      while ((count = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, count);
+      }
+    } finally {
+      in.close();
+    }
+    return (int) crc.getValue();
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    byte[] data = new byte[(int) file.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(data);
+    } finally {
+      in.close();
+    }
+    return data;
+  }
+}
@@ -39,10 +39,7 @@ import android.text.Spanned;
 import android.text.style.StyleSpan;
 import android.text.style.TypefaceSpan;
 import android.util.Log;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.json.JSONObject;
@@ -149,16 +146,19 @@ public class KwotdService extends JobService {
       } else {
         url = KWOTD_RSS_URL;
       }
-      try (BufferedReader bufferedReader =
-          new BufferedReader(
-              new InputStreamReader(new URL(url).openConnection().getInputStream())); ) {
-        StringBuffer sb = new StringBuffer();
-        String line;
-        while ((line = bufferedReader.readLine()) != null && sb.length() < MAX_BUFFER_LENGTH) {
-          sb.append(line);
-          sb.append('\n');
+      try {
+        // Unless this is a one-off job, which always uses the fetched data, the feed is only sent
+        // if it has changed since it was last saved.
+        ConditionalHttpClient httpClient =
+            new ConditionalHttpClient(new PreferencesValidatorStore(KwotdService.this));
+        ConditionalHttpClient.Response response =
+            httpClient.get(url, /* conditional */ !isOneOffJob, MAX_BUFFER_LENGTH);
+        if (response.isNotModified()) {
+          // No new data yet. Note that the finally block will run with rescheduleJob set to true.
+          Log.d(TAG, "KWOTD data not modified.");
+          return null;
         }
-        String data = sb.toString();
+        String data = response.getBody();
 
         // Strip newlines when comparing and saving the data, to work around a bug in Android:
         // https://issuetracker.google.com/issues/37032278
@@ -175,6 +175,7 @@ public class KwotdService extends JobService {
               PreferenceManager.getDefaultSharedPreferences(KwotdService.this).edit();
           sharedPrefsEd.putString(KEY_KWORD_DATA, data.replaceAll("\n", ""));
           sharedPrefsEd.apply();
+          httpClient.saveValidators(response);
         }
 
         // Extract relevant data.
@@ -195,7 +196,7 @@ public class KwotdService extends JobService {
             type = m.group(2);
             eword = m.group(3);
           } else {
-            throw new IOException("Failed to extract data from RSS: " + sb.toString());
+            throw new IOException("Failed to extract data from RSS: " + data);
           }
         }
 
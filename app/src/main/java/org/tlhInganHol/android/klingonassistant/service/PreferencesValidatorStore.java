@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/** Keeps the validators of ConditionalHttpClient in their own shared preferences file. */
+public class PreferencesValidatorStore implements ConditionalHttpClient.ValidatorStore {
+  private static final String PREFERENCES_NAME = "http_validators";
+
+  private final SharedPreferences mSharedPrefs;
+
+  public PreferencesValidatorStore(Context context) {
+    mSharedPrefs = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+  }
+
+  @Override
+  public String get(String key) {
+    return mSharedPrefs.getString(key, /* default */ null);
+  }
+
+  @Override
+  public void put(String key, String value) {
+    SharedPreferences.Editor sharedPrefsEd = mSharedPrefs.edit();
+    if (value == null) {
+      sharedPrefsEd.remove(key);
+    } else {
+      sharedPrefsEd.putString(key, value);
+    }
+    sharedPrefsEd.apply();
+  }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Downloads a file so that an interrupted download can be resumed where it left off, rather than
+ * started over, and checks its SHA-256 hash before it's used. The hash is computed as the file is
+ * received, so checking it doesn't need another pass over the file.
+ *
+ * <p>The file is downloaded to "<target>.part". Every so often, the part file is synced to disk,
+ * and the length which is known to be on disk is recorded in "<target>.part.meta", along with the
+ * URL, the expected hash, and the server's validators for the file. A later download of the same
+ * URL continues from that length with an HTTP Range request, provided the file on the server
+ * hasn't changed. Only once the whole file has been downloaded and its hash matches is it renamed
+ * to the target.
+ *
+ * <p>This class doesn't depend on Android, so it can be tested on the development machine against
+ * a local HTTP server.
+ */
+public class ResumableDownloader {
+  // How often the part file is synced and its length recorded.
+  private static final long CHECKPOINT_BYTES = 1024 * 1024;
+
+  // How many times a download is resumed after the connection fails, before giving up until the
+  // next time the download is tried.
+  private static final int MAX_ATTEMPTS = 5;
+
+  private static final int CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+  private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+  private static final int BUFFER_LENGTH = 64 * 1024;
+
+  private static final String PART_SUFFIX = ".part";
+  private static final String META_SUFFIX = ".part.meta";
+
+  // Keys of the metadata of a part file.
+  private static final String META_URL = "url";
+  private static final String META_SHA256 = "sha256";
+  private static final String META_ETAG = "etag";
+  private static final String META_LAST_MODIFIED = "last_modified";
+  private static final String META_OFFSET = "offset";
+
+  /** What a download did. */
+  public static class Result {
+    private final long mLength;
+    private final long mResumedFrom;
+    private final long mBytesDownloaded;
+    private final int mAttempts;
+
+    Result(long length, long resumedFrom, long bytesDownloaded, int attempts) {
+      mLength = length;
+      mResumedFrom = resumedFrom;
+      mBytesDownloaded = bytesDownloaded;
+      mAttempts = attempts;
+    }
+
+    /** Returns the length of the downloaded file. */
+    public long getLength() {
+      return mLength;
+    }
+
+    /** Returns the length of the part file left by an earlier download which was resumed. */
+    public long getResumedFrom() {
+      return mResumedFrom;
+    }
+
+    /** Returns the number of bytes received from the server by this download. */
+    public long getBytesDownloaded() {
+      return mBytesDownloaded;
+    }
+
+    /** Returns the number of requests made, including the first. */
+    public int getAttempts() {
+      return mAttempts;
+    }
+
+    @Override
+    public String toString() {
+      return mLength
+          + " bytes, "
+          + mBytesDownloaded
+          + " downloaded (resumed from "
+          + mResumedFrom
+          + ") in "
+          + mAttempts
+          + " requests";
+    }
+  }
+
+  // The state of a download across its requests.
+  private static class Progress {
+    // The length of the part file which is known to be on disk.
+    long mOffset;
+
+    // The number of bytes received by this download.
+    long mBytesDownloaded = 0;
+
+    // The hash of the first mDigestedLength bytes of the part file.
+    final MessageDigest mDigest;
+    long mDigestedLength = 0;
+
+    Progress(long offset) throws IOException {
+      mOffset = offset;
+      mDigest = newSha256Digest();
+    }
+  }
+
+  private ResumableDownloader() {}
+
+  /**
+   * Downloads a file to the target, resuming an earlier download of it if there is one.
+   *
+   * @param url The URL of the file.
+   * @param expectedSha256 The SHA-256 hash of the file in hexadecimal, or null if it isn't known,
+   *     in which case the file isn't checked.
+   * @param target The file to write. It's only replaced once the download is complete and
+   *     verified.
+   * @throws IOException If the download fails, in which case it can be resumed by calling this
+   *     again, or if the hash doesn't match, in which case it will be started over.
+   */
+  public static Result download(String url, String expectedSha256, File target)
+      throws IOException {
+    return download(url, expectedSha256, target, MAX_ATTEMPTS);
+  }
+
+  // Implements download(), making at most maxAttempts requests.
+  static Result download(String url, String expectedSha256, File target, int maxAttempts)
+      throws IOException {
+    File partFile = new File(target.getPath() + PART_SUFFIX);
+    File metaFile = new File(target.getPath() + META_SUFFIX);
+
+    Properties meta = readMeta(metaFile);
+    long offset = 0;
+    if (meta != null
+        && url.equals(meta.getProperty(META_URL))
+        && String.valueOf(expectedSha256).equals(meta.getProperty(META_SHA256))
+        && partFile.exists()) {
+      offset = Math.min(Long.parseLong(meta.getProperty(META_OFFSET, "0")), partFile.length());
+    } else {
+      meta = new Properties();
+      meta.setProperty(META_URL, url);
+      meta.setProperty(META_SHA256, String.valueOf(expectedSha256));
+    }
+    Progress progress = new Progress(offset);
+
+    int attempts = 0;
+    IOException lastFailure = null;
+    boolean complete = false;
+    while (!complete && attempts < maxAttempts) {
+      attempts++;
+      try {
+        complete = downloadFrom(url, partFile, metaFile, meta, progress);
+      } catch (IOException e) {
+        lastFailure = e;
+      }
+    }
+    if (!complete) {
+      throw new IOException(
+          "Download of " + url + " interrupted at " + progress.mOffset + " bytes.", lastFailure);
+    }
+
+    // The whole file is on disk, so check it before replacing the target.
+    if (expectedSha256 != null) {
+      String sha256 = toHex(progress.mDigest.digest());
+      if (!sha256.equalsIgnoreCase(expectedSha256)) {
+        partFile.delete();
+        metaFile.delete();
+        throw new IOException(
+            "SHA-256 of " + url + " is " + sha256 + ", expected " + expectedSha256 + ".");
+      }
+    }
+    if (!partFile.renameTo(target)) {
+      target.delete();
+      if (!partFile.renameTo(target)) {
+        throw new IOException("Unable to rename " + partFile + " to " + target + ".");
+      }
+    }
+    metaFile.delete();
+    return new Result(target.length(), offset, progress.mBytesDownloaded, attempts);
+  }
+
+  // Makes one request for the rest of the file, appending it to the part file and updating the
+  // progress as it goes. Returns whether the file is complete.
+  private static boolean downloadFrom(
+      String url, File partFile, File metaFile, Properties meta, Progress progress)
+      throws IOException {
+    long offset = progress.mOffset;
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+    connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+    // Ranges are of the file as stored, so it mustn't be re-encoded on the way.
+    connection.setRequestProperty("Accept-Encoding", "identity");
+    if (offset > 0) {
+      connection.setRequestProperty("Range", "bytes=" + offset + "-");
+      // Only resume if the file hasn't changed since the part was downloaded. Otherwise, the
+      // server sends the whole file.
+      String validator = meta.getProperty(META_ETAG, meta.getProperty(META_LAST_MODIFIED));
+      if (validator != null) {
+        connection.setRequestProperty("If-Range", validator);
+      }
+    }
+
+    try {
+      int responseCode = connection.getResponseCode();
+      if (responseCode == 416 && offset > 0) {
+        // The part file is no shorter than the file on the server, so start over.
+        progress.mOffset = 0;
+        saveMeta(metaFile, meta, 0);
+        throw new IOException("Requested range not satisfiable, restarting download.");
+      } else if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+        String contentRange = connection.getHeaderField("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-")) {
+          progress.mOffset = 0;
+          saveMeta(metaFile, meta, 0);
+          throw new IOException("Unexpected Content-Range: " + contentRange);
+        }
+      } else if (responseCode == HttpURLConnection.HTTP_OK) {
+        // The server sent the whole file, either because it ignores ranges or because the file
+        // has changed.
+        offset = 0;
+        progress.mOffset = 0;
+      } else {
+        throw new IOException("HTTP " + responseCode + " for " + url + ".");
+      }
+
+      if (offset == 0) {
+        String etag = connection.getHeaderField("ETag");
+        String lastModified = connection.getHeaderField("Last-Modified");
+        meta.remove(META_ETAG);
+        meta.remove(META_LAST_MODIFIED);
+        if (etag != null) {
+          meta.setProperty(META_ETAG, etag);
+        }
+        if (lastModified != null) {
+          meta.setProperty(META_LAST_MODIFIED, lastModified);
+        }
+      }
+
+      RandomAccessFile partStream = new RandomAccessFile(partFile, "rw");
+      InputStream inStream = connection.getInputStream();
+      try {
+        // Discard anything after the length known to be on disk, which may not have been synced.
+        partStream.setLength(offset);
+        partStream.seek(offset);
+        if (progress.mDigestedLength != offset) {
+          // This happens when resuming a download left by an earlier run, or after falling back
+          // to a checkpoint.
+          digestPartFile(partFile, offset, progress);
+        }
+
+        byte[] buffer = new byte[BUFFER_LENGTH];
+        long sinceCheckpoint = 0;
+        int count;
+        while ((count = inStream.read(buffer)) != -1) {
+          partStream.write(buffer, 0, count);
+          progress.mDigest.update(buffer, 0, count);
+          offset += count;
+          progress.mDigestedLength = offset;
+          progress.mBytesDownloaded += count;
+          sinceCheckpoint += count;
+          if (sinceCheckpoint >= CHECKPOINT_BYTES) {
+            partStream.getFD().sync();
+            saveMeta(metaFile, meta, offset);
+            progress.mOffset = offset;
+            sinceCheckpoint = 0;
+          }
+        }
+      } finally {
+        // Whatever reached the disk can be resumed from.
+        try {
+          partStream.getFD().sync();
+          progress.mOffset = offset;
+        } catch (IOException e) {
+          // Resume from the last checkpoint instead.
+        }
+        saveMeta(metaFile, meta, progress.mOffset);
+        partStream.close();
+        inStream.close();
+      }
+
+      long contentLength = getContentLength(connection);
+      return contentLength < 0 || offset == contentLength;
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  // Returns the length of the whole file, from the Content-Range or Content-Length header, or -1
+  // if it isn't known.
+  private static long getContentLength(HttpURLConnection connection) {
+    String contentRange = connection.getHeaderField("Content-Range");
+    if (contentRange != null) {
+      int slash = contentRange.lastIndexOf('/');
+      if (slash != -1) {
+        try {
+          return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+          return -1;
+        }
+      }
+    }
+    String contentLength = connection.getHeaderField("Content-Length");
+    if (contentLength == null) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(contentLength.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  // Returns the metadata of a part file, or null if there isn't any.
+  private static Properties readMeta(File metaFile) {
+    if (!metaFile.exists()) {
+      return null;
+    }
+    Properties meta = new Properties();
+    try {
+      InputStream inStream = new FileInputStream(metaFile);
+      try {
+        meta.load(inStream);
+      } finally {
+        inStream.close();
+      }
+      Long.parseLong(meta.getProperty(META_OFFSET, "0"));
+    } catch (IOException e) {
+      return null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return meta;
+  }
+
+  // Records the length of the part file which is on disk. The metadata is written to a temporary
+  // file and renamed, so that it's never seen half-written.
+  private static void saveMeta(File metaFile, Properties meta, long offset) throws IOException {
+    meta.setProperty(META_OFFSET, Long.toString(offset));
+    File tempFile = new File(metaFile.getPath() + ".tmp");
+    FileOutputStream outStream = new FileOutputStream(tempFile);
+    try {
+      meta.store(outStream, null);
+      outStream.getFD().sync();
+    } finally {
+      outStream.close();
+    }
+    if (!tempFile.renameTo(metaFile)) {
+      throw new IOException("Unable to rename " + tempFile + " to " + metaFile + ".");
+    }
+  }
+
+  // Helper method to restart the hash of the part file from its first length bytes.
+  private static void digestPartFile(File partFile, long length, Progress progress)
+      throws IOException {
+    progress.mDigest.reset();
+    byte[] buffer = new byte[BUFFER_LENGTH];
+    InputStream inStream = new FileInputStream(partFile);
+    try {
+      long remaining = length;
+      int count;
+      while (remaining > 0
+          && (count = inStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+        progress.mDigest.update(buffer, 0, count);
+        remaining -= count;
+      }
+      if (remaining > 0) {
+        throw new IOException("Part file is shorter than recorded.");
+      }
+    } finally {
+      inStream.close();
+    }
+    progress.mDigestedLength = length;
+  }
+
+  private static MessageDigest newSha256Digest() throws IOException {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is not available.", e);
+    }
+  }
+
+  // Helper method to format a hash in lower-case hexadecimal.
+  private static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b & 0xff));
+    }
+    return hex.toString();
+  }
+}
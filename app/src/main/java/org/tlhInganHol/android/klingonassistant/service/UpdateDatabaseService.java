@@ -21,19 +21,14 @@ import android.app.job.JobService;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.os.AsyncTask;
+import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.util.Log;
-import java.io.BufferedReader;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.URL;
-import java.net.URLConnection;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.ZipInputStream;
 import org.json.JSONObject;
 import org.tlhInganHol.android.klingonassistant.KlingonContentDatabase;
+import org.tlhInganHol.android.klingonassistant.KlingonContentProvider;
 
 public class UpdateDatabaseService extends JobService {
   private static final String TAG = "UpdateDatabaseService";
@@ -79,9 +74,16 @@ public class UpdateDatabaseService extends JobService {
     private static final String ONLINE_UPGRADE_PATH = "https://De7vID.github.io/qawHaq/";
     private static final String MANIFEST_JSON_URL = ONLINE_UPGRADE_PATH + "manifest.json";
 
+    // The name of the file a changeset is downloaded to, in the cache directory.
+    private static final String CHANGESET_FILE_NAME = "qawHaq_changeset.jsonl";
+
     // Arbitrary limit on max buffer length to prevent overflows and such.
     private static final int MAX_BUFFER_LENGTH = 1024;
 
+    // The version of the database (the updated one, if any) for which the manifest was last
+    // handled.
+    private static final String KEY_MANIFEST_HANDLED_FOR_VERSION = "manifest_handled_for_version";
+
     @Override
     protected Void doInBackground(Void... params) {
       Resources resources = UpdateDatabaseService.this.getResources();
@@ -91,22 +93,7 @@ public class UpdateDatabaseService extends JobService {
       // Set to false if job runs successfully to completion.
       boolean rescheduleJob = true;
 
-      try (BufferedReader bufferedReader =
-          new BufferedReader(
-              new InputStreamReader(
-                  new URL(MANIFEST_JSON_URL).openConnection().getInputStream())); ) {
-        StringBuffer sb = new StringBuffer();
-        String line;
-        while ((line = bufferedReader.readLine()) != null && sb.length() < MAX_BUFFER_LENGTH) {
-          sb.append(line);
-          sb.append('\n');
-        }
-        String data = sb.toString();
-        JSONObject manifestObject = new JSONObject(data);
-        JSONObject androidObject = manifestObject.getJSONObject("Android-3");
-        String latest = androidObject.getString("latest");
-        Log.d(TAG, "Latest database version: " + latest);
-
+      try {
         String installedVersion =
             sharedPrefs.getString(
                 KlingonContentDatabase.KEY_INSTALLED_DATABASE_VERSION,
@@ -116,27 +103,107 @@ public class UpdateDatabaseService extends JobService {
                 KlingonContentDatabase.KEY_UPDATED_DATABASE_VERSION,
                 /* default */ installedVersion);
 
+        // The manifest only needs to be read again if it has changed since it was last handled,
+        // unless the database has changed since then, e.g., because the bundled database was
+        // upgraded.
+        ConditionalHttpClient httpClient =
+            new ConditionalHttpClient(new PreferencesValidatorStore(UpdateDatabaseService.this));
+        boolean conditional =
+            updatedVersion.equals(
+                sharedPrefs.getString(KEY_MANIFEST_HANDLED_FOR_VERSION, /* default */ null));
+        ConditionalHttpClient.Response response =
+            httpClient.get(MANIFEST_JSON_URL, conditional, MAX_BUFFER_LENGTH);
+        if (response.isNotModified()) {
+          Log.d(TAG, "Manifest not modified.");
+          rescheduleJob = false;
+          return null;
+        }
+
+        String data = response.getBody();
+        JSONObject manifestObject = new JSONObject(data);
+        JSONObject androidObject = manifestObject.getJSONObject("Android-3");
+        String latest = androidObject.getString("latest");
+        Log.d(TAG, "Latest database version: " + latest);
+
         // Only download the database if the latest version is lexicographically greater than the
         // installed one and it hasn't already been downloaded.
         if (latest.compareToIgnoreCase(updatedVersion) > 0) {
           JSONObject latestObject = androidObject.getJSONObject(latest);
 
-          // Get the metadata for the latest database for Android.
-          String databaseZipUrl = ONLINE_UPGRADE_PATH + latestObject.getString("path");
-          int firstExtraEntryId = latestObject.getInt("extra");
-          Log.d(TAG, "Database zip URL: " + databaseZipUrl);
-          Log.d(TAG, "Id of first extra entry: " + Integer.toString(firstExtraEntryId));
-          copyDBFromZipUrl(databaseZipUrl);
-
-          // Save the new version and first extra entry ID.
-          SharedPreferences.Editor sharedPrefsEd =
-              PreferenceManager.getDefaultSharedPreferences(UpdateDatabaseService.this).edit();
-          sharedPrefsEd.putString(KlingonContentDatabase.KEY_UPDATED_DATABASE_VERSION, latest);
-          sharedPrefsEd.putInt(
-              KlingonContentDatabase.KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY, firstExtraEntryId);
-          sharedPrefsEd.apply();
+          // If there is a changeset from the installed version, it is listed under "changesets",
+          // e.g.:
+          //   "changesets": { "2020.08.30a": "qawHaq-2020.08.30a-2020.09.07a.jsonl" }
+          // It updates the installed database in place, which is much less work than replacing it.
+          boolean changesetApplied = false;
+          JSONObject changesetsObject = latestObject.optJSONObject("changesets");
+          if (changesetsObject != null && changesetsObject.has(installedVersion)) {
+            String changesetUrl =
+                ONLINE_UPGRADE_PATH + changesetsObject.getString(installedVersion);
+            Log.d(TAG, "Database changeset URL: " + changesetUrl);
+            changesetApplied = applyChangeset(changesetUrl);
+          }
+
+          if (!changesetApplied) {
+            // Get the metadata for the latest database for Android. The SHA-256 hash of the zip, if
+            // known, is under "sha256". If there is a patch from the installed version, it is
+            // listed under "patches", e.g.:
+            //   "patches": { "2020.08.30a": "qawHaq-2020.08.30a-2020.09.07a.patch" }
+            // A patch only applies to the released database of its version, byte for byte, so it
+            // is skipped if a changeset has since updated the installed database in place, even
+            // though the installed version then matches the changeset's target version.
+            String databaseZipUrl = ONLINE_UPGRADE_PATH + latestObject.getString("path");
+            String databaseZipSha256 = latestObject.optString("sha256", null);
+            int firstExtraEntryId = latestObject.getInt("extra");
+            String databasePatchUrl = null;
+            JSONObject patchesObject = latestObject.optJSONObject("patches");
+            boolean installedDatabaseModified =
+                sharedPrefs.getBoolean(
+                    KlingonContentDatabase.KEY_INSTALLED_DATABASE_MODIFIED, /* default */ false);
+            if (patchesObject != null
+                && patchesObject.has(installedVersion)
+                && !installedDatabaseModified) {
+              databasePatchUrl = ONLINE_UPGRADE_PATH + patchesObject.getString(installedVersion);
+            }
+            Log.d(TAG, "Database zip URL: " + databaseZipUrl);
+            Log.d(TAG, "Database patch URL: " + databasePatchUrl);
+            Log.d(TAG, "Id of first extra entry: " + Integer.toString(firstExtraEntryId));
+            downloadDatabase(databaseZipUrl, databaseZipSha256, databasePatchUrl);
+
+            // Save the new version and first extra entry ID.
+            SharedPreferences.Editor sharedPrefsEd =
+                PreferenceManager.getDefaultSharedPreferences(UpdateDatabaseService.this).edit();
+            sharedPrefsEd.putString(KlingonContentDatabase.KEY_UPDATED_DATABASE_VERSION, latest);
+            sharedPrefsEd.putInt(
+                KlingonContentDatabase.KEY_UPDATED_ID_OF_FIRST_EXTRA_ENTRY, firstExtraEntryId);
+            sharedPrefsEd.apply();
+
+            // Switch to the new database now, rather than the next time the app is started.
+            Bundle result =
+                getContentResolver()
+                    .call(
+                        KlingonContentProvider.CONTENT_URI,
+                        KlingonContentProvider.METHOD_INSTALL_REPLACEMENT_DATABASE,
+                        null,
+                        null);
+            Log.d(
+                TAG,
+                "Database replaced: "
+                    + (result != null
+                        && result.getBoolean(KlingonContentProvider.KEY_DATABASE_REPLACED)));
+          }
         }
 
+        // Remember that this manifest has been handled, and for which database.
+        httpClient.saveValidators(response);
+        SharedPreferences.Editor sharedPrefsEd = sharedPrefs.edit();
+        sharedPrefsEd.putString(
+            KEY_MANIFEST_HANDLED_FOR_VERSION,
+            sharedPrefs.getString(
+                KlingonContentDatabase.KEY_UPDATED_DATABASE_VERSION,
+                /* default */ KlingonContentDatabase.getInstalledDatabaseVersion(
+                    UpdateDatabaseService.this)));
+        sharedPrefsEd.apply();
+
         // Success, so no need to reschedule.
         rescheduleJob = false;
 
@@ -152,41 +219,62 @@ public class UpdateDatabaseService extends JobService {
       return null;
     }
 
-    private void copyDBFromZipUrl(String databaseZipUrl) throws IOException {
-      // Read the database from a zip file online.
-      URLConnection urlConnection = new URL(databaseZipUrl).openConnection();
-      urlConnection.setRequestProperty("Accept-Encoding", "gzip");
-      ZipInputStream inStream;
-      if ("gzip".equals(urlConnection.getContentEncoding())) {
-        inStream = new ZipInputStream(new GZIPInputStream(urlConnection.getInputStream()));
-      } else {
-        inStream = new ZipInputStream(urlConnection.getInputStream());
+    // Downloads a changeset and has the content provider apply it to the installed database.
+    // Returns whether it was applied. If it wasn't, the whole database is downloaded instead.
+    private boolean applyChangeset(String changesetUrl) {
+      File changesetFile = new File(UpdateDatabaseService.this.getCacheDir(), CHANGESET_FILE_NAME);
+      try {
+        long length = DatabaseDownloader.downloadFile(changesetUrl, changesetFile);
+        Log.d(TAG, "Downloaded changeset from " + changesetUrl + ", " + length + " bytes.");
+        Bundle result =
+            getContentResolver()
+                .call(
+                    KlingonContentProvider.CONTENT_URI,
+                    KlingonContentProvider.METHOD_APPLY_CHANGESET,
+                    changesetFile.getAbsolutePath(),
+                    null);
+        boolean applied =
+            result != null && result.getBoolean(KlingonContentProvider.KEY_CHANGESET_APPLIED);
+        Log.d(TAG, "Changeset applied: " + applied);
+        return applied;
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to download changeset, downloading whole database.", e);
+        return false;
+      } finally {
+        changesetFile.delete();
       }
+    }
 
-      // Write to the replacement database.
-      String fullReplacementDBPath =
-          UpdateDatabaseService.this
-              .getDatabasePath(KlingonContentDatabase.REPLACEMENT_DATABASE_NAME)
-              .getAbsolutePath();
-      Log.d(TAG, "fullReplacementDBPath: " + fullReplacementDBPath);
-      OutputStream outStream = new FileOutputStream(fullReplacementDBPath);
-
-      // Transfer the database from the resources to the system path one block at a time.
-      byte[] buffer = new byte[MAX_BUFFER_LENGTH];
-      int length;
-      int total = 0;
-      inStream.getNextEntry();
-      while ((length = inStream.read(buffer)) > 0) {
-        outStream.write(buffer, 0, length);
-        total += length;
-      }
-      Log.d(TAG, "Copied database from " + databaseZipUrl + ", " + total + " bytes written.");
+    private void downloadDatabase(
+        String databaseZipUrl, String databaseZipSha256, String databasePatchUrl)
+        throws IOException {
+      File installedDatabase =
+          UpdateDatabaseService.this.getDatabasePath(KlingonContentDatabase.DATABASE_NAME);
+      File replacementDatabase =
+          UpdateDatabaseService.this.getDatabasePath(
+              KlingonContentDatabase.REPLACEMENT_DATABASE_NAME);
+      Log.d(TAG, "fullReplacementDBPath: " + replacementDatabase.getAbsolutePath());
 
-      // Close the streams.
-      outStream.flush();
-      outStream.close();
-      inStream.closeEntry();
-      inStream.close();
+      DatabaseDownloader.Result result =
+          DatabaseDownloader.download(
+              databaseZipUrl,
+              databaseZipSha256,
+              databasePatchUrl,
+              installedDatabase,
+              replacementDatabase);
+      if (result.getPatchFailure() != null) {
+        Log.w(TAG, "Failed to patch database, downloaded it in full.", result.getPatchFailure());
+      }
+      String source = result.isPatched() ? databasePatchUrl : databaseZipUrl;
+      Log.d(
+          TAG,
+          "Copied database from "
+              + source
+              + ", "
+              + result.getBytesDownloaded()
+              + " bytes downloaded, "
+              + result.getBytesWritten()
+              + " bytes written.");
     }
   }
 }
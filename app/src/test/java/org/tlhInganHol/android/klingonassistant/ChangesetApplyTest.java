@@ -0,0 +1,188 @@
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.preference.PreferenceManager;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that applying a changeset to the bundled database changes entries the same way a freshly
+ * built database would have them, without moving them.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 27)
+public class ChangesetApplyTest {
+    // An entry which is neither the first nor the last in the table.
+    private static final int ENTRY_OFFSET = 100;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private Context mContext;
+    private KlingonContentDatabase mDatabase;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+        mDatabase = new KlingonContentDatabase(mContext);
+
+        // Changesets update the full-text table, which only the plain layout has.
+        SQLiteDatabase db = openInstalledDatabase();
+        try {
+            Assume.assumeTrue(
+                    queryInt(db, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table'"
+                            + " AND name = 'mem'") > 0);
+        } finally {
+            db.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.getLifecycleManager().close();
+    }
+
+    @Test
+    public void applyChangeset_changedEntryKeepsRowIdAndPlaceInResults() throws Exception {
+        JSONObject entry = new JSONObject();
+        long rowId;
+        int extraEntryId;
+        SQLiteDatabase db = openInstalledDatabase();
+        try {
+            Cursor cursor =
+                    db.query(
+                            "mem",
+                            concat(new String[] {"rowid"}, KlingonContentDatabase.ALL_KEYS),
+                            null,
+                            null,
+                            null,
+                            null,
+                            "rowid",
+                            ENTRY_OFFSET + ",1");
+            try {
+                assertTrue(cursor.moveToFirst());
+                rowId = cursor.getLong(0);
+                for (int i = 0; i < KlingonContentDatabase.ALL_KEYS.length; i++) {
+                    entry.put(KlingonContentDatabase.ALL_KEYS[i], cursor.getString(i + 1));
+                }
+            } finally {
+                cursor.close();
+            }
+            extraEntryId = queryInt(db, "SELECT MAX(_id) FROM mem") + 1;
+        } finally {
+            db.close();
+        }
+        int entryId = entry.getInt(KlingonContentDatabase.KEY_ID);
+        String entryName = entry.getString(KlingonContentDatabase.KEY_ENTRY_NAME);
+        String definition = entry.getString(KlingonContentDatabase.KEY_DEFINITION) + " (changed)";
+        ArrayList<Integer> resultsBefore = search(entryName);
+        assertTrue(resultsBefore.contains(entryId));
+
+        entry.put(KlingonContentDatabase.KEY_DEFINITION, definition);
+        String installedVersion = KlingonContentDatabase.getInstalledDatabaseVersion(mContext);
+        JSONObject header = new JSONObject();
+        header.put("changeset", 1);
+        header.put("from", installedVersion);
+        header.put("to", installedVersion + "-changed");
+        header.put("extra", extraEntryId);
+        File changesetFile = mTempFolder.newFile("changeset.jsonl");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(changesetFile), "UTF-8");
+        try {
+            writer.write(header.toString() + "\n" + entry.toString() + "\n");
+        } finally {
+            writer.close();
+        }
+
+        InputStream inStream = new FileInputStream(changesetFile);
+        try {
+            assertTrue(mDatabase.applyChangeset(inStream));
+        } finally {
+            inStream.close();
+        }
+        // Binary patches for the new version mustn't be applied to the changed file.
+        assertTrue(
+                PreferenceManager.getDefaultSharedPreferences(mContext)
+                        .getBoolean(KlingonContentDatabase.KEY_INSTALLED_DATABASE_MODIFIED, false));
+
+        db = openInstalledDatabase();
+        try {
+            assertEquals(rowId, queryInt(db, "SELECT rowid FROM mem WHERE _id = " + entryId));
+            assertEquals(1, queryInt(db, "SELECT COUNT(*) FROM mem WHERE _id = " + entryId));
+        } finally {
+            db.close();
+        }
+        Cursor cursor = mDatabase.getEntryById(Integer.toString(entryId), null);
+        try {
+            assertEquals(
+                    definition,
+                    cursor.getString(
+                            cursor.getColumnIndexOrThrow(KlingonContentDatabase.KEY_DEFINITION)));
+        } finally {
+            cursor.close();
+        }
+        assertEquals(resultsBefore, search(entryName));
+    }
+
+    // Searches for the query as if for the first time, and returns the ids of the results in order.
+    private ArrayList<Integer> search(String query) {
+        KlingonContentDatabase.invalidateCaches();
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        Cursor cursor = mDatabase.getEntryMatches(query);
+        if (cursor == null) {
+            return ids;
+        }
+        try {
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                ids.add(cursor.getInt(KlingonContentDatabase.COLUMN_ID));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private SQLiteDatabase openInstalledDatabase() {
+        return SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(KlingonContentDatabase.DATABASE_NAME).getPath(),
+                null,
+                SQLiteDatabase.OPEN_READONLY);
+    }
+
+    private static int queryInt(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String[] concat(String[] first, String[] second) {
+        String[] result = new String[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+package org.tlhInganHol.android.klingonassistant;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/** Tests for DatabaseInstaller, which install a synthetic database by each of its methods. */
+public class DatabaseInstallerTest {
+    // Several times DatabaseInstaller's buffer, but not a multiple of it, so that the last transfer
+    // of each copy is a partial one.
+    private static final int DATABASE_LENGTH = 3 * 1024 * 1024 + 4321;
+
+    // The length of the data surrounding the database when it's embedded in another file.
+    private static final int PADDING_LENGTH = 12345;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    @Test
+    public void install_wholeFile() throws Exception {
+        File source = createSyntheticFile("source.db", DATABASE_LENGTH, /* seed */ 1);
+        File target = mTempFolder.newFile("qawHaq.db");
+
+        DatabaseInstaller.Stats stats = DatabaseInstaller.install(source, target);
+        assertEquals(DATABASE_LENGTH, stats.getBytes());
+        assertTrue(stats.getBytesPerSecond() > 0);
+        assertEquals(checksum(source, 0, source.length()), checksum(target, 0, target.length()));
+        assertNoTempFile(target);
+    }
+
+    @Test
+    public void install_regionOfFile() throws Exception {
+        // This is how the database is stored in an APK: uncompressed, at some offset.
+        File apk =
+                createSyntheticFile(
+                        "app.apk", PADDING_LENGTH + DATABASE_LENGTH + PADDING_LENGTH,
+                        /* seed */ 2);
+        File target = mTempFolder.newFile("qawHaq.db");
+
+        FileInputStream inStream = new FileInputStream(apk);
+        DatabaseInstaller.Stats stats;
+        try {
+            stats = DatabaseInstaller.install(
+                    inStream, PADDING_LENGTH, DATABASE_LENGTH, target);
+        } finally {
+            inStream.close();
+        }
+        assertEquals(DATABASE_LENGTH, stats.getBytes());
+        assertTrue(stats.getBytesPerSecond() > 0);
+        assertEquals(DATABASE_LENGTH, target.length());
+        assertEquals(
+                checksum(apk, PADDING_LENGTH, DATABASE_LENGTH),
+                checksum(target, 0, target.length()));
+        assertNoTempFile(target);
+    }
+
+    @Test
+    public void install_stream() throws Exception {
+        File source = createSyntheticFile("source.db", DATABASE_LENGTH, /* seed */ 3);
+        File target = mTempFolder.newFile("qawHaq.db");
+
+        InputStream inStream = new BufferedInputStream(new FileInputStream(source));
+        DatabaseInstaller.Stats stats;
+        try {
+            stats = DatabaseInstaller.install(inStream, target);
+        } finally {
+            inStream.close();
+        }
+        assertEquals(DATABASE_LENGTH, stats.getBytes());
+        assertTrue(stats.getBytesPerSecond() > 0);
+        assertEquals(checksum(source, 0, source.length()), checksum(target, 0, target.length()));
+        assertNoTempFile(target);
+    }
+
+    @Test
+    public void install_truncatedSourceLeavesTargetUntouched() throws Exception {
+        File source = createSyntheticFile("source.db", 1000, /* seed */ 4);
+        File target = createSyntheticFile("qawHaq.db", 500, /* seed */ 5);
+        long targetChecksum = checksum(target, 0, target.length());
+
+        FileInputStream inStream = new FileInputStream(source);
+        try {
+            DatabaseInstaller.install(inStream, /* offset */ 0, /* length */ 2000, target);
+            fail("Expected an IOException.");
+        } catch (IOException e) {
+            // Expected.
+        } finally {
+            inStream.close();
+        }
+
+        assertEquals(targetChecksum, checksum(target, 0, target.length()));
+        assertNoTempFile(target);
+    }
+
+    private File createSyntheticFile(String name, int length, long seed) throws IOException {
+        File file = mTempFolder.newFile(name);
+        Random random = new Random(seed);
+        byte[] block = new byte[64 * 1024];
+        FileOutputStream outStream = new FileOutputStream(file);
+        try {
+            for (int written = 0; written < length; written += block.length) {
+                random.nextBytes(block);
+                outStream.write(block, 0, Math.min(block.length, length - written));
+            }
+        } finally {
+            outStream.close();
+        }
+        return file;
+    }
+
+    private static long checksum(File file, long offset, long length) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        FileInputStream inStream = new FileInputStream(file);
+        try {
+            assertEquals(offset, inStream.skip(offset));
+            long remaining = length;
+            int count;
+            while (remaining > 0
+                    && (count = inStream.read(buffer, 0, (int) Math.min(buffer.length, remaining)))
+                            != -1) {
+                crc.update(buffer, 0, count);
+                remaining -= count;
+            }
+            assertEquals(0, remaining);
+        } finally {
+            inStream.close();
+        }
+        return crc.getValue();
+    }
+
+    private static void assertNoTempFile(File target) {
+        assertFalse(new File(target.getPath() + ".tmp").exists());
+    }
+}
@@ -0,0 +1,49 @@
+package org.tlhInganHol.android.klingonassistant;
+
+import java.util.Arrays;
+
+/** Collects latencies, and reports their percentiles. */
+class LatencyStats {
+    private long[] mNanos = new long[64];
+    private int mCount = 0;
+    private long mTotalStatements = 0;
+
+    void add(long nanos, long statements) {
+        if (mCount == mNanos.length) {
+            mNanos = Arrays.copyOf(mNanos, mCount * 2);
+        }
+        mNanos[mCount++] = nanos;
+        mTotalStatements += statements;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    /** Returns the given percentile (0 to 100) of the latencies, in milliseconds. */
+    double getPercentileMillis(double percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(mNanos, mCount);
+        Arrays.sort(sorted);
+        // The nearest-rank percentile.
+        int rank = (int) Math.ceil(percentile / 100 * mCount);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    double getStatementsPerQuery() {
+        return mCount == 0 ? 0 : (double) mTotalStatements / mCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "n=%d p50=%.2fms p95=%.2fms p99=%.2fms statements/query=%.1f",
+                mCount,
+                getPercentileMillis(50),
+                getPercentileMillis(95),
+                getPercentileMillis(99),
+                getStatementsPerQuery());
+    }
+}
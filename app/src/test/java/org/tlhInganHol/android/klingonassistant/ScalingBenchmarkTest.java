@@ -0,0 +1,255 @@
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.preference.PreferenceManager;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays the searches of SearchBenchmarkTest against synthetic databases with several times as
+ * many entries as the bundled one (see SyntheticDatabaseGenerator), and reports how the latency of
+ * each category of query grows with the size of the dictionary. A category whose latency grows in
+ * proportion to the number of entries is dominated by a stage which scans the whole table.
+ *
+ * <p>Like SearchBenchmarkTest, the replay is skipped unless the benchmarks are asked for, so run it
+ * with:
+ *
+ * <pre>./gradlew :app:testDebugUnitTest -Pbenchmarks --tests '*ScalingBenchmarkTest'</pre>
+ *
+ * <p>By default, the databases are 1 and 10 times the size of the bundled one. Build with, e.g.,
+ * -PscalingFactors=1,10,100 to choose others.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 27)
+public class ScalingBenchmarkTest {
+    private static final String DEFAULT_FACTORS = "1,10";
+    private static final long SEED = 42;
+
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+
+    // Syllables of Klingon names, which every synthetic name is made of.
+    private static final String KLINGON_NAME = "^(tlh|ch|gh|ng|rgh|[bDHjlmnpqQrStvwy'aeIou])+$";
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private Context mContext;
+    private File mSourceFile;
+    private int mSourceCount;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = RuntimeEnvironment.application;
+
+        // Install the bundled database, and keep a copy of it to build the synthetic ones from.
+        KlingonContentDatabase database = new KlingonContentDatabase(mContext);
+        database.getLifecycleManager().close();
+        mSourceFile = mTempFolder.newFile("source.db");
+        Files.copy(
+                getInstalledFile().toPath(),
+                mSourceFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        SQLiteDatabase source =
+                SQLiteDatabase.openDatabase(
+                        mSourceFile.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            // The split layouts are built from the plain one, so they aren't generated.
+            Assume.assumeTrue(hasTable(source, SyntheticDatabaseGenerator.TABLE));
+            mSourceCount = queryInt(source, "SELECT COUNT(*) FROM mem");
+        } finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void generate_keepsRealEntriesAndAddsSyntheticOnes() throws Exception {
+        File target = new File(mTempFolder.getRoot(), "scaled.db");
+        int count = new SyntheticDatabaseGenerator(SEED).generate(mSourceFile, target, 3);
+        assertEquals(3 * mSourceCount, count);
+
+        SQLiteDatabase db =
+                SQLiteDatabase.openDatabase(target.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        try {
+            // All the real entries are kept, with their ids.
+            assertEquals(
+                    mSourceCount,
+                    queryInt(
+                            db,
+                            "SELECT COUNT(*) FROM mem WHERE rowid IN "
+                                    + "(SELECT rowid FROM source_copy.mem)",
+                            mSourceFile));
+
+            Cursor cursor =
+                    db.rawQuery(
+                            "SELECT entry_name, part_of_speech, definition, definition_de FROM mem"
+                                    + " ORDER BY rowid LIMIT -1 OFFSET ?",
+                            new String[] {Integer.toString(mSourceCount)});
+            try {
+                assertEquals(2 * mSourceCount, cursor.getCount());
+                while (cursor.moveToNext()) {
+                    String name = cursor.getString(0);
+                    assertTrue(name, name.matches(KLINGON_NAME));
+                    KlingonContentProvider.Entry entry =
+                            new KlingonContentProvider.Entry(
+                                    name + ":" + cursor.getString(1), mContext);
+                    assertFalse(cursor.getString(1), entry.basePartOfSpeechIsUnknown());
+                    assertFalse(cursor.getString(2).equals(""));
+                    assertFalse(cursor.getString(3).equals(""));
+                }
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            db.close();
+        }
+    }
+
+    @Test
+    public void getEntryMatches_scalesWithDictionary() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+        ArrayList<String[]> queries = SearchBenchmarkTest.loadQueries();
+        String[] factors = System.getProperty("scalingFactors", DEFAULT_FACTORS).split(",");
+        Map<String, LatencyStats> baseStats = null;
+        for (String factor : factors) {
+            Map<String, LatencyStats> stats = runAtScale(Integer.parseInt(factor.trim()), queries);
+            for (Map.Entry<String, LatencyStats> entry : stats.entrySet()) {
+                String growth = "";
+                if (baseStats != null) {
+                    LatencyStats base = baseStats.get(entry.getKey());
+                    growth =
+                            String.format(
+                                    " growth=%.1fx",
+                                    entry.getValue().getPercentileMillis(50)
+                                            / base.getPercentileMillis(50));
+                }
+                System.out.println(
+                        "getEntryMatches "
+                                + factor.trim()
+                                + "x "
+                                + entry.getKey()
+                                + ": "
+                                + entry.getValue()
+                                + growth);
+            }
+            if (baseStats == null) {
+                baseStats = stats;
+            }
+        }
+    }
+
+    // Installs a synthetic database of the given size, and replays the queries against it.
+    private Map<String, LatencyStats> runAtScale(int factor, ArrayList<String[]> queries)
+            throws Exception {
+        File target = new File(mTempFolder.getRoot(), "scaled.db");
+        int count = new SyntheticDatabaseGenerator(SEED).generate(mSourceFile, target, factor);
+        assertEquals(factor * mSourceCount, count);
+        Files.copy(
+                target.toPath(),
+                getInstalledFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+
+        // The bundled lexicon doesn't describe the synthetic entries, so mark the installed
+        // database as a different version to have entries looked up in it instead.
+        PreferenceManager.getDefaultSharedPreferences(mContext)
+                .edit()
+                .putString(
+                        KlingonContentDatabase.KEY_INSTALLED_DATABASE_VERSION,
+                        KlingonContentDatabase.getBundledDatabaseVersion() + "-synthetic")
+                .commit();
+        KlingonContentDatabase.invalidateCaches();
+        KlingonContentDatabase database = new KlingonContentDatabase(mContext);
+
+        Map<String, LatencyStats> statsByCategory = new LinkedHashMap<String, LatencyStats>();
+        try {
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+                for (String[] query : queries) {
+                    long statementsBefore = database.getLifecycleManager().getStatementCount();
+                    long start = System.nanoTime();
+                    int results = search(database, query[1]);
+                    long nanos = System.nanoTime() - start;
+                    long statements =
+                            database.getLifecycleManager().getStatementCount() - statementsBefore;
+
+                    // The real entries are all still there.
+                    if (query[0].equals("word") || query[0].equals("affixed")) {
+                        assertTrue("No results for " + query[1], results > 0);
+                    }
+                    if (round < WARMUP_ROUNDS) {
+                        continue;
+                    }
+                    LatencyStats stats = statsByCategory.get(query[0]);
+                    if (stats == null) {
+                        stats = new LatencyStats();
+                        statsByCategory.put(query[0], stats);
+                    }
+                    stats.add(nanos, statements);
+                }
+            }
+        } finally {
+            database.getLifecycleManager().close();
+        }
+        return statsByCategory;
+    }
+
+    private File getInstalledFile() {
+        return mContext.getDatabasePath(KlingonContentDatabase.DATABASE_NAME);
+    }
+
+    // Searches for the query as if for the first time, and returns the number of results.
+    private static int search(KlingonContentDatabase database, String query) {
+        KlingonContentDatabase.invalidateCaches();
+        Cursor cursor = database.getEntryMatches(query);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean hasTable(SQLiteDatabase db, String table) {
+        return queryInt(db, "SELECT COUNT(*) FROM sqlite_master WHERE name = '" + table + "'") > 0;
+    }
+
+    private static int queryInt(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Runs the query with the given database attached as "source_copy".
+    private static int queryInt(SQLiteDatabase db, String sql, File attached) {
+        db.execSQL("ATTACH DATABASE ? AS source_copy", new Object[] {attached.getPath()});
+        try {
+            return queryInt(db, sql);
+        } finally {
+            db.execSQL("DETACH DATABASE source_copy");
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.tlhInganHol.android.klingonassistant;
+
+import android.database.Cursor;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a recorded mix of searches through getEntryMatches against the bundled qawHaq.db, on the
+ * JVM with Robolectric's SQLite, and reports the latency percentiles and the number of SQL
+ * statements of each category of query. The replay is skipped unless the benchmarks are asked for,
+ * so run it with:
+ *
+ * <pre>./gradlew :app:testDebugUnitTest -Pbenchmarks --tests '*SearchBenchmarkTest'</pre>
+ *
+ * <p>The timings are only comparable between runs on the same machine, but the statement counts
+ * don't depend on it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 27)
+public class SearchBenchmarkTest {
+    private static final String QUERIES = "/search_queries.tsv";
+
+    // Untimed passes over the mix to warm up the JIT, followed by timed ones.
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private KlingonContentDatabase mDatabase;
+    private ArrayList<String[]> mQueries;
+
+    @Before
+    public void setUp() throws Exception {
+        mDatabase = new KlingonContentDatabase(RuntimeEnvironment.application);
+        mQueries = loadQueries();
+    }
+
+    @Test
+    public void getEntryMatches_queryMix() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (String[] query : mQueries) {
+                search(query[1]);
+            }
+        }
+
+        Map<String, LatencyStats> statsByCategory = new LinkedHashMap<String, LatencyStats>();
+        LatencyStats allStats = new LatencyStats();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            for (String[] query : mQueries) {
+                long statementsBefore = mDatabase.getLifecycleManager().getStatementCount();
+                long start = System.nanoTime();
+                int count = search(query[1]);
+                long nanos = System.nanoTime() - start;
+                long statements =
+                        mDatabase.getLifecycleManager().getStatementCount() - statementsBefore;
+
+                // Every Klingon word in the mix is in the dictionary.
+                if (query[0].equals("word") || query[0].equals("affixed")) {
+                    assertTrue("No results for " + query[1], count > 0);
+                }
+                LatencyStats stats = statsByCategory.get(query[0]);
+                if (stats == null) {
+                    stats = new LatencyStats();
+                    statsByCategory.put(query[0], stats);
+                }
+                stats.add(nanos, statements);
+                allStats.add(nanos, statements);
+            }
+        }
+
+        for (Map.Entry<String, LatencyStats> entry : statsByCategory.entrySet()) {
+            System.out.println("getEntryMatches " + entry.getKey() + ": " + entry.getValue());
+        }
+        System.out.println("getEntryMatches all: " + allStats);
+        assertEquals(mQueries.size() * MEASURED_ROUNDS, allStats.getCount());
+        assertTrue(allStats.getStatementsPerQuery() > 0);
+    }
+
+    @Test
+    public void getEntryMatches_cachedQueryRunsNoStatements() throws Exception {
+        search("tlhIngan Hol Dajatlh'a'");
+        long statementsBefore = mDatabase.getLifecycleManager().getStatementCount();
+
+        Cursor cursor = mDatabase.getEntryMatches("tlhIngan Hol Dajatlh'a'");
+        try {
+            assertTrue(cursor.getCount() > 0);
+        } finally {
+            cursor.close();
+        }
+        assertEquals(statementsBefore, mDatabase.getLifecycleManager().getStatementCount());
+    }
+
+    // Searches for the query as if for the first time, and returns the number of results.
+    private int search(String query) {
+        KlingonContentDatabase.invalidateCaches();
+        Cursor cursor = mDatabase.getEntryMatches(query);
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // Loads the recorded mix of searches, as pairs of category and query.
+    static ArrayList<String[]> loadQueries() throws Exception {
+        ArrayList<String[]> queries = new ArrayList<String[]>();
+        InputStream in = SearchBenchmarkTest.class.getResourceAsStream(QUERIES);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.equals("") && !line.startsWith("#")) {
+                    queries.add(line.split("\t", 2));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return queries;
+    }
+}
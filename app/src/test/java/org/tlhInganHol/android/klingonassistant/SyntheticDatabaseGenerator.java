@@ -0,0 +1,254 @@
+package org.tlhInganHol.android.klingonassistant;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Builds a larger copy of a database with the plain "mem" layout, to see how searching scales as
+ * the dictionary grows. The copy has all the entries of the source database, with the same ids, so
+ * that real queries still find what they find today, followed by synthetic entries up to the given
+ * multiple of the number of real entries.
+ *
+ * <p>Synthetic entries have names made of Klingon syllables, parts of speech with the attributes
+ * real entries have, roughly in the proportions they have them, and definitions and search tags in
+ * every language, made of common glosses. They are generated from a seed, so the same database is
+ * built each time.
+ */
+class SyntheticDatabaseGenerator {
+    static final String TABLE = "mem";
+
+    private static final String[] CONSONANTS = {
+        "b", "ch", "D", "gh", "H", "j", "l", "m", "n", "ng", "p", "q", "Q", "r", "S", "t", "tlh",
+        "v", "w", "y", "'"
+    };
+    private static final String[] VOWELS = {"a", "e", "I", "o", "u"};
+    // Syllable endings which are only found at the end of a syllable.
+    private static final String[] CLUSTERS = {"rgh", "w'", "y'"};
+
+    // Parts of speech, each listed as many times as it's roughly more common than the rarest.
+    private static final String[] PARTS_OF_SPEECH = {
+        "n", "n", "n", "n", "n", "n", "n", "n", "n:being", "n:body", "n:anim", "n:food",
+        "n:place", "n:name", "n:inhpl", "n:deriv", "n:weap", "n:archaic", "n:slang", "n:reg",
+        "n:hyp", "n:extcan", "v:t_c", "v:t_c", "v:t_c", "v:t", "v:i_c", "v:i_c", "v:i", "v:is",
+        "v:is", "v:ambi", "v:t_c,slang", "v:i,hyp", "adv", "conj", "excl", "ques", "sen:phr",
+        "sen:idiom", "sen:prov"
+    };
+
+    // Glosses of common concepts, in the order of LANGUAGES.
+    private static final String[] LANGUAGES = {"", "de", "fa", "sv", "ru", "zh_HK", "pt"};
+    private static final String[][] GLOSSES = {
+        {"warrior", "Krieger", "جنگجو", "krigare", "воин", "戰士", "guerreiro"},
+        {"ship", "Schiff", "کشتی", "skepp", "корабль", "船", "nave"},
+        {"honour", "Ehre", "افتخار", "ära", "честь", "榮譽", "honra"},
+        {"blood", "Blut", "خون", "blod", "кровь", "血", "sangue"},
+        {"enemy", "Feind", "دشمن", "fiende", "враг", "敵人", "inimigo"},
+        {"weapon", "Waffe", "سلاح", "vapen", "оружие", "武器", "arma"},
+        {"song", "Lied", "آواز", "sång", "песня", "歌", "canção"},
+        {"food", "Essen", "غذا", "mat", "еда", "食物", "comida"},
+        {"house", "Haus", "خانه", "hus", "дом", "屋", "casa"},
+        {"day", "Tag", "روز", "dag", "день", "日", "dia"},
+        {"star", "Stern", "ستاره", "stjärna", "звезда", "星", "estrela"},
+        {"child", "Kind", "کودک", "barn", "ребёнок", "孩子", "criança"},
+        {"stone", "Stein", "سنگ", "sten", "камень", "石", "pedra"},
+        {"fire", "Feuer", "آتش", "eld", "огонь", "火", "fogo"},
+        {"water", "Wasser", "آب", "vatten", "вода", "水", "água"},
+        {"be good", "gut sein", "خوب بودن", "vara bra", "быть хорошим", "好", "ser bom"},
+        {"be strong", "stark sein", "قوی بودن", "vara stark", "быть сильным", "強", "ser forte"},
+        {"fight", "kämpfen", "جنگیدن", "slåss", "сражаться", "戰鬥", "lutar"},
+        {"speak", "sprechen", "صحبت کردن", "tala", "говорить", "講", "falar"},
+        {"see", "sehen", "دیدن", "se", "видеть", "看", "ver"},
+        {"eat", "essen", "خوردن", "äta", "есть", "食", "comer"},
+        {"go", "gehen", "رفتن", "gå", "идти", "去", "ir"},
+        {"know", "wissen", "دانستن", "veta", "знать", "知道", "saber"},
+        {"kill", "töten", "کشتن", "döda", "убить", "殺", "matar"},
+        {"sing", "singen", "خواندن", "sjunga", "петь", "唱", "cantar"},
+    };
+
+    private final Random mRandom;
+
+    SyntheticDatabaseGenerator(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Writes a database to the target file with the entries of the source database, followed by
+     * synthetic entries up to factor times as many entries. Returns the number of entries written.
+     */
+    int generate(File source, File target, int factor) {
+        if (target.exists() && !target.delete()) {
+            throw new IllegalStateException("Unable to delete " + target + ".");
+        }
+        // The metadata table is copied from the source database rather than created on opening.
+        SQLiteDatabase db =
+                SQLiteDatabase.openDatabase(
+                        target.getPath(),
+                        null,
+                        SQLiteDatabase.CREATE_IF_NECESSARY | SQLiteDatabase.NO_LOCALIZED_COLLATORS);
+        try {
+            db.execSQL("ATTACH DATABASE ? AS source", new Object[] {source.getPath()});
+            ArrayList<String> columns = copySchema(db);
+
+            db.beginTransaction();
+            try {
+                String columnList = join(columns);
+                db.execSQL(
+                        "INSERT INTO main."
+                                + TABLE
+                                + " (rowid, "
+                                + columnList
+                                + ") SELECT rowid, "
+                                + columnList
+                                + " FROM source."
+                                + TABLE);
+                int realCount = (int) queryLong(db, "SELECT COUNT(*) FROM main." + TABLE);
+                long nextRowId = queryLong(db, "SELECT MAX(rowid) FROM main." + TABLE) + 1;
+                for (int i = realCount; i < realCount * factor; i++) {
+                    db.insertOrThrow(TABLE, null, createEntry(columns, nextRowId++));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            db.execSQL("DETACH DATABASE source");
+            return (int) queryLong(db, "SELECT COUNT(*) FROM " + TABLE);
+        } finally {
+            db.close();
+        }
+    }
+
+    // Creates the entry table, and the metadata the app expects, as they are in the source
+    // database. Returns the columns of the entry table.
+    private ArrayList<String> copySchema(SQLiteDatabase db) {
+        Cursor cursor =
+                db.rawQuery(
+                        "SELECT name, sql FROM source.sqlite_master WHERE name IN (?, ?)",
+                        new String[] {TABLE, "android_metadata"});
+        boolean hasTable = false;
+        boolean hasMetadata = false;
+        try {
+            while (cursor.moveToNext()) {
+                db.execSQL(cursor.getString(1));
+                hasTable |= cursor.getString(0).equals(TABLE);
+                hasMetadata |= cursor.getString(0).equals("android_metadata");
+            }
+        } finally {
+            cursor.close();
+        }
+        if (!hasTable) {
+            throw new IllegalArgumentException("Source database doesn't have a \"mem\" table.");
+        }
+        if (hasMetadata) {
+            db.execSQL("INSERT INTO main.android_metadata SELECT * FROM source.android_metadata");
+        }
+        db.setVersion((int) queryLong(db, "PRAGMA source.user_version"));
+
+        ArrayList<String> columns = new ArrayList<String>();
+        cursor = db.rawQuery("SELECT * FROM source." + TABLE + " LIMIT 0", null);
+        try {
+            for (String column : cursor.getColumnNames()) {
+                columns.add(column);
+            }
+        } finally {
+            cursor.close();
+        }
+        return columns;
+    }
+
+    private ContentValues createEntry(ArrayList<String> columns, long rowId) {
+        String partOfSpeech = PARTS_OF_SPEECH[mRandom.nextInt(PARTS_OF_SPEECH.length)];
+        boolean isVerb = partOfSpeech.startsWith("v");
+        int[] glosses = new int[1 + mRandom.nextInt(2)];
+        for (int i = 0; i < glosses.length; i++) {
+            // Verbs are glossed with the verbs, and everything else with the nouns.
+            glosses[i] = isVerb ? 15 + mRandom.nextInt(10) : mRandom.nextInt(15);
+        }
+        int searchTag = mRandom.nextInt(GLOSSES.length);
+
+        ContentValues values = new ContentValues();
+        for (String column : columns) {
+            values.put(column, "");
+        }
+        values.put("rowid", rowId);
+        if (columns.contains(KlingonContentDatabase.KEY_ID)) {
+            values.put(KlingonContentDatabase.KEY_ID, rowId);
+        }
+        values.put(KlingonContentDatabase.KEY_ENTRY_NAME, createName(isVerb));
+        values.put(KlingonContentDatabase.KEY_PART_OF_SPEECH, partOfSpeech);
+        for (int language = 0; language < LANGUAGES.length; language++) {
+            String suffix = LANGUAGES[language].equals("") ? "" : "_" + LANGUAGES[language];
+            putIfPresent(
+                    values,
+                    columns,
+                    KlingonContentDatabase.KEY_DEFINITION + suffix,
+                    createDefinition(glosses, language, isVerb));
+            putIfPresent(
+                    values,
+                    columns,
+                    KlingonContentDatabase.KEY_SEARCH_TAGS + suffix,
+                    GLOSSES[searchTag][language]);
+        }
+        return values;
+    }
+
+    private String createDefinition(int[] glosses, int language, boolean isVerb) {
+        StringBuilder definition = new StringBuilder();
+        for (int gloss : glosses) {
+            if (definition.length() > 0) {
+                definition.append(", ");
+            }
+            if (isVerb && language == 0) {
+                definition.append("to ");
+            }
+            definition.append(GLOSSES[gloss][language]);
+        }
+        return definition.toString();
+    }
+
+    // Verbs are usually a single syllable, and nouns one to three.
+    private String createName(boolean isVerb) {
+        int syllables = isVerb ? 1 + mRandom.nextInt(4) / 3 : 1 + mRandom.nextInt(3);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < syllables; i++) {
+            name.append(CONSONANTS[mRandom.nextInt(CONSONANTS.length)]);
+            name.append(VOWELS[mRandom.nextInt(VOWELS.length)]);
+            if (mRandom.nextInt(10) == 0) {
+                name.append(CLUSTERS[mRandom.nextInt(CLUSTERS.length)]);
+            } else if (mRandom.nextInt(4) != 0 || i == syllables - 1) {
+                name.append(CONSONANTS[mRandom.nextInt(CONSONANTS.length)]);
+            }
+        }
+        return name.toString();
+    }
+
+    private static void putIfPresent(
+            ContentValues values, ArrayList<String> columns, String column, String value) {
+        if (columns.contains(column)) {
+            values.put(column, value);
+        }
+    }
+
+    private static long queryLong(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String join(ArrayList<String> columns) {
+        StringBuilder joined = new StringBuilder();
+        for (String column : columns) {
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append(column);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,201 @@
+package org.tlhInganHol.android.klingonassistant.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests for ConditionalHttpClient, against a local HTTP server. */
+public class ConditionalHttpClientTest {
+    private static final int MAX_LENGTH = 1024;
+    private static final String MANIFEST = "{\"Android-3\": {\"latest\": \"2020.09.07a\"}}";
+
+    private HttpServer mServer;
+    private FeedHandler mHandler;
+    private MapValidatorStore mValidatorStore;
+    private ConditionalHttpClient mClient;
+
+    @Before
+    public void setUp() throws Exception {
+        mHandler = new FeedHandler();
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/manifest.json", mHandler);
+        mServer.start();
+        mValidatorStore = new MapValidatorStore();
+        mClient = new ConditionalHttpClient(mValidatorStore);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void get_unchangedResourceIsNotSentAgain() throws Exception {
+        ConditionalHttpClient.Response first = mClient.get(url(), true, MAX_LENGTH);
+        assertFalse(first.isNotModified());
+        assertEquals(MANIFEST + "\n", first.getBody());
+        mClient.saveValidators(first);
+
+        ConditionalHttpClient.Response second = mClient.get(url(), true, MAX_LENGTH);
+        assertTrue(second.isNotModified());
+        assertNull(second.getBody());
+        assertEquals("\"1\"", mHandler.mIfNoneMatch.get(1));
+        assertEquals(MANIFEST.length() + 1, mHandler.mBytesServed);
+    }
+
+    @Test
+    public void get_changedResourceIsSent() throws Exception {
+        mClient.saveValidators(mClient.get(url(), true, MAX_LENGTH));
+
+        mHandler.mBody = "{\"Android-3\": {\"latest\": \"2020.09.14a\"}}";
+        mHandler.mEtag = "\"2\"";
+        ConditionalHttpClient.Response response = mClient.get(url(), true, MAX_LENGTH);
+        assertFalse(response.isNotModified());
+        assertEquals(mHandler.mBody + "\n", response.getBody());
+    }
+
+    @Test
+    public void get_validatorsAreOnlyUsedOnceSaved() throws Exception {
+        // The first response wasn't handled, e.g., because the update failed.
+        mClient.get(url(), true, MAX_LENGTH);
+
+        ConditionalHttpClient.Response response = mClient.get(url(), true, MAX_LENGTH);
+        assertFalse(response.isNotModified());
+        assertNull(mHandler.mIfNoneMatch.get(1));
+    }
+
+    @Test
+    public void get_unconditionalRequestIgnoresValidators() throws Exception {
+        mClient.saveValidators(mClient.get(url(), true, MAX_LENGTH));
+
+        ConditionalHttpClient.Response response = mClient.get(url(), false, MAX_LENGTH);
+        assertFalse(response.isNotModified());
+        assertNull(mHandler.mIfNoneMatch.get(1));
+    }
+
+    @Test
+    public void get_lastModifiedIsUsedWithoutEtag() throws Exception {
+        mHandler.mEtag = null;
+        mClient.saveValidators(mClient.get(url(), true, MAX_LENGTH));
+
+        ConditionalHttpClient.Response response = mClient.get(url(), true, MAX_LENGTH);
+        assertTrue(response.isNotModified());
+        assertEquals(FeedHandler.LAST_MODIFIED, mHandler.mIfModifiedSince.get(1));
+    }
+
+    @Test
+    public void get_errorStatusThrows() throws Exception {
+        mHandler.mStatus = 503;
+        try {
+            mClient.get(url(), true, MAX_LENGTH);
+            fail("Expected an IOException.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("503"));
+        }
+    }
+
+    @Test
+    public void get_slowServerTimesOut() throws Exception {
+        mHandler.mDelayMillis = 2000;
+        ConditionalHttpClient client =
+                new ConditionalHttpClient(
+                        mValidatorStore,
+                        /* connectTimeoutMillis */ 1000,
+                        /* readTimeoutMillis */ 200);
+        long start = System.currentTimeMillis();
+        try {
+            client.get(url(), true, MAX_LENGTH);
+            fail("Expected an IOException.");
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertTrue(System.currentTimeMillis() - start < 1500);
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/manifest.json";
+    }
+
+    private static class MapValidatorStore implements ConditionalHttpClient.ValidatorStore {
+        private final HashMap<String, String> mValues = new HashMap<String, String>();
+
+        @Override
+        public String get(String key) {
+            return mValues.get(key);
+        }
+
+        @Override
+        public void put(String key, String value) {
+            if (value == null) {
+                mValues.remove(key);
+            } else {
+                mValues.put(key, value);
+            }
+        }
+    }
+
+    // Serves a resource with validators, and answers matching conditional requests with 304.
+    private static class FeedHandler implements HttpHandler {
+        static final String LAST_MODIFIED = "Mon, 07 Sep 2020 00:00:00 GMT";
+
+        String mBody = MANIFEST;
+        String mEtag = "\"1\"";
+        int mStatus = 200;
+        long mDelayMillis = 0;
+        long mBytesServed = 0;
+        final List<String> mIfNoneMatch = new ArrayList<String>();
+        final List<String> mIfModifiedSince = new ArrayList<String>();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            mIfNoneMatch.add(ifNoneMatch);
+            mIfModifiedSince.add(ifModifiedSince);
+            if (mDelayMillis > 0) {
+                try {
+                    Thread.sleep(mDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (mEtag != null) {
+                exchange.getResponseHeaders().set("ETag", mEtag);
+            }
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+            boolean notModified =
+                    mEtag != null
+                            ? mEtag.equals(ifNoneMatch)
+                            : LAST_MODIFIED.equals(ifModifiedSince);
+            if (mStatus == 200 && notModified) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = (mBody + "\n").getBytes("UTF-8");
+            exchange.sendResponseHeaders(mStatus, body.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(body);
+                mBytesServed += body.length;
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.tlhInganHol.android.klingonassistant.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/** Tests for DatabaseDownloader, against a local HTTP server. */
+public class DatabaseDownloaderTest {
+    private static final int PAGE_SIZE = DatabasePatch.BLOCK_SIZE;
+    private static final int NUM_PAGES = 256;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private File mInstalledDatabase;
+    private byte[] mNewDatabase;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] oldDatabase = DatabasePatchTest.randomBytes(NUM_PAGES * PAGE_SIZE, /* seed */ 1);
+        mNewDatabase = oldDatabase.clone();
+        mNewDatabase[10 * PAGE_SIZE + 7] ^= 0x55;
+        mNewDatabase[200 * PAGE_SIZE + 3] ^= 0x55;
+        mInstalledDatabase = writeFile("qawHaq.db", oldDatabase);
+
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        DatabasePatch.create(mInstalledDatabase, writeFile("new.db", mNewDatabase), patch);
+        byte[] corruptPatch = patch.toByteArray().clone();
+        corruptPatch[corruptPatch.length - 10] ^= 1;
+        // A patch made from a different installed database.
+        ByteArrayOutputStream otherPatch = new ByteArrayOutputStream();
+        DatabasePatch.create(
+                writeFile("other.db", DatabasePatchTest.randomBytes(PAGE_SIZE, /* seed */ 2)),
+                writeFile("new2.db", mNewDatabase), otherPatch);
+
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/qawHaq.db.zip", new BytesHandler(zip(mNewDatabase)));
+        mServer.createContext("/qawHaq.patch", new BytesHandler(patch.toByteArray()));
+        mServer.createContext("/corrupt.patch", new BytesHandler(corruptPatch));
+        mServer.createContext("/other.patch", new BytesHandler(otherPatch.toByteArray()));
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void download_patch() throws Exception {
+        File target = new File(mTempFolder.getRoot(), "qawHaq.db.new");
+        DatabaseDownloader.Result result = DatabaseDownloader.download(
+                url("/qawHaq.db.zip"), /* zipSha256 */ null, url("/qawHaq.patch"),
+                mInstalledDatabase, target);
+
+        assertTrue(result.isPatched());
+        assertNull(result.getPatchFailure());
+        assertEquals(mNewDatabase.length, result.getBytesWritten());
+        assertTrue("Downloaded " + result.getBytesDownloaded() + " bytes",
+                result.getBytesDownloaded() < mNewDatabase.length / 10);
+        assertArrayEquals(mNewDatabase, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void download_missingPatchFallsBackToZip() throws Exception {
+        assertFallsBackToZip(url("/missing.patch"));
+    }
+
+    @Test
+    public void download_corruptPatchFallsBackToZip() throws Exception {
+        assertFallsBackToZip(url("/corrupt.patch"));
+    }
+
+    @Test
+    public void download_patchForOtherVersionFallsBackToZip() throws Exception {
+        assertFallsBackToZip(url("/other.patch"));
+    }
+
+    @Test
+    public void download_noPatch() throws Exception {
+        File target = new File(mTempFolder.getRoot(), "qawHaq.db.new");
+        DatabaseDownloader.Result result = DatabaseDownloader.download(
+                url("/qawHaq.db.zip"), /* zipSha256 */ null, /* patchUrl */ null,
+                mInstalledDatabase, target);
+
+        assertFalse(result.isPatched());
+        assertNull(result.getPatchFailure());
+        assertArrayEquals(mNewDatabase, Files.readAllBytes(target.toPath()));
+    }
+
+    private void assertFallsBackToZip(String patchUrl) throws IOException {
+        File target = new File(mTempFolder.getRoot(), "qawHaq.db.new");
+        DatabaseDownloader.Result result = DatabaseDownloader.download(
+                url("/qawHaq.db.zip"), /* zipSha256 */ null, patchUrl, mInstalledDatabase, target);
+
+        assertFalse(result.isPatched());
+        assertNotNull(result.getPatchFailure());
+        assertEquals(mNewDatabase.length, result.getBytesWritten());
+        assertArrayEquals(mNewDatabase, Files.readAllBytes(target.toPath()));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + path;
+    }
+
+    private File writeFile(String name, byte[] data) throws IOException {
+        File file = new File(mTempFolder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] zip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream out = new ZipOutputStream(bytes);
+        out.putNextEntry(new ZipEntry("qawHaq.db"));
+        out.write(data);
+        out.closeEntry();
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    // Serves a fixed response.
+    private static class BytesHandler implements HttpHandler {
+        private final byte[] mData;
+
+        BytesHandler(byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.sendResponseHeaders(200, mData.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(mData);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.tlhInganHol.android.klingonassistant.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/** Tests for DatabasePatch. */
+public class DatabasePatchTest {
+    private static final int PAGE_SIZE = DatabasePatch.BLOCK_SIZE;
+    private static final int NUM_PAGES = 1000;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    @Test
+    public void createAndApply_fewChangedPages() throws Exception {
+        byte[] oldDatabase = randomBytes(NUM_PAGES * PAGE_SIZE, /* seed */ 1);
+        byte[] newDatabase = oldDatabase.clone();
+        // Change a few bytes in a few pages, as an update of a few entries would.
+        Random random = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            newDatabase[random.nextInt(newDatabase.length)] ^= 0x55;
+        }
+
+        byte[] patch = createPatch(oldDatabase, newDatabase);
+        assertArrayEquals(newDatabase, applyPatch(oldDatabase, patch));
+        assertTrue("Patch is " + patch.length + " bytes", patch.length < 25 * PAGE_SIZE);
+    }
+
+    @Test
+    public void createAndApply_insertedAndMovedPages() throws Exception {
+        byte[] oldDatabase = randomBytes(NUM_PAGES * PAGE_SIZE, /* seed */ 3);
+        // The new database has a new page at the start, followed by the old pages in reverse order,
+        // and then a partial page.
+        byte[] newDatabase = new byte[(NUM_PAGES + 1) * PAGE_SIZE + 100];
+        System.arraycopy(randomBytes(PAGE_SIZE, /* seed */ 4), 0, newDatabase, 0, PAGE_SIZE);
+        for (int page = 0; page < NUM_PAGES; page++) {
+            System.arraycopy(
+                    oldDatabase, (NUM_PAGES - 1 - page) * PAGE_SIZE,
+                    newDatabase, (page + 1) * PAGE_SIZE, PAGE_SIZE);
+        }
+
+        byte[] patch = createPatch(oldDatabase, newDatabase);
+        assertArrayEquals(newDatabase, applyPatch(oldDatabase, patch));
+        assertTrue("Patch is " + patch.length + " bytes", patch.length < newDatabase.length / 10);
+    }
+
+    @Test
+    public void createAndApply_emptyTarget() throws Exception {
+        byte[] oldDatabase = randomBytes(10 * PAGE_SIZE, /* seed */ 5);
+        byte[] newDatabase = new byte[0];
+        byte[] patch = createPatch(oldDatabase, newDatabase);
+        assertArrayEquals(newDatabase, applyPatch(oldDatabase, patch));
+    }
+
+    @Test
+    public void apply_wrongSourceFailsAndRemovesTarget() throws Exception {
+        byte[] oldDatabase = randomBytes(10 * PAGE_SIZE, /* seed */ 6);
+        byte[] newDatabase = randomBytes(10 * PAGE_SIZE, /* seed */ 7);
+        byte[] patch = createPatch(oldDatabase, newDatabase);
+
+        byte[] otherDatabase = oldDatabase.clone();
+        otherDatabase[0] ^= 1;
+        File target = new File(mTempFolder.getRoot(), "target.db");
+        try {
+            DatabasePatch.apply(
+                    writeFile("other.db", otherDatabase), new ByteArrayInputStream(patch), target);
+            fail("Expected a PatchException.");
+        } catch (DatabasePatch.PatchException e) {
+            // Expected.
+        }
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void apply_truncatedPatchFailsAndRemovesTarget() throws Exception {
+        byte[] oldDatabase = randomBytes(10 * PAGE_SIZE, /* seed */ 8);
+        byte[] newDatabase = randomBytes(10 * PAGE_SIZE, /* seed */ 9);
+        byte[] patch = createPatch(oldDatabase, newDatabase);
+        byte[] truncatedPatch = new byte[patch.length / 2];
+        System.arraycopy(patch, 0, truncatedPatch, 0, truncatedPatch.length);
+
+        File target = new File(mTempFolder.getRoot(), "target.db");
+        try {
+            DatabasePatch.apply(writeFile("old.db", oldDatabase),
+                    new ByteArrayInputStream(truncatedPatch), target);
+            fail("Expected a PatchException.");
+        } catch (DatabasePatch.PatchException e) {
+            // Expected.
+        }
+        assertFalse(target.exists());
+    }
+
+    private byte[] createPatch(byte[] oldDatabase, byte[] newDatabase) throws IOException {
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        DatabasePatch.create(writeFile("create-old.db", oldDatabase),
+                writeFile("create-new.db", newDatabase), patch);
+        return patch.toByteArray();
+    }
+
+    private byte[] applyPatch(byte[] oldDatabase, byte[] patch) throws IOException {
+        File target = new File(mTempFolder.getRoot(), "patched.db");
+        long length = DatabasePatch.apply(
+                writeFile("apply-old.db", oldDatabase), new ByteArrayInputStream(patch), target);
+        assertEquals(target.length(), length);
+        return Files.readAllBytes(target.toPath());
+    }
+
+    private File writeFile(String name, byte[] data) throws IOException {
+        File file = new File(mTempFolder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
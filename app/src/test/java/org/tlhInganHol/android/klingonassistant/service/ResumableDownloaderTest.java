@@ -0,0 +1,200 @@
+package org.tlhInganHol.android.klingonassistant.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/** Tests for ResumableDownloader, against a local HTTP server which drops connections. */
+public class ResumableDownloaderTest {
+    private static final int FILE_LENGTH = 4 * 1024 * 1024 + 100;
+
+    @Rule
+    public TemporaryFolder mTempFolder = new TemporaryFolder();
+
+    private HttpServer mServer;
+    private FlakyHandler mHandler;
+    private File mTarget;
+
+    @Before
+    public void setUp() throws Exception {
+        mHandler = new FlakyHandler(DatabasePatchTest.randomBytes(FILE_LENGTH, /* seed */ 1));
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/qawHaq.db.zip", mHandler);
+        mServer.start();
+        mTarget = new File(mTempFolder.getRoot(), "qawHaq_new.db.zip");
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void download_withoutInterruption() throws Exception {
+        ResumableDownloader.Result result =
+                ResumableDownloader.download(url(), sha256(mHandler.mData), mTarget);
+
+        assertEquals(1, result.getAttempts());
+        assertEquals(FILE_LENGTH, result.getBytesDownloaded());
+        assertArrayEquals(mHandler.mData, Files.readAllBytes(mTarget.toPath()));
+        assertNoPartFiles();
+    }
+
+    @Test
+    public void download_resumesAfterDroppedConnections() throws Exception {
+        mHandler.mDropAfter = 1536 * 1024;
+        ResumableDownloader.Result result =
+                ResumableDownloader.download(url(), sha256(mHandler.mData), mTarget);
+        assertEquals(3, result.getAttempts());
+        assertEquals(FILE_LENGTH, result.getLength());
+        assertEquals(0, result.getResumedFrom());
+        // Nothing was sent twice.
+        assertEquals(FILE_LENGTH, mHandler.mBytesServed);
+        assertEquals(FILE_LENGTH, result.getBytesDownloaded());
+        assertEquals(null, mHandler.mRanges.get(0));
+        assertEquals("bytes=" + mHandler.mDropAfter + "-", mHandler.mRanges.get(1));
+        assertArrayEquals(mHandler.mData, Files.readAllBytes(mTarget.toPath()));
+        assertNoPartFiles();
+    }
+
+    @Test
+    public void download_resumesAcrossRuns() throws Exception {
+        mHandler.mDropAfter = 1024 * 1024;
+        try {
+            ResumableDownloader.download(
+                    url(), sha256(mHandler.mData), mTarget, /* maxAttempts */ 1);
+            fail("Expected an IOException.");
+        } catch (IOException e) {
+            // Expected.
+        }
+        assertFalse(mTarget.exists());
+
+        // The next run, e.g., the next time the job is scheduled, picks up where this one stopped.
+        mHandler.mDropAfter = Integer.MAX_VALUE;
+        ResumableDownloader.Result result =
+                ResumableDownloader.download(url(), sha256(mHandler.mData), mTarget);
+
+        assertEquals(1024 * 1024, result.getResumedFrom());
+        assertEquals(FILE_LENGTH - 1024 * 1024, result.getBytesDownloaded());
+        assertArrayEquals(mHandler.mData, Files.readAllBytes(mTarget.toPath()));
+        assertNoPartFiles();
+    }
+
+    @Test
+    public void download_restartsIfFileChanged() throws Exception {
+        mHandler.mDropAfter = 1024 * 1024;
+        try {
+            ResumableDownloader.download(
+                    url(), /* expectedSha256 */ null, mTarget, /* maxAttempts */ 1);
+            fail("Expected an IOException.");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        // The file is replaced on the server, so the part already downloaded is of no use.
+        mHandler.mData = DatabasePatchTest.randomBytes(FILE_LENGTH, /* seed */ 2);
+        mHandler.mEtag = "\"2\"";
+        mHandler.mDropAfter = Integer.MAX_VALUE;
+        ResumableDownloader.Result result =
+                ResumableDownloader.download(url(), /* expectedSha256 */ null, mTarget);
+
+        assertEquals(FILE_LENGTH, result.getBytesDownloaded());
+        assertArrayEquals(mHandler.mData, Files.readAllBytes(mTarget.toPath()));
+        assertNoPartFiles();
+    }
+
+    @Test
+    public void download_wrongHashIsRejected() throws Exception {
+        byte[] otherData = DatabasePatchTest.randomBytes(100, /* seed */ 3);
+        try {
+            ResumableDownloader.download(url(), sha256(otherData), mTarget);
+            fail("Expected an IOException.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("SHA-256"));
+        }
+        assertFalse(mTarget.exists());
+        assertNoPartFiles();
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + mServer.getAddress().getPort() + "/qawHaq.db.zip";
+    }
+
+    private void assertNoPartFiles() {
+        assertFalse(new File(mTarget.getPath() + ".part").exists());
+        assertFalse(new File(mTarget.getPath() + ".part.meta").exists());
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+
+    // Serves a file with support for ranges, but drops the connection after sending mDropAfter
+    // bytes of a response.
+    private static class FlakyHandler implements HttpHandler {
+        byte[] mData;
+        String mEtag = "\"1\"";
+        int mDropAfter = Integer.MAX_VALUE;
+        long mBytesServed = 0;
+        final List<String> mRanges = new ArrayList<String>();
+
+        FlakyHandler(byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+            mRanges.add(range);
+
+            int start = 0;
+            if (range != null && (ifRange == null || ifRange.equals(mEtag))) {
+                start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+            }
+            exchange.getResponseHeaders().set("ETag", mEtag);
+            int length = mData.length - start;
+            if (start > 0) {
+                exchange.getResponseHeaders().set(
+                        "Content-Range",
+                        "bytes " + start + "-" + (mData.length - 1) + "/" + mData.length);
+                exchange.sendResponseHeaders(206, length);
+            } else {
+                exchange.sendResponseHeaders(200, length);
+            }
+
+            OutputStream out = exchange.getResponseBody();
+            int count = Math.min(length, mDropAfter);
+            out.write(mData, start, count);
+            out.flush();
+            mBytesServed += count;
+            if (count < length) {
+                // Drop the connection mid-response.
+                exchange.close();
+                return;
+            }
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tlhInganHol.android.klingonassistant.core.EntryMetadata;
+
+/**
+ * Benchmarks the processing of the part of speech of entries, which is done for every row read
+ * from the database and for every filter built from a complex word. Each operation processes the
+ * whole corpus of entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EntryMetadataBenchmark {
+  private String[] mEntryNames;
+  private String[] mPartsOfSpeech;
+
+  @Setup
+  public void setUp() {
+    String[] entries = QueryCorpus.load(QueryCorpus.ENTRIES);
+    mEntryNames = new String[entries.length];
+    mPartsOfSpeech = new String[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      String[] fields = entries[i].split("\t");
+      mEntryNames[i] = fields[0];
+      mPartsOfSpeech[i] = fields[1];
+    }
+  }
+
+  @Benchmark
+  public void processMetadata(Blackhole blackhole) {
+    for (int i = 0; i < mEntryNames.length; i++) {
+      blackhole.consume(new EntryMetadata(mEntryNames[i], mPartsOfSpeech[i]));
+    }
+  }
+}
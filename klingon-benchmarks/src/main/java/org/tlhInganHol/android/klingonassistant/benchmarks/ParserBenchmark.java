@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tlhInganHol.android.klingonassistant.core.ComplexWord;
+
+/**
+ * Benchmarks the complex word parser. Each operation parses a whole corpus, so the allocation
+ * reported by the GC profiler (gc.alloc.rate.norm) is the garbage produced by one pass over it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParserBenchmark {
+  private String[] mWords;
+  private String[] mNumbers;
+  private String[] mSentences;
+
+  @Setup
+  public void setUp() {
+    mWords = QueryCorpus.load(QueryCorpus.WORDS);
+    mNumbers = QueryCorpus.load(QueryCorpus.NUMBERS);
+    mSentences = QueryCorpus.load(QueryCorpus.SENTENCES);
+  }
+
+  @Benchmark
+  public int parseNouns() {
+    ArrayList<ComplexWord> complexWordsList = new ArrayList<ComplexWord>();
+    for (String word : mWords) {
+      ComplexWord.parseComplexWord(word, /* isNounCandidate */ true, complexWordsList);
+    }
+    return complexWordsList.size();
+  }
+
+  @Benchmark
+  public int parseVerbs() {
+    ArrayList<ComplexWord> complexWordsList = new ArrayList<ComplexWord>();
+    for (String word : mWords) {
+      ComplexWord.parseComplexWord(word, /* isNounCandidate */ false, complexWordsList);
+    }
+    return complexWordsList.size();
+  }
+
+  @Benchmark
+  public int parseNumbers() {
+    ArrayList<ComplexWord> complexWordsList = new ArrayList<ComplexWord>();
+    for (String number : mNumbers) {
+      ComplexWord.parseComplexWord(number, /* isNounCandidate */ true, complexWordsList);
+    }
+    return complexWordsList.size();
+  }
+
+  @Benchmark
+  public int parseSentences() {
+    ArrayList<ComplexWord> complexWordsList = new ArrayList<ComplexWord>();
+    for (String sentence : mSentences) {
+      parseSentence(sentence, complexWordsList);
+    }
+    return complexWordsList.size();
+  }
+
+  // Parses a sentence the way KlingonContentDatabase.parseQueryAsComplexWordOrSentence does: every
+  // run of consecutive words as a compound noun, from longest to shortest, then each word as a
+  // verb.
+  static void parseSentence(String sentence, ArrayList<ComplexWord> complexWordsList) {
+    String[] words = sentence.replaceAll("[^A-Za-z' ]", "").split("\\s+");
+    for (int i = 0; i < words.length; i++) {
+      for (int j = words.length; j > i; j--) {
+        String compoundNoun = words[i];
+        for (int k = i + 1; k < j; k++) {
+          compoundNoun += " " + words[k];
+        }
+        ComplexWord.parseComplexWord(compoundNoun, /* isNounCandidate */ true, complexWordsList);
+      }
+      ComplexWord.parseComplexWord(words[i], /* isNounCandidate */ false, complexWordsList);
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+/**
+ * The queries which the benchmarks run over, read from the text files in the "corpus" resource
+ * directory. Each file has one query per line. Blank lines and lines starting with "#" are ignored.
+ */
+public class QueryCorpus {
+  /** Single words, bare and affixed. */
+  public static final String WORDS = "words.txt";
+
+  /** Numbers, ordinals and repetitions. */
+  public static final String NUMBERS = "numbers.txt";
+
+  /** Sentences and longer passages. */
+  public static final String SENTENCES = "sentences.txt";
+
+  /** Queries typed in "xifan hol" shorthand. */
+  public static final String SHORTHAND = "shorthand.txt";
+
+  /** Entry names and parts of speech, separated by a tab. */
+  public static final String ENTRIES = "entries.tsv";
+
+  private QueryCorpus() {}
+
+  /** Returns the lines of the given corpus file. */
+  public static String[] load(String name) {
+    InputStream in = QueryCorpus.class.getResourceAsStream("/corpus/" + name);
+    if (in == null) {
+      throw new IllegalArgumentException("No corpus file " + name + ".");
+    }
+    ArrayList<String> lines = new ArrayList<String>();
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (!line.trim().equals("") && !line.startsWith("#")) {
+            lines.add(line);
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read corpus file " + name + ".", e);
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+  /** Returns the lines of all the query corpus files, i.e., everything a user might type. */
+  public static String[] loadQueries() {
+    ArrayList<String> queries = new ArrayList<String>();
+    for (String name : new String[] {WORDS, NUMBERS, SENTENCES}) {
+      for (String query : load(name)) {
+        queries.add(query);
+      }
+    }
+    return queries.toArray(new String[queries.size()]);
+  }
+}
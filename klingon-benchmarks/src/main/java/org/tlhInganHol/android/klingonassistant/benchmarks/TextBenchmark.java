@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tlhInganHol.android.klingonassistant.core.KlingonText;
+
+/**
+ * Benchmarks the conversions which are applied to every query and to every piece of text shown in
+ * {pIqaD}. Each operation converts a whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TextBenchmark {
+  private String[] mQueries;
+  private String[] mShorthand;
+  private String[] mPiqadQueries;
+
+  @Setup
+  public void setUp() {
+    mQueries = QueryCorpus.loadQueries();
+    mShorthand = QueryCorpus.load(QueryCorpus.SHORTHAND);
+
+    // Queries pasted in {pIqaD}, which sanitizeInput converts back to Latin transliteration.
+    mPiqadQueries = new String[mQueries.length];
+    for (int i = 0; i < mQueries.length; i++) {
+      mPiqadQueries[i] = KlingonText.convertStringToKlingonFont(mQueries[i]);
+    }
+  }
+
+  @Benchmark
+  public void expandShorthand(Blackhole blackhole) {
+    for (String query : mShorthand) {
+      blackhole.consume(KlingonText.expandShorthand(query, /* swapQs */ false));
+    }
+  }
+
+  @Benchmark
+  public void expandShorthandSwapQs(Blackhole blackhole) {
+    for (String query : mShorthand) {
+      blackhole.consume(KlingonText.expandShorthand(query, /* swapQs */ true));
+    }
+  }
+
+  @Benchmark
+  public void sanitizeInput(Blackhole blackhole) {
+    for (String query : mQueries) {
+      blackhole.consume(KlingonText.sanitizeInput(query));
+    }
+  }
+
+  @Benchmark
+  public void sanitizeInputPiqad(Blackhole blackhole) {
+    for (String query : mPiqadQueries) {
+      blackhole.consume(KlingonText.sanitizeInput(query));
+    }
+  }
+
+  @Benchmark
+  public void convertStringToKlingonFont(Blackhole blackhole) {
+    for (String query : mQueries) {
+      blackhole.consume(KlingonText.convertStringToKlingonFont(query));
+    }
+  }
+}
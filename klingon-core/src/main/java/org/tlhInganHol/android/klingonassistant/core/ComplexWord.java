@@ -0,0 +1,884 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.core;
+
+import java.util.ArrayList;
+import org.tlhInganHol.android.klingonassistant.core.KlingonLog.Subsystem;
+
+/**
+ * A complex Klingon word, i.e., a noun or verb with affixes, and the parser which finds the ways in
+ * which a word can be split into a stem and affixes (see parseComplexWord).
+ *
+ * <p>Note: To debug parsing, you likely want to use "adb logcat -s ComplexWord".
+ */
+public class ComplexWord {
+  private static final String TAG = "ComplexWord";
+
+  // The noun suffixes.
+  static String[] nounType1String = {"", "'a'", "Hom", "oy"};
+  static String[] nounType2String = {"", "pu'", "Du'", "mey"};
+  static String[] nounType3String = {"", "qoq", "Hey", "na'"};
+  static String[] nounType4String = {
+    "", "wIj", "wI'", "maj", "ma'", "lIj", "lI'", "raj", "ra'", "Daj", "chaj", "vam", "vetlh"
+  };
+  static String[] nounType5String = {"", "Daq", "vo'", "mo'", "vaD", "'e'"};
+  static String[][] nounSuffixesStrings = {
+    nounType1String, nounType2String, nounType3String, nounType4String, nounType5String
+  };
+  int mNounSuffixes[] = new int[nounSuffixesStrings.length];
+
+  // The verb prefixes.
+  static String[] verbPrefixString = {
+    "", "bI", "bo", "che", "cho", "Da", "DI", "Du", "gho", "HI", "jI", "ju", "lI", "lu", "ma",
+    "mu", "nI", "nu", "pe", "pI", "qa", "re", "Sa", "Su", "tI", "tu", "vI", "wI", "yI"
+  };
+  static String[] verbTypeRUndoString = {
+    // {-Ha'} always occurs immediately after
+    // the verb.
+    "", "Ha'"
+  };
+  static String[] verbType1String = {"", "'egh", "chuq"};
+  static String[] verbType2String = {"", "nIS", "qang", "rup", "beH", "vIp"};
+  static String[] verbType3String = {"", "choH", "qa'"};
+  static String[] verbType4String = {"", "moH"};
+  static String[] verbType5String = {"", "lu'", "laH", "luH", "la'"};
+  static String[] verbType6String = {"", "chu'", "bej", "ba'", "law'"};
+  static String[] verbType7String = {"", "pu'", "ta'", "taH", "lI'"};
+  static String[] verbType8String = {"", "neS"};
+  static String[] verbTypeRRefusal = {
+    // {-Qo'} always occurs last, unless
+    // followed by a type 9 suffix.
+    "", "Qo'"
+  };
+  static String[] verbType9String = {
+    "", "DI'", "chugh", "pa'", "vIS", "mo'", "bogh", "meH", "'a'", "jaj", "wI'", "ghach"
+  };
+  static String[][] verbSuffixesStrings = {
+    verbTypeRUndoString,
+    verbType1String,
+    verbType2String,
+    verbType3String,
+    verbType4String,
+    verbType5String,
+    verbType6String,
+    verbType7String,
+    verbType8String,
+    verbTypeRRefusal,
+    verbType9String
+  };
+  int mVerbPrefix;
+  int mVerbSuffixes[] = new int[verbSuffixesStrings.length];
+
+  static String[] numberDigitString = {
+    // {pagh} is excluded because it should
+    // normally not form part of a number with
+    // modifiers.
+    "", "wa'", "cha'", "wej", "loS", "vagh", "jav", "Soch", "chorgh", "Hut"
+  };
+  static String[] numberModifierString = {
+    "", "maH", "vatlh", "SaD", "SanID", "netlh", "bIp", "'uy'", "Saghan"
+  };
+  int mNumberDigit;
+  int mNumberModifier;
+  String mNumberSuffix;
+  boolean mIsNumberLike;
+
+  // The locations of the true rovers. The value indicates the suffix type they appear after,
+  // so 0 means they are attached directly to the verb (before any type 1 suffix).
+  int mVerbTypeRNegation;
+  int mVerbTypeREmphatic;
+  private static final int ROVER_NOT_YET_FOUND = -1;
+  private static final int IGNORE_THIS_ROVER = -2;
+
+  // True if {-be'} appears before {-qu'} in a verb.
+  boolean roverOrderNegationBeforeEmphatic;
+
+  // Internal information related to processing the complex word candidate.
+  // TODO: There are few complex words which are neither nouns nor verbs, e.g., {batlhHa'},
+  // {paghlogh}, {HochDIch}. Figure out how to deal with them.
+  String mUnparsedPart;
+  int mSuffixLevel;
+  boolean mIsNounCandidate;
+  boolean mIsVerbWithType5NounSuffix;
+  int mHomophoneNumber;
+
+  /**
+   * Constructor
+   *
+   * @param candidate A potential candidate for a complex word.
+   * @param isNounCandidate Set to true if noun, false if verb.
+   */
+  public ComplexWord(String candidate, boolean isNounCandidate) {
+    mUnparsedPart = candidate;
+    mIsNounCandidate = isNounCandidate;
+    mIsVerbWithType5NounSuffix = false;
+    mHomophoneNumber = -1;
+
+    if (mIsNounCandidate) {
+      // Five types of noun suffixes.
+      mSuffixLevel = nounSuffixesStrings.length;
+    } else {
+      // Nine types of verb suffixes.
+      mSuffixLevel = verbSuffixesStrings.length;
+    }
+
+    for (int i = 0; i < mNounSuffixes.length; i++) {
+      mNounSuffixes[i] = 0;
+    }
+
+    mVerbPrefix = 0;
+    for (int i = 0; i < mVerbSuffixes.length; i++) {
+      mVerbSuffixes[i] = 0;
+    }
+
+    // Rovers.
+    mVerbTypeRNegation = ROVER_NOT_YET_FOUND;
+    mVerbTypeREmphatic = ROVER_NOT_YET_FOUND;
+    roverOrderNegationBeforeEmphatic = false;
+
+    // Number parts.
+    mNumberDigit = 0;
+    mNumberModifier = 0;
+    mNumberSuffix = "";
+    mIsNumberLike = false;
+  }
+
+  /**
+   * Copy constructor
+   *
+   * @param unparsedPart The unparsedPart of this complex word.
+   * @param complexWordToCopy
+   */
+  public ComplexWord(String unparsedPart, ComplexWord complexWordToCopy) {
+    mUnparsedPart = unparsedPart;
+    mIsNounCandidate = complexWordToCopy.mIsNounCandidate;
+    mIsVerbWithType5NounSuffix = complexWordToCopy.mIsVerbWithType5NounSuffix;
+    mHomophoneNumber = complexWordToCopy.mHomophoneNumber;
+    mSuffixLevel = complexWordToCopy.mSuffixLevel;
+    mVerbPrefix = complexWordToCopy.mVerbPrefix;
+    for (int i = 0; i < mNounSuffixes.length; i++) {
+      mNounSuffixes[i] = complexWordToCopy.mNounSuffixes[i];
+    }
+    for (int j = 0; j < mVerbSuffixes.length; j++) {
+      mVerbSuffixes[j] = complexWordToCopy.mVerbSuffixes[j];
+    }
+    mVerbTypeRNegation = complexWordToCopy.mVerbTypeRNegation;
+    mVerbTypeREmphatic = complexWordToCopy.mVerbTypeREmphatic;
+    roverOrderNegationBeforeEmphatic = complexWordToCopy.roverOrderNegationBeforeEmphatic;
+    mNumberDigit = complexWordToCopy.mNumberDigit;
+    mNumberModifier = complexWordToCopy.mNumberModifier;
+    mNumberSuffix = complexWordToCopy.mNumberSuffix;
+    mIsNumberLike = complexWordToCopy.mIsNumberLike;
+  }
+
+  public void setHomophoneNumber(int number) {
+    // Used for filtering entries. If two entries have homophones, they must each have a
+    // unique number.
+    mHomophoneNumber = number;
+  }
+
+  public ComplexWord stripPrefix() {
+    if (mIsNounCandidate) {
+      return null;
+    }
+
+    // Count from 1, since index 0 corresponds to no prefix.
+    for (int i = 1; i < verbPrefixString.length; i++) {
+      // KlingonLog.d(TAG, "checking prefix: " + verbPrefixString[i]);
+      if (mUnparsedPart.startsWith(verbPrefixString[i])) {
+        String partWithPrefixRemoved = mUnparsedPart.substring(verbPrefixString[i].length());
+        // KlingonLog.d(TAG, "found prefix: " + verbPrefixString[i] + ", remainder: " +
+        // partWithPrefixRemoved);
+        if (!partWithPrefixRemoved.equals("")) {
+          ComplexWord anotherComplexWord = new ComplexWord(partWithPrefixRemoved, this);
+          anotherComplexWord.mVerbPrefix = i;
+          return anotherComplexWord;
+        }
+      }
+    }
+    return null;
+  }
+
+  // Attempt to strip off the rovers.
+  private ComplexWord stripRovers() {
+    // There are a few entries in the database where the {-be'} and {-qu'} are included, e.g.,
+    // {motlhbe'} and {Say'qu'}. The logic here allows, e.g., {bImotlhbe'be'}, but we don't care
+    // since this is relatively rare. Note that {qu'be'} is itself a word.
+    if (mVerbTypeRNegation == ROVER_NOT_YET_FOUND
+        && mUnparsedPart.endsWith("be'")
+        && !mUnparsedPart.equals("be'")) {
+      String partWithRoversRemoved = mUnparsedPart.substring(0, mUnparsedPart.length() - 3);
+      ComplexWord anotherComplexWord = new ComplexWord(partWithRoversRemoved, this);
+      mVerbTypeRNegation = IGNORE_THIS_ROVER;
+      anotherComplexWord.mVerbTypeRNegation = mSuffixLevel - 1;
+      anotherComplexWord.mSuffixLevel = mSuffixLevel;
+      if (anotherComplexWord.mVerbTypeREmphatic == mSuffixLevel - 1) {
+        // {-be'qu'}
+        anotherComplexWord.roverOrderNegationBeforeEmphatic = true;
+      }
+      KlingonLog.d(Subsystem.PARSER, TAG, "found rover: -be'");
+      return anotherComplexWord;
+    } else if (mVerbTypeREmphatic == ROVER_NOT_YET_FOUND
+        && mUnparsedPart.endsWith("qu'")
+        && !mUnparsedPart.equals("qu'")) {
+      String partWithRoversRemoved = mUnparsedPart.substring(0, mUnparsedPart.length() - 3);
+      ComplexWord anotherComplexWord = new ComplexWord(partWithRoversRemoved, this);
+      mVerbTypeREmphatic = IGNORE_THIS_ROVER;
+      anotherComplexWord.mVerbTypeREmphatic = mSuffixLevel - 1;
+      anotherComplexWord.mSuffixLevel = mSuffixLevel;
+      if (anotherComplexWord.mVerbTypeRNegation == mSuffixLevel - 1) {
+        // {-qu'be'}
+        anotherComplexWord.roverOrderNegationBeforeEmphatic = false;
+      }
+      KlingonLog.d(Subsystem.PARSER, TAG, "found rover: -qu'");
+      return anotherComplexWord;
+    }
+    return null;
+  }
+
+  // Attempt to strip off one level of suffix from self, if this results in a branch return the
+  // branch as a new complex word.
+  // At the end of this call, this complex word will have have decreased one suffix level.
+  public ComplexWord stripSuffixAndBranch() {
+    if (mSuffixLevel == 0) {
+      // This should never be reached.
+      if (KlingonLog.isDebugEnabled(Subsystem.PARSER)) {
+        KlingonLog.e(TAG, "stripSuffixAndBranch: mSuffixLevel == 0");
+      }
+      return null;
+    }
+
+    // TODO: Refactor this to merge the two subtractions together.
+    String[] suffixes;
+    if (mIsNounCandidate) {
+      // The types are 1-indexed, but the array is 0-index, so decrement it here.
+      mSuffixLevel--;
+      suffixes = nounSuffixesStrings[mSuffixLevel];
+    } else {
+      ComplexWord anotherComplexWord = stripRovers();
+      String suffixType;
+      if (anotherComplexWord != null) {
+        if (KlingonLog.isDebugEnabled(Subsystem.PARSER)) {
+          // Verb suffix level doesn't correspond exactly: {-Ha'}, types 1 through 8, {-Qo'}, then
+          // 9.
+          if (mSuffixLevel == 1) {
+            suffixType = "-Ha'";
+          } else if (mSuffixLevel == 10) {
+            suffixType = "-Qo'";
+          } else if (mSuffixLevel == 11) {
+            suffixType = "type 9";
+          } else {
+            suffixType = "type " + (mSuffixLevel - 1);
+          }
+          KlingonLog.d(TAG, "rover found while processing verb suffix: " + suffixType);
+        }
+        return anotherComplexWord;
+      }
+      // The types are 1-indexed, but the array is 0-index, so decrement it here.
+      mSuffixLevel--;
+      suffixes = verbSuffixesStrings[mSuffixLevel];
+    }
+
+    // Count from 1, since index 0 corresponds to no suffix of this type.
+    for (int i = 1; i < suffixes.length; i++) {
+      // KlingonLog.d(TAG, "checking suffix: " + suffixes[i]);
+      if (mUnparsedPart.endsWith(suffixes[i])) {
+        // Found a suffix of the current type, strip it.
+        String partWithSuffixRemoved =
+            mUnparsedPart.substring(0, mUnparsedPart.length() - suffixes[i].length());
+        KlingonLog.d(
+            Subsystem.PARSER,
+            TAG,
+            "found suffix: {}, remainder: {}",
+            suffixes[i],
+            partWithSuffixRemoved);
+        // A suffix was successfully stripped if there's something left. Also, if the suffix had
+        // been {-oy}, check that the noun doesn't end in a vowel. The suffix {-oy} preceded by a
+        // vowel is handled separately in maybeStripApostropheOy.
+        if (!partWithSuffixRemoved.equals("") &&
+            (suffixes[i] != "oy" || !partWithSuffixRemoved.matches(".*[aeIou]"))) {
+          ComplexWord anotherComplexWord = new ComplexWord(partWithSuffixRemoved, this);
+          // mSuffixLevel already decremented above.
+          anotherComplexWord.mSuffixLevel = mSuffixLevel;
+          if (mIsNounCandidate) {
+            anotherComplexWord.mNounSuffixes[anotherComplexWord.mSuffixLevel] = i;
+          } else {
+            anotherComplexWord.mVerbSuffixes[anotherComplexWord.mSuffixLevel] = i;
+          }
+          return anotherComplexWord;
+        }
+      }
+    }
+    return null;
+  }
+
+  // Special-case processing for the suffix {-oy} when preceded by a vowel.
+  public ComplexWord maybeStripApostropheOy() {
+      if (mSuffixLevel == 1 && mIsNounCandidate && mUnparsedPart.endsWith("'oy")) {
+          // Remove "'oy" from the end.
+          String partWithSuffixRemoved = mUnparsedPart.substring(0, mUnparsedPart.length() - 3);
+          if (partWithSuffixRemoved.matches(".*[aeIou]")) {
+              ComplexWord anotherComplexWord = new ComplexWord(partWithSuffixRemoved, this);
+              anotherComplexWord.mSuffixLevel = 0;  // No more suffixes.
+              anotherComplexWord.mNounSuffixes[0] = 3;  // Index of "oy".
+              return anotherComplexWord;
+           }
+      }
+      return null;
+  }
+
+  private boolean hasNoMoreSuffixes() {
+    return mSuffixLevel == 0;
+  }
+
+  // Returns true if this is not a complex word after all.
+  public boolean isBareWord() {
+    if (mVerbPrefix != 0) {
+      // A verb prefix was found.
+      return false;
+    }
+    if (mVerbTypeRNegation >= 0 || mVerbTypeREmphatic >= 0) {
+      // Note that -1 indicates ROVER_NOT_YET_FOUND and -2 indicates IGNORE_THIS_ROVER, so a found
+      // rover has position greater than or equal to 0.
+      // A rover was found.
+      return false;
+    }
+    for (int i = 0; i < mNounSuffixes.length; i++) {
+      if (mNounSuffixes[i] != 0) {
+        // A noun suffix was found.
+        return false;
+      }
+    }
+    for (int j = 0; j < mVerbSuffixes.length; j++) {
+      if (mVerbSuffixes[j] != 0) {
+        // A verb suffix was found.
+        return false;
+      }
+    }
+    // None found.
+    return true;
+  }
+
+  public boolean isNumberLike() {
+    // A complex word is number-like if it's a noun and it's marked as such.
+    return mIsNounCandidate && mIsNumberLike;
+  }
+
+  private boolean noNounSuffixesFound() {
+    for (int i = 0; i < mNounSuffixes.length; i++) {
+      if (mNounSuffixes[i] != 0) {
+        // A noun suffix was found.
+        return false;
+      }
+    }
+    // None found.
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    String s = mUnparsedPart;
+    if (mIsNounCandidate) {
+      s += " (n)";
+      for (int i = 0; i < mNounSuffixes.length; i++) {
+        s += " " + mNounSuffixes[i];
+      }
+    } else {
+      // TODO: Handle negation and emphatic rovers.
+      s += " (v) ";
+      for (int i = 0; i < mVerbSuffixes.length; i++) {
+        s += " " + mVerbSuffixes[i];
+      }
+    }
+    return s;
+  }
+
+  // Used for telling stems of complex words apart.
+  public String filter(boolean isLenient) {
+    if (mIsVerbWithType5NounSuffix) {
+      // If this is a candidate for a verb with a type 5 noun suffix attached, mark it so that
+      // it's treated specially. In particular, it must be a verb which is not transitive, and it
+      // cannot be a pronoun acting as a verb.
+      return mUnparsedPart + ":v:n5";
+    } else if (isLenient && isBareWord()) {
+      // If isLenient is true, then also match non-nouns and non-verbs
+      // if there are no prefixes or suffixes.
+      return mUnparsedPart;
+    }
+    return mUnparsedPart
+        + ":"
+        + (mIsNounCandidate ? "n" : "v")
+        + (mHomophoneNumber != -1 ? ":" + mHomophoneNumber : "");
+  }
+
+  public String stem() {
+    return mUnparsedPart;
+  }
+
+  // Get the entry name for the verb prefix.
+  public String getVerbPrefix() {
+    return verbPrefixString[mVerbPrefix] + (mVerbPrefix == 0 ? "" : "-");
+  }
+
+  // Get the entry names for the verb suffixes.
+  public String[] getVerbSuffixes() {
+    String[] suffixes = new String[mVerbSuffixes.length];
+    for (int i = 0; i < mVerbSuffixes.length; i++) {
+      suffixes[i] = (mVerbSuffixes[i] == 0 ? "" : "-") + verbSuffixesStrings[i][mVerbSuffixes[i]];
+    }
+    return suffixes;
+  }
+
+  // Get the entry names for the noun suffixes.
+  public String[] getNounSuffixes() {
+    String[] suffixes = new String[mNounSuffixes.length];
+    for (int i = 0; i < mNounSuffixes.length; i++) {
+      suffixes[i] = (mNounSuffixes[i] == 0 ? "" : "-") + nounSuffixesStrings[i][mNounSuffixes[i]];
+    }
+    return suffixes;
+  }
+
+  // Get the root for a number.
+  public String getNumberRoot() {
+    if (mNumberDigit != 0) {
+      // This is an actual digit from {wa'} to {Hut}.
+      return numberDigitString[mNumberDigit];
+    }
+
+    String numberRoot = "";
+    if (mUnparsedPart.startsWith("pagh")) {
+      numberRoot = "pagh";
+    } else if (mUnparsedPart.startsWith("Hoch")) {
+      numberRoot = "Hoch";
+    } else if (mUnparsedPart.startsWith("'ar")) {
+      // Note that this will cause {'arDIch} to be accepted as a word.
+      numberRoot = "'ar";
+    }
+    return numberRoot;
+  }
+
+  // Get the annotation for the root for a number.
+  public String getNumberRootAnnotation() {
+    if (mNumberDigit != 0) {
+      return "n:num";
+    }
+
+    String numberRoot = "";
+    if (mUnparsedPart.startsWith("pagh")) {
+      numberRoot = "n:num";
+    } else if (mUnparsedPart.startsWith("Hoch")) {
+      // {Hoch} is a noun but not a number.
+      numberRoot = "n";
+    } else if (mUnparsedPart.startsWith("'ar")) {
+      // {'ar} is a question word.
+      numberRoot = "ques";
+    } else {
+      // This should never happen.
+      if (KlingonLog.isDebugEnabled(Subsystem.PARSER)) {
+        KlingonLog.e(TAG, "getNumberRootAnnotation: else case reached");
+      }
+    }
+    return numberRoot;
+  }
+
+  // Get the number modifier for a number.
+  public String getNumberModifier() {
+    return numberModifierString[mNumberModifier];
+  }
+
+  // Get the number suffix ("DIch" or "logh") for a number.
+  public String getNumberSuffix() {
+    return mNumberSuffix;
+  }
+
+  // Get the rovers at a given suffix level.
+  public String[] getRovers(int suffixLevel) {
+    final String[] negationThenEmphatic = {"-be'", "-qu'"};
+    final String[] emphaticThenNegation = {"-qu'", "-be'"};
+    final String[] negationOnly = {"-be'"};
+    final String[] emphaticOnly = {"-qu'"};
+    final String[] none = {};
+    if (mVerbTypeRNegation == suffixLevel && mVerbTypeREmphatic == suffixLevel) {
+      return (roverOrderNegationBeforeEmphatic ? negationThenEmphatic : emphaticThenNegation);
+    } else if (mVerbTypeRNegation == suffixLevel) {
+      return negationOnly;
+    } else if (mVerbTypeREmphatic == suffixLevel) {
+      return emphaticOnly;
+    }
+    return none;
+  }
+
+  // For display.
+  public String getVerbPrefixString() {
+    return verbPrefixString[mVerbPrefix] + (mVerbPrefix == 0 ? "" : "- + ");
+  }
+
+  // For display.
+  public String getSuffixesString() {
+    String suffixesString = "";
+    // Verb suffixes have to go first, since some can convert a verb to a noun.
+    for (int i = 0; i < mVerbSuffixes.length; i++) {
+      String[] suffixes = verbSuffixesStrings[i];
+      if (mVerbSuffixes[i] != 0) {
+        suffixesString += " + -";
+        suffixesString += suffixes[mVerbSuffixes[i]];
+      }
+      if (mVerbTypeRNegation == i && mVerbTypeREmphatic == i) {
+        if (roverOrderNegationBeforeEmphatic) {
+          suffixesString += " + -be' + qu'";
+        } else {
+          suffixesString += " + -qu' + be'";
+        }
+      } else if (mVerbTypeRNegation == i) {
+        suffixesString += " + -be'";
+      } else if (mVerbTypeREmphatic == i) {
+        suffixesString += " + -qu'";
+      }
+    }
+    // Noun suffixes.
+    for (int j = 0; j < mNounSuffixes.length; j++) {
+      String[] suffixes = nounSuffixesStrings[j];
+      if (mNounSuffixes[j] != 0) {
+        suffixesString += " + -";
+        suffixesString += suffixes[mNounSuffixes[j]];
+      }
+    }
+    return suffixesString;
+  }
+
+  public ComplexWord getAdjectivalVerbWithType5NounSuffix() {
+    // Note that even if there is a rover, which is legal on a verb acting adjectivally,
+    // it's hidden by the type 5 noun suffix and hence at this point we consider the
+    // word a bare word.
+    if (mIsNounCandidate || !isBareWord()) {
+      // This should never be reached.
+      if (KlingonLog.isDebugEnabled(Subsystem.PARSER)) {
+        KlingonLog.e(
+            TAG, "getAdjectivalVerbWithType5NounSuffix: is noun candidate or is not bare word");
+      }
+      return null;
+    }
+
+    // Count from 1 since 0 corresponds to no such suffix.
+    // Note that {-mo'} is both a type 5 noun suffix and a type 9 verb suffix.
+    for (int i = 1; i < nounType5String.length; i++) {
+      if (mUnparsedPart.endsWith(nounType5String[i])) {
+        String adjectivalVerb =
+            mUnparsedPart.substring(0, mUnparsedPart.length() - nounType5String[i].length());
+        ComplexWord adjectivalVerbWithType5NounSuffix =
+            new ComplexWord(adjectivalVerb, /* isNounCandidate */ false);
+
+        // Note that type 5 corresponds to index 4 since the array is 0-indexed.
+        adjectivalVerbWithType5NounSuffix.mNounSuffixes[4] = i;
+        adjectivalVerbWithType5NounSuffix.mIsVerbWithType5NounSuffix = true;
+
+        // Done processing.
+        adjectivalVerbWithType5NounSuffix.mSuffixLevel = 0;
+
+        // Since none of the type 5 noun suffixes are a prefix of another, it's okay to return
+        // here.
+        return adjectivalVerbWithType5NounSuffix;
+      }
+    }
+    return null;
+  }
+
+  public ComplexWord getVerbRootIfNoun() {
+    if (!mIsNounCandidate || !hasNoMoreSuffixes()) {
+      // Should never be reached if there are still suffixes remaining.
+      return null;
+    }
+    // KlingonLog.d(TAG, "getVerbRootIfNoun on: " + mUnparsedPart);
+
+    // If the unparsed part ends in a suffix that nominalises a verb ({-wI'}, {-ghach}), analysize
+    // it further.
+    // Do this only if there were noun suffixes, since the bare noun will be analysed as a verb
+    // anyway.
+    if (!noNounSuffixesFound()
+        && (mUnparsedPart.endsWith("ghach") || mUnparsedPart.endsWith("wI'"))) {
+      // KlingonLog.d(TAG, "Creating verb from: " + mUnparsedPart);
+      ComplexWord complexVerb = new ComplexWord(mUnparsedPart, /* complexWordToCopy */ this);
+      complexVerb.mIsNounCandidate = false;
+      complexVerb.mSuffixLevel = complexVerb.mVerbSuffixes.length;
+      return complexVerb;
+    }
+    return null;
+  }
+
+  public void attachPrefix(String prefix) {
+    if (mIsNounCandidate) {
+      return;
+    }
+    for (int i = 1; i < verbPrefixString.length; i++) {
+      if (prefix.equals(verbPrefixString[i] + "-")) {
+        mVerbPrefix = i;
+        break;
+      }
+    }
+  }
+
+  // Attaches a suffix. Returns the level of the suffix attached.
+  public int attachSuffix(String suffix, boolean isNounSuffix, int verbSuffixLevel) {
+    // Note that when a complex word noun is formed from a verb with {-wI'} or {-ghach}, its
+    // stem is considered to be a verb. Furthermore, an adjectival verb can take a type 5
+    // noun suffix. Noun suffixes can thus be attached to verbs. The isNounSuffix variable
+    // here indicates the type of the suffix, not the type of the stem.
+
+    // Special handling of {-DIch} and {-logh}.
+    if (suffix.equals("-DIch") || suffix.equals("-logh")) {
+      mIsNumberLike = true;
+      mNumberSuffix = suffix.substring(1); // strip initial "-"
+      return verbSuffixLevel;
+    }
+
+    if (isNounSuffix) {
+      // This is a noun suffix. Iterate over noun suffix types.
+      for (int i = 0; i < nounSuffixesStrings.length; i++) {
+        // Count from 1, since 0 corresponds to no suffix of that type.
+        for (int j = 1; j < nounSuffixesStrings[i].length; j++) {
+          if (suffix.equals("-" + nounSuffixesStrings[i][j])) {
+            mNounSuffixes[i] = j;
+
+            // The verb suffix level hasn't changed.
+            return verbSuffixLevel;
+          }
+        }
+      }
+    } else {
+      // This is a verb suffix. Check if this is a true rover.
+      if (suffix.equals("-be'")) {
+        mVerbTypeRNegation = verbSuffixLevel;
+        if (mVerbTypeREmphatic == verbSuffixLevel) {
+          // {-qu'be'}
+          roverOrderNegationBeforeEmphatic = false;
+        }
+        return verbSuffixLevel;
+      } else if (suffix.equals("-qu'")) {
+        mVerbTypeREmphatic = verbSuffixLevel;
+        if (mVerbTypeRNegation == verbSuffixLevel) {
+          // {-be'qu'}
+          roverOrderNegationBeforeEmphatic = true;
+        }
+        return verbSuffixLevel;
+      }
+      // Iterate over verb suffix types.
+      for (int i = 0; i < verbSuffixesStrings.length; i++) {
+        // Count from 1, since 0 corresponds to no suffix of that type.
+        for (int j = 1; j < verbSuffixesStrings[i].length; j++) {
+          if (suffix.equals("-" + verbSuffixesStrings[i][j])) {
+            mVerbSuffixes[i] = j;
+
+            // The verb suffix level has been changed.
+            return i;
+          }
+        }
+      }
+    }
+    // This should never be reached.
+    KlingonLog.e(TAG, "Unrecognised suffix: " + suffix);
+    return verbSuffixLevel;
+  }
+
+  // Add this complex word to the list.
+  private void addSelf(ArrayList<ComplexWord> complexWordsList) {
+    if (!hasNoMoreSuffixes()) {
+      // This point should never be reached.
+      KlingonLog.e(
+          TAG, "addSelf called on " + mUnparsedPart + " with suffix level " + mSuffixLevel + ".");
+      return;
+    }
+    KlingonLog.d(Subsystem.PARSER, TAG, "Found: {}", this);
+
+    // Determine if this is a number. Assume that a number is of the form
+    // "digit[modifier][suffix]",
+    // where digit is {wa'}, etc., modifier is a power of ten such as {maH}, and suffix is one of
+    // {-DIch} or {-logh}.
+    if (mIsNounCandidate) {
+
+      // Check for {-DIch} or {-logh}.
+      String numberRoot = mUnparsedPart;
+      if (mUnparsedPart.endsWith("DIch") || (isBareWord() && mUnparsedPart.endsWith("logh"))) {
+        int rootLength = mUnparsedPart.length() - 4;
+        numberRoot = mUnparsedPart.substring(0, rootLength);
+        mNumberSuffix = mUnparsedPart.substring(rootLength);
+      }
+
+      // Check for a "power of ten" modifier, such as {maH}.
+      // Count from 1, since 0 corresponds to no modifier.
+      for (int i = 1; i < numberModifierString.length; i++) {
+        if (numberRoot.endsWith(numberModifierString[i])) {
+          mNumberModifier = i;
+          numberRoot =
+              numberRoot.substring(0, numberRoot.length() - numberModifierString[i].length());
+          break;
+        }
+      }
+
+      // Look for a digit from {wa'} to {Hut}. {pagh} is excluded for now.
+      // Count from 1, since 0 corresponds to no digit.
+      for (int j = 1; j < numberDigitString.length; j++) {
+        if (numberRoot.equals(numberDigitString[j])) {
+          // Found a digit, so this is a number.
+          // Note that we leave mUnparsedPart alone, since we still want to add, e.g., {wa'DIch}
+          // as a result.
+          mNumberDigit = j;
+          mIsNumberLike = true;
+          break;
+        }
+      }
+      // If there is no modifier or suffix, then ignore this as the bare
+      // digit word will already be added.
+      if (mNumberModifier == 0 && mNumberSuffix.equals("")) {
+        mNumberDigit = 0;
+        mIsNumberLike = false;
+      }
+
+      // Finally, treat these words specially: {'arlogh}, {paghlogh}, {Hochlogh}, {paghDIch},
+      // {HochDIch}.
+      if (!mNumberSuffix.equals("")
+          && (numberRoot.equals("pagh")
+              || numberRoot.equals("Hoch")
+              || numberRoot.equals("'ar"))) {
+        // We don't set mUnparsedPart to the root, because we still want the entire
+        // word (e.g., {paghlogh}) to be added to the results if it is in the database.
+        mIsNumberLike = true;
+      }
+    }
+
+    // Add this complex word.
+    KlingonLog.d(Subsystem.PARSER, TAG, "adding word to complex words list: {}", mUnparsedPart);
+    complexWordsList.add(this);
+  }
+
+  // Attempt to parse this complex word, and if successful, add it to the given set.
+  public static void parseComplexWord(
+      String candidate, boolean isNounCandidate, ArrayList<ComplexWord> complexWordsList) {
+    ComplexWord complexWord = new ComplexWord(candidate, isNounCandidate);
+    KlingonLog.d(
+        Subsystem.PARSER,
+        TAG,
+        "\n\n* parsing = {} ({}) *",
+        candidate,
+        isNounCandidate ? "n" : "v");
+    if (!isNounCandidate) {
+      // Check prefix.
+      ComplexWord strippedPrefixComplexWord = complexWord.stripPrefix();
+      if (strippedPrefixComplexWord != null) {
+        // Branch off a word with the prefix stripped.
+        stripSuffix(strippedPrefixComplexWord, complexWordsList);
+      }
+    }
+    // Check suffixes.
+    stripSuffix(complexWord, complexWordsList);
+  }
+
+  // Helper method to strip a level of suffix from a word.
+  private static void stripSuffix(
+      ComplexWord complexWord, ArrayList<ComplexWord> complexWordsList) {
+    if (complexWord.hasNoMoreSuffixes()) {
+      KlingonLog.d(
+          Subsystem.PARSER,
+          TAG,
+          "attempting to add to complex words list: {}",
+          complexWord.mUnparsedPart);
+      complexWord.addSelf(complexWordsList);
+
+      if (complexWord.mIsNounCandidate) {
+        // Attempt to get the verb root of this word if it's a noun.
+        complexWord = complexWord.getVerbRootIfNoun();
+      } else if (complexWord.isBareWord()) {
+        // Check for type 5 noun suffix on a possibly adjectival verb.
+        complexWord = complexWord.getAdjectivalVerbWithType5NounSuffix();
+        if (complexWord != null) {
+          String adjectivalVerb = complexWord.stem();
+          if (adjectivalVerb.endsWith("be'")
+              || adjectivalVerb.endsWith("qu'")
+              || adjectivalVerb.endsWith("Ha'")) {
+            String adjectivalVerbWithoutRover =
+                adjectivalVerb.substring(0, adjectivalVerb.length() - 3);
+            // Adjectival verbs may end with a rover (except for {-Qo'}), so check for that here.
+            ComplexWord anotherComplexWord =
+                new ComplexWord(adjectivalVerbWithoutRover, complexWord);
+            if (adjectivalVerb.endsWith("be'")) {
+              anotherComplexWord.mVerbTypeRNegation = 0;
+            } else if (adjectivalVerb.endsWith("qu'")) {
+              anotherComplexWord.mVerbTypeREmphatic = 0;
+            } else if (adjectivalVerb.endsWith("Ha'")) {
+              anotherComplexWord.mVerbSuffixes[0] = 1;
+            }
+            stripSuffix(anotherComplexWord, complexWordsList);
+          }
+        }
+      } else {
+        // We're done.
+        complexWord = null;
+      }
+
+      if (complexWord == null) {
+        // Not a noun or the noun has no further verb root, so we're done with this complex word.
+        return;
+      }
+      // Note that at this point we continue with a newly created complex word.
+    }
+
+    if (KlingonLog.isDebugEnabled(Subsystem.PARSER)) {
+      String suffixType;
+      if (complexWord.mIsNounCandidate) {
+        // Noun suffix level corresponds to the suffix type.
+        suffixType = "type " + complexWord.mSuffixLevel;
+      } else {
+        // Verb suffix level doesn't correspond exactly: {-Ha'}, types 1 through 8, {-Qo'}, then 9.
+        if (complexWord.mSuffixLevel == 1) {
+          suffixType = "-Ha'";
+        } else if (complexWord.mSuffixLevel == 10) {
+          suffixType = "-Qo'";
+        } else if (complexWord.mSuffixLevel == 11) {
+          suffixType = "type 9";
+        } else {
+          suffixType = "type " + (complexWord.mSuffixLevel - 1);
+        }
+      }
+      KlingonLog.d(
+          TAG,
+          "stripSuffix called on {"
+              + complexWord.mUnparsedPart
+              + "} for "
+              + (complexWord.mIsNounCandidate ? "noun" : "verb")
+              + " suffix: "
+              + suffixType);
+    }
+
+    // Special check for the suffix {-oy} attached to a noun ending in a vowel. This needs to be
+    // done additionally to the regular check, since it may be possible to parse a word either way,
+    // e.g., {ghu'oy} could be {ghu} + {-'oy} or {ghu'} + {-oy}.
+    ComplexWord apostropheOyComplexWord = complexWord.maybeStripApostropheOy();
+    if (apostropheOyComplexWord != null) {
+        // "'oy" was stripped, branch using it as a new candidate.
+        stripSuffix(apostropheOyComplexWord, complexWordsList);
+    }
+
+    // Attempt to strip one level of suffix.
+    ComplexWord strippedSuffixComplexWord = complexWord.stripSuffixAndBranch();
+    if (strippedSuffixComplexWord != null) {
+      // A suffix of the current type was found, branch using it as a new candidate.
+      stripSuffix(strippedSuffixComplexWord, complexWordsList);
+    }
+    // Tail recurse to the next level of suffix. Note that the suffix level is decremented in
+    // complexWord.stripSuffixAndBranch() above.
+    stripSuffix(complexWord, complexWordsList);
+  }
+}
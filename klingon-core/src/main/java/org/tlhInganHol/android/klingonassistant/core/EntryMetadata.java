@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.core;
+
+/**
+ * The metadata of an entry, parsed from its part of speech, e.g., "v:t_c,hyp". The part of speech
+ * consists of a base part of speech, optionally followed by a colon and a comma-separated list of
+ * attributes.
+ *
+ * <p>This is the part of an entry which doesn't depend on Android, so that it can be benchmarked
+ * and reused outside the app. The entries of the app extend it.
+ */
+public class EntryMetadata {
+  private static final String TAG = "EntryMetadata";
+
+  // The name and part of speech of the entry.
+  protected String mEntryName = "";
+  protected String mPartOfSpeech = "";
+
+  // Part of speech metadata.
+  protected enum BasePartOfSpeechEnum {
+    NOUN,
+    VERB,
+    ADVERBIAL,
+    CONJUNCTION,
+    QUESTION,
+    SENTENCE,
+    EXCLAMATION,
+    SOURCE,
+    URL,
+    UNKNOWN
+  }
+
+  protected String[] basePartOfSpeechAbbreviations = {
+    "n", "v", "adv", "conj", "ques", "sen", "excl", "src", "url", "???"
+  };
+  protected BasePartOfSpeechEnum mBasePartOfSpeech = BasePartOfSpeechEnum.UNKNOWN;
+
+  // Verb attributes.
+  protected enum VerbTransitivityType {
+    TRANSITIVE,
+    INTRANSITIVE,
+    STATIVE,
+    AMBITRANSITIVE,
+    UNKNOWN,
+    HAS_TYPE_5_NOUN_SUFFIX
+  }
+
+  protected VerbTransitivityType mTransitivity = VerbTransitivityType.UNKNOWN;
+  protected boolean mTransitivityConfirmed = false;
+
+  // Noun attributes.
+  protected enum NounType {
+    GENERAL,
+    NUMBER,
+    NAME,
+    PRONOUN
+  }
+
+  protected NounType mNounType = NounType.GENERAL;
+  protected boolean mIsInherentPlural = false;
+  protected boolean mIsSingularFormOfInherentPlural = false;
+  protected boolean mIsPlural = false;
+
+  // Sentence types.
+  protected enum SentenceType {
+    PHRASE,
+    EMPIRE_UNION_DAY,
+    CURSE_WARFARE,
+    IDIOM,
+    NENTAY,
+    PROVERB,
+    MILITARY_CELEBRATION,
+    REJECTION,
+    REPLACEMENT_PROVERB,
+    SECRECY_PROVERB,
+    TOAST,
+    LYRICS,
+    BEGINNERS_CONVERSATION,
+    JOKE
+  }
+
+  protected SentenceType mSentenceType = SentenceType.PHRASE;
+
+  // Categories of words and phrases.
+  protected boolean mIsAnimal = false;
+  protected boolean mIsArchaic = false;
+  protected boolean mIsBeingCapableOfLanguage = false;
+  protected boolean mIsBodyPart = false;
+  protected boolean mIsDerivative = false;
+  protected boolean mIsRegional = false;
+  protected boolean mIsFoodRelated = false;
+  protected boolean mIsInvective = false;
+  protected boolean mIsPlaceName = false;
+  protected boolean mIsPrefix = false;
+  protected boolean mIsSlang = false;
+  protected boolean mIsSuffix = false;
+  protected boolean mIsWeaponsRelated = false;
+
+  // Additional metadata.
+  protected boolean mIsAlternativeSpelling = false;
+  protected boolean mIsFictionalEntity = false;
+  protected boolean mIsHypothetical = false;
+  protected boolean mIsExtendedCanon = false;
+  protected boolean mDoNotLink = false;
+
+  // For display purposes.
+  protected boolean mIsIndented = false;
+
+  // If there are multiple entries with identitical entry names,
+  // they are distinguished with numbers. However, not all entries display
+  // them, for various reasons.
+  protected int mHomophoneNumber = -1;
+  protected boolean mShowHomophoneNumber = true;
+
+  // Link can be to an URL.
+  protected String mURL = "";
+
+  protected EntryMetadata() {}
+
+  /**
+   * Constructor
+   *
+   * @param entryName The name of the entry, used only for logging.
+   * @param partOfSpeech The part of speech, including attributes, e.g., "v:t_c,hyp".
+   */
+  public EntryMetadata(String entryName, String partOfSpeech) {
+    mEntryName = entryName;
+    mPartOfSpeech = partOfSpeech;
+    processMetadata();
+  }
+
+  // Helper method to process metadata.
+  protected void processMetadata() {
+
+    // Process metadata from part of speech.
+    String base = mPartOfSpeech;
+    String[] attributes = {};
+    int colonLoc = mPartOfSpeech.indexOf(':');
+    if (colonLoc != -1) {
+      base = mPartOfSpeech.substring(0, colonLoc);
+      attributes = mPartOfSpeech.substring(colonLoc + 1).split(",");
+    }
+
+    // First, find the base part of speech.
+    mBasePartOfSpeech = BasePartOfSpeechEnum.UNKNOWN;
+    if (base.equals("")) {
+      // Do nothing if base part of speech is empty.
+      // KlingonLog.w(TAG, "{" + mEntryName + "} has empty part of speech.");
+    } else {
+      for (int i = 0; i < basePartOfSpeechAbbreviations.length; i++) {
+        if (base.equals(basePartOfSpeechAbbreviations[i])) {
+          mBasePartOfSpeech = BasePartOfSpeechEnum.values()[i];
+        }
+      }
+      if (mBasePartOfSpeech == BasePartOfSpeechEnum.UNKNOWN) {
+        // Log warning if part of speech could not be determined.
+        KlingonLog.w(
+            TAG,
+            "{" + mEntryName + "} has unrecognised part of speech: \"" + mPartOfSpeech + "\"");
+      }
+    }
+
+    // Now, get other attributes from the part of speech metadata.
+    for (String attr : attributes) {
+
+      // Note prefixes and suffixes.
+      if (attr.equals("pref")) {
+        mIsPrefix = true;
+      } else if (attr.equals("suff")) {
+        mIsSuffix = true;
+      } else if (attr.equals("indent")) {
+        // This attribute is used internally to indent affixes which are attached to a word, and
+        // to half-indent verbs with prefixes.
+        mIsIndented = true;
+
+        // Verb attributes.
+      } else if (attr.equals("ambi")) {
+        // All ambitransitive verbs are considered confirmed, since they are never marked as such
+        // otherwise.
+        mTransitivity = VerbTransitivityType.AMBITRANSITIVE;
+        mTransitivityConfirmed = true;
+      } else if (attr.equals("i")) {
+        mTransitivity = VerbTransitivityType.INTRANSITIVE;
+      } else if (attr.equals("i_c")) {
+        mTransitivity = VerbTransitivityType.INTRANSITIVE;
+        mTransitivityConfirmed = true;
+      } else if (attr.equals("is")) {
+        // All stative verbs are considered confirmed for being intransitive, since they are all
+        // of the form "to be [a quality]".
+        mTransitivity = VerbTransitivityType.STATIVE;
+        mTransitivityConfirmed = true;
+      } else if (attr.equals("t")) {
+        mTransitivity = VerbTransitivityType.TRANSITIVE;
+      } else if (attr.equals("t_c")) {
+        mTransitivity = VerbTransitivityType.TRANSITIVE;
+        mTransitivityConfirmed = true;
+      } else if (attr.equals("n5")) {
+        // This is an attribute which does not appear in the database, but can be assigned to a
+        // query to find only verbs which are attached to a type 5 noun suffix (verbs acting
+        // adjectivally).
+        mTransitivity = VerbTransitivityType.HAS_TYPE_5_NOUN_SUFFIX;
+
+        // Noun attributes.
+      } else if (attr.equals("name")) {
+        mNounType = NounType.NAME;
+        mShowHomophoneNumber = false;
+      } else if (attr.equals("num")) {
+        mNounType = NounType.NUMBER;
+      } else if (attr.equals("pro")) {
+        mNounType = NounType.PRONOUN;
+      } else if (attr.equals("inhpl")) {
+        mIsInherentPlural = true;
+      } else if (attr.equals("inhps")) {
+        mIsSingularFormOfInherentPlural = true;
+      } else if (attr.equals("plural")) {
+        mIsPlural = true;
+
+        // Sentence attributes.
+      } else if (attr.equals("eu")) {
+        mSentenceType = SentenceType.EMPIRE_UNION_DAY;
+      } else if (attr.equals("mv")) {
+        mSentenceType = SentenceType.CURSE_WARFARE;
+      } else if (attr.equals("idiom")) {
+        mSentenceType = SentenceType.IDIOM;
+      } else if (attr.equals("nt")) {
+        mSentenceType = SentenceType.NENTAY;
+      } else if (attr.equals("phr")) {
+        mSentenceType = SentenceType.PHRASE;
+      } else if (attr.equals("prov")) {
+        mSentenceType = SentenceType.PROVERB;
+      } else if (attr.equals("Ql")) {
+        mSentenceType = SentenceType.MILITARY_CELEBRATION;
+      } else if (attr.equals("rej")) {
+        mSentenceType = SentenceType.REJECTION;
+      } else if (attr.equals("rp")) {
+        mSentenceType = SentenceType.REPLACEMENT_PROVERB;
+      } else if (attr.equals("sp")) {
+        mSentenceType = SentenceType.SECRECY_PROVERB;
+      } else if (attr.equals("toast")) {
+        mSentenceType = SentenceType.TOAST;
+      } else if (attr.equals("lyr")) {
+        mSentenceType = SentenceType.LYRICS;
+      } else if (attr.equals("bc")) {
+        mSentenceType = SentenceType.BEGINNERS_CONVERSATION;
+      } else if (attr.equals("joke")) {
+        mSentenceType = SentenceType.JOKE;
+
+        // Categories.
+      } else if (attr.equals("anim")) {
+        mIsAnimal = true;
+      } else if (attr.equals("archaic")) {
+        mIsArchaic = true;
+      } else if (attr.equals("being")) {
+        mIsBeingCapableOfLanguage = true;
+      } else if (attr.equals("body")) {
+        mIsBodyPart = true;
+      } else if (attr.equals("deriv")) {
+        mIsDerivative = true;
+      } else if (attr.equals("reg")) {
+        mIsRegional = true;
+      } else if (attr.equals("food")) {
+        mIsFoodRelated = true;
+      } else if (attr.equals("inv")) {
+        mIsInvective = true;
+      } else if (attr.equals("place")) {
+        mIsPlaceName = true;
+      } else if (attr.equals("slang")) {
+        mIsSlang = true;
+      } else if (attr.equals("weap")) {
+        mIsWeaponsRelated = true;
+
+        // Additional metadata.
+      } else if (attr.equals("alt")) {
+        mIsAlternativeSpelling = true;
+      } else if (attr.equals("fic")) {
+        mIsFictionalEntity = true;
+      } else if (attr.equals("hyp")) {
+        mIsHypothetical = true;
+      } else if (attr.equals("extcan")) {
+        mIsExtendedCanon = true;
+      } else if (attr.equals("nolink")) {
+        mDoNotLink = true;
+
+        // We have only a few homophonous entries.
+      } else if (attr.equals("1")) {
+        mHomophoneNumber = 1;
+      } else if (attr.equals("2")) {
+        mHomophoneNumber = 2;
+      } else if (attr.equals("3")) {
+        mHomophoneNumber = 3;
+      } else if (attr.equals("4")) {
+        mHomophoneNumber = 4;
+      } else if (attr.equals("5")) {
+        // Nothing should go as high as even 4.
+        mHomophoneNumber = 5;
+        // Same as above, but the number is hidden.
+      } else if (attr.equals("1h")) {
+        mHomophoneNumber = 1;
+        mShowHomophoneNumber = false;
+      } else if (attr.equals("2h")) {
+        mHomophoneNumber = 2;
+        mShowHomophoneNumber = false;
+      } else if (attr.equals("3h")) {
+        mHomophoneNumber = 3;
+        mShowHomophoneNumber = false;
+      } else if (attr.equals("4h")) {
+        mHomophoneNumber = 4;
+        mShowHomophoneNumber = false;
+      } else if (attr.equals("5h")) {
+        mHomophoneNumber = 5;
+        mShowHomophoneNumber = false;
+
+        // If this is an URL link, the attribute is the URL.
+      } else if (isURL()) {
+        mURL = attr;
+
+        // No match to attributes.
+      } else {
+        // Log error if part of speech could not be determined.
+        KlingonLog.e(TAG, "{" + mEntryName + "} has unrecognised attribute: \"" + attr + "\"");
+      }
+    }
+  }
+
+  public boolean isURL() {
+    return mBasePartOfSpeech == BasePartOfSpeechEnum.URL;
+  }
+}
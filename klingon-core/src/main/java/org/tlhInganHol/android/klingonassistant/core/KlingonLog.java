@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.core;
+
+/**
+ * Logging for the classes which don't depend on Android, and for the search path of the app.
+ * Messages are written to a sink, which the app sets to one writing to the Android log. Until a
+ * sink is set, messages are discarded.
+ *
+ * <p>Debug messages belong to a subsystem, and are only logged if debugging is enabled for it. They
+ * are formatted lazily: the message is given as a format in which each "{}" is replaced by the next
+ * argument, and it isn't built, nor are the arguments converted to strings, unless it's logged. The
+ * arguments themselves are still evaluated, and primitives boxed, before the call, so messages on
+ * hot paths whose arguments aren't just existing objects should be guarded by isDebugEnabled.
+ * Debugging is disabled in release builds. The ProGuard rules of the app would strip the debug
+ * calls entirely, but only from builds which are minified.
+ */
+public class KlingonLog {
+  /** The parts of the app whose debug messages can be enabled separately. */
+  public enum Subsystem {
+    /** Searching the database, in KlingonContentDatabase. */
+    SEARCH,
+    /** Parsing complex words, in ComplexWord. */
+    PARSER,
+    /** Matching entries against queries, and reading their metadata. */
+    ENTRY
+  }
+
+  /** Where messages are written. */
+  public interface Sink {
+    void d(String tag, String message);
+
+    void w(String tag, String message);
+
+    void e(String tag, String message);
+  }
+
+  private static final int ALL_SUBSYSTEMS = (1 << Subsystem.values().length) - 1;
+
+  private static volatile Sink mSink = null;
+  // A bit for each subsystem, set if debugging is enabled for it.
+  private static volatile int mDebugSubsystems = 0;
+
+  private KlingonLog() {}
+
+  /** Sets where messages are written, or null to discard them. */
+  public static void setSink(Sink sink) {
+    mSink = sink;
+  }
+
+  /** Sets whether debug messages should be logged for every subsystem. */
+  public static synchronized void setDebugEnabled(boolean debugEnabled) {
+    mDebugSubsystems = debugEnabled ? ALL_SUBSYSTEMS : 0;
+  }
+
+  /** Sets whether debug messages should be logged for the given subsystem. */
+  public static synchronized void setDebugEnabled(Subsystem subsystem, boolean debugEnabled) {
+    if (debugEnabled) {
+      mDebugSubsystems |= 1 << subsystem.ordinal();
+    } else {
+      mDebugSubsystems &= ~(1 << subsystem.ordinal());
+    }
+  }
+
+  /** Returns whether debug messages are logged for any subsystem. */
+  public static boolean isDebugEnabled() {
+    return mDebugSubsystems != 0;
+  }
+
+  public static boolean isDebugEnabled(Subsystem subsystem) {
+    return (mDebugSubsystems & (1 << subsystem.ordinal())) != 0;
+  }
+
+  public static void d(String tag, String message) {
+    Sink sink = mSink;
+    if (sink != null) {
+      sink.d(tag, message);
+    }
+  }
+
+  /** Logs a debug message for the given subsystem, if debugging is enabled for it. */
+  public static void d(Subsystem subsystem, String tag, String message) {
+    if (isDebugEnabled(subsystem)) {
+      d(tag, message);
+    }
+  }
+
+  /** Logs a debug message for the given subsystem, formatted only if it's logged. */
+  public static void d(Subsystem subsystem, String tag, String format, Object arg1) {
+    if (isDebugEnabled(subsystem)) {
+      d(tag, format(format, arg1, null, null));
+    }
+  }
+
+  public static void d(Subsystem subsystem, String tag, String format, Object arg1, Object arg2) {
+    if (isDebugEnabled(subsystem)) {
+      d(tag, format(format, arg1, arg2, null));
+    }
+  }
+
+  public static void d(
+      Subsystem subsystem, String tag, String format, Object arg1, Object arg2, Object arg3) {
+    if (isDebugEnabled(subsystem)) {
+      d(tag, format(format, arg1, arg2, arg3));
+    }
+  }
+
+  public static void w(String tag, String message) {
+    Sink sink = mSink;
+    if (sink != null) {
+      sink.w(tag, message);
+    }
+  }
+
+  public static void e(String tag, String message) {
+    Sink sink = mSink;
+    if (sink != null) {
+      sink.e(tag, message);
+    }
+  }
+
+  // Replaces each "{}" in the format with the next of the arguments. The arguments are fixed rather
+  // than varargs, so that calls which aren't logged don't allocate an array.
+  private static String format(String format, Object arg1, Object arg2, Object arg3) {
+    StringBuilder message = new StringBuilder(format.length() + 32);
+    int argIndex = 0;
+    int start = 0;
+    int placeholder;
+    while ((placeholder = format.indexOf("{}", start)) != -1 && argIndex < 3) {
+      message.append(format, start, placeholder);
+      message.append(argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3);
+      argIndex++;
+      start = placeholder + 2;
+    }
+    message.append(format, start, format.length());
+    return message.toString();
+  }
+}
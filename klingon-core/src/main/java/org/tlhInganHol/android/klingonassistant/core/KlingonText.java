@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2020 De'vID jonpIn (David Yonge-Mallo)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.tlhInganHol.android.klingonassistant.core;
+
+/** Conversions of Klingon text between the ways in which it is typed, stored and displayed. */
+public class KlingonText {
+  private KlingonText() {}
+
+  /**
+   * Converts a string in Latin transliteration to the code points of the {pIqaD} fonts, which are
+   * in the Private Use Area of Unicode (see the CSUR).
+   */
+  public static String convertStringToKlingonFont(String s) {
+    // Strip anything we don't recognise.
+    // This pattern should be kept mostly in sync with ENTRY_PATTERN. Note that "ü" and "+" will
+    // never be in an entry name.
+    String klingonString = s.replaceAll("[^A-Za-z0-9 '\\\":;,\\.\\-?!_/()@=%&\\*]", "");
+
+    // This is a hack: change the separators between words and their affixes.
+    // TODO: Do this upstream and colour the affixes differently.
+    klingonString =
+        klingonString
+            .replaceAll(" + -", " ◃ ")
+            .replaceAll("- + ", " ▹ ")
+            .replaceAll("^-", "◃ ")
+            .replaceAll("-$", " ▹");
+
+    // {gh} must come before {ngh} since {ngh} is {n} + {gh} and not {ng} + *{h}.
+    // {ng} must come before {n}.
+    // {tlh} must come before {t} and {l}.
+    // Don't change {-} since it's needed for prefixes and suffixes.
+    // Don't change "..." (ellipses), but do change "." (periods).
+    klingonString =
+        klingonString
+            .replaceAll("gh", "")
+            .replaceAll("ng", "")
+            .replaceAll("tlh", "")
+            .replaceAll("a", "")
+            .replaceAll("b", "")
+            .replaceAll("ch", "")
+            .replaceAll("D", "")
+            .replaceAll("e", "")
+            .replaceAll("H", "")
+            .replaceAll("I", "")
+            .replaceAll("j", "")
+            .replaceAll("l", "")
+            .replaceAll("m", "")
+            .replaceAll("n", "")
+            .replaceAll("o", "")
+            .replaceAll("p", "")
+            .replaceAll("q", "")
+            .replaceAll("Q", "")
+            .replaceAll("r", "")
+            .replaceAll("S", "")
+            .replaceAll("t", "")
+            .replaceAll("u", "")
+            .replaceAll("v", "")
+            .replaceAll("w", "")
+            .replaceAll("y", "")
+            .replaceAll("'", "")
+            .replaceAll("0", "")
+            .replaceAll("1", "")
+            .replaceAll("2", "")
+            .replaceAll("3", "")
+            .replaceAll("4", "")
+            .replaceAll("5", "")
+            .replaceAll("6", "")
+            .replaceAll("7", "")
+            .replaceAll("8", "")
+            .replaceAll("9", "")
+            .replaceAll(",", "")
+            .replaceAll(";", "")
+            .replaceAll("!", "")
+            .replaceAll("\\(", "▹")
+            .replaceAll("\\)", "◃")
+            .replaceAll("-", "◃")
+            .replaceAll("\\?", "")
+            .replaceAll("\\.", "")
+            // Note: The LHS is in Klingon due to previous replacements.
+            // We replace three periods in a row with an ellipsis.
+            .replaceAll("", "⋯");
+    return klingonString;
+  }
+
+  /**
+   * Convert a string written in "xifan hol" shorthand to {tlhIngan Hol}. This is a mapping which
+   * makes it easier to type, since shifting is unnecessary.
+   *
+   * <p>Make the following replacements: d -> D f -> ng h -> H (see note below) i -> I k -> Q s -> S
+   * x -> tlh z -> '
+   *
+   * <p>When replacing "h" with "H", the following must be preserved: ch -> ch gh -> gh tlh -> tlh
+   * ngh -> ngh (n + gh) ngH -> ngH (ng + H)
+   *
+   * <p>TODO: Consider allowing "invisible h". But this probably makes things too "loose". // c ->
+   * ch (but ch -/> chh) // g -> gh (but gh -/> ghh and ng -/> ngh)
+   *
+   * @param swapQs Whether "q" is typed for {Q}, and "k" for {q}.
+   */
+  public static String expandShorthand(String shorthand, boolean swapQs) {
+    if (swapQs) {
+      // Map q to Q and k to q.
+      shorthand = shorthand.replaceAll("q", "Q");
+      shorthand = shorthand.replaceAll("k", "q");
+    }
+
+    // Note: The order of the replacements is important.
+    return shorthand
+        .replaceAll("ngH", "NGH") // differentiate "ngh" from "ngH"
+        .replaceAll("h", "H") // side effects: ch -> cH, gh -> gH (also ngh -> ngH), tlh -> tlH
+        .replaceAll("cH", "ch") // restore "ch"
+        .replaceAll("gH", "gh") // restore "gh" (also "ngh")
+        .replaceAll("tlH", "tlh") // restore "tlh"
+        .replaceAll("g", "gX") // g -> gX, side effects: gh -> gXh, ng -> ngX
+        .replaceAll("gXh", "gh") // restore "gh"
+        .replaceAll("ngX", "ng") // restore "ng"
+        .replaceAll("gX", "gh") // g -> gh
+        .replaceAll("NGH", "ngH") // restore "ngH"
+        .replaceAll("c", "cX") // c -> cX, side effect: ch -> cXh
+        .replaceAll("cXh", "ch") // restore "ch"
+        .replaceAll("cX", "ch") // c -> ch
+        .replaceAll("d", "D") // do unambiguous replacements
+        .replaceAll("f", "ng")
+        .replaceAll("i", "I")
+        .replaceAll("k", "Q") // If the swap Qs preference was selected, this will have no effect.
+        .replaceAll("s", "S")
+        .replaceAll("z", "'")
+        .replaceAll("x", "tlh")
+        // At this point, "ngH" is definitely {ng} + {H}, but "ngh" might be either {n} + {gh}
+        // (nenghep}, {QIngheb}, {tlhonghaD}) or {ng} + {H} ({chungHa'wI'}, {mangHom}, {qengHoD},
+        // {tungHa'}, {vengHom}). Instead of checking both, cheat by hardcoding the possibilities.
+        // TODO: This means this code has to be updated whenever an entry with {ngH} is added to the
+        // database.
+        .replaceAll("(chung|mang|qeng|tung|veng)h", "$1H");
+  }
+
+  /** Sanitizes a query for SQL, and converts {pIqaD} in it to Latin transliteration. */
+  public static String sanitizeInput(String s) {
+    // Sanitize for SQL. Assume double-quote is a typo for single-quote. Convert {pIqaD} to Latin.
+    // Also trim.
+    return s.replaceAll("\"", "'")
+        .replaceAll("", "gh")
+        .replaceAll("", "ng")
+        .replaceAll("", "tlh")
+        .replaceAll("", "a")
+        .replaceAll("", "b")
+        .replaceAll("", "ch")
+        .replaceAll("", "D")
+        .replaceAll("", "e")
+        .replaceAll("", "H")
+        .replaceAll("", "I")
+        .replaceAll("", "j")
+        .replaceAll("", "l")
+        .replaceAll("", "m")
+        .replaceAll("", "n")
+        .replaceAll("", "o")
+        .replaceAll("", "p")
+        .replaceAll("", "q")
+        .replaceAll("", "Q")
+        .replaceAll("", "r")
+        .replaceAll("", "S")
+        .replaceAll("", "t")
+        .replaceAll("", "u")
+        .replaceAll("", "v")
+        .replaceAll("", "w")
+        .replaceAll("", "y")
+        .replaceAll("", "'")
+        .replaceAll("", "0")
+        .replaceAll("", "1")
+        .replaceAll("", "2")
+        .replaceAll("", "3")
+        .replaceAll("", "4")
+        .replaceAll("", "5")
+        .replaceAll("", "6")
+        .replaceAll("", "7")
+        .replaceAll("", "8")
+        .replaceAll("", "9")
+        .replaceAll("’", "'") // "smart" quote
+        .replaceAll("‘", "'") // "smart" left quote
+        .replaceAll("\u2011", "-") // non-breaking hyphen
+        .trim();
+  }
+}
@@ -0,0 +1,140 @@
+-- Splits the "mem" table of qawHaq.db into a narrow "mem_index" table, which holds only the
+-- columns which are searched or shown in lists of results, and a "mem_detail" table with the
+-- notes, examples and other columns which are needed only when an entry is displayed. The "mem"
+-- table is replaced by a view joining the two, so that entries can still be read in full.
+--
+-- Run by write_db.sh when given --split-index.
+
+BEGIN TRANSACTION;
+
+CREATE TABLE mem_index (
+  _id INTEGER PRIMARY KEY,
+  entry_name TEXT,
+  part_of_speech TEXT,
+  definition TEXT,
+  search_tags TEXT,
+  definition_de TEXT,
+  search_tags_de TEXT,
+  definition_fa TEXT,
+  search_tags_fa TEXT,
+  definition_sv TEXT,
+  search_tags_sv TEXT,
+  definition_ru TEXT,
+  search_tags_ru TEXT,
+  definition_zh_HK TEXT,
+  search_tags_zh_HK TEXT,
+  definition_pt TEXT,
+  search_tags_pt TEXT
+);
+INSERT INTO mem_index SELECT
+  _id,
+  entry_name,
+  part_of_speech,
+  definition,
+  search_tags,
+  definition_de,
+  search_tags_de,
+  definition_fa,
+  search_tags_fa,
+  definition_sv,
+  search_tags_sv,
+  definition_ru,
+  search_tags_ru,
+  definition_zh_HK,
+  search_tags_zh_HK,
+  definition_pt,
+  search_tags_pt
+FROM mem;
+
+CREATE TABLE mem_detail (
+  _id INTEGER PRIMARY KEY,
+  synonyms TEXT,
+  antonyms TEXT,
+  see_also TEXT,
+  notes TEXT,
+  hidden_notes TEXT,
+  components TEXT,
+  examples TEXT,
+  source TEXT,
+  notes_de TEXT,
+  examples_de TEXT,
+  notes_fa TEXT,
+  examples_fa TEXT,
+  notes_sv TEXT,
+  examples_sv TEXT,
+  notes_ru TEXT,
+  examples_ru TEXT,
+  notes_zh_HK TEXT,
+  examples_zh_HK TEXT,
+  notes_pt TEXT,
+  examples_pt TEXT
+);
+INSERT INTO mem_detail SELECT
+  _id,
+  synonyms,
+  antonyms,
+  see_also,
+  notes,
+  hidden_notes,
+  components,
+  examples,
+  source,
+  notes_de,
+  examples_de,
+  notes_fa,
+  examples_fa,
+  notes_sv,
+  examples_sv,
+  notes_ru,
+  examples_ru,
+  notes_zh_HK,
+  examples_zh_HK,
+  notes_pt,
+  examples_pt
+FROM mem;
+
+DROP TABLE mem;
+
+CREATE VIEW mem AS SELECT
+  mem_index._id AS _id,
+  entry_name,
+  part_of_speech,
+  definition,
+  synonyms,
+  antonyms,
+  see_also,
+  notes,
+  hidden_notes,
+  components,
+  examples,
+  search_tags,
+  source,
+  definition_de,
+  notes_de,
+  examples_de,
+  search_tags_de,
+  definition_fa,
+  notes_fa,
+  examples_fa,
+  search_tags_fa,
+  definition_sv,
+  notes_sv,
+  examples_sv,
+  search_tags_sv,
+  definition_ru,
+  notes_ru,
+  examples_ru,
+  search_tags_ru,
+  definition_zh_HK,
+  notes_zh_HK,
+  examples_zh_HK,
+  search_tags_zh_HK,
+  definition_pt,
+  notes_pt,
+  examples_pt,
+  search_tags_pt
+FROM mem_index JOIN mem_detail ON mem_detail._id = mem_index._id;
+
+COMMIT;
+
+VACUUM;
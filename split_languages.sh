@@ -0,0 +1,77 @@
+#!/bin/bash
+
+# Splits the secondary languages out of the "mem" table of qawHaq.db into language packs, so that
+# the app only installs the pack of the secondary language which has been chosen. The columns which
+# aren't in a secondary language are moved to a "mem_core" table, and the columns of each language
+# are moved to a "mem_<language>" table in qawHaq_<language>.db. The app attaches the chosen pack
+# and joins the two in a temporary "mem" view.
+#
+# Run by write_db.sh when given --language-packs.
+
+set -e
+
+ASSETS=app/src/main/assets
+LANGUAGES="de fa sv ru zh_HK pt"
+
+for lang in $LANGUAGES; do
+  rm -f "$ASSETS/qawHaq_$lang.db"
+  sqlite3 "$ASSETS/qawHaq.db" <<EOF
+ATTACH DATABASE '$ASSETS/qawHaq_$lang.db' AS pack;
+CREATE TABLE pack.mem_$lang (
+  _id INTEGER PRIMARY KEY,
+  definition_$lang TEXT,
+  notes_$lang TEXT,
+  examples_$lang TEXT,
+  search_tags_$lang TEXT
+);
+INSERT INTO pack.mem_$lang SELECT
+  _id,
+  definition_$lang,
+  notes_$lang,
+  examples_$lang,
+  search_tags_$lang
+FROM mem;
+DETACH DATABASE pack;
+EOF
+done
+
+sqlite3 "$ASSETS/qawHaq.db" <<EOF
+BEGIN TRANSACTION;
+
+CREATE TABLE mem_core (
+  _id INTEGER PRIMARY KEY,
+  entry_name TEXT,
+  part_of_speech TEXT,
+  definition TEXT,
+  synonyms TEXT,
+  antonyms TEXT,
+  see_also TEXT,
+  notes TEXT,
+  hidden_notes TEXT,
+  components TEXT,
+  examples TEXT,
+  search_tags TEXT,
+  source TEXT
+);
+INSERT INTO mem_core SELECT
+  _id,
+  entry_name,
+  part_of_speech,
+  definition,
+  synonyms,
+  antonyms,
+  see_also,
+  notes,
+  hidden_notes,
+  components,
+  examples,
+  search_tags,
+  source
+FROM mem;
+
+DROP TABLE mem;
+
+COMMIT;
+
+VACUUM;
+EOF
@@ -1,7 +1,44 @@
 #!/bin/bash
 
+# With --split-index, the bundled database has a narrow search index table and a separate table of
+# entry details (see split_index.sql). With --language-packs, the secondary languages are split out
+# of the bundled database into a pack for each language (see split_languages.sh). The two layouts
+# can't be combined.
+SPLIT_INDEX=
+LANGUAGE_PACKS=
+for arg in "$@"; do
+  case "$arg" in
+    --split-index)
+      SPLIT_INDEX=1
+      ;;
+    --language-packs)
+      LANGUAGE_PACKS=1
+      ;;
+  esac
+done
+
+if [ -n "$SPLIT_INDEX" ] && [ -n "$LANGUAGE_PACKS" ]; then
+  echo "--split-index and --language-packs can't be combined." >&2
+  exit 1
+fi
+
+# Remove language packs left by a previous build, so that they aren't bundled with a database
+# which doesn't use them.
+rm -f app/src/main/assets/qawHaq_*.db
+
 cd data
 ./generate_db.sh --noninteractive
 cp qawHaq.db ../app/src/main/assets/
 ./stats.sh
 cd ..
+
+if [ -n "$SPLIT_INDEX" ]; then
+  sqlite3 app/src/main/assets/qawHaq.db < split_index.sql
+fi
+
+if [ -n "$LANGUAGE_PACKS" ]; then
+  ./split_languages.sh
+fi
+
+# Write the lexicon of entry names, which the app uses to look up entries without SQLite.
+./write_lexicon.py app/src/main/assets/qawHaq.db app/src/main/assets/qawHaq.lex
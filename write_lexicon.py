@@ -0,0 +1,123 @@
+#!/usr/bin/env python3
+
+"""Writes the entry names of qawHaq.db to a compact binary lexicon, which the app memory-maps to
+look up entries by name or id without going through SQLite (see LexiconReader.java).
+
+Run by write_db.sh, after the database has been given its final layout.
+
+The lexicon consists of, in big-endian order:
+
+  header:  magic "KLEX", format version, number of entries, offset of the records, offset of the
+           id table, offset of the string heap, length of the string heap (7 ints)
+  records: for each entry, sorted by the UTF-8 bytes of its name and then by id: id, offset of the
+           name in the string heap, length of the name in bytes, flags (4 ints)
+  ids:     for each entry, sorted by id: id, index of its record (2 ints)
+  heap:    the UTF-8 bytes of the entry names
+
+The flags pack the part of speech of an entry. These must be kept in sync with LexiconReader.
+"""
+
+import sqlite3
+import struct
+import sys
+
+MAGIC = 0x4B4C4558  # "KLEX"
+FORMAT_VERSION = 1
+HEADER_LENGTH = 7 * 4
+RECORD_LENGTH = 4 * 4
+ID_ENTRY_LENGTH = 2 * 4
+
+# The base parts of speech, in the order of their codes in the lowest 4 bits of the flags.
+BASE_PARTS_OF_SPEECH = ["n", "v", "adv", "conj", "ques", "sen", "excl", "src", "url"]
+BASE_PART_OF_SPEECH_UNKNOWN = 9
+
+# The homophone number is in the next 4 bits, followed by these attributes.
+HOMOPHONE_SHIFT = 4
+ATTRIBUTE_FLAGS = {
+    "hyp": 1 << 8,
+    "extcan": 1 << 9,
+    "alt": 1 << 10,
+    "archaic": 1 << 11,
+    "slang": 1 << 12,
+    "reg": 1 << 13,
+    "fic": 1 << 14,
+}
+
+
+def flags_for(part_of_speech):
+    base, _, attributes = part_of_speech.partition(":")
+    if base in BASE_PARTS_OF_SPEECH:
+        flags = BASE_PARTS_OF_SPEECH.index(base)
+    else:
+        flags = BASE_PART_OF_SPEECH_UNKNOWN
+    for attribute in attributes.split(","):
+        # A homophone number may be followed by "h" if it is hidden.
+        number = attribute.rstrip("h")
+        if number.isdigit():
+            flags |= int(number) << HOMOPHONE_SHIFT
+        else:
+            flags |= ATTRIBUTE_FLAGS.get(attribute, 0)
+    return flags
+
+
+def read_entries(db_path):
+    """Returns (id, name, flags) for each entry, with the id which the app looks entries up by."""
+    db = sqlite3.connect(db_path)
+    tables = {row[0] for row in db.execute("SELECT name FROM sqlite_master WHERE type = 'table'")}
+    if "mem" in tables:
+        # The full-text table, whose entries the app looks up by rowid.
+        query = "SELECT rowid, entry_name, part_of_speech FROM mem"
+    elif "mem_index" in tables:
+        query = "SELECT _id, entry_name, part_of_speech FROM mem_index"
+    else:
+        query = "SELECT _id, entry_name, part_of_speech FROM mem_core"
+    entries = [(int(id), name or "", flags_for(pos or "")) for id, name, pos in db.execute(query)]
+    db.close()
+    return entries
+
+
+def write_lexicon(entries, lex_path):
+    entries.sort(key=lambda entry: (entry[1].encode("utf-8"), entry[0]))
+
+    heap = bytearray()
+    name_offsets = {}
+    records = bytearray()
+    for id, name, flags in entries:
+        # Homographs share their name in the heap.
+        encoded = name.encode("utf-8")
+        if encoded not in name_offsets:
+            name_offsets[encoded] = len(heap)
+            heap += encoded
+        records += struct.pack(">iiii", id, name_offsets[encoded], len(encoded), flags)
+
+    ids = bytearray()
+    for index in sorted(range(len(entries)), key=lambda index: entries[index][0]):
+        ids += struct.pack(">ii", entries[index][0], index)
+
+    records_offset = HEADER_LENGTH
+    ids_offset = records_offset + len(records)
+    heap_offset = ids_offset + len(ids)
+    header = struct.pack(
+        ">iiiiiii",
+        MAGIC,
+        FORMAT_VERSION,
+        len(entries),
+        records_offset,
+        ids_offset,
+        heap_offset,
+        len(heap),
+    )
+    with open(lex_path, "wb") as lex_file:
+        lex_file.write(header + records + ids + heap)
+
+
+def main():
+    if len(sys.argv) != 3:
+        sys.exit("Usage: write_lexicon.py <database> <lexicon>")
+    entries = read_entries(sys.argv[1])
+    write_lexicon(entries, sys.argv[2])
+    print("Wrote %d entries to %s." % (len(entries), sys.argv[2]))
+
+
+if __name__ == "__main__":
+    main()